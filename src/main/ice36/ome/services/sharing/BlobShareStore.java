@@ -16,6 +16,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ome.api.IShare;
 import ome.conditions.OptimisticLockException;
@@ -51,18 +53,24 @@ import ome.model.stats.StatsInfo;
 import ome.services.sharing.data.Obj;
 import ome.services.sharing.data.ShareData;
 import ome.services.sharing.data.ShareItem;
+import ome.services.util.LongHashSet;
 import ome.system.OmeroContext;
 import ome.tools.hibernate.QueryBuilder;
 import ome.tools.hibernate.SessionFactory;
 import ome.util.SqlAction;
 
-import org.apache.commons.collections.CollectionUtils;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 
 /**
  * Implements {@link ShareStore} and provides functionality to work with binary
@@ -87,9 +95,21 @@ public class BlobShareStore extends ShareStore implements
 
     protected SqlAction sqlAction;
 
-    protected Map<Long, Long> pixToImageCache = new HashMap<Long, Long>();
+    /**
+     * Decoded shares by id, so that {@link #doContains(long, Class, long)}
+     * need neither load nor parse the share for each object checked. Entries
+     * are dropped whenever a share is set, and expire in case another server
+     * sets it.
+     */
+    protected final Cache<Long, SharedObjects> sharedObjectsCache = CacheBuilder
+            .newBuilder().maximumSize(1000)
+            .expireAfterWrite(10, TimeUnit.MINUTES).build();
 
-    protected Map<Long, List<Long>> obToImageCache = new HashMap<Long, List<Long>>();
+    /**
+     * Counts invalidations so that a share loaded while it was being set is
+     * not then cached.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
 
     /**
      * Because there is a cyclic dependency (SF -&gt; ACLVoter -&gt; BlobStore -&gt; SF), we
@@ -149,6 +169,26 @@ public class BlobShareStore extends ShareStore implements
         share.setVersion((int) newOptLock);
         session.merge(share);
         synchronizeMembers(session, data);
+        invalidate(data.id);
+    }
+
+    /**
+     * Drops the cached copy of the share both now and, if in a transaction,
+     * once it completes, after which its new data is visible to others.
+     */
+    private void invalidate(final long id) {
+        invalidations.incrementAndGet();
+        sharedObjectsCache.invalidate(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            invalidations.incrementAndGet();
+                            sharedObjectsCache.invalidate(id);
+                        }
+                    });
+        }
     }
 
     @Override
@@ -203,82 +243,116 @@ public class BlobShareStore extends ShareStore implements
         }
     }
 
-    boolean imagesContainsPixels(Session s, List<Long> images, Pixels pix,
-            Map<Long, Long> cache) {
-        Long pixID = pix.getId();
-        return imagesContainsPixels(s, images, pixID, cache);
+    /**
+     * The objects in a share by type, along with those that link back to its
+     * Images, as sets of ids.
+     */
+    protected static final class SharedObjects {
+
+        private final Map<String, LongHashSet> byType =
+                new HashMap<String, LongHashSet>();
+
+        final LongHashSet images;
+
+        final LongHashSet pixels;
+
+        final LongHashSet instruments;
+
+        final LongHashSet objectiveSettings;
+
+        SharedObjects(ShareData data, LongHashSet pixels,
+                LongHashSet instruments, LongHashSet objectiveSettings) {
+            for (Map.Entry<String, List<Long>> entry : data.objectMap
+                    .entrySet()) {
+                byType.put(entry.getKey(), LongHashSet.of(entry.getValue()));
+            }
+            LongHashSet images = byType.get(Image.class.getName());
+            this.images = images == null ? new LongHashSet() : images;
+            this.pixels = pixels;
+            this.instruments = instruments;
+            this.objectiveSettings = objectiveSettings;
+        }
+
+        boolean contains(String type, long id) {
+            LongHashSet ids = byType.get(type);
+            return ids != null && ids.contains(id);
+        }
     }
 
-    boolean imagesContainsPixels(Session s, List<Long> images, long pixID,
-            Map<Long, Long> cache) {
-        Long imgID;
-        if (cache.containsKey(pixID)) {
-            imgID = cache.get(pixID);
-        } else {
-            imgID = (Long) s
-                    .createQuery("select image.id from Pixels where id = ?")
-                    .setParameter(0, pixID).uniqueResult();
-            cache.put(pixID, imgID);
+    /**
+     * Returns the cached objects of the given share, decoding and caching
+     * them if need be.
+     *
+     * @return the objects or null if there is no such share.
+     */
+    protected SharedObjects sharedObjects(long shareId) {
+        SharedObjects objects = sharedObjectsCache.getIfPresent(shareId);
+        if (objects != null) {
+            return objects;
         }
-        return images.contains(imgID);
+        long before = invalidations.get();
+        ShareData data = get(shareId);
+        if (data == null) {
+            return null;
+        }
+        Session s = session();
+        List<Long> images = data.objectMap.get(Image.class.getName());
+        objects = new SharedObjects(data,
+                imageIds(s, "select p.id from Pixels p "
+                        + "where p.image.id in (:ids)", images),
+                imageIds(s, "select i.instrument.id from Image i "
+                        + "where i.id in (:ids)", images),
+                imageIds(s, "select i.objectiveSettings.id from Image i "
+                        + "where i.id in (:ids)", images));
+        if (invalidations.get() == before) {
+            sharedObjectsCache.put(shareId, objects);
+        }
+        return objects;
     }
 
+    /**
+     * Runs a query for ids related to the given Images, in batches.
+     */
     @SuppressWarnings("unchecked")
-    boolean imagesContainsInstrument(Session s, List<Long> images,
-            Instrument instr, Map<Long, List<Long>> cache) {
-        if (instr == null) {
-            return false;
+    private static LongHashSet imageIds(Session s, String query,
+            List<Long> images) {
+        LongHashSet ids = new LongHashSet();
+        if (images == null) {
+            return ids;
         }
-        Long instrID = instr.getId();
-        List<Long> imgIDs;
-        if (cache.containsKey(instrID)) {
-            imgIDs = cache.get(instrID);
-        } else {
-            imgIDs = (List<Long>) s
-                    .createQuery("select id from Image where instrument.id = ?")
-                    .setParameter(0, instrID).list();
-            cache.put(instrID, imgIDs);
+        for (List<Long> batch : Lists.partition(images, 1000)) {
+            for (Long id : (List<Long>) s.createQuery(query)
+                    .setParameterList("ids", batch).list()) {
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
         }
-        return CollectionUtils.containsAny(images, imgIDs);
+        return ids;
     }
 
-    boolean imagesContainsObjectiveSettings(Session s, List<Long> images,
-            ObjectiveSettings os, Map<Long, List<Long>> cache) {
-        Long osID = os.getId();
-        return imagesContainsObjectiveSettings(s, images, osID, cache);
+    boolean imagesContainsPixels(SharedObjects objects, Pixels pix) {
+        return pix != null && objects.pixels.contains(pix.getId());
     }
 
-    @SuppressWarnings("unchecked")
-    boolean imagesContainsObjectiveSettings(Session s, List<Long> images,
-            long osID, Map<Long, List<Long>> cache) {
-        List<Long> imgIDs;
-        if (cache.containsKey(osID)) {
-            imgIDs = cache.get(osID);
-        } else {
-            imgIDs = (List<Long>) s
-                    .createQuery(
-                            "select id from Image where objectiveSettings.id = ?")
-                    .setParameter(0, osID).list();
-            cache.put(osID, imgIDs);
-        }
-        return CollectionUtils.containsAny(images, imgIDs);
+    boolean imagesContainsInstrument(SharedObjects objects, Instrument instr) {
+        return instr != null && objects.instruments.contains(instr.getId());
     }
 
     @Override
     public <T extends IObject> boolean doContains(long sessionId, Class<T> kls,
             long objId) {
-        ShareData data = get(sessionId);
-        if (data == null) {
+        SharedObjects objects = sharedObjects(sessionId);
+        if (objects == null) {
             return false;
         }
-        return doContains(data, kls, objId);
+        return doContains(objects, kls, objId);
     }
 
     @SuppressWarnings("unchecked")
-    protected <T extends IObject> boolean doContains(ShareData data,
+    protected <T extends IObject> boolean doContains(SharedObjects objects,
             Class<T> kls, long objId) {
-        List<Long> ids = data.objectMap.get(kls.getName());
-        if (ids != null && ids.contains(objId)) {
+        if (objects.contains(kls.getName(), objId)) {
             return true;
         }
 
@@ -300,45 +374,40 @@ public class BlobShareStore extends ShareStore implements
          * "left outer join fetch r.quantization "
          */
 
-        List<Long> images = data.objectMap.get(Image.class.getName());
         Session s = session();
         if (Pixels.class.isAssignableFrom(kls)) {
-            return imagesContainsPixels(s, images, objId, pixToImageCache);
+            return objects.pixels.contains(objId);
         } else if (RenderingDef.class.isAssignableFrom(kls)) {
             RenderingDef obj = (RenderingDef) s.get(RenderingDef.class, objId);
-            return imagesContainsPixels(s, images, obj.getPixels(),
-                    pixToImageCache);
+            return imagesContainsPixels(objects, obj.getPixels());
         } else if (ChannelBinding.class.isAssignableFrom(kls)) {
             ChannelBinding obj = (ChannelBinding) s.get(ChannelBinding.class,
                     objId);
-            return imagesContainsPixels(s, images, obj.getRenderingDef()
-                    .getPixels(), pixToImageCache);
+            return imagesContainsPixels(objects, obj.getRenderingDef()
+                    .getPixels());
         } else if (CodomainMapContext.class.isAssignableFrom(kls)) {
             final CodomainMapContext obj = (CodomainMapContext) s.get(CodomainMapContext.class, objId);
-            return imagesContainsPixels(s, images, obj.getChannelBinding().getRenderingDef()
-                    .getPixels(), pixToImageCache);
+            return imagesContainsPixels(objects, obj.getChannelBinding().getRenderingDef()
+                    .getPixels());
         } else if (Thumbnail.class.isAssignableFrom(kls)) {
             Thumbnail obj = (Thumbnail) s.get(Thumbnail.class, objId);
-            return imagesContainsPixels(s, images, obj.getPixels(),
-                    pixToImageCache);
+            return imagesContainsPixels(objects, obj.getPixels());
         } else if (Channel.class.isAssignableFrom(kls)) {
             Channel obj = (Channel) s.get(Channel.class, objId);
-            return imagesContainsPixels(s, images, obj.getPixels(),
-                    pixToImageCache);
+            return imagesContainsPixels(objects, obj.getPixels());
         } else if (LogicalChannel.class.isAssignableFrom(kls)) {
             LogicalChannel obj = (LogicalChannel) s.get(LogicalChannel.class,
                     objId);
             Iterator<Channel> it = obj.iterateChannels();
             while (it.hasNext()) {
                 Channel ch = it.next();
-                if (images.contains(ch.getPixels().getImage().getId())) {
+                if (objects.images.contains(ch.getPixels().getImage().getId())) {
                     return true;
                 }
             }
         } else if (PlaneInfo.class.isAssignableFrom(kls)) {
             PlaneInfo obj = (PlaneInfo) s.get(PlaneInfo.class, objId);
-            return imagesContainsPixels(s, images, obj.getPixels(),
-                    pixToImageCache);
+            return imagesContainsPixels(objects, obj.getPixels());
         } else if (StatsInfo.class.isAssignableFrom(kls)
                 || QuantumDef.class.isAssignableFrom(kls)
                 || LightPath.class.isAssignableFrom(kls)
@@ -350,48 +419,38 @@ public class BlobShareStore extends ShareStore implements
         }
 
         if (ObjectiveSettings.class.isAssignableFrom(kls)) {
-            ObjectiveSettings obj = (ObjectiveSettings) s.get(
-                    ObjectiveSettings.class, objId);
-            return imagesContainsObjectiveSettings(s, images, obj,
-                    obToImageCache);
+            return objects.objectiveSettings.contains(objId);
         } else if (Objective.class.isAssignableFrom(kls)) {
             Objective obj = (Objective) s.get(Objective.class, objId);
-            return imagesContainsInstrument(s, images, obj.getInstrument(),
-                    obToImageCache);
+            return imagesContainsInstrument(objects, obj.getInstrument());
         } else if (Detector.class.isAssignableFrom(kls)) {
             Detector obj = (Detector) s.get(Detector.class, objId);
-            return imagesContainsInstrument(s, images, obj.getInstrument(),
-                    obToImageCache);
+            return imagesContainsInstrument(objects, obj.getInstrument());
         } else if (Dichroic.class.isAssignableFrom(kls)) {
             Dichroic obj = (Dichroic) s.get(Dichroic.class, objId);
-            return imagesContainsInstrument(s, images, obj.getInstrument(),
-                    obToImageCache);
+            return imagesContainsInstrument(objects, obj.getInstrument());
         } else if (FilterSet.class.isAssignableFrom(kls)) {
             FilterSet obj = (FilterSet) s.get(FilterSet.class, objId);
-            return imagesContainsInstrument(s, images, obj.getInstrument(),
-                    obToImageCache);
+            return imagesContainsInstrument(objects, obj.getInstrument());
         } else if (Filter.class.isAssignableFrom(kls)) {
             Filter obj = (Filter) s.get(Filter.class, objId);
-            return imagesContainsInstrument(s, images, obj.getInstrument(),
-                    obToImageCache);
+            return imagesContainsInstrument(objects, obj.getInstrument());
         } else if (LightSource.class.isAssignableFrom(kls)) {
             LightSource obj = (LightSource) s.get(LightSource.class, objId);
-            return imagesContainsInstrument(s, images, obj.getInstrument(),
-                    obToImageCache);
+            return imagesContainsInstrument(objects, obj.getInstrument());
         } else if (Laser.class.isAssignableFrom(kls)) {
             Laser obj = (Laser) s.get(Laser.class, objId);
-            return imagesContainsInstrument(s, images, obj.getInstrument(),
-                    obToImageCache);
+            return imagesContainsInstrument(objects, obj.getInstrument());
         } else if (LightSettings.class.isAssignableFrom(kls)) {
             LightSettings obj = (LightSettings) s.get(LightSettings.class,
                     objId);
-            return imagesContainsInstrument(s, images, obj.getLightSource()
-                    .getInstrument(), obToImageCache);
+            return imagesContainsInstrument(objects, obj.getLightSource()
+                    .getInstrument());
         } else if (DetectorSettings.class.isAssignableFrom(kls)) {
             DetectorSettings obj = (DetectorSettings) s.get(
                     DetectorSettings.class, objId);
-            if (imagesContainsInstrument(s, images, obj.getDetector()
-                    .getInstrument(), obToImageCache)) {
+            if (imagesContainsInstrument(objects, obj.getDetector()
+                    .getInstrument())) {
                 return true;
             } else {
                 List<LogicalChannel> lcs = (List<LogicalChannel>) s
@@ -400,7 +459,7 @@ public class BlobShareStore extends ShareStore implements
                                         + "where l.detectorSettings.id = "
                                         + obj.getId()).list();
                 for (LogicalChannel lc : lcs) {
-                    if (doContains(data, LogicalChannel.class, lc.getId())) {
+                    if (doContains(objects, LogicalChannel.class, lc.getId())) {
                         return true;
                     }
                 }
@@ -0,0 +1,31 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.api.local;
+
+import java.util.List;
+
+import ome.services.util.TileRequest;
+
+/**
+ * Provides local (internal) extensions for reading pixel data, exposed by
+ * the managed RawPixelsStore service alongside {@link ome.api.RawPixelsStore}.
+ *
+ * @since 5.7.6
+ */
+public interface LocalRawPixelsStore extends ome.api.RawPixelsStore {
+
+    /**
+     * Retrieves several tiles in one call. Tiles adjacent along a row, such
+     * as those of a viewport, are read from the pixel buffer as a single
+     * region and then split, up to the maximum plane size.
+     *
+     * @param tiles
+     *            The tiles to retrieve.
+     * @return The pixel data of each tile, in the order requested.
+     */
+    List<byte[]> getTiles(List<TileRequest> tiles);
+
+}
@@ -0,0 +1,31 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.api.local;
+
+import java.util.List;
+
+import ome.services.util.TileRequest;
+
+/**
+ * Provides local (internal) extensions for rendering, exposed by the managed
+ * RenderingEngine service alongside {@link omeis.providers.re.RenderingEngine}.
+ *
+ * @since 5.7.6
+ */
+public interface LocalRenderingEngine extends omeis.providers.re.RenderingEngine {
+
+    /**
+     * Renders and compresses several tiles in one call, as
+     * {@link #renderCompressed(omeis.providers.re.data.PlaneDef)} would for
+     * each. Tiles are rendered in turn and compressed in parallel.
+     *
+     * @param tiles
+     *            The tiles to render; the channel of each tile is ignored.
+     * @return The compressed tiles, in the order requested.
+     */
+    List<byte[]> renderCompressedTiles(List<TileRequest> tiles);
+
+}
@@ -7,6 +7,10 @@
 
 package ome.api.local;
 
+import java.util.List;
+
+import ome.model.IObject;
+
 /**
  * Provides local (internal) extensions for updating
  * 
@@ -19,4 +23,12 @@ public interface LocalUpdate extends ome.api.IUpdate {
 
     void flush();
 
+    /**
+     * Reindexes the given objects as {@link #indexObject(IObject)} does but
+     * writes all their requests in one batch and waits for them together.
+     *
+     * @param rows managed objects to index, may be unloaded
+     */
+    void indexObjects(List<? extends IObject> rows);
+
 }
@@ -8,16 +8,18 @@
 package ome.formats;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import ome.api.IUpdate;
+import ome.api.local.LocalQuery;
+import ome.api.local.LocalUpdate;
 import ome.model.IEnum;
 import ome.model.IObject;
 import ome.model.acquisition.Detector;
@@ -98,6 +100,15 @@ public class OMEROMetadataStore
 
     private SqlAction sql;
 
+    /** Default number of PlaneInfo saved per call. */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * Number of PlaneInfo saved per call after the Images, or at most zero
+     * to save them as part of the Image graph.
+     */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
     /** A map of imageIndex vs. Image object ordered by first access. */
     private Map<Integer, Image> imageList = 
     	new LinkedHashMap<Integer, Image>();
@@ -1972,6 +1983,17 @@ public class OMEROMetadataStore
         this.sql = sql;
     }
 
+    /**
+     * Sets how many PlaneInfo {@link #saveToDB(FilesetJobLink)} saves per
+     * call once the Images are saved.
+     * @param chunkSize the number of PlaneInfo per call, or at most zero to
+     * save them along with the Images as a single graph.
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -1992,43 +2014,108 @@ public class OMEROMetadataStore
     }
     
     /**
-     * Compares two enumerations by reference and by ID.
-     * @param a First OMERO model object.
-     * @param b Second OMERO model object.
-     * @return <code>true</code> if <code>a == null && b == null</code>, 
-     * or <code>a.getId().equals(b.getId())</code>.
+     * Returns the part of an enumeration that identifies it when comparing
+     * settings: its ID.
+     * @param e OMERO enumeration.
+     * @return <code>e.getId()</code> or <code>null</code> if
+     * <code>e == null</code>.
      */
-    private static boolean compare(IEnum a, IEnum b)
+    private static Object value(IEnum e)
     {
-        if (a == null && b == null)
+        return e == null ? null : e.getId();
+    }
+
+    /**
+     * Returns the part of a field that identifies it when comparing
+     * settings: the value itself, compared with <code>equals</code>.
+     * @param o Field value.
+     * @return <code>o</code>.
+     */
+    private static Object value(Object o)
+    {
+        return o;
+    }
+
+    /**
+     * Returns the part of a reference to another model object that
+     * identifies it when comparing settings: the object itself, compared
+     * by reference.
+     * @param o Referenced model object.
+     * @return See above.
+     */
+    private static Object same(Object o)
+    {
+        return o == null ? null : new Same(o);
+    }
+
+    /**
+     * Wraps an object so that it is compared by reference.
+     */
+    private static final class Same
+    {
+        private final Object o;
+
+        Same(Object o)
         {
-            return true;
+            this.o = o;
         }
-        if (a == null || b == null)
+
+        @Override
+        public boolean equals(Object other)
         {
-            return false;
+            return other instanceof Same && ((Same) other).o == o;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(o);
         }
-        return a.getId().equals(b.getId());
     }
-    
+
     /**
-     * Compares two objects by reference existence and by value.
-     * @param a First object.
-     * @param b Second object.
-     * @return <code>true</code> if <code>a == null && b == null</code> or
-     * <code>a.equals(b)</code>.
+     * The values of the fields of a settings object by which it is compared
+     * when collapsing the graph. Settings with equal keys are collapsed.
      */
-    private static boolean compare(Object a, Object b)
+    private static final class Key
     {
-    	if (a == null && b == null)
-    	{
-    		return true;
-    	}
-    	if (a == null || b == null)
-    	{
-    		return false;
-    	}
-    	return a.equals(b);
+        private final Object[] values;
+
+        private final int hash;
+
+        Key(Object... values)
+        {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof Key && ((Key) other).hash == hash
+                && Arrays.equals(((Key) other).values, values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * Maps the key of each settings object to the first one seen with that
+     * key.
+     * @param unique Existing unique settings by key.
+     * @param key Key of the settings to find unique settings for.
+     * @param s Settings to find unique settings for.
+     * @return The existing settings with the same key, or <code>s</code>
+     * which is then added.
+     */
+    private static <T> T canonical(Map<Key, T> unique, Key key, T s)
+    {
+        final T extant = unique.putIfAbsent(key, s);
+        return extant == null ? s : extant;
     }
     
     /**
@@ -2048,14 +2135,17 @@ public class OMEROMetadataStore
     	{
     		return;
     	}
-    	// Collapse down ObjectiveSettings by uniqueness
-    	Set<ObjectiveSettings> objectiveSettings =
-    		new HashSet<ObjectiveSettings>();
-    	Set<LightSettings> lightSettings = new HashSet<LightSettings>();
-    	Set<LightPath> lightPaths = new HashSet<LightPath>();
-    	Set<DetectorSettings> detectorSettings = 
-    		new HashSet<DetectorSettings>();
-    	Set<LogicalChannel> logicalChannels = new HashSet<LogicalChannel>();
+    	// Collapse down ObjectiveSettings by uniqueness, keyed on the
+    	// values of their fields so that each lookup is a single hash.
+    	Map<Key, ObjectiveSettings> objectiveSettings =
+    		new HashMap<Key, ObjectiveSettings>();
+    	Map<Key, LightSettings> lightSettings =
+    		new HashMap<Key, LightSettings>();
+    	Map<Key, LightPath> lightPaths = new HashMap<Key, LightPath>();
+    	Map<Key, DetectorSettings> detectorSettings = 
+    		new HashMap<Key, DetectorSettings>();
+    	Map<Key, LogicalChannel> logicalChannels =
+    		new HashMap<Key, LogicalChannel>();
     	Pixels pixels;
     	Channel channel;
     	LogicalChannel lc;
@@ -2101,180 +2191,147 @@ public class OMEROMetadataStore
 
     /**
      * Finds the matching unique settings for an image.
-     * @param uniqueSettings Set of existing unique settings.
+     * @param uniqueSettings Existing unique settings by key.
      * @param image Image to find unique settings for.
      * @return Matched unique settings or <code>null</code> if
      * <code>lc.getObjectiveSettings() == null</code>.
      */
     private ObjectiveSettings getUniqueObjectiveSettings(
-    		Set<ObjectiveSettings> uniqueSettings, Image image)
+    		Map<Key, ObjectiveSettings> uniqueSettings, Image image)
     {
     	ObjectiveSettings s1 = image.getObjectiveSettings();
     	if (s1 == null)
     	{
     		return null;
     	}
-    	for (ObjectiveSettings s2 : uniqueSettings)
-    	{
-    		if (compare(s1.getCorrectionCollar(), s2.getCorrectionCollar())
-    			&& compare(s1.getMedium(), s2.getMedium())
-    			&& s1.getObjective() == s2.getObjective()
-    			&& compare(s1.getRefractiveIndex(), s2.getRefractiveIndex()))
-    		{
-    			return s2;
-    		}
-    	}
-    	uniqueSettings.add(s1);
-    	return s1;
+    	return canonical(uniqueSettings, new Key(
+    			value(s1.getCorrectionCollar()),
+    			value(s1.getMedium()),
+    			same(s1.getObjective()),
+    			value(s1.getRefractiveIndex())), s1);
     }
     
     /**
      * Finds the matching unique settings for a logical channel.
-     * @param uniqueSettings Set of existing unique settings.
+     * @param uniqueSettings Existing unique settings by key.
      * @param lc Logical channel to find unique settings for.
      * @return Matched unique settings or <code>null</code> if
      * <code>lc.getLightSourceSettings() == null</code>.
      */
     private LightSettings getUniqueLightSettings(
-    		Set<LightSettings> uniqueSettings, LogicalChannel lc)
+    		Map<Key, LightSettings> uniqueSettings, LogicalChannel lc)
     {
     	LightSettings s1 = lc.getLightSourceSettings();
     	if (s1 == null)
     	{
     		return null;
     	}
-    	for (LightSettings s2 : uniqueSettings)
-    	{
-    		if (compare(s1.getAttenuation(), s2.getAttenuation())
-    			&& s1.getLightSource() == s2.getLightSource()
-    			&& s1.getMicrobeamManipulation()
-    			   == s2.getMicrobeamManipulation()
-    			&& compare(s1.getWavelength(), s2.getWavelength()))
-    		{
-    			return s2;
-    		}
-    	}
-    	uniqueSettings.add(s1);
-    	return s1;
+    	return canonical(uniqueSettings, new Key(
+    			value(s1.getAttenuation()),
+    			same(s1.getLightSource()),
+    			same(s1.getMicrobeamManipulation()),
+    			value(s1.getWavelength())), s1);
     }
     
     /**
      * Finds the matching unique settings for a logical channel.
-     * @param uniqueSettings Set of existing unique settings.
+     * @param uniqueSettings Existing unique settings by key.
      * @param lc Logical channel to find unique settings for.
      * @return Matched unique settings or <code>null</code> if
      * <code>lc.getDetectorSettings() == null</code>.
      */
     private DetectorSettings getUniqueDetectorSettings(
-    		Set<DetectorSettings> uniqueSettings, LogicalChannel lc)
+    		Map<Key, DetectorSettings> uniqueSettings, LogicalChannel lc)
     {
     	DetectorSettings s1 = lc.getDetectorSettings();
     	if (s1 == null)
     	{
     		return null;
     	}
-    	for (DetectorSettings s2 : uniqueSettings)
-    	{
-    		if (compare(s1.getBinning(), s2.getBinning())
-    			&& s1.getDetector() == s2.getDetector()
-    			&& compare(s1.getGain(), s2.getGain())
-    			&& compare(s1.getOffsetValue(), s2.getOffsetValue())
-    			&& compare(s1.getReadOutRate(), s2.getReadOutRate())
-    			&& compare(s1.getVoltage(), s2.getVoltage()))
-    		{
-    			return s2;
-    		}
-    	}
-    	uniqueSettings.add(s1);
-    	return s1;
+    	return canonical(uniqueSettings, new Key(
+    			value(s1.getBinning()),
+    			same(s1.getDetector()),
+    			value(s1.getGain()),
+    			value(s1.getOffsetValue()),
+    			value(s1.getReadOutRate()),
+    			value(s1.getVoltage())), s1);
     }
     
     /**
-     * Finds the matching unique logical channel.
-     * @param uniqueChannels Set of existing unique logical channels.
+     * Finds the matching unique logical channel. Its settings and light path
+     * must already have been collapsed as they are compared by reference.
+     * @param uniqueChannels Existing unique logical channels by key.
      * @param lc Logical channel to compare for uniqueness.
      * @return Matched unique logical channel or <code>null</code> if
      * <code>lc == null</code>.
      */
     private LogicalChannel getUniqueLogicalChannel(
-    		Set<LogicalChannel> uniqueChannels, LogicalChannel lc)
+    		Map<Key, LogicalChannel> uniqueChannels, LogicalChannel lc)
     {
     	if (lc == null)
     	{
     		return null;
     	}
-
-    	for (LogicalChannel lc2 : uniqueChannels)
-    	{
-    		if (compare(lc.getMode(), lc2.getMode())
-    			&& compare(lc.getContrastMethod(), lc2.getContrastMethod())
-    			&& compare(lc.getIllumination(), lc2.getIllumination())
-    			&& compare(lc.getPhotometricInterpretation(),
-    					   lc2.getPhotometricInterpretation())
-    			&& lc.getDetectorSettings() == lc2.getDetectorSettings()
-    			&& compare(lc.getEmissionWave(), lc2.getEmissionWave())
-    			&& compare(lc.getExcitationWave(), lc2.getExcitationWave())
-    			&& lc.getFilterSet() == lc2.getFilterSet()
-    			&& compare(lc.getFluor(), lc2.getFluor())
-    			&& lc.getLightSourceSettings() == lc2.getLightSourceSettings()
-    			&& compare(lc.getName(), lc2.getName())
-    			&& compare(lc.getNdFilter(), lc2.getNdFilter())
-    			&& lc.getOtf() == lc2.getOtf()
-    			&& compare(lc.getPinHoleSize(), lc2.getPinHoleSize())
-    			&& compare(lc.getPockelCellSetting(), lc2.getPockelCellSetting())
-    			&& compare(lc.getSamplesPerPixel(), lc2.getSamplesPerPixel())
-    			&& lc.getLightPath() == lc2.getLightPath())
-    		{
-    			return lc2;
-    		}
-    	}
-    	uniqueChannels.add(lc);
-    	return lc;
+    	return canonical(uniqueChannels, new Key(
+    			value(lc.getMode()),
+    			value(lc.getContrastMethod()),
+    			value(lc.getIllumination()),
+    			value(lc.getPhotometricInterpretation()),
+    			same(lc.getDetectorSettings()),
+    			value(lc.getEmissionWave()),
+    			value(lc.getExcitationWave()),
+    			same(lc.getFilterSet()),
+    			value(lc.getFluor()),
+    			same(lc.getLightSourceSettings()),
+    			value(lc.getName()),
+    			value(lc.getNdFilter()),
+    			same(lc.getOtf()),
+    			value(lc.getPinHoleSize()),
+    			value(lc.getPockelCellSetting()),
+    			value(lc.getSamplesPerPixel()),
+    			same(lc.getLightPath())), lc);
     }
 
     /**
      * Finds the matching unique light path.
-     * @param uniqueLightPaths Set of existing unique light paths.
+     * @param uniqueLightPaths Existing unique light paths by key.
      * @param lp Light path to compare for uniqueness.
      * @return Matched unique light path or <code>null</code> if
      * <code>lp == null</code>.
      */
     private LightPath getUniqueLightPath(
-            Set<LightPath> uniqueLightPaths, LightPath lp)
+            Map<Key, LightPath> uniqueLightPaths, LightPath lp)
     {
         if (lp == null)
         {
             return null;
         }
-
-        for (LightPath lp2 : uniqueLightPaths)
-        {
-            if (lp.getDichroic() == lp2.getDichroic()) {
-                // Excitation filters are ordered - no sorting required.
-                List<Filter> exFilters = lp.linkedExcitationFilterList();
-                List<Filter> exFilters2 = lp2.linkedExcitationFilterList();
-                if (exFilters.equals(exFilters2)) {
-                    List<Filter> emFilters = lp.linkedEmissionFilterList();
-                    List<Filter> emFilters2 = lp2.linkedEmissionFilterList();
-                    // Emission filters are un-ordered - sorting required.  If
-                    // we do not sort out of order filters will cause
-                    // List.equals() to fail.
-                    Comparator<Filter> comparator = new ToStringComparator();
-                    Collections.sort(emFilters, comparator);
-                    Collections.sort(emFilters2, comparator);
-
-                    if (emFilters.equals(emFilters2)) {
-                        return lp2;
-                    }
-                }
-            }
+        // Excitation filters are ordered - no sorting required.
+        List<Object> exFilters = new ArrayList<Object>();
+        for (Filter filter : lp.linkedExcitationFilterList()) {
+            exFilters.add(same(filter));
+        }
+        // Emission filters are un-ordered - sorting required.  If
+        // we do not sort out of order filters will produce a
+        // different key.
+        List<Filter> sorted = lp.linkedEmissionFilterList();
+        Collections.sort(sorted, new ToStringComparator());
+        List<Object> emFilters = new ArrayList<Object>();
+        for (Filter filter : sorted) {
+            emFilters.add(same(filter));
         }
-        uniqueLightPaths.add(lp);
-        return lp;
+        return canonical(uniqueLightPaths, new Key(
+                same(lp.getDichroic()), exFilters, emFilters), lp);
     }
 
     /**
-     * Saves the current object graph to the database.
+     * Saves the current object graph to the database. Unless the chunk size
+     * is set to zero the PlaneInfo, which make up most of the rows for large
+     * plates, are saved after the Images in chunks so that they are neither
+     * reloaded with the graph nor returned. The session is flushed and
+     * cleared after each chunk so that it holds at most one chunk. Channels
+     * stay in the Image graph as they share LogicalChannels and instrument
+     * settings, which must be saved by the same merge.
      * @param link a link from the fileset to be linked from
      * @return List of the Pixels objects with their attached object graphs
      * that have been saved.
@@ -2286,12 +2343,16 @@ public class OMEROMetadataStore
     	checkAndCollapseGraph();
     	linkFileset(link);
     	
+    	Image[] imageArray = 
+    		imageList.values().toArray(new Image[imageList.size()]);
+    	Map<Integer, List<PlaneInfo>> planeInfo = chunkSize > 0
+    		? detachPlaneInfo(imageArray)
+    		: Collections.<Integer, List<PlaneInfo>>emptyMap();
+
     	// Save the entire Image rooted graph using the "insert only"
     	// saveAndReturnIds(). DISABLED until we can find out what is causing
     	// the extreme memory usage on the graph reload.
     	StopWatch s1 = new Slf4JStopWatch("omero.saveImportGraph");
-    	Image[] imageArray = 
-    		imageList.values().toArray(new Image[imageList.size()]);
     	IObject[] saved = sf.getUpdateService().saveAndReturnArray(imageArray);
     	s1.stop();
     	
@@ -2305,10 +2366,86 @@ public class OMEROMetadataStore
     		pixelsList.put(i, pixels);
     		toReturn.add(pixels);
     	}
-    	//s2.stop();
+    	savePlaneInfo(toReturn, planeInfo);
    		return toReturn;
     }
 
+    /**
+     * Flushes the session and then clears it, so that the objects already
+     * saved are no longer held by it.
+     */
+    private void clearSession()
+    {
+    	((LocalUpdate) sf.getUpdateService()).flush();
+    	((LocalQuery) sf.getQueryService()).clear();
+    }
+
+    /**
+     * Removes the PlaneInfo from the primary Pixels of each Image so that
+     * they may be saved separately.
+     * @param images the Images to be saved.
+     * @return the PlaneInfo removed, keyed by the index of their Image.
+     */
+    private Map<Integer, List<PlaneInfo>> detachPlaneInfo(Image[] images)
+    {
+    	Map<Integer, List<PlaneInfo>> planeInfo =
+    		new LinkedHashMap<Integer, List<PlaneInfo>>();
+    	Pixels pixels;
+    	for (int i = 0; i < images.length; i++)
+    	{
+    		pixels = images[i].getPrimaryPixels();
+    		if (pixels != null && pixels.sizeOfPlaneInfo() > 0)
+    		{
+    			planeInfo.put(i, new ArrayList<PlaneInfo>(
+    					pixels.unmodifiablePlaneInfo()));
+    			pixels.clearPlaneInfo();
+    		}
+    	}
+    	return planeInfo;
+    }
+
+    /**
+     * Saves PlaneInfo removed by {@link #detachPlaneInfo(Image[])} against
+     * their saved Pixels, at most {@link #chunkSize} per call. The session
+     * is cleared and each chunk dropped once saved.
+     * @param saved the saved primary Pixels, by Image index.
+     * @param planeInfo the PlaneInfo to save, by Image index.
+     */
+    private void savePlaneInfo(List<Pixels> saved,
+    		Map<Integer, List<PlaneInfo>> planeInfo)
+    {
+    	if (planeInfo.isEmpty())
+    	{
+    		return;
+    	}
+    	StopWatch s2 = new Slf4JStopWatch("omero.savePlaneInfo");
+    	IUpdate update = sf.getUpdateService();
+    	List<PlaneInfo> chunk = new ArrayList<PlaneInfo>(chunkSize);
+    	Pixels pixels;
+    	for (Map.Entry<Integer, List<PlaneInfo>> entry : planeInfo.entrySet())
+    	{
+    		pixels = new Pixels(saved.get(entry.getKey()).getId(), false);
+    		for (PlaneInfo plane : entry.getValue())
+    		{
+    			plane.setPixels(pixels);
+    			chunk.add(plane);
+    			if (chunk.size() == chunkSize)
+    			{
+    				update.saveArray(chunk.toArray(new PlaneInfo[chunk.size()]));
+    				clearSession();
+    				chunk.clear();
+    			}
+    		}
+    		entry.getValue().clear();
+    	}
+    	if (!chunk.isEmpty())
+    	{
+    		update.saveArray(chunk.toArray(new PlaneInfo[chunk.size()]));
+    		clearSession();
+    	}
+    	s2.stop();
+    }
+
     /**
      * Checks if the format is a graphics format or not.
      *
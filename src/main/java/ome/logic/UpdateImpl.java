@@ -230,9 +230,19 @@ public class UpdateImpl extends AbstractLevel1Service implements LocalUpdate {
 
     @RolesAllowed("system")
     public void indexObject(IObject row) {
-        if (row == null || row.getId() == null) {
-            throw new ValidationException(
-                    "Non-managed object cannot be indexed.");
+        indexObjects(Collections.singletonList(row));
+    }
+
+    @RolesAllowed("system")
+    public void indexObjects(List<? extends IObject> rows) {
+        for (IObject row : rows) {
+            if (row == null || row.getId() == null) {
+                throw new ValidationException(
+                        "Non-managed object cannot be indexed.");
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
         }
 
         /*
@@ -246,7 +256,7 @@ public class UpdateImpl extends AbstractLevel1Service implements LocalUpdate {
         executor.get(future);
         */
 
-        /* Gather information for new event for REINDEX log entry. */
+        /* Gather information for new event for REINDEX log entries. */
         final EventContext ec = localAdmin.getEventContextQuiet();
         final long userId = ec.getCurrentUserId();
         long groupId = ec.getCurrentGroupId();
@@ -256,10 +266,11 @@ public class UpdateImpl extends AbstractLevel1Service implements LocalUpdate {
             groupId = localAdmin.getDefaultGroup(userId).getId();
         }
         /* Write REINDEX to event log and wait for processing. */
-        log.debug("Awaiting indexing of {}.", row);
+        final Object what = rows.size() == 1 ? rows.get(0) : rows.size() + " objects";
+        log.debug("Awaiting indexing of {}.", what);
         try {
-            if (!indexWatcher.indexObject(row, userId, groupId, sessionId).tryAcquire(1, TimeUnit.MINUTES)) {
-                log.info("Timed out while awaiting indexing of {}.", row);
+            if (!indexWatcher.indexObjects(rows, userId, groupId, sessionId).tryAcquire(1, TimeUnit.MINUTES)) {
+                log.info("Timed out while awaiting indexing of {}.", what);
                 throw new InternalException("indexing did not occur within a reasonable time");
             }
         } catch (InterruptedException ie) {
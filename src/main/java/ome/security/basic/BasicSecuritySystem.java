@@ -54,6 +54,7 @@ import ome.services.sessions.SessionManagerImpl;
 import ome.services.sessions.SessionProvider;
 import ome.services.sessions.SessionProviderInMemory;
 import ome.services.sessions.events.UserGroupUpdateEvent;
+import ome.services.sessions.state.LoginState;
 import ome.services.sessions.state.SessionCache;
 import ome.services.sessions.stats.PerSessionStats;
 import ome.services.sharing.ShareStore;
@@ -451,8 +452,19 @@ public class BasicSecuritySystem implements SecuritySystem,
         final long groupId = ec.getCurrentGroupId();
         final long sessionId = ec.getCurrentSessionId();
 
+        // What is known of this session from previous calls
+        LoginState loginState = cd.getLoginState(ec.getCurrentSessionUuid());
+        if (loginState == null) {
+            loginState = new LoginState();
+        }
+
         // Check that group context is consistent with any group sudo.
-        if (!isGroupContextPermitted(sessionId, groupId)) {
+        Boolean isGroupContextPermitted = loginState.isGroupContextPermitted(groupId);
+        if (isGroupContextPermitted == null) {
+            isGroupContextPermitted = isGroupContextPermitted(sessionId, groupId);
+            loginState.setGroupContextPermitted(groupId, isGroupContextPermitted);
+        }
+        if (!isGroupContextPermitted) {
             throw new SecurityViolation("Group-sudo session cannot change context!");
         }
 
@@ -504,7 +516,12 @@ public class BasicSecuritySystem implements SecuritySystem,
         // Code copied in SessionManagerImpl
         if (groupId >= 0) { // negative groupId means all member groups
             eventGroupId = groupId;
-            callGroup = admin.groupProxy(groupId);
+            // Read-only calls do not save an event so need no managed group
+            callGroup = isReadOnly ? loginState.getGroup(groupId) : null;
+            if (callGroup == null) {
+                callGroup = admin.groupProxy(groupId);
+                loginState.setGroup(callGroup);
+            }
             eventGroup = callGroup;
             callPerms = callGroup.getDetails().getPermissions();
 
@@ -531,7 +548,7 @@ public class BasicSecuritySystem implements SecuritySystem,
 
         }
 
-        final ome.model.meta.Session session;
+        ome.model.meta.Session session;
         if (isShare) {
             /* Cannot read annotations on session. */
             session = new ome.model.meta.Session(sessionId, false);
@@ -41,6 +41,7 @@ import ome.model.meta.Session;
 import ome.security.SystemTypes;
 import ome.services.messages.RegisterServiceCleanupMessage;
 import ome.services.sessions.SessionContext;
+import ome.services.sessions.state.LoginState;
 import ome.services.sessions.state.SessionCache;
 import ome.services.sessions.stats.SessionStats;
 import ome.services.sharing.ShareStore;
@@ -167,6 +168,16 @@ public class CurrentDetails implements PrincipalHolder {
         login(c);
     }
 
+    /**
+     * Retrieves the cached {@link LoginState} of a session.
+     * @param uuid a session UUID
+     * @return the login state or <code>null</code> if there is no session
+     * cache, as when testing
+     */
+    public LoginState getLoginState(String uuid) {
+        return cache == null ? null : cache.getLoginState(uuid);
+    }
+
     /**
      * Login method which can be used by the security system to replace the
      * existing {@link BasicEventContext}.
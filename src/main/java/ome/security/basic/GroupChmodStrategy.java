@@ -31,6 +31,8 @@ import org.hibernate.Session;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import ome.conditions.ApiUsageException;
 import ome.conditions.GroupSecurityViolation;
@@ -44,6 +46,7 @@ import ome.model.meta.ExperimenterGroup;
 import ome.security.ChmodStrategy;
 import ome.services.messages.ContextMessage;
 import ome.services.messages.EventLogMessage;
+import ome.services.sessions.events.UserGroupUpdateEvent;
 import ome.system.OmeroContext;
 import ome.tools.hibernate.ExtendedMetadata;
 import ome.tools.hibernate.SessionFactory;
@@ -282,9 +285,29 @@ public class GroupChmodStrategy implements ChmodStrategy,
         log.info(String.format("Changed permissions for %s to %s", obj.getId(),
                 internal));
         eventlog(obj.getId(), newPerms.toString());
+        publishGroupChange();
 
     }
 
+    /**
+     * Announces the change of group permissions so that those cached for
+     * logging sessions in are dropped: now, and again once the transaction
+     * completes so that none reloaded before the commit are kept.
+     */
+    private void publishGroupChange() {
+        ctx.publishEvent(new UserGroupUpdateEvent(this));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            ctx.publishEvent(new UserGroupUpdateEvent(
+                                    GroupChmodStrategy.this));
+                        }
+                    });
+        }
+    }
+
     private void eventlog(long id, String perms) {
 
         EventLogMessage elm = new EventLogMessage(this, String.format(
@@ -13,16 +13,20 @@ import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import ome.annotations.RolesAllowed;
 import ome.api.IPixels;
 import ome.api.IRepositoryInfo;
 import ome.api.RawPixelsStore;
 import ome.api.ServiceInterface;
+import ome.api.local.LocalRawPixelsStore;
 import ome.conditions.ApiUsageException;
 import ome.conditions.ResourceError;
 import ome.conditions.RootException;
@@ -35,6 +39,11 @@ import ome.io.nio.TileSizes;
 import ome.model.core.Channel;
 import ome.model.core.Pixels;
 import ome.parameters.Parameters;
+import ome.services.histogram.HistogramCache;
+import ome.services.histogram.HistogramEngine;
+import ome.services.histogram.PlaneStatistics;
+import ome.services.histogram.PlaneStatisticsStore;
+import ome.services.util.TileRequest;
 import ome.util.PixelData;
 import ome.util.ShallowCopy;
 import ome.util.SqlAction;
@@ -60,7 +69,7 @@ import com.google.common.collect.MapMaker;
  */
 @Transactional(readOnly = true)
 public class RawPixelsBean extends AbstractStatefulBean implements
-        RawPixelsStore {
+        LocalRawPixelsStore {
     /** The logger for this particular class */
     private static Logger log = LoggerFactory.getLogger(RawPixelsBean.class);
 
@@ -87,9 +96,28 @@ public class RawPixelsBean extends AbstractStatefulBean implements
     /** is file service checking for disk overflow */
     private transient boolean diskSpaceChecking;
 
-    /** A copy buffer for the pixel retrieval. */
-    private transient byte[] readBuffer;
-    
+    /**
+     * Guards {@link #buffer} and the state of the current Pixels set. Reads
+     * of pixel data hold the read lock and may run concurrently; methods
+     * which load, write to or close the buffer hold the write lock.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the current pixel buffer may be read by several threads at
+     * once. The ROMIO buffer reads with positional file I/O; buffers backed
+     * by Bio-Formats readers hold per-read state and so are read by one
+     * thread at a time.
+     */
+    private transient boolean concurrentReads;
+
+    /**
+     * The resolution level set by {@link #setResolutionLevel(int)}. Reads
+     * pass it to the buffer rather than relying on the buffer's own state,
+     * which other readers may change.
+     */
+    private transient int currentResolutionLevel;
+
     /** Pixels set cache. */
     private transient Map<Long, Pixels> pixelsCache;
 
@@ -99,6 +127,18 @@ public class RawPixelsBean extends AbstractStatefulBean implements
     /** TileSizes */
     private TileSizes tileSizes;
 
+    /** Computes histograms, possibly for several channels at once. */
+    private transient HistogramEngine histogramEngine = new HistogramEngine();
+
+    /** Cache of computed histograms, may be <code>null</code>. */
+    private transient HistogramCache histogramCache;
+
+    /** Persisted per-plane statistics, may be <code>null</code>. */
+    private transient PlaneStatisticsStore planeStatisticsStore;
+
+    /** Rendered tiles invalidated on writes, may be <code>null</code>. */
+    private transient RenderedTileCache renderedTileCache;
+
     /**
      * default constructor
      */
@@ -119,6 +159,23 @@ public class RawPixelsBean extends AbstractStatefulBean implements
         this.tileSizes = tileSizes;
     }
 
+    public void setHistogramEngine(HistogramEngine histogramEngine) {
+        this.histogramEngine = histogramEngine;
+    }
+
+    public void setHistogramCache(HistogramCache histogramCache) {
+        this.histogramCache = histogramCache;
+    }
+
+    public void setPlaneStatisticsStore(
+            PlaneStatisticsStore planeStatisticsStore) {
+        this.planeStatisticsStore = planeStatisticsStore;
+    }
+
+    public void setRenderedTileCache(RenderedTileCache renderedTileCache) {
+        this.renderedTileCache = renderedTileCache;
+    }
+
     public synchronized Class<? extends ServiceInterface> getServiceInterface() {
         return RawPixelsStore.class;
     }
@@ -160,23 +217,37 @@ public class RawPixelsBean extends AbstractStatefulBean implements
     // See documentation on JobBean#passivate
     @RolesAllowed("user")
     @Transactional(readOnly = true)    
-    public synchronized void passivate() {
+    public void passivate() {
 	// Nothing necessary
     }
 
     // See documentation on JobBean#activate
     @RolesAllowed("user")
     @Transactional(readOnly = true)    
-    public synchronized void activate() {
-        if (id != null) {
-            reset = id;
-            id = null;
+    public void activate() {
+        lock.writeLock().lock();
+        try {
+            if (id != null) {
+                reset = id;
+                id = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     @RolesAllowed("user")
     @Transactional(readOnly = false)
-    public synchronized Pixels save() {
+    public Pixels save() {
+        lock.writeLock().lock();
+        try {
+            return doSave();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Pixels doSave() {
         if (isModified()) {
             Long id = (pixelsInstance == null) ? null : pixelsInstance.getId();
             if (id == null) {
@@ -203,6 +274,7 @@ public class RawPixelsBean extends AbstractStatefulBean implements
 
             iUpdate.flush();
             modified = false;
+            invalidateHistograms();
             return new ShallowCopy().copy(pixelsInstance);
         }
         return null;
@@ -210,7 +282,8 @@ public class RawPixelsBean extends AbstractStatefulBean implements
 
     @RolesAllowed("user")
     @Transactional(readOnly = false)
-    public synchronized void close() {
+    public void close() {
+        lock.writeLock().lock();
         try {
             save();
         } catch (RootException root) {
@@ -221,27 +294,35 @@ public class RawPixelsBean extends AbstractStatefulBean implements
             Long id = (pixelsInstance == null ? null : pixelsInstance.getId());
             log.error("Failed to update pixels: " + id, re);
         } finally {
-            clean();
+            try {
+                clean();
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
     }
 
-    public synchronized void clean() {
-        dataService = null;
-        pixelsInstance = null;
+    public void clean() {
+        lock.writeLock().lock();
         try {
-            closePixelBuffer();
+            dataService = null;
+            pixelsInstance = null;
+            try {
+                closePixelBuffer();
+            } finally {
+                buffer = null;
+                pixelsCache = null;
+            }
         } finally {
-            buffer = null;
-            readBuffer = null;
-            pixelsCache = null;
+            lock.writeLock().unlock();
         }
     }
 
     /**
      * Close the active pixel buffer, cleaning up any potential messes left by
-     * the pixel buffer itself.
+     * the pixel buffer itself. The write lock must be held.
      */
-    private synchronized void closePixelBuffer() {
+    private void closePixelBuffer() {
         try {
             if (buffer != null) {
                 buffer.close();
@@ -256,7 +337,20 @@ public class RawPixelsBean extends AbstractStatefulBean implements
     }
 
     @RolesAllowed("user")
-    public synchronized void setPixelsId(long pixelsId, boolean bypassOriginalFile) {
+    public void setPixelsId(long pixelsId, boolean bypassOriginalFile) {
+        lock.writeLock().lock();
+        try {
+            loadPixels(pixelsId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads a Pixels set and opens its pixel buffer, unless it is already
+     * the current one. The write lock must be held.
+     */
+    private void loadPixels(long pixelsId) {
         if (id == null || id.longValue() != pixelsId) {
             id = Long.valueOf(pixelsId);
             pixelsInstance = null;
@@ -295,41 +389,59 @@ public class RawPixelsBean extends AbstractStatefulBean implements
                 id = null;
                 throw re;
             }
+            concurrentReads = buffer instanceof RomioPixelBuffer;
+            currentResolutionLevel = buffer.getResolutionLevel();
         }
     }
 
     @RolesAllowed("user")
-    public synchronized long getPixelsId() {
-        errorIfNotLoaded();
-
-        return id.longValue();
+    public long getPixelsId() {
+        readLock();
+        try {
+            return id.longValue();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @RolesAllowed("user")
     public String getPixelsPath() {
-        errorIfNotLoaded();
-
-        return buffer.getPath();
+        readLock();
+        try {
+            return buffer.getPath();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     @RolesAllowed("user")
-    public synchronized void prepare(Set<Long> pixelsIds)
+    public void prepare(Set<Long> pixelsIds)
     {
-    	pixelsCache = new MapMaker().makeMap();
     	List<Pixels> pixelsList = iQuery.findAllByQuery(
     			"select p from Pixels as p join fetch p.pixelsType " +
         		"where p.id in (:ids)", new Parameters().addIds(pixelsIds));
+    	Map<Long, Pixels> cache = new MapMaker().makeMap();
     	for (Pixels pixels : pixelsList)
     	{
-    		pixelsCache.put(pixels.getId(), pixels);
+    		cache.put(pixels.getId(), pixels);
+    	}
+    	lock.writeLock().lock();
+    	try {
+    	    pixelsCache = cache;
+    	} finally {
+    	    lock.writeLock().unlock();
     	}
     }
 
-    private synchronized void errorIfNotLoaded() {
+    /**
+     * Checks that a Pixels set is loaded, reloading it if the bean has been
+     * activated since it was last used. The write lock must be held.
+     */
+    private void errorIfNotLoaded() {
         // If we're not loaded because of passivation, then load.
         if (reset != null) {
             id = null;
-            setPixelsId(reset.longValue(), false);
+            loadPixels(reset.longValue());
             reset = null;
         }
         if (buffer == null) {
@@ -339,83 +451,156 @@ public class RawPixelsBean extends AbstractStatefulBean implements
         }
     }
 
-    // ~ Delegation
-    // =========================================================================
-
-    @RolesAllowed("user")
-    public synchronized byte[] calculateMessageDigest() {
-        errorIfNotLoaded();
-
+    /**
+     * Acquires the read lock once a Pixels set is loaded. If the Pixels set
+     * must first be reloaded that is done under the write lock, which is
+     * then downgraded.
+     */
+    private void readLock() {
+        lock.readLock().lock();
+        if (reset == null && buffer != null) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
         try {
-            return buffer.calculateMessageDigest();
-        } catch (Exception e) {
-            handleException(e);
+            errorIfNotLoaded();
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
         }
-        return null;
     }
 
-    @RolesAllowed("user")
-    public synchronized byte[] getHypercube(List<Integer> offset, List<Integer> size, List<Integer> step) {
-        errorIfNotLoaded();
+    /**
+     * A single read of the pixel buffer.
+     */
+    private interface BufferRead<T> {
+        T read(PixelBuffer buffer) throws Exception;
+    }
 
-        int cubeSize = RomioPixelBuffer.safeLongToInteger(
-                buffer.getHypercubeSize(offset, size, step));
-        if (readBuffer == null || readBuffer.length != cubeSize) {
-            readBuffer = new byte[cubeSize];
-        }
+    /**
+     * Reads from the pixel buffer at the current resolution level.
+     *
+     * @see #read(Integer, BufferRead)
+     */
+    private <T> T read(BufferRead<T> op) {
+        return read(null, op);
+    }
+
+    /**
+     * Reads from the pixel buffer under the read lock. Buffers which
+     * support it are read concurrently; other buffers are read one call at
+     * a time and switched to the requested resolution level first, so that
+     * callers reading at different levels do not interfere.
+     *
+     * @param level
+     *            The resolution level to read at, or <code>null</code> for
+     *            the level set by {@link #setResolutionLevel(int)}.
+     * @param op
+     *            The read.
+     * @return The result of the read.
+     */
+    private <T> T read(Integer level, BufferRead<T> op) {
+        readLock();
         try {
-            readBuffer = buffer.getHypercubeDirect(offset, size, step,
-                    readBuffer);
+            final int levels = buffer.getResolutionLevels();
+            if (level != null && (level < 0 || level >= levels)) {
+                throw new ApiUsageException(
+                        "Invalid resolution level: " + level);
+            }
+            if (concurrentReads) {
+                return op.read(buffer);
+            }
+            final int l = level == null ? currentResolutionLevel : level;
+            synchronized (buffer) {
+                if (levels > 1 && buffer.getResolutionLevel() != l) {
+                    buffer.setResolutionLevel(l);
+                }
+                return op.read(buffer);
+            }
         } catch (Exception e) {
             handleException(e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
         }
-        return readBuffer;
     }
 
-    @RolesAllowed("user")
-    public synchronized byte[] getPlaneRegion(int z, int c, int t, int count, int offset) {
-        errorIfNotLoaded();
+    /**
+     * A single write to the pixel buffer.
+     */
+    private interface BufferWrite {
+        void write(PixelBuffer buffer) throws Exception;
+    }
 
-        int size = RomioPixelBuffer.safeLongToInteger(
-                buffer.getByteWidth() * (long) count);
-        if (readBuffer == null || readBuffer.length != size) {
-            readBuffer = new byte[size];
-        }
+    /**
+     * Writes to the pixel buffer at the current resolution level under the
+     * write lock, checking disk space first if required.
+     *
+     * @param op
+     *            The write.
+     */
+    private void write(BufferWrite op) {
+        lock.writeLock().lock();
         try {
-            readBuffer = buffer.getPlaneRegionDirect(z, c, t, count, offset,
-                    readBuffer);
+            errorIfNotLoaded();
+            if (diskSpaceChecking) {
+                iRepositoryInfo.sanityCheckRepository();
+            }
+            if (buffer.getResolutionLevels() > 1
+                    && buffer.getResolutionLevel() != currentResolutionLevel) {
+                buffer.setResolutionLevel(currentResolutionLevel);
+            }
+            op.write(buffer);
+            modified();
         } catch (Exception e) {
             handleException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return readBuffer;
     }
 
+    // ~ Delegation
+    // =========================================================================
+
     @RolesAllowed("user")
-    public synchronized byte[] getPlane(int arg0, int arg1, int arg2) {
-        errorIfNotLoaded();
+    public byte[] calculateMessageDigest() {
+        return read(buf -> buf.calculateMessageDigest());
+    }
 
-        int size = RomioPixelBuffer.safeLongToInteger(buffer.getPlaneSize());
-        if (readBuffer == null || readBuffer.length != size) {
-            readBuffer = new byte[size];
-        }
-        try {
-            readBuffer = buffer.getPlaneDirect(arg0, arg1, arg2, readBuffer);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return readBuffer;
+    @RolesAllowed("user")
+    public byte[] getHypercube(final List<Integer> offset,
+            final List<Integer> size, final List<Integer> step) {
+        return read(buf -> {
+            int cubeSize = RomioPixelBuffer.safeLongToInteger(
+                    buf.getHypercubeSize(offset, size, step));
+            return buf.getHypercubeDirect(offset, size, step,
+                    new byte[cubeSize]);
+        });
     }
 
     @RolesAllowed("user")
-    public synchronized long getPlaneOffset(int arg0, int arg1, int arg2) {
-        errorIfNotLoaded();
+    public byte[] getPlaneRegion(final int z, final int c, final int t,
+            final int count, final int offset) {
+        return read(buf -> {
+            int size = RomioPixelBuffer.safeLongToInteger(
+                    buf.getByteWidth() * (long) count);
+            return buf.getPlaneRegionDirect(z, c, t, count, offset,
+                    new byte[size]);
+        });
+    }
 
-        try {
-            return buffer.getPlaneOffset(arg0, arg1, arg2);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return -1;
+    @RolesAllowed("user")
+    public byte[] getPlane(final int arg0, final int arg1, final int arg2) {
+        return read(buf -> {
+            int size = RomioPixelBuffer.safeLongToInteger(buf.getPlaneSize());
+            return buf.getPlaneDirect(arg0, arg1, arg2, new byte[size]);
+        });
+    }
+
+    @RolesAllowed("user")
+    public long getPlaneOffset(final int arg0, final int arg1, final int arg2) {
+        return read(buf -> buf.getPlaneOffset(arg0, arg1, arg2));
     }
 
     /*
@@ -423,270 +608,149 @@ public class RawPixelsBean extends AbstractStatefulBean implements
      * @see ome.io.nio.PixelBuffer#getPlaneSize()
      */
     @RolesAllowed("user")
-    public synchronized long getPlaneSize() {
-        errorIfNotLoaded();
-
-        return buffer.getPlaneSize();
+    public long getPlaneSize() {
+        return read(buf -> buf.getPlaneSize());
     }
 
     @RolesAllowed("user")
-    public synchronized byte[] getRegion(int arg0, long arg1) {
-        errorIfNotLoaded();
-
-        PixelData pd = null;
-        byte[] bytes = null;
-
-        try {
-            pd = buffer.getRegion(arg0, arg1);
-            bytes = bufferAsByteArrayWithExceptionIfNull(pd.getData());
-        } catch (Exception e) {
-            handleException(e);
-        } finally {
-            if (pd != null) {
-                pd.dispose();
+    public byte[] getRegion(final int arg0, final long arg1) {
+        return read(buf -> {
+            PixelData pd = null;
+            try {
+                pd = buf.getRegion(arg0, arg1);
+                return bufferAsByteArrayWithExceptionIfNull(pd.getData());
+            } finally {
+                if (pd != null) {
+                    pd.dispose();
+                }
             }
-        }
-        return bytes;
+        });
     }
 
     @RolesAllowed("user")
-    public synchronized byte[] getRow(int arg0, int arg1, int arg2, int arg3) {
-        errorIfNotLoaded();
-
-        int size = buffer.getRowSize();
-        if (readBuffer == null || readBuffer.length != size) {
-            readBuffer = new byte[size];
-        }
-        try {
-            readBuffer = buffer
-                    .getRowDirect(arg0, arg1, arg2, arg3, readBuffer);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return readBuffer;
+    public byte[] getRow(final int arg0, final int arg1, final int arg2,
+            final int arg3) {
+        return read(buf -> buf.getRowDirect(arg0, arg1, arg2, arg3,
+                new byte[buf.getRowSize()]));
     }
     
     @RolesAllowed("user")
-    public synchronized byte[] getCol(int arg0, int arg1, int arg2, int arg3) {
-        errorIfNotLoaded();
-
-        int size = buffer.getColSize();
-        if (readBuffer == null || readBuffer.length != size) {
-            readBuffer = new byte[size];
-        }
-        try {
-            readBuffer = buffer
-                    .getColDirect(arg0, arg1, arg2, arg3, readBuffer);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return readBuffer;
+    public byte[] getCol(final int arg0, final int arg1, final int arg2,
+            final int arg3) {
+        return read(buf -> buf.getColDirect(arg0, arg1, arg2, arg3,
+                new byte[buf.getColSize()]));
     }
 
     @RolesAllowed("user")
-    public synchronized long getRowOffset(int arg0, int arg1, int arg2, int arg3) {
-        errorIfNotLoaded();
-
-        try {
-            return buffer.getRowOffset(arg0, arg1, arg2, arg3);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return -1;
+    public long getRowOffset(final int arg0, final int arg1, final int arg2,
+            final int arg3) {
+        return read(buf -> buf.getRowOffset(arg0, arg1, arg2, arg3));
     }
 
     @RolesAllowed("user")
-    public synchronized int getRowSize() {
-        errorIfNotLoaded();
-
-        return buffer.getRowSize();
+    public int getRowSize() {
+        return read(buf -> buf.getRowSize());
     }
 
     @RolesAllowed("user")
-    public synchronized byte[] getStack(int arg0, int arg1) {
-        errorIfNotLoaded();
-
-        int size = RomioPixelBuffer.safeLongToInteger(buffer.getStackSize());
-        if (readBuffer == null || readBuffer.length != size) {
-            readBuffer = new byte[size];
-        }
-        try {
-            readBuffer = buffer.getStackDirect(arg0, arg1, readBuffer);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return readBuffer;
+    public byte[] getStack(final int arg0, final int arg1) {
+        return read(buf -> {
+            int size = RomioPixelBuffer.safeLongToInteger(buf.getStackSize());
+            return buf.getStackDirect(arg0, arg1, new byte[size]);
+        });
     }
 
     @RolesAllowed("user")
-    public synchronized long getStackOffset(int arg0, int arg1) {
-        errorIfNotLoaded();
-
-        try {
-            return buffer.getStackOffset(arg0, arg1);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return -1;
+    public long getStackOffset(final int arg0, final int arg1) {
+        return read(buf -> buf.getStackOffset(arg0, arg1));
     }
 
     @RolesAllowed("user")
-    public synchronized long getStackSize() {
-        errorIfNotLoaded();
-
-        return buffer.getStackSize();
+    public long getStackSize() {
+        return read(buf -> buf.getStackSize());
     }
 
     @RolesAllowed("user")
-    public synchronized byte[] getTimepoint(int arg0) {
-        errorIfNotLoaded();
-
-        int size = RomioPixelBuffer.safeLongToInteger(
-                buffer.getTimepointSize());
-        if (readBuffer == null || readBuffer.length != size) {
-            readBuffer = new byte[size];
-        }
-        try {
-            readBuffer = buffer.getTimepointDirect(arg0, readBuffer);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return readBuffer;
+    public byte[] getTimepoint(final int arg0) {
+        return read(buf -> {
+            int size = RomioPixelBuffer.safeLongToInteger(
+                    buf.getTimepointSize());
+            return buf.getTimepointDirect(arg0, new byte[size]);
+        });
     }
 
     @RolesAllowed("user")
-    public synchronized long getTimepointOffset(int arg0) {
-        errorIfNotLoaded();
-
-        try {
-            return buffer.getTimepointOffset(arg0);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return -1;
+    public long getTimepointOffset(final int arg0) {
+        return read(buf -> buf.getTimepointOffset(arg0));
     }
 
     @RolesAllowed("user")
-    public synchronized long getTimepointSize() {
-        errorIfNotLoaded();
-
-        return buffer.getTimepointSize();
+    public long getTimepointSize() {
+        return read(buf -> buf.getTimepointSize());
     }
 
     @RolesAllowed("user")
-    public synchronized long getTotalSize() {
-        errorIfNotLoaded();
-
-        return buffer.getTotalSize();
+    public long getTotalSize() {
+        return read(buf -> buf.getTotalSize());
     }
 
     @RolesAllowed("user")
-    public synchronized int getByteWidth() {
-        errorIfNotLoaded();
-
-        return buffer.getByteWidth();
+    public int getByteWidth() {
+        return read(buf -> buf.getByteWidth());
     }
 
     @RolesAllowed("user")
-    public synchronized boolean isSigned() {
-        errorIfNotLoaded();
-
-        return buffer.isSigned();
+    public boolean isSigned() {
+        return read(buf -> buf.isSigned());
     }
 
     @RolesAllowed("user")
-    public synchronized boolean isFloat() {
-        errorIfNotLoaded();
-
-        return buffer.isFloat();
+    public boolean isFloat() {
+        return read(buf -> buf.isFloat());
     }
 
     @RolesAllowed("user")
-    public synchronized void setPlane(byte[] arg0, int arg1, int arg2, int arg3) {
-        errorIfNotLoaded();
-
-        if (diskSpaceChecking) {
-            iRepositoryInfo.sanityCheckRepository();
-        }
-
-        try {
-            buffer.setPlane(arg0, arg1, arg2, arg3);
-            modified();
-        } catch (Exception e) {
-            handleException(e);
-        }
+    public void setPlane(final byte[] arg0, final int arg1, final int arg2,
+            final int arg3) {
+        write(buf -> buf.setPlane(arg0, arg1, arg2, arg3));
     }
 
     @RolesAllowed("user")
-    public synchronized void setRegion(int arg0, long arg1, byte[] arg2) {
-        errorIfNotLoaded();
-
-        if (diskSpaceChecking) {
-            iRepositoryInfo.sanityCheckRepository();
-        }
-
-        try {
-            buffer.setRegion(arg0, arg1, arg2);
-            modified();
-        } catch (Exception e) {
-            handleException(e);
-        }
+    public void setRegion(final int arg0, final long arg1, final byte[] arg2) {
+        write(buf -> buf.setRegion(arg0, arg1, arg2));
     }
 
     @RolesAllowed("user")
-    public synchronized void setRow(byte[] arg0, int arg1, int arg2, int arg3, int arg4) {
-        errorIfNotLoaded();
-
-        if (diskSpaceChecking) {
-            iRepositoryInfo.sanityCheckRepository();
-        }
-
-        try {
-            ByteBuffer buf = ByteBuffer.wrap(arg0);
-            buffer.setRow(buf, arg1, arg2, arg3, arg4);
-            modified();
-        } catch (Exception e) {
-            handleException(e);
-        }
+    public void setRow(final byte[] arg0, final int arg1, final int arg2,
+            final int arg3, final int arg4) {
+        write(buf -> buf.setRow(ByteBuffer.wrap(arg0), arg1, arg2, arg3, arg4));
     }
 
     @RolesAllowed("user")
-    public synchronized void setStack(byte[] arg0, int arg1, int arg2, int arg3) {
-        errorIfNotLoaded();
-
-        if (diskSpaceChecking) {
-            iRepositoryInfo.sanityCheckRepository();
-        }
-
-        try {
-            buffer.setStack(arg0, arg1, arg2, arg3);
-            modified();
-        } catch (Exception e) {
-            handleException(e);
-        }
+    public void setStack(final byte[] arg0, final int arg1, final int arg2,
+            final int arg3) {
+        write(buf -> buf.setStack(arg0, arg1, arg2, arg3));
     }
 
     @RolesAllowed("user")
-    public synchronized void setTimepoint(byte[] arg0, int arg1) {
-        errorIfNotLoaded();
-
-        if (diskSpaceChecking) {
-            iRepositoryInfo.sanityCheckRepository();
-        }
-
-        try {
-            buffer.setTimepoint(arg0, arg1);
-            modified();
-        } catch (Exception e) {
-            handleException(e);
-        }
+    public void setTimepoint(final byte[] arg0, final int arg1) {
+        write(buf -> buf.setTimepoint(arg0, arg1));
     }
     
     @RolesAllowed("user")
-    public synchronized Map<Integer, int[]> getHistogram(int[] channels,
-            int binCount, boolean globalRange, PlaneDef plane) {
-        errorIfNotLoaded();
+    public Map<Integer, int[]> getHistogram(final int[] channels,
+            final int binCount, final boolean globalRange,
+            final PlaneDef plane) {
+        return read(buf -> histograms(channels, binCount, globalRange, plane));
+    }
 
+    /**
+     * Computes the histograms for {@link #getHistogram}. The read lock must
+     * be held and, unless the buffer supports concurrent reads, the buffer's
+     * monitor too as the resolution level of the buffer is changed.
+     */
+    private Map<Integer, int[]> histograms(int[] channels, int binCount,
+            boolean globalRange, PlaneDef plane) {
         //Find resolution level closest to max plane size without
         //exceeding it
         int resolutionLevel = -1;
@@ -732,39 +796,73 @@ public class RawPixelsBean extends AbstractStatefulBean implements
                 : buffer.getSizeY();
 
         Map<Integer, int[]> result = new HashMap<Integer, int[]>();
+        Map<Integer, HistogramEngine.Request> requests =
+                new LinkedHashMap<Integer, HistogramEngine.Request>();
+        Map<Integer, HistogramCache.Key> keys =
+                new HashMap<Integer, HistogramCache.Key>();
 
         try {
             for (int ch : channels) {
                 Channel channel = pixelsInstance.getChannel(ch);
                 if (channel == null)
                     continue;
-                PixelData px = buffer.getPlane(z, ch, t);
-                int[] data = new int[binCount];
-
-                double[] minmax = determineHistogramMinMax(px, channel,
-                        globalRange);
-                double min = minmax[0];
-                double max = minmax[1];
-
-                double range = max - min;
-                double binRange = range / binCount;
-                for (int i = 0; i < px.size(); i++) {
-                    int pxx = i % imgWidth;
-                    int pxy = i / imgWidth;
-                    if (pxx >= x && pxx < (x + w) && pxy >= y && pxy < (y + h)) {
-                        if (px.getPixelValue(i) < min || px.getPixelValue(i) > max) {
-                            continue;
-                        } else {
-                            int bin = (int) ((px.getPixelValue(i) - min) / binRange);
-                            // Handle values exactly at the last edge
-                            if (bin == binCount) {
-                                bin--;
+                double[] minmax = null;
+                if (globalRange) {
+                    minmax = globalMinMax(channel);
+                    if (minmax == null && planeStatisticsStore != null
+                            && buffer.getResolutionLevels() == 1) {
+                        minmax = planeStatisticsStore.getGlobalMinMax(
+                                pixelsInstance, ch);
+                    }
+                }
+                HistogramCache.Key key = null;
+                if (histogramCache != null) {
+                    // The plane range is fixed for a given plane so a NaN
+                    // range stands in for it without reading the plane.
+                    key = new HistogramCache.Key(
+                            pixelsInstance.getId(), resolutionLevel, z, ch, t,
+                            x, y, w, h, binCount,
+                            minmax == null ? Double.NaN : minmax[0],
+                            minmax == null ? Double.NaN : minmax[1]);
+                    int[] data = histogramCache.get(key);
+                    if (data != null) {
+                        result.put(ch, data);
+                        continue;
+                    }
+                    keys.put(ch, key);
+                }
+                if (minmax == null) {
+                    PlaneStatistics stats = planeStatistics(channel, z, ch, t);
+                    if (stats != null) {
+                        if (x == 0 && y == 0 && w == imgWidth
+                                && h == buffer.getSizeY()
+                                && binCount == PlaneStatisticsStore.BIN_COUNT) {
+                            // The persisted histogram is the one requested
+                            int[] data = stats.getHistogram();
+                            result.put(ch, data);
+                            if (key != null) {
+                                histogramCache.put(key, data);
                             }
-                            data[bin]++;
+                            continue;
                         }
+                        minmax = new double[] { stats.getMin(), stats.getMax() };
                     }
                 }
-                result.put(ch, data);
+                PixelData px = buffer.getPlane(z, ch, t);
+                if (minmax == null) {
+                    minmax = determineHistogramMinMax(px, channel, false);
+                }
+                requests.put(ch, new HistogramEngine.Request(
+                        px, minmax[0], minmax[1]));
+            }
+            Map<Integer, int[]> computed = histogramEngine.histograms(
+                    requests, imgWidth, x, y, w, h, binCount);
+            for (Map.Entry<Integer, int[]> entry : computed.entrySet()) {
+                result.put(entry.getKey(), entry.getValue());
+                HistogramCache.Key key = keys.get(entry.getKey());
+                if (key != null) {
+                    histogramCache.put(key, entry.getValue());
+                }
             }
         } catch (Exception e) {
             handleException(e);
@@ -774,10 +872,18 @@ public class RawPixelsBean extends AbstractStatefulBean implements
     }
 
     @RolesAllowed("user")
-    public synchronized Map<Integer, double[]> findMinMax(int[] channels) {
+    public Map<Integer, double[]> findMinMax(final int[] channels) {
+        return read(buf -> minMax(channels));
+    }
+
+    /**
+     * Finds the minimum and maximum values for {@link #findMinMax}. The read
+     * lock must be held.
+     */
+    private Map<Integer, double[]> minMax(int[] channels) {
         Map<Integer, double[]> result = new HashMap<Integer, double[]>();
         
-        if (requiresPixelsPyramid())
+        if (dataService.requiresPixelsPyramid(pixelsInstance))
             return result;
 
         try {
@@ -787,6 +893,11 @@ public class RawPixelsBean extends AbstractStatefulBean implements
                     continue;
                 int z = buffer.getSizeZ() > 1 ? (buffer.getSizeZ() - 1) / 2 : 0;
                 int t = buffer.getSizeT() > 1 ? (buffer.getSizeT() - 1) / 2 : 0;
+                PlaneStatistics stats = planeStatistics(channel, z, ch, t);
+                if (stats != null) {
+                    result.put(ch, new double[] { stats.getMin(), stats.getMax() });
+                    continue;
+                }
                 PixelData px = buffer.getPlane(z, ch, t);
                 double[] minmax = determineHistogramMinMax(px, channel, false);
                 result.put(ch, minmax);
@@ -816,38 +927,111 @@ public class RawPixelsBean extends AbstractStatefulBean implements
      */
     private double[] determineHistogramMinMax(PixelData px, Channel channel,
             boolean useGlobal) {
-        double min, max;
+        if (useGlobal) {
+            double[] minmax = globalMinMax(channel);
+            if (minmax != null)
+                return minmax;
+        }
+
+        StatsFactory sf = new StatsFactory();
+        double[] pixelMinMax = sf.initPixelsRange(channel.getPixels());
 
-        if (useGlobal && channel != null && channel.getStatsInfo() != null) {
-            min = channel.getStatsInfo().getGlobalMin();
-            max = channel.getStatsInfo().getGlobalMax();
+        return HistogramEngine.minMax(px, pixelMinMax[1], pixelMinMax[0]);
+    }
+
+    /**
+     * Get the global minimum and maximum value of a channel, if the channel
+     * has stats calculated.
+     *
+     * @param channel
+     *            The {@link Channel}
+     * @return See above; <code>null</code> if the global minimum and maximum
+     *         are not available.
+     */
+    private double[] globalMinMax(Channel channel) {
+        if (channel != null && channel.getStatsInfo() != null) {
+            double min = channel.getStatsInfo().getGlobalMin();
+            double max = channel.getStatsInfo().getGlobalMax();
             // if max == 1.0 the global min/max probably has not been
             // calculated; fall back to plane min/max
             if (max != 1.0)
                 return new double[] { min, max };
         }
+        return null;
+    }
 
-        StatsFactory sf = new StatsFactory();
-        double[] pixelMinMax = sf.initPixelsRange(channel.getPixels());
-
-        min = pixelMinMax[1];
-        max = pixelMinMax[0];
+    /**
+     * Get the statistics of a plane from the plane statistics store,
+     * computing and persisting them on first use. Only Pixels sets with a
+     * single resolution level have their plane statistics persisted.
+     *
+     * @param channel
+     *            The {@link Channel}
+     * @param z
+     *            The Z-section
+     * @param c
+     *            The channel index
+     * @param t
+     *            The timepoint
+     * @return See above; <code>null</code> if plane statistics are not
+     *         available for the current Pixels set.
+     */
+    private PlaneStatistics planeStatistics(Channel channel, int z, int c,
+            int t) throws IOException {
+        if (planeStatisticsStore == null || buffer.getResolutionLevels() > 1) {
+            return null;
+        }
+        PlaneStatistics stats = planeStatisticsStore.get(pixelsInstance, z, c, t);
+        if (stats == null) {
+            PixelData px = buffer.getPlane(z, c, t);
+            StatsFactory sf = new StatsFactory();
+            double[] pixelMinMax = sf.initPixelsRange(channel.getPixels());
+            stats = PlaneStatistics.compute(px, pixelMinMax[1], pixelMinMax[0],
+                    PlaneStatisticsStore.BIN_COUNT);
+            planeStatisticsStore.put(pixelsInstance, z, c, t, stats);
+        }
+        return stats;
+    }
 
-        for (int i = 0; i < px.size(); i++) {
-            min = Math.min(min, px.getPixelValue(i));
-            max = Math.max(max, px.getPixelValue(i));
+    /**
+     * Removes the cached histograms, persisted plane statistics and
+     * rendered tiles of the current Pixels set.
+     */
+    private void invalidateHistograms() {
+        if (pixelsInstance == null || pixelsInstance.getId() == null) {
+            return;
+        }
+        if (histogramCache != null) {
+            histogramCache.invalidate(pixelsInstance.getId());
+        }
+        if (planeStatisticsStore != null) {
+            planeStatisticsStore.invalidate(pixelsInstance.getId());
         }
+        if (renderedTileCache != null) {
+            renderedTileCache.invalidate(pixelsInstance.getId());
+        }
+    }
 
-        return new double[] { min, max };
+    /**
+     * Invalidates cached histograms on the first modification of the
+     * pixel data; {@link #save()} invalidates them again once writing is
+     * complete.
+     */
+    @Override
+    protected void modified() {
+        if (!isModified()) {
+            invalidateHistograms();
+        }
+        super.modified();
     }
     
-    private synchronized byte[] bufferAsByteArrayWithExceptionIfNull(ByteBuffer buffer) {
+    private byte[] bufferAsByteArrayWithExceptionIfNull(ByteBuffer buffer) {
         byte[] b = new byte[buffer.capacity()];
         buffer.get(b, 0, buffer.capacity());
         return b;
     }
 
-    private synchronized void handleException(Exception e) {
+    private void handleException(Exception e) {
 
         if (e instanceof RootException) {
             throw (RootException) e; // Allow our own exceptions.
@@ -889,101 +1073,162 @@ public class RawPixelsBean extends AbstractStatefulBean implements
      * @see ome.api.RawPixelsStore#getResolutionLevels()
      */
     @RolesAllowed("user")
-    public synchronized int getResolutionLevels()
+    public int getResolutionLevels()
     {
-        errorIfNotLoaded();
-        return buffer.getResolutionLevels();
+        return read(buf -> buf.getResolutionLevels());
     }
 
     @RolesAllowed("user")
-    public synchronized List<List<Integer>> getResolutionDescriptions()
+    public List<List<Integer>> getResolutionDescriptions()
     {
-        errorIfNotLoaded();
-        return buffer.getResolutionDescriptions();
+        return read(buf -> buf.getResolutionDescriptions());
     }
 
     /* (non-Javadoc)
      * @see ome.api.RawPixelsStore#getTileSize()
      */
     @RolesAllowed("user")
-    public synchronized int[] getTileSize()
+    public int[] getTileSize()
     {
-        errorIfNotLoaded();
-        Dimension tileSize = buffer.getTileSize();
-        return new int[] { (int) tileSize.getWidth(),
-                           (int) tileSize.getHeight() };
+        return read(buf -> {
+            Dimension tileSize = buf.getTileSize();
+            return new int[] { (int) tileSize.getWidth(),
+                               (int) tileSize.getHeight() };
+        });
     }
 
     /* (non-Javadoc)
      * @see ome.api.RawPixelsStore#requiresPixelsPyramid()
      */
     @RolesAllowed("user")
-    public synchronized boolean requiresPixelsPyramid()
+    public boolean requiresPixelsPyramid()
     {
-        errorIfNotLoaded();
-        return dataService.requiresPixelsPyramid(pixelsInstance);
+        return read(buf -> dataService.requiresPixelsPyramid(pixelsInstance));
     }
 
     /* (non-Javadoc)
      * @see ome.api.RawPixelsStore#getResolutionLevel()
      */
     @RolesAllowed("user")
-    public synchronized int getResolutionLevel()
+    public int getResolutionLevel()
     {
-        errorIfNotLoaded();
-        return buffer.getResolutionLevel();
+        readLock();
+        try {
+            return currentResolutionLevel;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.api.RawPixelsStore#setResolutionLevel(int)
      */
     @RolesAllowed("user")
-    public synchronized void setResolutionLevel(int resolutionLevel)
+    public void setResolutionLevel(int resolutionLevel)
     {
-        errorIfNotLoaded();
-        buffer.setResolutionLevel(resolutionLevel);
+        lock.writeLock().lock();
+        try {
+            errorIfNotLoaded();
+            buffer.setResolutionLevel(resolutionLevel);
+            currentResolutionLevel = buffer.getResolutionLevel();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.api.RawPixelsStore#getTile(int, int, int, int, int, int, int)
      */
     @RolesAllowed("user")
-    public synchronized byte[] getTile(int z, int c, int t, int x, int y, int w, int h)
+    public byte[] getTile(int z, int c, int t, int x, int y, int w, int h)
     {
-        errorIfNotLoaded();
+        return readTile(null, z, c, t, x, y, w, h);
+    }
 
-        int size = RomioPixelBuffer.safeLongToInteger(
-                (long) w * (long) h * buffer.getByteWidth());
-        if (readBuffer == null || readBuffer.length != size) {
-            readBuffer = new byte[size];
-        }
-        try {
-            readBuffer = buffer.getTileDirect(z, c, t, x, y, w, h, readBuffer);
-        } catch (Exception e) {
-            handleException(e);
-        }
-        return readBuffer;
+    /**
+     * Retrieves a tile at the given resolution level, leaving the
+     * resolution level of this store unchanged so that concurrent callers
+     * may read tiles at different levels.
+     *
+     * @param resolutionLevel
+     *            The resolution level to read the tile at.
+     * @see #getTile(int, int, int, int, int, int, int)
+     */
+    @RolesAllowed("user")
+    public byte[] getTileAtResolution(int resolutionLevel, int z, int c,
+            int t, int x, int y, int w, int h)
+    {
+        return readTile(resolutionLevel, z, c, t, x, y, w, h);
     }
 
     /* (non-Javadoc)
-     * @see ome.api.RawPixelsStore#setTile(byte[], int, int, int, int, int, int, int)
+     * @see ome.api.local.LocalRawPixelsStore#getTiles(java.util.List)
      */
     @RolesAllowed("user")
-    public synchronized void setTile(byte[] data, int z, int c, int t, int x, int y,
-            int w, int h)
+    public List<byte[]> getTiles(final List<TileRequest> tiles)
     {
-        errorIfNotLoaded();
-
-        if (diskSpaceChecking) {
-            iRepositoryInfo.sanityCheckRepository();
+        final byte[][] result = new byte[tiles.size()][];
+        final long maxPixels = (long) tileSizes.getMaxPlaneWidth()
+                * tileSizes.getMaxPlaneHeight();
+        for (final List<Integer> run : TileRequest.coalesce(tiles, maxPixels)) {
+            final TileRequest first = tiles.get(run.get(0));
+            final Integer level =
+                    first.getResolutionLevel() == TileRequest.CURRENT_LEVEL
+                    ? null : first.getResolutionLevel();
+            read(level, buf -> {
+                readTileRun(buf, tiles, run, result);
+                return null;
+            });
         }
+        return Arrays.asList(result);
+    }
 
-        try {
-            buffer.setTile(data, z, c, t, x, y, w, h);
-            modified();
-        } catch (Exception e) {
-            handleException(e);
+    /**
+     * Reads a run of horizontally adjacent tiles, as returned by
+     * {@link TileRequest#coalesce(List, long)}, as a single region.
+     */
+    private static void readTileRun(PixelBuffer buf, List<TileRequest> tiles,
+            List<Integer> run, byte[][] result) throws IOException,
+            DimensionsOutOfBoundsException
+    {
+        final int bytesPerPixel = buf.getByteWidth();
+        final TileRequest first = tiles.get(run.get(0));
+        if (run.size() == 1) {
+            int size = RomioPixelBuffer.safeLongToInteger((long)
+                    first.getWidth() * first.getHeight() * bytesPerPixel);
+            result[run.get(0)] = buf.getTileDirect(first.getZ(), first.getC(),
+                    first.getT(), first.getX(), first.getY(),
+                    first.getWidth(), first.getHeight(), new byte[size]);
+            return;
         }
+        final int width = TileRequest.width(tiles, run);
+        final int h = first.getHeight();
+        final byte[] region = buf.getTileDirect(first.getZ(), first.getC(),
+                first.getT(), first.getX(), first.getY(), width, h,
+                new byte[RomioPixelBuffer.safeLongToInteger(
+                        (long) width * h * bytesPerPixel)]);
+        TileRequest.split(region, bytesPerPixel, tiles, run, result);
+    }
+
+    private byte[] readTile(Integer resolutionLevel, final int z,
+            final int c, final int t, final int x, final int y, final int w,
+            final int h)
+    {
+        return read(resolutionLevel, buf -> {
+            int size = RomioPixelBuffer.safeLongToInteger(
+                    (long) w * (long) h * buf.getByteWidth());
+            return buf.getTileDirect(z, c, t, x, y, w, h, new byte[size]);
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see ome.api.RawPixelsStore#setTile(byte[], int, int, int, int, int, int, int)
+     */
+    @RolesAllowed("user")
+    public void setTile(final byte[] data, final int z, final int c,
+            final int t, final int x, final int y, final int w, final int h)
+    {
+        write(buf -> buf.setTile(data, z, c, t, x, y, w, h));
     }
 
 }
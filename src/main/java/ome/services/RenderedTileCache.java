@@ -0,0 +1,654 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import ome.model.display.ChannelBinding;
+import ome.model.display.CodomainMapContext;
+import ome.model.display.QuantumDef;
+import ome.model.display.RenderingDef;
+import ome.model.display.ReverseIntensityContext;
+import ome.services.util.CacheKeyIndex;
+import omeis.providers.re.data.PlaneDef;
+import omeis.providers.re.data.RegionDef;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Bounded cache of compressed rendered planes and tiles shared by all
+ * {@link RenderingBean} instances, so that users panning over the same image
+ * with the same settings need not re-read, re-quantize and re-compress the
+ * same tiles. Entries are weighed by their length in bytes. If a spill
+ * directory is configured, entries evicted from memory are written to a
+ * new subdirectory of it, unique to this cache, and read back on a later
+ * miss, up to a second byte bound. Only the files that this cache wrote are
+ * ever deleted.
+ *
+ * Callers are expected to have performed all permission checks on the
+ * Pixels set and rendering settings before building a {@link Key}.
+ *
+ * @since 5.7.6
+ */
+@ManagedResource(objectName = "omero:type=RenderedTileCache",
+        description = "Cache of compressed rendered tiles")
+public class RenderedTileCache
+{
+
+    /** The logger for this class. */
+    private static final Logger log =
+            LoggerFactory.getLogger(RenderedTileCache.class);
+
+    /**
+     * Identifies a compressed rendered tile. As a rendering engine's
+     * settings may be changed in memory without being saved, the key holds
+     * a digest of the current state of the settings as well as their ID and
+     * version.
+     */
+    public static final class Key
+    {
+        private final long pixelsId;
+
+        private final long settingsId;
+
+        private final int settingsVersion;
+
+        private final String settingsState;
+
+        private final String plane;
+
+        private final int resolutionLevel;
+
+        private final float compression;
+
+        private final long overlays;
+
+        public Key(long pixelsId, long settingsId, int settingsVersion,
+                String settingsState, String plane, int resolutionLevel,
+                float compression, long overlays)
+        {
+            this.pixelsId = pixelsId;
+            this.settingsId = settingsId;
+            this.settingsVersion = settingsVersion;
+            this.settingsState = settingsState;
+            this.plane = plane;
+            this.resolutionLevel = resolutionLevel;
+            this.compression = compression;
+            this.overlays = overlays;
+        }
+
+        /**
+         * Builds a key from the current state of a rendering engine.
+         * @param pixelsId the Pixels set ID.
+         * @param settings the rendering settings in use.
+         * @param pd the plane to render.
+         * @param resolutionLevel the resolution level rendered at.
+         * @param compression the compression level.
+         * @param overlays the overlays to render, may be empty.
+         * @return the key or <code>null</code> if the tile cannot be
+         * identified, in which case it must not be cached.
+         */
+        public static Key of(long pixelsId, RenderingDef settings, PlaneDef pd,
+                int resolutionLevel, float compression,
+                Map<byte[], Integer> overlays)
+        {
+            if (settings == null || settings.getId() == null
+                    || settings.getVersion() == null)
+            {
+                return null;
+            }
+            final StringBuilder sb = new StringBuilder();
+            sb.append(pd.getSlice()).append(',').append(pd.getZ())
+                .append(',').append(pd.getT()).append(',')
+                .append(pd.getStride());
+            final RegionDef region = pd.getRegion();
+            if (region != null)
+            {
+                sb.append(',').append(region.getX()).append(',')
+                    .append(region.getY()).append(',')
+                    .append(region.getWidth()).append(',')
+                    .append(region.getHeight());
+            }
+            return new Key(pixelsId, settings.getId(), settings.getVersion(),
+                    digest(describe(settings)), sb.toString(),
+                    resolutionLevel, compression, overlaysHash(overlays));
+        }
+
+        public long getPixelsId()
+        {
+            return pixelsId;
+        }
+
+        public long getSettingsId()
+        {
+            return settingsId;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return pixelsId == other.pixelsId
+                    && settingsId == other.settingsId
+                    && settingsVersion == other.settingsVersion
+                    && resolutionLevel == other.resolutionLevel
+                    && compression == other.compression
+                    && overlays == other.overlays
+                    && settingsState.equals(other.settingsState)
+                    && plane.equals(other.plane);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(pixelsId, settingsId, settingsVersion,
+                    settingsState, plane, resolutionLevel, compression,
+                    overlays);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Key(pixels=%d, settings=%d:%d:%s, "
+                    + "plane=%s, level=%d, compression=%s, overlays=%x)",
+                    pixelsId, settingsId, settingsVersion, settingsState,
+                    plane, resolutionLevel, compression, overlays);
+        }
+    }
+
+    /**
+     * Describes the rendering state held by a set of rendering settings.
+     * @param settings the settings.
+     * @return See above.
+     */
+    static String describe(RenderingDef settings)
+    {
+        final StringBuilder sb = new StringBuilder();
+        if (settings.getModel() != null)
+        {
+            sb.append(settings.getModel().getValue());
+        }
+        final QuantumDef qd = settings.getQuantization();
+        if (qd != null)
+        {
+            sb.append('|').append(qd.getBitResolution()).append(',')
+                .append(qd.getCdStart()).append(',').append(qd.getCdEnd());
+        }
+        for (int w = 0; w < settings.sizeOfWaveRendering(); w++)
+        {
+            final ChannelBinding cb = settings.getChannelBinding(w);
+            sb.append('|');
+            if (cb == null)
+            {
+                continue;
+            }
+            sb.append(cb.getActive()).append(',')
+                .append(cb.getInputStart()).append(',')
+                .append(cb.getInputEnd()).append(',')
+                .append(cb.getRed()).append(',').append(cb.getGreen())
+                .append(',').append(cb.getBlue()).append(',')
+                .append(cb.getAlpha()).append(',')
+                .append(cb.getFamily() == null
+                        ? null : cb.getFamily().getValue())
+                .append(',').append(cb.getCoefficient()).append(',')
+                .append(cb.getNoiseReduction()).append(',')
+                .append(cb.getLookupTable());
+            for (int i = 0; i < cb.sizeOfSpatialDomainEnhancement(); i++)
+            {
+                final CodomainMapContext ctx = cb.getCodomainMapContext(i);
+                if (ctx == null)
+                {
+                    continue;
+                }
+                sb.append(',').append(ctx.getClass().getSimpleName());
+                if (ctx instanceof ReverseIntensityContext)
+                {
+                    sb.append(':').append(
+                            ((ReverseIntensityContext) ctx).getReverse());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String digest(String value)
+    {
+        return Hashing.sha256().hashString(value, StandardCharsets.UTF_8)
+                .toString();
+    }
+
+    private static long overlaysHash(Map<byte[], Integer> overlays)
+    {
+        if (overlays == null || overlays.isEmpty())
+        {
+            return 0;
+        }
+        long hash = 17;
+        for (final Map.Entry<byte[], Integer> entry : overlays.entrySet())
+        {
+            hash = 31 * hash + Hashing.murmur3_128()
+                    .hashBytes(entry.getKey()).asLong();
+            hash = 31 * hash + Objects.hashCode(entry.getValue());
+        }
+        return hash;
+    }
+
+    /** Maximum total size of the tiles held in memory in bytes. */
+    private final long maximumBytes;
+
+    /** The cache or <code>null</code> if caching is disabled. */
+    private final Cache<Key, byte[]> cache;
+
+    /** The keys of the tiles held in memory by Pixels set ID. */
+    private final CacheKeyIndex<Key, byte[]> index =
+            new CacheKeyIndex<Key, byte[]>(Key::getPixelsId);
+
+    /**
+     * Subdirectory of the configured directory that evicted tiles are
+     * spilled to, or <code>null</code>.
+     */
+    private final File spillDirectory;
+
+    /** Maximum total size of the spilled tiles in bytes. */
+    private final long maximumSpillBytes;
+
+    /** Sizes of the spilled tiles by file, least recently used first. */
+    private final LinkedHashMap<File, Long> spilled =
+            new LinkedHashMap<File, Long>(16, 0.75f, true);
+
+    /** The spilled tiles by Pixels set ID. */
+    private final Map<Long, Set<File>> spilledByPixels =
+            new HashMap<Long, Set<File>>();
+
+    /** Total size of the spilled tiles in bytes. */
+    private long spilledBytes;
+
+    /**
+     * Creates a new cache held in memory only.
+     * @param maximumBytes the maximum total size of the cached tiles in
+     * bytes. A value of zero or less disables the cache.
+     */
+    public RenderedTileCache(long maximumBytes)
+    {
+        this(maximumBytes, null, 0);
+    }
+
+    /**
+     * Creates a new cache.
+     * @param maximumBytes the maximum total size of the tiles held in memory
+     * in bytes. A value of zero or less disables the cache.
+     * @param spillDirectory a local directory in which to create a
+     * subdirectory to spill tiles evicted from memory to. Blank to disable
+     * spilling.
+     * @param maximumSpillBytes the maximum total size of the spilled tiles
+     * in bytes. A value of zero or less disables spilling.
+     */
+    public RenderedTileCache(long maximumBytes, String spillDirectory,
+            long maximumSpillBytes)
+    {
+        this.maximumBytes = maximumBytes;
+        if (maximumBytes > 0 && maximumSpillBytes > 0
+                && StringUtils.isNotBlank(spillDirectory))
+        {
+            this.spillDirectory = new File(spillDirectory,
+                    "omero-tile-spill-" + UUID.randomUUID());
+            this.maximumSpillBytes = maximumSpillBytes;
+        }
+        else
+        {
+            this.spillDirectory = null;
+            this.maximumSpillBytes = 0;
+        }
+        if (maximumBytes > 0)
+        {
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(maximumBytes)
+                    .weigher(new Weigher<Key, byte[]>() {
+                        @Override
+                        public int weigh(Key key, byte[] value) {
+                            return value.length;
+                        }
+                    })
+                    .removalListener(new RemovalListener<Key, byte[]>() {
+                        @Override
+                        public void onRemoval(
+                                RemovalNotification<Key, byte[]> n) {
+                            index.onRemoval(n);
+                            if (n.wasEvicted()) {
+                                spill(n.getKey(), n.getValue());
+                            }
+                        }
+                    })
+                    .recordStats()
+                    .build();
+            index.setCache(cache.asMap());
+        }
+        else
+        {
+            cache = null;
+        }
+        log.info("Rendered tile cache: maximum {} bytes, spilling {} bytes"
+                + " to {}", maximumBytes, this.maximumSpillBytes,
+                this.spillDirectory);
+    }
+
+    /**
+     * Retrieves a cached tile, from memory or else from the spill directory.
+     * @param key the tile key, may be <code>null</code>.
+     * @return the compressed tile or <code>null</code> on a cache miss.
+     */
+    public byte[] get(Key key)
+    {
+        if (cache == null || key == null)
+        {
+            return null;
+        }
+        byte[] value = cache.getIfPresent(key);
+        if (value == null && spillDirectory != null)
+        {
+            value = unspill(key);
+            if (value != null)
+            {
+                index.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Caches a compressed tile.
+     * @param key the tile key, may be <code>null</code>.
+     * @param value the compressed tile, may be <code>null</code>.
+     */
+    public void put(Key key, byte[] value)
+    {
+        if (cache == null || key == null || value == null
+                || value.length == 0)
+        {
+            return;
+        }
+        index.put(key, value);
+    }
+
+    /**
+     * Removes all cached tiles of a Pixels set, e.g. on its pixel data
+     * being modified.
+     * @param pixelsId the Pixels set ID.
+     */
+    public void invalidate(long pixelsId)
+    {
+        if (cache == null)
+        {
+            return;
+        }
+        cache.invalidateAll(index.remove(pixelsId));
+        if (spillDirectory != null)
+        {
+            removeSpilled(pixelsId,
+                    new File(spillDirectory, Long.toString(pixelsId)));
+        }
+    }
+
+    /**
+     * Removes all cached tiles rendered with a given set of rendering
+     * settings, e.g. on the settings being saved.
+     * @param pixelsId the Pixels set ID.
+     * @param settingsId the rendering settings ID.
+     */
+    public void invalidateSettings(long pixelsId, long settingsId)
+    {
+        if (cache == null)
+        {
+            return;
+        }
+        final List<Key> keys = new ArrayList<Key>();
+        for (final Key key : index.keys(pixelsId))
+        {
+            if (key.settingsId == settingsId)
+            {
+                keys.add(key);
+            }
+        }
+        cache.invalidateAll(keys);
+        if (spillDirectory != null)
+        {
+            removeSpilled(pixelsId, new File(new File(spillDirectory,
+                    Long.toString(pixelsId)), Long.toString(settingsId)));
+        }
+    }
+
+    @ManagedOperation(description = "Removes all cached tiles")
+    public void invalidateAll()
+    {
+        if (cache == null)
+        {
+            return;
+        }
+        cache.asMap().clear();
+        removeAllSpilled();
+    }
+
+    private File spillFile(Key key)
+    {
+        final File dir = new File(new File(spillDirectory,
+                Long.toString(key.pixelsId)), Long.toString(key.settingsId));
+        return new File(dir, digest(key.toString()));
+    }
+
+    private synchronized void spill(Key key, byte[] value)
+    {
+        if (spillDirectory == null || value.length > maximumSpillBytes)
+        {
+            return;
+        }
+        final File file = spillFile(key);
+        try
+        {
+            FileUtils.writeByteArrayToFile(file, value);
+        }
+        catch (IOException e)
+        {
+            log.debug("Failed to spill tile to {}", file, e);
+            return;
+        }
+        forgetSpilled(file);
+        spilled.put(file, (long) value.length);
+        spilledBytes += value.length;
+        Set<File> files = spilledByPixels.get(key.pixelsId);
+        if (files == null)
+        {
+            files = new HashSet<File>();
+            spilledByPixels.put(key.pixelsId, files);
+        }
+        files.add(file);
+        while (spilledBytes > maximumSpillBytes && !spilled.isEmpty())
+        {
+            final File eldest = spilled.keySet().iterator().next();
+            forgetSpilled(eldest);
+            deleteSpilled(eldest);
+        }
+    }
+
+    /**
+     * Stops tracking a spilled tile, the caller holding the lock.
+     * @return the size of the tile or <code>null</code> if not spilled.
+     */
+    private Long forgetSpilled(File file)
+    {
+        final Long size = spilled.remove(file);
+        if (size == null)
+        {
+            return null;
+        }
+        spilledBytes -= size;
+        /* as laid out by spillFile */
+        final long pixelsId = Long.parseLong(
+                file.getParentFile().getParentFile().getName());
+        final Set<File> files = spilledByPixels.get(pixelsId);
+        if (files != null && files.remove(file) && files.isEmpty())
+        {
+            spilledByPixels.remove(pixelsId);
+        }
+        return size;
+    }
+
+    private synchronized byte[] unspill(Key key)
+    {
+        final File file = spillFile(key);
+        if (forgetSpilled(file) == null)
+        {
+            return null;
+        }
+        try
+        {
+            return FileUtils.readFileToByteArray(file);
+        }
+        catch (IOException e)
+        {
+            log.debug("Failed to read spilled tile {}", file, e);
+            return null;
+        }
+        finally
+        {
+            deleteSpilled(file);
+        }
+    }
+
+    private synchronized void removeSpilled(long pixelsId, File dir)
+    {
+        final Set<File> files = spilledByPixels.get(pixelsId);
+        if (files == null)
+        {
+            return;
+        }
+        final String prefix = dir.getPath() + File.separator;
+        for (final File file : new ArrayList<File>(files))
+        {
+            if (file.getPath().startsWith(prefix))
+            {
+                forgetSpilled(file);
+                deleteSpilled(file);
+            }
+        }
+    }
+
+    private synchronized void removeAllSpilled()
+    {
+        for (final File file : spilled.keySet())
+        {
+            deleteSpilled(file);
+        }
+        spilled.clear();
+        spilledByPixels.clear();
+        spilledBytes = 0;
+    }
+
+    /**
+     * Deletes a spilled tile and any of its parent directories that are
+     * thereby emptied, up to and excluding the spill directory.
+     */
+    private void deleteSpilled(File file)
+    {
+        if (!file.delete() && file.exists())
+        {
+            log.debug("Failed to delete spilled tile {}", file);
+        }
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(spillDirectory) && dir.delete())
+        {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * Deletes the spilled tiles and, if then empty, the spill directory.
+     * For use as a Spring destroy method.
+     */
+    public synchronized void shutdown()
+    {
+        if (spillDirectory == null)
+        {
+            return;
+        }
+        removeAllSpilled();
+        spillDirectory.delete();
+    }
+
+    @ManagedAttribute(description = "Maximum total size in memory in bytes")
+    public long getMaximumBytes()
+    {
+        return maximumBytes;
+    }
+
+    @ManagedAttribute(description = "Total size of spilled tiles in bytes")
+    public synchronized long getSpilledBytes()
+    {
+        return spilledBytes;
+    }
+
+    @ManagedAttribute(description = "Number of tiles held in memory")
+    public long getSize()
+    {
+        return cache == null ? 0 : cache.size();
+    }
+
+    @ManagedAttribute(description = "Number of cache hits")
+    public long getHitCount()
+    {
+        return stats().hitCount();
+    }
+
+    @ManagedAttribute(description = "Number of cache misses")
+    public long getMissCount()
+    {
+        return stats().missCount();
+    }
+
+    @ManagedAttribute(description = "Number of tiles evicted from memory")
+    public long getEvictionCount()
+    {
+        return stats().evictionCount();
+    }
+
+    private CacheStats stats()
+    {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+}
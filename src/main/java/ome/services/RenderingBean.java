@@ -11,10 +11,14 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import ome.annotations.RolesAllowed;
@@ -23,6 +27,7 @@ import ome.api.IUpdate;
 import ome.api.ServiceInterface;
 import ome.api.ThumbnailStore;
 import ome.api.local.LocalCompress;
+import ome.api.local.LocalRenderingEngine;
 import ome.conditions.ApiUsageException;
 import ome.conditions.InternalException;
 import ome.conditions.ResourceError;
@@ -43,6 +48,8 @@ import ome.model.roi.Mask;
 import ome.parameters.Parameters;
 import ome.security.SecuritySystem;
 import ome.services.util.Executor;
+import ome.services.util.TileBatch;
+import ome.services.util.TileRequest;
 import ome.system.EventContext;
 import ome.system.ServiceFactory;
 import ome.system.SimpleEventContext;
@@ -92,7 +99,7 @@ import org.springframework.transaction.annotation.Transactional;
  * @since 3.0-M3
  */
 @Transactional(readOnly = true)
-public class RenderingBean implements RenderingEngine, Serializable {
+public class RenderingBean implements LocalRenderingEngine, Serializable {
 
 	/** The serial number. */
     private static final long serialVersionUID = -4383698215540637039L;
@@ -169,6 +176,15 @@ public class RenderingBean implements RenderingEngine, Serializable {
      */
     private boolean requestedRenderingDef = false;
 
+    /**
+     * Compresses the tiles of {@link #renderCompressedTiles(List)}
+     * concurrently, may be <code>null</code>.
+     */
+    private transient ExecutorService tileExecutor;
+
+    /** Cache of compressed rendered tiles, may be <code>null</code>. */
+    private transient RenderedTileCache tileCache;
+
     /**
      * Compression service Bean injector.
      *
@@ -192,6 +208,23 @@ public class RenderingBean implements RenderingEngine, Serializable {
         this.lutProvider = lutProvider;
     }
 
+    /**
+     * Sets the pool on which the tiles of a batch are compressed. If not
+     * set, tiles are compressed on the calling thread.
+     * @param tileExecutor the pool.
+     */
+    public void setTileExecutor(ExecutorService tileExecutor) {
+        this.tileExecutor = tileExecutor;
+    }
+
+    /**
+     * Sets the cache of compressed rendered tiles.
+     * @param tileCache the cache.
+     */
+    public void setTileCache(RenderedTileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
     @RolesAllowed("user")
     public long getRenderingDefId() {
         if (rendDefObj == null || rendDefObj.getId() == null) {
@@ -536,6 +569,17 @@ public class RenderingBean implements RenderingEngine, Serializable {
             if (overlays.size() > 0) {
                 renderer.setOverlays(overlays);
             }
+            RenderedTileCache.Key key = null;
+            if (tileCache != null) {
+                errorIfInvalidState();
+                key = tileCacheKey(pd, resolutionLevel != null
+                        ? resolutionLevel : renderer.getResolutionLevel(),
+                        overlays);
+                byte[] cached = tileCache.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
             int stride = pd.getStride();
             if (stride < 0) stride = 0;
             stride++;
@@ -553,7 +597,11 @@ public class RenderingBean implements RenderingEngine, Serializable {
                     sizeY);
             byteStream = new ByteArrayOutputStream();
             compressionSrv.compressToStream(image, byteStream);
-            return byteStream.toByteArray();
+            byte[] bytes = byteStream.toByteArray();
+            if (tileCache != null) {
+                tileCache.put(key, bytes);
+            }
+            return bytes;
         } catch (IOException e) {
             log.error("Could not compress rendered image.", e);
             throw new ResourceError(e.getMessage());
@@ -570,6 +618,122 @@ public class RenderingBean implements RenderingEngine, Serializable {
         }
     }
 
+    /**
+     * Implemented as specified by the {@link LocalRenderingEngine} I/F.
+     * Tiles are rendered in turn, as the renderer is not thread-safe, and
+     * compressed in parallel on the tile executor.
+     *
+     * @see LocalRenderingEngine#renderCompressedTiles(List)
+     */
+    @RolesAllowed("user")
+    public List<byte[]> renderCompressedTiles(List<TileRequest> tiles) {
+        rwl.writeLock().lock();
+
+        final TileBatch batch = new TileBatch(tileExecutor, tiles.size());
+        try {
+            errorIfInvalidState();
+            final int currentLevel = resolutionLevel != null ? resolutionLevel
+                    : renderer.getResolutionLevel();
+            final RenderedTileCache.Key[] keys =
+                    new RenderedTileCache.Key[tiles.size()];
+            try {
+                for (int i = 0; i < tiles.size(); i++) {
+                    final TileRequest tile = tiles.get(i);
+                    final int level =
+                        tile.getResolutionLevel() == TileRequest.CURRENT_LEVEL
+                        ? currentLevel : tile.getResolutionLevel();
+                    final PlaneDef pd = tile.toPlaneDef();
+                    keys[i] = tileCacheKey(pd, level,
+                            Collections.<byte[], Integer>emptyMap());
+                    if (tileCache != null) {
+                        final byte[] cached = tileCache.get(keys[i]);
+                        if (cached != null) {
+                            batch.set(i, cached);
+                            continue;
+                        }
+                    }
+                    if (level != renderer.getResolutionLevel()) {
+                        renderer.setResolutionLevel(level);
+                    }
+                    checkPlaneDef(pd);
+                    final int[] buf = renderer.renderAsPackedInt(pd, null);
+                    final RegionDef region = pd.getRegion();
+                    batch.submit(i, new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws IOException {
+                            return compress(buf, region.getWidth(),
+                                    region.getHeight());
+                        }
+                    });
+                }
+            } finally {
+                if (renderer.getResolutionLevel() != currentLevel) {
+                    renderer.setResolutionLevel(currentLevel);
+                }
+            }
+            final List<byte[]> result = batch.results();
+            if (tileCache != null) {
+                for (int i = 0; i < keys.length; i++) {
+                    tileCache.put(keys[i], result.get(i));
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            log.error("IO error while rendering tiles.", e);
+            throw new ResourceError(e.getMessage());
+        } catch (QuantizationException e) {
+            log.error("Quantization exception while rendering tiles.", e);
+            throw new InternalException(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted while rendering tiles.");
+        } catch (ExecutionException e) {
+            log.error("Could not compress rendered tile.", e.getCause());
+            throw new ResourceError(String.valueOf(e.getCause().getMessage()));
+        } finally {
+            batch.cancel();
+            rwl.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the key of a rendered tile in the tile cache from the current
+     * rendering settings.
+     * @return the key or <code>null</code> if tiles are not cached.
+     */
+    private RenderedTileCache.Key tileCacheKey(PlaneDef pd, int level,
+            Map<byte[], Integer> overlays) {
+        if (tileCache == null) {
+            return null;
+        }
+        return RenderedTileCache.Key.of(pixelsObj.getId(), rendDefObj, pd,
+                level, compressionSrv.getCompressionLevel(), overlays);
+    }
+
+    /**
+     * Removes the cached tiles of the current rendering settings, e.g. once
+     * they have been saved.
+     */
+    private void invalidateTileCache() {
+        if (tileCache != null && pixelsObj != null && rendDefObj != null
+                && rendDefObj.getId() != null) {
+            tileCache.invalidateSettings(pixelsObj.getId(),
+                    rendDefObj.getId());
+        }
+    }
+
+    /**
+     * Compresses a rendered image with the compression service.
+     */
+    private byte[] compress(int[] buf, int sizeX, int sizeY)
+            throws IOException {
+        final BufferedImage image = ImageUtil.createBufferedImage(buf, sizeX,
+                sizeY);
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        compressionSrv.compressToStream(image, byteStream);
+        return byteStream.toByteArray();
+    }
+
     /**
      * Implemented as specified by the {@link RenderingEngine} interface.
      * 
@@ -720,6 +884,7 @@ public class RenderingBean implements RenderingEngine, Serializable {
                     _resetDefaults(rendDefObj, pixelsObj);
 
                     rendDefObj = retrieveRndSettings(pixelsObj.getId());
+                    invalidateTileCache();
                     // The above save step sets the rendDefObj instance (for which
                     // the renderer holds a reference) unloaded, which *will* cause
                     // IllegalStateExceptions if we're not careful. To compensate
@@ -1012,6 +1177,7 @@ public class RenderingBean implements RenderingEngine, Serializable {
                 // in later versions.
             } else {
                 rendDefObj = retrieveRndSettings(pixelsObj.getId());
+                invalidateTileCache();
 
                 // Unload the linked pixels set to avoid transactional headaches on
                 // the next save.
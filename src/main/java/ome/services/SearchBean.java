@@ -70,6 +70,8 @@ public class SearchBean extends AbstractStatefulBean implements Search {
 
     private/* final */transient Class<? extends Analyzer> analyzer;
 
+    private/* final */transient boolean paged = false;
+
     public SearchBean(Executor executor, Class<? extends Analyzer> analyzer) {
         this.executor = executor;
         this.analyzer = analyzer;
@@ -107,6 +109,15 @@ public class SearchBean extends AbstractStatefulBean implements Search {
         this.analyzer = analyzer;
     }
 
+    /**
+     * Injector used by Spring. If true, full text searches are not run in
+     * full by {@link #hasNext()} but fetch and check only one batch of hits
+     * at a time, as the results are consumed.
+     */
+    public void setPaged(boolean paged) {
+        this.paged = paged;
+    }
+
     /**
      * Injector used by Spring.
      */
@@ -265,33 +276,45 @@ public class SearchBean extends AbstractStatefulBean implements Search {
     @RolesAllowed("user")
     public boolean hasNext() {
 
-        while (results.size() > 0) {
-            List<IObject> first = results.get(0);
-            if (first == null || first.size() < 1) {
-                results.remove(0);
-            } else {
-                return true;
+        // Loops rather than recursing since paged actions may return many
+        // empty pages when their hits are filtered out
+        while (true) {
+            while (results.size() > 0) {
+                List<IObject> first = results.get(0);
+                if (first == null || first.size() < 1) {
+                    results.remove(0);
+                } else {
+                    return true;
+                }
             }
-        }
 
-        // There are no current results, we now need to execute an action
-        if (actions.size() == 0) {
-            return false;
-        }
-        SearchAction action = actions.popFirst();
-        timeoutSetter.setTimeout(action::setTimeout);
-        final List<IObject> list;
-        try {
-            list = (List<IObject>) executor.execute(null, action);
-        } catch (DataAccessResourceFailureException e) {
-            if (QueryImpl.isProbablyTimeout(e)) {
-                throw new OverUsageException("query failed, probable timeout");
-            } else {
-                throw e;
+            // There are no current results, we now need to execute an action
+            if (actions.size() == 0) {
+                return false;
+            }
+            // A paged action stays queued until it runs out of hits
+            SearchAction action = actions.peekFirst();
+            final boolean isPage = paged && action instanceof FullText
+                    && ((FullText) action).page(getBatchSize());
+            if (!isPage) {
+                actions.popFirst();
+            }
+            timeoutSetter.setTimeout(action::setTimeout);
+            final List<IObject> list;
+            try {
+                list = (List<IObject>) executor.execute(null, action);
+            } catch (DataAccessResourceFailureException e) {
+                if (QueryImpl.isProbablyTimeout(e)) {
+                    throw new OverUsageException("query failed, probable timeout");
+                } else {
+                    throw e;
+                }
+            }
+            if (isPage && (list == null || ((FullText) action).isExhausted())) {
+                actions.remove(action);
             }
+            results.add(list);
         }
-        results.add(list);
-        return hasNext(); // recursive call
     }
 
     @Transactional
@@ -328,7 +351,7 @@ public class SearchBean extends AbstractStatefulBean implements Search {
 
         // Now we're guaranteed to have an element
         List<T> rv = new ArrayList<T>();
-        while (hasNext() && rv.size() < values.batchSize) {
+        while (rv.size() < values.batchSize && hasNext()) {
             List<IObject> current = results.get(0);
             if (current.size() > 0) {
                 rv.add((T) pop(current));
@@ -779,6 +802,15 @@ public class SearchBean extends AbstractStatefulBean implements Search {
             return actions.remove(0);
         }
 
+        synchronized SearchAction peekFirst() {
+            assertNonZero();
+            return actions.get(0);
+        }
+
+        synchronized void remove(SearchAction action) {
+            actions.remove(action);
+        }
+
         synchronized SearchAction popLast() {
             assertNonZero();
             return actions.remove(actions.size() - 1);
@@ -17,9 +17,14 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import ome.annotations.RolesAllowed;
@@ -184,6 +189,50 @@ public class ThumbnailBean extends AbstractLevel2Service
 
     private OmeroContext applicationContext = null;
 
+    /** The pool used to render thumbnail sets in parallel. */
+    private transient ExecutorService thumbnailSetExecutor;
+
+    /**
+     * Number of Pixels sets in a thumbnail set which may be rendered
+     * concurrently. Values less than 2 select the serial code path.
+     */
+    private transient int thumbnailSetConcurrency = 1;
+
+    /** The in-memory cache of thumbnail bytes, may be <code>null</code>. */
+    private transient ThumbnailCache thumbnailCache;
+
+    /**
+     * Render state for a single Pixels set of a thumbnail set. Used in place
+     * of the bean's instance state so that thumbnail set members can be
+     * rendered concurrently without sharing a {@link Renderer}.
+     */
+    private static class ThumbnailRenderState
+    {
+        /** The Pixels set with its full description, for rendering. */
+        private Pixels pixels;
+
+        /** The rendering settings to render with. */
+        private RenderingDef settings;
+
+        /** The thumbnail metadata for the Pixels set. */
+        private Thumbnail metadata;
+
+        /** If the thumbnail metadata must be saved. */
+        private boolean dirtyMetadata;
+
+        /** If the Pixels set is having its pyramid generated. */
+        private boolean inProgress;
+
+        /** If the thumbnail may be read from the on disk cache. */
+        private boolean cached;
+
+        /** The key of the thumbnail in the in-memory cache. */
+        private ThumbnailCache.Key cacheKey;
+
+        /** The thumbnail bytes, if already found in the in-memory cache. */
+        private byte[] bytes;
+    }
+
     /**
      * overridden to allow Spring to set boolean
      * @param checking
@@ -471,6 +520,94 @@ public class ThumbnailBean extends AbstractLevel2Service
         this.settingsService = settingsService;
     }
 
+    /**
+     * Sets the pool used to render the members of a thumbnail set in
+     * parallel.
+     *
+     * @param thumbnailSetExecutor
+     *            an <code>ExecutorService</code>.
+     */
+    public void setThumbnailSetExecutor(ExecutorService thumbnailSetExecutor) {
+        this.thumbnailSetExecutor = thumbnailSetExecutor;
+    }
+
+    /**
+     * Sets the number of Pixels sets of a thumbnail set which may be rendered
+     * concurrently. Values less than 2 disable parallel rendering.
+     *
+     * @param thumbnailSetConcurrency
+     *            the maximum number of concurrent renders.
+     */
+    public void setThumbnailSetConcurrency(int thumbnailSetConcurrency) {
+        this.thumbnailSetConcurrency = thumbnailSetConcurrency;
+    }
+
+    /**
+     * Sets the in-memory cache of thumbnail bytes.
+     *
+     * @param thumbnailCache
+     *            a <code>ThumbnailCache</code>.
+     */
+    public void setThumbnailCache(ThumbnailCache thumbnailCache) {
+        this.thumbnailCache = thumbnailCache;
+    }
+
+    /**
+     * Builds the in-memory cache key of the thumbnail of a Pixels set.
+     *
+     * @param pixelsId the Pixels set ID.
+     * @param settings the rendering settings in use.
+     * @param metadata the thumbnail metadata.
+     * @return the key or <code>null</code> if the thumbnail is not to be
+     * cached in memory.
+     */
+    private ThumbnailCache.Key thumbnailCacheKey(long pixelsId,
+            RenderingDef settings, Thumbnail metadata) {
+        if (thumbnailCache == null || !thumbnailCache.isEnabled()) {
+            return null;
+        }
+        return ThumbnailCache.Key.of(pixelsId, settings,
+                ctx.getSettingsLastModifiedTime(pixelsId), metadata);
+    }
+
+    /**
+     * Retrieves thumbnail bytes from the in-memory cache. If the thumbnail
+     * metadata is dirty all cached thumbnails of the Pixels set are
+     * invalidated instead.
+     *
+     * @param pixelsId the Pixels set ID.
+     * @param key the key from
+     * {@link #thumbnailCacheKey(long, RenderingDef, Thumbnail)}.
+     * @return the thumbnail bytes or <code>null</code> on a cache miss.
+     */
+    private byte[] getCachedThumbnail(long pixelsId, ThumbnailCache.Key key) {
+        if (key == null) {
+            return null;
+        }
+        if (ctx.dirtyMetadata(pixelsId)) {
+            thumbnailCache.invalidate(pixelsId);
+            return null;
+        }
+        byte[] thumbnail = thumbnailCache.get(key);
+        if (thumbnail != null && log.isDebugEnabled()) {
+            log.debug("In-memory cache hit.");
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Adds thumbnail bytes to the in-memory cache.
+     *
+     * @param key the key from
+     * {@link #thumbnailCacheKey(long, RenderingDef, Thumbnail)}.
+     * @param thumbnail the thumbnail bytes.
+     */
+    private void putCachedThumbnail(ThumbnailCache.Key key, byte[] thumbnail) {
+        if (key != null) {
+            thumbnailCache.put(key, thumbnail);
+        }
+    }
+
     /**
      * Compresses a buffered image thumbnail to disk.
      *
@@ -484,7 +621,23 @@ public class ThumbnailBean extends AbstractLevel2Service
         if (diskSpaceChecking) {
             iRepositoryInfo.sanityCheckRepository();
         }
+        writeThumbnailToDisk(metadata, image, inProgress);
+    }
 
+    /**
+     * Writes a buffered image thumbnail to disk without checking the
+     * repository for available space.
+     *
+     * @param metadata  the thumbnail metadata.
+     * @param image the thumbnail's buffered image.
+     * @param inProgress if set to true, writes inProgressImageResource to disk
+     * @throws ResourceError if there is a problem writing to disk.
+     */
+    private void writeThumbnailToDisk(Thumbnail metadata, BufferedImage image, boolean inProgress)
+            throws IOException, ResourceError {
+        if (thumbnailCache != null && metadata.getPixels() != null) {
+            thumbnailCache.invalidate(metadata.getPixels().getId());
+        }
         try (FileOutputStream stream = ioService.getThumbnailOutputStream(metadata)) {
             if (inProgress) {
                 compressInProgressImageToStream(metadata.getSizeX(), metadata.getSizeY(),
@@ -603,7 +756,30 @@ public class ThumbnailBean extends AbstractLevel2Service
         {
             return null;
         }
+        return createScaledImage(
+                renderer, pixels, settings, thumbnailMetadata, theZ, theT);
+    }
 
+    /**
+     * Creates a scaled buffered image using the supplied render state rather
+     * than the bean's instance state. This is shared by the serial code path
+     * and the parallel thumbnail set workers, each of which owns its own
+     * {@link Renderer}.
+     *
+     * @param renderer the renderer to use, already bound to a pixel buffer.
+     * @param pixels the Pixels set being rendered.
+     * @param settings the rendering settings in use.
+     * @param metadata the thumbnail metadata providing the target size.
+     * @param theZ the optical section (offset across the Z-axis) requested.
+     * <pre>null</pre> signifies the rendering engine default.
+     * @param theT the timepoint (offset across the T-axis) requested.
+     * <pre>null</pre> signifies the rendering engine default.
+     * @return a scaled buffered image.
+     */
+    private BufferedImage createScaledImage(Renderer renderer, Pixels pixels,
+            RenderingDef settings, Thumbnail metadata, Integer theZ,
+            Integer theT)
+    {
         // Retrieve our rendered data
         if (theZ == null)
             theZ = settings.getDefaultZ();
@@ -626,8 +802,8 @@ public class ThumbnailBean extends AbstractLevel2Service
                 renderer.setResolutionLevel(resolutionLevel);
                 pixelBufferSizeX = pixelBuffer.getSizeX();
                 pixelBufferSizeY = pixelBuffer.getSizeY();
-                if (pixelBufferSizeX <= thumbnailMetadata.getSizeX()
-                    || pixelBufferSizeY <= thumbnailMetadata.getSizeY())
+                if (pixelBufferSizeX <= metadata.getSizeX()
+                    || pixelBufferSizeY <= metadata.getSizeY())
                 {
                     break;
                 }
@@ -651,9 +827,9 @@ public class ThumbnailBean extends AbstractLevel2Service
 
             // Finally, scale our image using scaling factors (percentage).
             float xScale = (float)
-                    thumbnailMetadata.getSizeX() / pixelBufferSizeX;
+                    metadata.getSizeX() / pixelBufferSizeX;
             float yScale = (float)
-                    thumbnailMetadata.getSizeY() / pixelBufferSizeY;
+                    metadata.getSizeY() / pixelBufferSizeY;
             log.debug(String.format("Using scaling factors x:%f y:%f",
                     xScale, yScale));
             return iScale.scaleBufferedImage(image, xScale, yScale);
@@ -1014,6 +1190,12 @@ public class ThumbnailBean extends AbstractLevel2Service
      */
     private Map<Long, byte[]> retrieveThumbnailSet(Set<Long> pixelsIds)
     {
+        if (thumbnailSetExecutor != null && thumbnailSetConcurrency > 1
+                && pixelsIds.size() > 1)
+        {
+            return retrieveThumbnailSetParallel(pixelsIds);
+        }
+
         // Our return value HashMap
         final Map<Long, byte[]> toReturn = new HashMap<Long, byte[]>();
 
@@ -1075,6 +1257,210 @@ public class ThumbnailBean extends AbstractLevel2Service
         return toReturn;
     }
 
+    /**
+     * Performs the logic of retrieving a set of thumbnails, rendering the
+     * thumbnails which are missing from the on disk cache in parallel. All
+     * database work, including the thumbnail metadata bookkeeping, happens on
+     * the calling thread; the pooled workers each own a {@link Renderer} and
+     * only render, compress and read back thumbnail bytes.
+     * @param pixelsIds The Pixels IDs to retrieve thumbnails for.
+     * @return Map of Pixels ID vs. thumbnail bytes.
+     */
+    private Map<Long, byte[]> retrieveThumbnailSetParallel(Set<Long> pixelsIds)
+    {
+        // Our return value HashMap
+        final Map<Long, byte[]> toReturn = new HashMap<Long, byte[]>();
+        final List<Family> families = getFamilies();
+        final List<RenderingModel> renderingModels = getRenderingModels();
+
+        new PerGroupActor(applicationContext, iQuery, null) {
+            @Override
+            protected void actOnOneGroup(Set<Long> pixelsIds) {
+                if (diskSpaceChecking) {
+                    iRepositoryInfo.sanityCheckRepository();
+                }
+                final Map<Long, ThumbnailRenderState> states =
+                        new HashMap<Long, ThumbnailRenderState>();
+                final Map<Long, Future<byte[]>> futures =
+                        new LinkedHashMap<Long, Future<byte[]>>();
+                for (final Long pixelsId : pixelsIds) {
+                    final ThumbnailRenderState state;
+                    try {
+                        state = prepareRenderState(pixelsId);
+                    } catch (Throwable t) {
+                        log.warn("Retrieving thumbnail in set for " + "Pixels ID " + pixelsId + " failed.", t);
+                        toReturn.put(pixelsId, null);
+                        continue;
+                    } finally {
+                        resetMetadata();
+                    }
+                    if (state == null) {
+                        continue;  // Not an in-progress image, no settings
+                    }
+                    states.put(pixelsId, state);
+                    futures.put(pixelsId, thumbnailSetExecutor.submit(
+                            new Callable<byte[]>() {
+                                @Override
+                                public byte[] call() throws Exception {
+                                    return renderThumbnail(
+                                            state, families, renderingModels);
+                                }
+                            }));
+                }
+                final List<Thumbnail> toSave = new ArrayList<Thumbnail>();
+                try {
+                    for (final Map.Entry<Long, Future<byte[]>> entry : futures.entrySet()) {
+                        final Long pixelsId = entry.getKey();
+                        final ThumbnailRenderState state = states.get(pixelsId);
+                        try {
+                            toReturn.put(pixelsId, entry.getValue().get());
+                            if (state.inProgress && !PROGRESS_VERSION.equals(state.metadata.getVersion())) {
+                                state.metadata.setVersion(PROGRESS_VERSION);
+                                state.dirtyMetadata = true;
+                            }
+                            if (state.dirtyMetadata) {
+                                toSave.add(state.metadata);
+                            }
+                        } catch (ExecutionException e) {
+                            log.warn("Retrieving thumbnail in set for " + "Pixels ID " + pixelsId + " failed.", e.getCause());
+                            toReturn.put(pixelsId, null);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    for (final Future<byte[]> future : futures.values()) {
+                        future.cancel(true);
+                    }
+                    Thread.currentThread().interrupt();
+                    InternalException ie = new InternalException(
+                            "Interrupted while rendering thumbnail set.");
+                    ie.initCause(e);
+                    throw ie;
+                }
+                // We're doing the update or creation and save as a two-step
+                // process due to the possible unloaded Pixels. If we do not,
+                // Pixels will be unloaded and we will hit
+                // IllegalStateException's when checking update events.
+                iUpdate.saveArray(toSave.toArray(new Thumbnail[toSave.size()]));
+                // Ensure that we do not have "dirty" pixels or rendering settings left
+                // around in the Hibernate session cache.
+                iQuery.clear();
+                iUpdate.flush();
+            }
+        }.actOnByGroup(pixelsIds);
+        return toReturn;
+    }
+
+    /**
+     * Prepares the render state of a single member of a thumbnail set. This
+     * performs all the work which requires the Hibernate session, using the
+     * bean's instance state as scratch space, and must therefore be called
+     * from the thread handling the service call.
+     * @param pixelsId The Pixels ID to prepare render state for.
+     * @return The render state or <code>null</code> if there are no rendering
+     * settings and no pyramid is being generated.
+     * @throws NoThumbnail If there is no thumbnail metadata.
+     */
+    private ThumbnailRenderState prepareRenderState(long pixelsId)
+            throws NoThumbnail
+    {
+        // Ensure that the renderer has been made dirty otherwise the
+        // same renderer will be used to return all thumbnails with dirty
+        // metadata. (See #2075).
+        resetMetadata();
+        if (!ctx.hasSettings(pixelsId)) {
+            try {
+                pixelDataService.getPixelBuffer(ctx.getPixels(pixelsId), false);
+                return null;  // No exception, not an in-progress image
+            } catch (ConcurrencyException e) {
+                log.debug("ConcurrencyException on prepareRenderState.ctx.hasSettings: pyramid in progress");
+                inProgress = true;
+            }
+        }
+        pixels = ctx.getPixels(pixelsId);
+        this.pixelsId = pixelsId;
+        settings = ctx.getSettings(pixelsId);
+        thumbnailMetadata = ctx.getMetadata(pixelsId);
+        errorIfNullPixelsAndRenderingDef();
+        if (inProgress && !PROGRESS_VERSION.equals(thumbnailMetadata.getVersion())) {
+            thumbnailMetadata.setVersion(PROGRESS_VERSION);
+            dirtyMetadata = true;
+        }
+        final ThumbnailRenderState state = new ThumbnailRenderState();
+        state.inProgress = inProgress;
+        if (!inProgress) {
+            state.cacheKey = thumbnailCacheKey(pixelsId, settings, thumbnailMetadata);
+            state.bytes = getCachedThumbnail(pixelsId, state.cacheKey);
+        }
+        if (!inProgress && state.bytes == null) {
+            state.cached = ctx.isThumbnailCached(pixelsId);
+            if (!state.cached) {
+                thumbnailMetadata = _createThumbnail(thumbnailMetadata);
+                state.pixels = iPixels.retrievePixDescription(pixelsId);
+                state.settings = iPixels.loadRndSettings(settings.getId());
+            }
+        }
+        state.metadata = thumbnailMetadata;
+        state.dirtyMetadata = dirtyMetadata;
+        return state;
+    }
+
+    /**
+     * Renders a single member of a thumbnail set, if required, and retrieves
+     * its bytes. Does not use the Hibernate session or any of the bean's
+     * instance state and so is safe to call from a pooled thread.
+     * @param state The render state prepared by
+     * {@link #prepareRenderState(long)}.
+     * @param families The families supported by the {@link Renderer}.
+     * @param renderingModels The rendering models supported by the
+     * {@link Renderer}.
+     * @return Thumbnail bytes.
+     * @throws IOException If there is a problem reading or writing the
+     * thumbnail.
+     */
+    private byte[] renderThumbnail(ThumbnailRenderState state,
+            List<Family> families, List<RenderingModel> renderingModels)
+            throws IOException
+    {
+        if (state.bytes != null) {
+            return state.bytes;
+        }
+        if (!state.inProgress && !state.cached) {
+            StopWatch s1 = new Slf4JStopWatch("omero.renderThumbnail");
+            Renderer renderer = null;
+            try {
+                // Loading last to try to ensure that the buffer will get closed.
+                PixelBuffer buffer =
+                        pixelDataService.getPixelBuffer(state.pixels, false);
+                renderer = new Renderer(new QuantumFactory(families),
+                        renderingModels, state.pixels, state.settings, buffer,
+                        lutProvider);
+                BufferedImage image = createScaledImage(renderer,
+                        state.pixels, state.settings, state.metadata,
+                        null, null);
+                writeThumbnailToDisk(state.metadata, image, false);
+            } catch (ConcurrencyException e) {
+                log.info("ConcurrencyException on renderThumbnail");
+                state.inProgress = true;
+            } finally {
+                if (renderer != null) {
+                    renderer.close();
+                }
+                s1.stop();
+            }
+        }
+        if (state.inProgress) {
+            try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream()) {
+                compressInProgressImageToStream(state.metadata.getSizeX(),
+                        state.metadata.getSizeY(), byteStream,
+                        inProgressImageResource);
+                return byteStream.toByteArray();
+            }
+        }
+        byte[] thumbnail = ioService.getThumbnail(state.metadata);
+        putCachedThumbnail(state.cacheKey, thumbnail);
+        return thumbnail;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -1170,6 +1556,14 @@ public class ThumbnailBean extends AbstractLevel2Service
                     0, 0, rewriteMetadata);
         }
 
+        final ThumbnailCache.Key cacheKey =
+                thumbnailCacheKey(pixels.getId(), settings, thumbnailMetadata);
+        byte[] cachedThumbnail = getCachedThumbnail(pixels.getId(), cacheKey);
+        if (cachedThumbnail != null)
+        {
+            return cachedThumbnail;
+        }
+
         try
         {
             boolean cached = ctx.isThumbnailCached(pixels.getId());
@@ -1209,6 +1603,8 @@ public class ThumbnailBean extends AbstractLevel2Service
             if (inProgress) {
                 ioService.removeThumbnails(
                         Arrays.asList(new Long[] { thumbnailMetadata.getId() }));
+            } else {
+                putCachedThumbnail(cacheKey, thumbnail);
             }
             return thumbnail;
         }
@@ -1226,12 +1622,20 @@ public class ThumbnailBean extends AbstractLevel2Service
      */
     private byte[] retrieveThumbnail(Thumbnail thumbMetaData) throws ResourceError {
         final long pixelsId = thumbMetaData.getPixels().getId();
+        final ThumbnailCache.Key cacheKey =
+                thumbnailCacheKey(pixelsId, settings, thumbMetaData);
+        byte[] cachedThumbnail = getCachedThumbnail(pixelsId, cacheKey);
+        if (cachedThumbnail != null) {
+            return cachedThumbnail;
+        }
         try {
             if (ctx.isThumbnailCached(pixelsId)) {
                 // If the thumbnail is not dirty, belongs to the user and is on disk
                 // try to load it.
                 try {
-                    return ioService.getThumbnail(thumbMetaData);
+                    byte[] thumbnail = ioService.getThumbnail(thumbMetaData);
+                    putCachedThumbnail(cacheKey, thumbnail);
+                    return thumbnail;
                 } catch (IOException e) {
                     if (log.isDebugEnabled()) {
                         log.debug("Cache miss, thumbnail missing or out of date.");
@@ -1289,7 +1693,9 @@ public class ThumbnailBean extends AbstractLevel2Service
         // If we get here the compressThumbnailToDisk method above succeeded and
         // we can load the thumbnail from disk
         try {
-            return ioService.getThumbnail(thumbnailMetadata);
+            byte[] thumbnail = ioService.getThumbnail(thumbnailMetadata);
+            putCachedThumbnail(cacheKey, thumbnail);
+            return thumbnail;
         } catch (IOException e) {
             log.error("Could not obtain thumbnail", e);
             throw new ResourceError(e.getMessage());
@@ -0,0 +1,282 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+import ome.model.display.RenderingDef;
+import ome.model.display.Thumbnail;
+import ome.services.util.CacheKeyIndex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Bounded in-memory cache of compressed thumbnail bytes which sits in front
+ * of the on disk thumbnail cache. A single instance is shared by all
+ * {@link ThumbnailBean} instances. Entries are weighed by their length in
+ * bytes so that the cache is bounded by memory use rather than entry count.
+ *
+ * Callers are expected to have performed all permission checks on the
+ * Pixels set and rendering settings before building a {@link Key}.
+ *
+ * @since 5.7.6
+ */
+@ManagedResource(objectName = "omero:type=ThumbnailCache",
+        description = "In-memory cache of compressed thumbnail bytes")
+public class ThumbnailCache
+{
+
+    /** The logger for this class. */
+    private static final Logger log =
+            LoggerFactory.getLogger(ThumbnailCache.class);
+
+    /**
+     * Identifies the bytes of a thumbnail. As the version of a
+     * {@link RenderingDef} is not incremented on every change, the last
+     * modification time of the settings also forms part of the key so that
+     * entries for superseded settings can never be returned.
+     */
+    public static final class Key
+    {
+        private final long pixelsId;
+
+        private final long settingsId;
+
+        private final int settingsVersion;
+
+        private final long settingsModified;
+
+        private final int sizeX;
+
+        private final int sizeY;
+
+        public Key(long pixelsId, long settingsId, int settingsVersion,
+                long settingsModified, int sizeX, int sizeY)
+        {
+            this.pixelsId = pixelsId;
+            this.settingsId = settingsId;
+            this.settingsVersion = settingsVersion;
+            this.settingsModified = settingsModified;
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+        }
+
+        /**
+         * Builds a key from the loaded rendering settings and thumbnail
+         * metadata of a Pixels set.
+         * @param pixelsId the Pixels set ID.
+         * @param settings the rendering settings, may be <code>null</code>.
+         * @param settingsModified the last modification time of the
+         * rendering settings, may be <code>null</code>.
+         * @param metadata the thumbnail metadata, may be <code>null</code>.
+         * @return the key or <code>null</code> if the thumbnail cannot be
+         * identified, in which case it must not be cached.
+         */
+        public static Key of(long pixelsId, RenderingDef settings,
+                Timestamp settingsModified, Thumbnail metadata)
+        {
+            if (settings == null || settings.getId() == null
+                    || metadata == null || metadata.getSizeX() == null
+                    || metadata.getSizeY() == null)
+            {
+                return null;
+            }
+            final Integer version = settings.getVersion();
+            return new Key(pixelsId, settings.getId(),
+                    version == null ? 0 : version,
+                    settingsModified == null ? 0 : settingsModified.getTime(),
+                    metadata.getSizeX(), metadata.getSizeY());
+        }
+
+        public long getPixelsId()
+        {
+            return pixelsId;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return pixelsId == other.pixelsId
+                    && settingsId == other.settingsId
+                    && settingsVersion == other.settingsVersion
+                    && settingsModified == other.settingsModified
+                    && sizeX == other.sizeX
+                    && sizeY == other.sizeY;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(pixelsId, settingsId, settingsVersion,
+                    settingsModified, sizeX, sizeY);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Key(pixels=%d, settings=%d:%d@%d, %dx%d)",
+                    pixelsId, settingsId, settingsVersion, settingsModified,
+                    sizeX, sizeY);
+        }
+    }
+
+    /** Maximum total size of the cached thumbnails in bytes. */
+    private final long maximumBytes;
+
+    /** The cache or <code>null</code> if caching is disabled. */
+    private final Cache<Key, byte[]> cache;
+
+    /** The cached keys by Pixels set ID. */
+    private final CacheKeyIndex<Key, byte[]> index =
+            new CacheKeyIndex<Key, byte[]>(Key::getPixelsId);
+
+    /**
+     * Creates a new cache.
+     * @param maximumBytes the maximum total size of the cached thumbnails in
+     * bytes. A value of zero or less disables the cache.
+     */
+    public ThumbnailCache(long maximumBytes)
+    {
+        this.maximumBytes = maximumBytes;
+        if (maximumBytes > 0)
+        {
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(maximumBytes)
+                    .weigher(new Weigher<Key, byte[]>() {
+                        @Override
+                        public int weigh(Key key, byte[] value) {
+                            return value.length;
+                        }
+                    })
+                    .removalListener(index)
+                    .recordStats()
+                    .build();
+            index.setCache(cache.asMap());
+        }
+        else
+        {
+            cache = null;
+        }
+        log.info("Thumbnail cache: maximum {} bytes", maximumBytes);
+    }
+
+    /**
+     * Whether or not thumbnails will be cached.
+     * @return See above.
+     */
+    public boolean isEnabled()
+    {
+        return cache != null;
+    }
+
+    /**
+     * Retrieves cached thumbnail bytes.
+     * @param key the thumbnail key, may be <code>null</code>.
+     * @return the thumbnail bytes or <code>null</code> on a cache miss.
+     */
+    public byte[] get(Key key)
+    {
+        if (cache == null || key == null)
+        {
+            return null;
+        }
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Caches thumbnail bytes. Empty thumbnails, as returned while a pyramid
+     * is being generated, are never cached.
+     * @param key the thumbnail key, may be <code>null</code>.
+     * @param value the thumbnail bytes, may be <code>null</code>.
+     */
+    public void put(Key key, byte[] value)
+    {
+        if (cache == null || key == null || value == null
+                || value.length == 0)
+        {
+            return;
+        }
+        index.put(key, value);
+    }
+
+    /**
+     * Removes all cached thumbnails of a given Pixels set, whichever
+     * settings and size they were rendered with.
+     * @param pixelsId the Pixels set ID.
+     */
+    public void invalidate(long pixelsId)
+    {
+        if (cache == null)
+        {
+            return;
+        }
+        cache.invalidateAll(index.remove(pixelsId));
+    }
+
+    @ManagedOperation(description = "Removes all cached thumbnails")
+    public void invalidateAll()
+    {
+        if (cache != null)
+        {
+            cache.invalidateAll();
+        }
+    }
+
+    @ManagedAttribute(description = "Maximum total size in bytes")
+    public long getMaximumBytes()
+    {
+        return maximumBytes;
+    }
+
+    @ManagedAttribute(description = "Number of cached thumbnails")
+    public long getSize()
+    {
+        return cache == null ? 0 : cache.size();
+    }
+
+    @ManagedAttribute(description = "Number of cache hits")
+    public long getHitCount()
+    {
+        return stats().hitCount();
+    }
+
+    @ManagedAttribute(description = "Number of cache misses")
+    public long getMissCount()
+    {
+        return stats().missCount();
+    }
+
+    @ManagedAttribute(description = "Number of thumbnails evicted for space")
+    public long getEvictionCount()
+    {
+        return stats().evictionCount();
+    }
+
+    private CacheStats stats()
+    {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+}
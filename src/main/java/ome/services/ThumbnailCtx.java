@@ -468,6 +468,18 @@ public class ThumbnailCtx
         return pixelsIdSettingsMap.get(pixelsId);
     }
 
+    /**
+     * Retrieves the last modification time of the RenderingDef object for a
+     * given Pixels ID.
+     * @param pixelsId Pixels ID to retrieve the modification time for.
+     * @return See above. May be <code>null</code> if the settings have not
+     * been loaded.
+     */
+    public Timestamp getSettingsLastModifiedTime(long pixelsId)
+    {
+        return pixelsIdSettingsLastModifiedTimeMap.get(pixelsId);
+    }
+
     /**
      * Retrieves the Thumbnail object for a given Pixels ID.
      * @param pixelsId Pixels ID to retrieve the Thumbnail object for.
@@ -24,6 +24,7 @@ import java.util.Set;
 import ome.io.bioformats.BfPyramidPixelBuffer;
 import ome.io.nio.AbstractFileSystemService;
 import ome.io.nio.PixelsService;
+import ome.services.histogram.PlaneStatisticsStore;
 
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.slf4j.Logger;
@@ -31,7 +32,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Registers the given file paths as well as other Pixel-related
- * files like Pyramids for later deletion via {@link #deleteLocal()}.
+ * files like Pyramids and plane statistics for later deletion via
+ * {@link #deleteLocal()}.
  *
  * @author Josh Moore, josh at glencoesoftware.com
  * @since 5.1.0-m3
@@ -46,6 +48,7 @@ public class PixelsFileDeletions extends AbstractFileDeletions {
             final String filePath = afs.getPixelsPath(id);
             final File file = new File(filePath);
             final File pyrFile = new File(filePath + PixelsService.PYRAMID_SUFFIX);
+            final File statsFile = new File(filePath + PlaneStatisticsStore.SUFFIX);
             final File dir = file.getParentFile();
             final File lockFile = new File(dir, "." + id + PixelsService.PYRAMID_SUFFIX
                 + BfPyramidPixelBuffer.PYR_LOCK_EXT);
@@ -56,6 +59,8 @@ public class PixelsFileDeletions extends AbstractFileDeletions {
             addLocalFile(pyrFile, id);
             // Now any lock file
             addLocalFile(lockFile, id);
+            // And any _planestats file
+            addLocalFile(statsFile, id);
 
             // Now any tmp files
             FileFilter tmpFileFilter = new WildcardFileFilter("."
@@ -0,0 +1,155 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.fulltext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ome.model.IObject;
+import ome.model.annotations.Annotation;
+import ome.model.annotations.FileAnnotation;
+import ome.model.core.OriginalFile;
+import ome.model.meta.Event;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Cache of the scalar values that {@link FullTextBridge} adds to a document
+ * for each linked annotation. An annotation linked to many objects, or to an
+ * object that is reindexed repeatedly, is then walked once per modification
+ * rather than once per parent document. The parsed contents of file
+ * annotations are held apart, by {@link ParsedContents}, so that large
+ * attachments need never be in memory. Entries are keyed by the
+ * id, version and update event of the annotation and of any file, so a
+ * modified annotation is simply missed and recomputed. The cache is bounded
+ * by the total number of characters held and no single fragment of more than
+ * {@link #MAX_FRAGMENT_CHARS} is cached.
+ *
+ * @since 5.7.6
+ */
+public class AnnotationFragments {
+
+    /** The length of the values of the largest fragment that is cached. */
+    public static final int MAX_FRAGMENT_CHARS = 65536;
+
+    /**
+     * The values to add for one annotation, in order. Immutable once cached.
+     */
+    public static final class Fragment {
+
+        /** Values passed to {@link BridgeHelper#add}: field, value pairs. */
+        final List<String[]> values = new ArrayList<String[]>();
+
+        private int weight = 0;
+
+        void add(String field, String value) {
+            if (value == null) {
+                throw new RuntimeException(
+                        "Value for indexing cannot be null. Use a null token instead.");
+            }
+            values.add(new String[] { field, value });
+            weight += value.length();
+        }
+    }
+
+    private final Cache<String, Fragment> cache;
+
+    /**
+     * @param maxChars the total length of the values to hold, zero or less
+     * disables caching
+     */
+    public AnnotationFragments(long maxChars) {
+        if (maxChars > 0) {
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(maxChars)
+                    .weigher(new Weigher<String, Fragment>() {
+                        @Override
+                        public int weigh(String key, Fragment fragment) {
+                            return fragment.weight;
+                        }
+                    }).build();
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * @param annotation an annotation
+     * @return the key for caching the annotation's fragment, or null if the
+     * annotation cannot be identified as unchanged
+     */
+    static String key(Annotation annotation) {
+        final StringBuilder sb = new StringBuilder();
+        if (!appendVersion(sb, annotation)) {
+            return null;
+        }
+        if (annotation instanceof FileAnnotation) {
+            final OriginalFile file = ((FileAnnotation) annotation).getFile();
+            if (file != null) {
+                final String fileKey = key(file);
+                if (fileKey == null) {
+                    return null;
+                }
+                sb.append('/').append(fileKey);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param file a file
+     * @return the key for caching the file's parsed contents, or null if the
+     * file cannot be identified as unchanged
+     */
+    static String key(OriginalFile file) {
+        final StringBuilder sb = new StringBuilder();
+        if (!appendVersion(sb, file)) {
+            return null;
+        }
+        sb.append(':').append(file.getSize()).append(':').append(file.getHash());
+        sb.append(':').append(file.getMimetype());
+        return sb.toString();
+    }
+
+    private static boolean appendVersion(StringBuilder sb, IObject object) {
+        if (object.getId() == null || !object.isLoaded()) {
+            return false;
+        }
+        sb.append(object.getId()).append(':').append(object.getVersion());
+        final Event update = object.getDetails() == null ? null
+                : object.getDetails().getUpdateEvent();
+        sb.append(':').append(update == null ? null : update.getId());
+        return true;
+    }
+
+    /**
+     * @param key a key from {@link #key(Annotation)}, may be null
+     * @return the cached fragment or null
+     */
+    Fragment get(String key) {
+        return cache == null || key == null ? null : cache.getIfPresent(key);
+    }
+
+    /**
+     * @param key a key from {@link #key(Annotation)}, may be null
+     * @param fragment the fragment to hold, ignored if larger than
+     * {@link #MAX_FRAGMENT_CHARS}
+     */
+    void put(String key, Fragment fragment) {
+        if (cache != null && key != null && fragment.weight <= MAX_FRAGMENT_CHARS) {
+            cache.put(key, fragment);
+        }
+    }
+
+    /**
+     * @return the number of fragments held
+     */
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+}
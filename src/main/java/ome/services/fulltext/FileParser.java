@@ -5,10 +5,15 @@
 
 package ome.services.fulltext;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -39,6 +44,8 @@ public class FileParser implements ApplicationContextAware {
 
     protected long maxFileSize = 10000L; // default test is 8.8KB
 
+    protected int chunkSize = 1 << 20;
+
     public void setApplicationContext(ApplicationContext arg0)
             throws BeansException {
         context = (OmeroContext) arg0;
@@ -54,6 +61,14 @@ public class FileParser implements ApplicationContextAware {
         this.maxFileSize = size;
     }
 
+    /**
+     * Sets the number of bytes of a file after which {@link #doParse(File)}
+     * looks for white space at which to start a new chunk.
+     */
+    public void setChunkSize(int size) {
+        this.chunkSize = size;
+    }
+
     /**
      * {@link Iterable} which returns an empty {@link Iterator}. This will be
      * used in case
@@ -130,11 +145,14 @@ public class FileParser implements ApplicationContextAware {
     /**
      * Template method to parse a {@link File} into manageable chunks.
      * 
-     * The default implementation reads from the file lazily with chunks
-     * overlapping on the final white space. For example a file with:
+     * The default implementation reads from the file lazily in chunks of
+     * about {@link #setChunkSize(int) chunk size} bytes split on the final
+     * white space. For example a file with:
      * <code>The quick brown fox jumps over the lazy dog</code> might be
-     * parsed to: <code>The quick brown fox jumps</code> and
-     * <code>jumps over the lazy dog</code>.
+     * parsed to: <code>The quick brown fox</code> and
+     * <code>jumps over the lazy dog</code>. Each chunk is only read from
+     * disk as its {@link Reader} is consumed so memory use does not grow
+     * with the size of the file.
      * 
      * Receives a non-null, {@link File#canRead() readable} {@link File}
      * instance from {@link #parse(File)} and can return a possible null
@@ -144,20 +162,20 @@ public class FileParser implements ApplicationContextAware {
      * will be returned to the consumer.
      */
     public Iterable<Reader> doParse(File file) throws Exception {
-        FileReader reader = new FileReader(file);
-        BufferedReader buffered = new BufferedReader(reader);
-        context.publishEvent(new ParserOpenFileMessage(this, buffered) {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        context.publishEvent(new ParserOpenFileMessage(this, channel) {
             @Override
             public void close() {
                 try {
-                    Reader r = (Reader) resource;
-                    r.close();
+                    FileChannel c = (FileChannel) resource;
+                    c.close();
                 } catch (Exception e) {
                     log.debug("Error closing " + resource, e);
                 }
             }
         });
-        Iterator<Reader> it = new SingleIterator(buffered);
+        Iterator<Reader> it = new ChunkedFileIterator(channel, chunkSize);
         return wrap(it);
     }
 
@@ -221,52 +239,58 @@ public class FileParser implements ApplicationContextAware {
         }
     }
 
-    private static class OverlappingChunkFileIterator implements
-            Iterator<String> {
+    /**
+     * Splits a file into byte ranges of about the chunk size which end on
+     * white space, and returns a {@link Reader} for each. Finding the end of
+     * a range reads only the bytes just before it, and the range itself is
+     * read only as its {@link Reader} is consumed. White space bytes never
+     * occur within the multi-byte characters of the supported encodings so
+     * the ranges decode cleanly. The file is closed once the last range has
+     * been read.
+     */
+    private static class ChunkedFileIterator implements Iterator<Reader> {
 
-        private static final String linesep = System
-                .getProperty("line.separator");
+        /**
+         * How far back from the chunk size to look for white space before
+         * splitting a word.
+         */
+        private static final int scan = 4096;
 
-        private static final int size = 10000;
+        private final Charset charset = Charset.defaultCharset();
 
-        private final long fileSize;
+        private final FileChannel channel;
 
-        private final char[] buf;
+        private final int chunkSize;
 
-        private String next;
+        private final long fileSize;
 
-        /*
-         * will be closed nulled out when finished.
-         */
-        private BufferedReader reader;
-
-        public OverlappingChunkFileIterator(File file) throws Exception {
-            this.fileSize = file.length();
-            if (fileSize > Integer.MAX_VALUE) {
-                throw new RuntimeException(String.format(
-                        "%s file is too large for current implementation: %s",
-                        file, fileSize));
-            }
-            this.reader = new BufferedReader(new FileReader(file), size);
-            this.buf = new char[size];
+        private long position;
+
+        public ChunkedFileIterator(FileChannel channel, int chunkSize)
+                throws IOException {
+            this.channel = channel;
+            this.chunkSize = Math.max(chunkSize, 1);
+            this.fileSize = channel.size();
         }
 
         public boolean hasNext() {
-
-            if (next == null) {
-                next = doRead();
-            }
-            return next != null;
+            return position < fileSize;
         }
 
-        public String next() {
-
-            if (!hasNext()) { // does doRead()
+        public Reader next() {
+            if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            String rv = next;
-            next = null;
-            return rv;
+            final long start = position;
+            long end = start + chunkSize;
+            if (end >= fileSize) {
+                end = fileSize;
+            } else {
+                end = afterWhiteSpace(start, end);
+            }
+            position = end;
+            return new InputStreamReader(new ChunkInputStream(start, end,
+                    end == fileSize), charset);
         }
 
         public void remove() {
@@ -274,38 +298,83 @@ public class FileParser implements ApplicationContextAware {
         }
 
         /**
-         * Intermediate method which parses whole file into a single String.
-         * Please see the restriction in the constructor on filesize.
+         * @return the position just after the last white space before
+         * <code>end</code> or <code>end</code> itself if there is none
+         * within {@link #scan} bytes.
          */
-        private String doRead() {
+        private long afterWhiteSpace(long start, long end) {
+            final long from = Math.max(start, end - scan);
+            final ByteBuffer bytes = ByteBuffer.allocate((int) (end - from));
+            try {
+                while (bytes.hasRemaining()) {
+                    if (channel.read(bytes, from + bytes.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error while parsing file", e);
+            }
+            for (int i = bytes.position() - 1; i >= 0; i--) {
+                switch (bytes.get(i)) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                case '\f':
+                    return from + i + 1;
+                default:
+                }
+            }
+            return end;
+        }
+
+        /**
+         * Reads a byte range of the file with positional reads, so that
+         * ranges do not depend on one another.
+         */
+        private class ChunkInputStream extends InputStream {
+
+            private long position;
+
+            private final long end;
+
+            private final boolean isLast;
 
-            if (reader == null) {
-                return null;
+            ChunkInputStream(long start, long end, boolean isLast) {
+                this.position = start;
+                this.end = end;
+                this.isLast = isLast;
             }
 
-            StringBuffer sb = new StringBuffer((int) fileSize);
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
 
-            int rv = -1;
-            try {
-                while ((rv = reader.read(buf)) != -1) {
-                    sb.append(buf, 0, rv);
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= end) {
+                    close();
+                    return -1;
                 }
-            } catch (Exception e) {
-                throw new RuntimeException("Error while parsing file", e);
+                final int n = (int) Math.min(len, end - position);
+                final int rv = channel.read(ByteBuffer.wrap(b, off, n),
+                        position);
+                if (rv < 0) {
+                    position = end;
+                    close();
+                    return -1;
+                }
+                position += rv;
+                return rv;
             }
-            closeReader();
-            return sb.toString();
 
-        }
-
-        private void closeReader() {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (Exception e) {
-                    // must ignore
-                } finally {
-                    reader = null;
+            @Override
+            public void close() throws IOException {
+                position = end;
+                if (isLast) {
+                    channel.close();
                 }
             }
         }
@@ -32,6 +32,8 @@ import ome.model.meta.Event;
 import ome.model.meta.Experimenter;
 import ome.model.meta.ExperimenterGroup;
 import ome.model.roi.Roi;
+import ome.services.messages.ParserOpenFileMessage;
+import ome.services.search.VisibilityFilter;
 import ome.util.DetailsFieldBridge;
 import ome.util.Utils;
 import org.apache.lucene.document.Document;
@@ -43,6 +45,7 @@ import org.hibernate.search.bridge.FieldBridge;
 import org.hibernate.search.bridge.LuceneOptions;
 import org.hibernate.search.bridge.builtin.DateBridge;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.util.Iterator;
 import java.util.List;
@@ -66,6 +69,8 @@ public class FullTextBridge extends BridgeHelper {
     final protected Map<String, FileParser> parsers;
     final protected Class<FieldBridge>[] classes;
     protected int maxFilesetSize;
+    protected AnnotationFragments fragments = new AnnotationFragments(0);
+    protected ParsedContents contents = new ParsedContents(0, null, 0);
 
     /**
      * Since this constructor provides the instance with no way of parsing
@@ -118,6 +123,27 @@ public class FullTextBridge extends BridgeHelper {
         this.maxFilesetSize = maxFilesetSize;
     }
 
+    /**
+     * Sets how many characters of annotation values are kept for reuse
+     * across documents.
+     * @param annotationCacheSize the total number of characters, zero or less
+     * disables the cache
+     * @see AnnotationFragments
+     */
+    public void setAnnotationCacheSize(long annotationCacheSize) {
+        logger().info("Setting annotation cache size to {}", annotationCacheSize);
+        this.fragments = new AnnotationFragments(annotationCacheSize);
+    }
+
+    /**
+     * Sets the cache of parsed file contents reused across documents.
+     * @param contents the cache
+     * @see ParsedContents
+     */
+    public void setParsedContents(ParsedContents contents) {
+        this.contents = contents;
+    }
+
     /**
      * Default implementation of the
      * {@link #set(String, Object, Document, LuceneOptions)}
@@ -198,54 +224,30 @@ public class FullTextBridge extends BridgeHelper {
                 if (annotation instanceof HibernateProxy) {
                     annotation = (Annotation) ((HibernateProxy) annotation).getHibernateLazyInitializer().getImplementation();
                 }
-                final String at = annotation.getClass().getSimpleName();
-                add(document, "annotation.type", at, opts);
-                if (annotation.getName() != null) {
-                    add(document, "annotation.name", annotation.getName(), opts);
+                final String key = AnnotationFragments.key(annotation);
+                AnnotationFragments.Fragment fragment = fragments.get(key);
+                if (fragment == null) {
+                    fragment = fragment(annotation);
+                    fragments.put(key, fragment);
                 }
-                if (annotation.getNs() != null) {
-                    add(document, "annotation.ns", annotation.getNs(), opts);
+                add(document, fragment, opts);
+                if (annotation instanceof FileAnnotation) {
+                    // Cached apart: large contents are streamed from disk
+                    addFileContents(document, opts, (FileAnnotation) annotation);
                 }
-                if (annotation instanceof TermAnnotation) {
-                    TermAnnotation term = (TermAnnotation) annotation;
-                    String termValue = term.getTermValue();
-                    termValue = termValue == null ? "" : termValue;
-                    add(document, "term", termValue, opts);
-                } else if (annotation instanceof DoubleAnnotation) {
-                    final Double value = ((DoubleAnnotation) annotation).getDoubleValue();
-                    if (value != null) {
-                        add(document, "annotation", value.toString(), opts);
-                    }
-                } else if (annotation instanceof LongAnnotation) {
-                    final Long value = ((LongAnnotation) annotation).getLongValue();
-                    if (value != null) {
-                        add(document, "annotation", value.toString(), opts);
-                    }
-                } else if (annotation instanceof TextAnnotation) {
-                    TextAnnotation text = (TextAnnotation) annotation;
-                    String textValue = text.getTextValue();
-                    textValue = textValue == null ? "" : textValue;
-                    add(document, "annotation", textValue, opts);
-                    if (annotation instanceof TagAnnotation) {
-                        add(document, "tag", textValue, opts);
-                        List<Annotation> list2 = annotation
-                                .linkedAnnotationList();
-                        for (Annotation annotation2 : list2) {
-                            if (annotation2 instanceof TextAnnotation) {
-                                TextAnnotation text2 = (TextAnnotation) annotation2;
-                                String textValue2 = text2.getTextValue();
-                                textValue2 = textValue2 == null ? ""
-                                        : textValue2;
-                                add(document, "annotation", textValue2, opts);
-                            }
+                if (annotation instanceof TagAnnotation) {
+                    // Not cached: linking these does not modify the tag
+                    List<Annotation> list2 = annotation
+                            .linkedAnnotationList();
+                    for (Annotation annotation2 : list2) {
+                        if (annotation2 instanceof TextAnnotation) {
+                            TextAnnotation text2 = (TextAnnotation) annotation2;
+                            String textValue2 = text2.getTextValue();
+                            textValue2 = textValue2 == null ? ""
+                                    : textValue2;
+                            add(document, "annotation", textValue2, opts);
                         }
                     }
-                } else if (annotation instanceof FileAnnotation) {
-                    FileAnnotation fileAnnotation = (FileAnnotation) annotation;
-                    handleFileAnnotation(document, opts, fileAnnotation);
-                } else if (annotation instanceof MapAnnotation) {
-                    MapAnnotation mapAnnotation = (MapAnnotation) annotation;
-                    handleMapAnnotation(document, opts, mapAnnotation);
                 }
             }
         }
@@ -254,10 +256,71 @@ public class FullTextBridge extends BridgeHelper {
         // Don't use if/else
         if (object instanceof FileAnnotation) {
             FileAnnotation fileAnnotation = (FileAnnotation) object;
-            handleFileAnnotation(document, opts, fileAnnotation);
+            final AnnotationFragments.Fragment fragment = new AnnotationFragments.Fragment();
+            handleFileAnnotation(fragment, fileAnnotation);
+            add(document, fragment, opts);
+            addFileContents(document, opts, fileAnnotation);
         } else if (object instanceof MapAnnotation) {
             MapAnnotation mapAnnotation = (MapAnnotation) object;
-            handleMapAnnotation(document, opts, mapAnnotation);
+            final AnnotationFragments.Fragment fragment = new AnnotationFragments.Fragment();
+            handleMapAnnotation(fragment, mapAnnotation);
+            add(document, fragment, opts);
+        }
+    }
+
+    /**
+     * Collects the values to index for a single linked annotation, other than
+     * the contents of any file and those of the annotations linked to a tag.
+     */
+    private AnnotationFragments.Fragment fragment(Annotation annotation) {
+        final AnnotationFragments.Fragment fragment = new AnnotationFragments.Fragment();
+        final String at = annotation.getClass().getSimpleName();
+        fragment.add("annotation.type", at);
+        if (annotation.getName() != null) {
+            fragment.add("annotation.name", annotation.getName());
+        }
+        if (annotation.getNs() != null) {
+            fragment.add("annotation.ns", annotation.getNs());
+        }
+        if (annotation instanceof TermAnnotation) {
+            TermAnnotation term = (TermAnnotation) annotation;
+            String termValue = term.getTermValue();
+            termValue = termValue == null ? "" : termValue;
+            fragment.add("term", termValue);
+        } else if (annotation instanceof DoubleAnnotation) {
+            final Double value = ((DoubleAnnotation) annotation).getDoubleValue();
+            if (value != null) {
+                fragment.add("annotation", value.toString());
+            }
+        } else if (annotation instanceof LongAnnotation) {
+            final Long value = ((LongAnnotation) annotation).getLongValue();
+            if (value != null) {
+                fragment.add("annotation", value.toString());
+            }
+        } else if (annotation instanceof TextAnnotation) {
+            TextAnnotation text = (TextAnnotation) annotation;
+            String textValue = text.getTextValue();
+            textValue = textValue == null ? "" : textValue;
+            fragment.add("annotation", textValue);
+            if (annotation instanceof TagAnnotation) {
+                fragment.add("tag", textValue);
+            }
+        } else if (annotation instanceof FileAnnotation) {
+            handleFileAnnotation(fragment, (FileAnnotation) annotation);
+        } else if (annotation instanceof MapAnnotation) {
+            handleMapAnnotation(fragment, (MapAnnotation) annotation);
+        }
+        return fragment;
+    }
+
+    /**
+     * Adds the values of an annotation as
+     * {@link #add(Document, String, String, LuceneOptions)} would have.
+     */
+    private void add(Document document, AnnotationFragments.Fragment fragment,
+            LuceneOptions opts) {
+        for (String[] value : fragment.values) {
+            add(document, value[0], value[1], opts);
         }
     }
 
@@ -323,6 +386,9 @@ public class FullTextBridge extends BridgeHelper {
         Details details = object.getDetails();
         if (details != null) {
             Experimenter e = details.getOwner();
+            if (e != null && e.getId() != null) {
+                addId(document, VisibilityFilter.OWNER_ID, e.getId());
+            }
             if (e != null && e.isLoaded()) {
                 String omename = e.getOmeName();
                 String firstName = e.getFirstName();
@@ -333,6 +399,9 @@ public class FullTextBridge extends BridgeHelper {
             }
 
             ExperimenterGroup g = details.getGroup();
+            if (g != null && g.getId() != null) {
+                addId(document, VisibilityFilter.GROUP_ID, g.getId());
+            }
             if (g != null && g.isLoaded()) {
                 String groupName = g.getName();
                 add(document, "details.group.name", groupName, stored);
@@ -370,6 +439,16 @@ public class FullTextBridge extends BridgeHelper {
 
     }
 
+    /**
+     * Adds an id which is only used for filtering, so unlike
+     * {@link #add(Document, String, String, LuceneOptions)} it is neither
+     * stored, tokenized nor added to the combined fields.
+     */
+    private static void addId(Document document, String field, Long id) {
+        document.add(new Field(field, id.toString(), Store.NO,
+                Index.NOT_ANALYZED_NO_NORMS));
+    }
+
     /**
      * Walks the various {@link Folder} instances attached to the object
      * argument so that it may be found via its immediate parent folder.
@@ -468,52 +547,124 @@ public class FullTextBridge extends BridgeHelper {
     }
 
     /**
-     * Creates {@link Field} instances for {@link FileAnnotation} objects.
+     * Collects the values to index for {@link FileAnnotation} objects other
+     * than the file contents, which are added by
+     * {@link #addFileContents(Document, LuceneOptions, FileAnnotation)}.
      *
-     * @param document
-     * @param opts
+     * @param fragment
      * @param fileAnnotation
      */
-    private void handleFileAnnotation(final Document document,
-            final LuceneOptions opts, FileAnnotation fileAnnotation) {
+    private void handleFileAnnotation(final AnnotationFragments.Fragment fragment,
+            FileAnnotation fileAnnotation) {
         OriginalFile file = fileAnnotation.getFile();
         if (file != null) {
             // None of these values can be null
-            add(document, "file.name", file.getName(), opts);
-            add(document, "file.path", file.getPath(), opts);
+            fragment.add("file.name", file.getName());
+            fragment.add("file.path", file.getPath());
             if (file.getHasher() != null) {
-                add(document, "file.hasher", file.getHasher().getValue(), opts);
+                fragment.add("file.hasher", file.getHasher().getValue());
             }
             if (file.getHash() != null) {
-                add(document, "file.hash", file.getHash(), opts);
+                fragment.add("file.hash", file.getHash());
             }
             if (file.getMimetype() != null) {
-                add(document, "file.format", file.getMimetype(), opts);
+                fragment.add("file.format", file.getMimetype());
                 // ticket:2211 - duplicating for backwards compatibility
-                add(document, "file.mimetype", file.getMimetype(), opts);
+                fragment.add("file.mimetype", file.getMimetype());
             }
-            addContents(document, "file.contents", file, files, parsers, opts);
         }
     }
 
     /**
-     * Creates {@link Field} instances for {@link MapAnnotation} named-value
-     * pair.
+     * Creates {@link Field} instances for the parsed contents of
+     * {@link FileAnnotation} objects, taken from the {@link ParsedContents}
+     * if cached there and otherwise parsed afresh.
      *
      * @param document
      * @param opts
+     * @param fileAnnotation
+     */
+    private void addFileContents(final Document document,
+            final LuceneOptions opts, FileAnnotation fileAnnotation) {
+        final OriginalFile file = fileAnnotation.getFile();
+        if (file == null) {
+            return;
+        }
+        final ParsedContents.Contents parsed = contents.get(
+                AnnotationFragments.key(file), () -> parse(file, files, parsers));
+        if (parsed == null || !addContents(document, parsed, opts)) {
+            addContents(document, "file.contents", file, files, parsers, opts);
+        }
+    }
+
+    /**
+     * Adds cached parsed contents both to "file.contents" and to
+     * {@link #COMBINED}, as
+     * {@link #addContents(Document, String, OriginalFile, OriginalFilesService, Map, LuceneOptions)}
+     * does. The readers are registered to be closed with those of the parsers.
+     *
+     * @return if the contents could be read, else nothing is added
+     */
+    private boolean addContents(final Document document,
+            final ParsedContents.Contents parsed, final LuceneOptions opts) {
+        final Reader named, combined;
+        try {
+            named = parsed.open();
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            combined = parsed.open();
+        } catch (IOException e) {
+            closeQuietly(named);
+            return false;
+        }
+        final Float boost = opts.getBoost();
+        for (final Field f : new Field[] {
+                new Field("file.contents", named), new Field(COMBINED, combined) }) {
+            if (boost != null) {
+                f.setBoost(boost);
+            }
+            document.add(f);
+        }
+        if (publisher != null) {
+            for (final Reader reader : new Reader[] { named, combined }) {
+                publisher.publishEvent(new ParserOpenFileMessage(this, reader) {
+                    @Override
+                    public void close() {
+                        closeQuietly((Reader) resource);
+                    }
+                });
+            }
+        }
+        return true;
+    }
+
+    private void closeQuietly(Reader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            logger().debug("Error closing " + reader, e);
+        }
+    }
+
+    /**
+     * Collects the values to index for a {@link MapAnnotation} named-value
+     * pair.
+     *
+     * @param fragment
      * @param mapAnnotation
      */
-    private void handleMapAnnotation(final Document document,
-            final LuceneOptions opts, MapAnnotation mapAnnotation) {
+    private void handleMapAnnotation(final AnnotationFragments.Fragment fragment,
+            MapAnnotation mapAnnotation) {
         List<NamedValue> nvs = mapAnnotation.getMapValue();
         if (nvs != null && nvs.size() > 0) {
             for (NamedValue nv : nvs) {
                 if (nv != null) {
-                    add(document, nv.getName(), nv.getValue(), opts);
-                    add(document, "has_key", nv.getName(), opts);
-                    add(document, "annotation", nv.getValue(), opts);
-                    add(document, "annotation", nv.getName(), opts);
+                    fragment.add(nv.getName(), nv.getValue());
+                    fragment.add("has_key", nv.getName());
+                    fragment.add("annotation", nv.getValue());
+                    fragment.add("annotation", nv.getName());
                 }
             }
         }
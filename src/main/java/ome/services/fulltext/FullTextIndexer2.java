@@ -24,15 +24,23 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicReference;
 
 import ome.model.IObject;
 import ome.model.meta.EventLog;
+import ome.services.search.IndexWatcher;
 import ome.util.DetailsFieldBridge;
 
 import com.google.common.base.CaseFormat;
@@ -40,7 +48,9 @@ import com.google.common.base.Converter;
 import com.google.common.base.Splitter;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.CacheMode;
@@ -104,8 +114,8 @@ import org.springframework.scheduling.quartz.MethodInvokingJobDetailFactoryBean;
  * <dt><tt>INDEX</tt></dt>
  * <dd><ol>
  * <li>If locking the field bridge fails then schedule <tt>INDEX</tt> for delayed execution then finish.
- * <li>Index a batch of objects all in the same transaction.
- * <li>If a field bridge fails then trigger <tt>INDEX_RETRY</tt> to retry one object at a time.
+ * <li>Index a batch of objects in chunks, each in its own session and transaction, on the indexing workers.
+ * <li>If a field bridge fails for a chunk then trigger <tt>INDEX_RETRY</tt> to retry its objects one at a time.
  * <li>Then if objects were deleted then trigger <tt>PURGE</tt>.
  * <li>Else trigger <tt>NOTE</tt>.
  * </ol></dd>
@@ -134,6 +144,12 @@ import org.springframework.scheduling.quartz.MethodInvokingJobDetailFactoryBean;
  * <li>Then trigger <tt>PREPARE</tt>.
  * </ol></dd>
  * </dl>
+ * <p>
+ * Indexing is pipelined: the <tt>INDEX</tt> job loads the batch noted from the event log and divides it into chunks,
+ * {@code omero.search.index_threads} workers each load a chunk's objects in a session of their own and run the field
+ * bridge to build their Lucene documents, and Hibernate Search's backend applies the documents through its single
+ * index writer as each chunk commits. The field bridge lock is held by the <tt>INDEX</tt> job on the workers' behalf;
+ * the workers share the bridge, which keeps no state of its own between objects.
  * @author m.t.b.carroll@dundee.ac.uk
  * @since 5.5.0
  */
@@ -191,6 +207,11 @@ public class FullTextIndexer2 {
      */
     private static final int BATCH_SIZE = 256;
 
+    /**
+     * Maximum number of model objects to index in one transaction by an indexing worker.
+     */
+    private static final int CHUNK_SIZE = 32;
+
     /**
      * After how many purges to defragment the search index.
      */
@@ -218,6 +239,13 @@ public class FullTextIndexer2 {
 
     private boolean isIndexerDisabled;
 
+    private int indexThreads = 1;
+
+    /**
+     * The indexing workers, or {@code null} to index on the Quartz thread.
+     */
+    private ExecutorService workers;
+
     private final AtomicReference<JobKey[]> jobs = new AtomicReference<>();
 
     private final SetMultimap<String, Long> toIndex = HashMultimap.create();
@@ -265,6 +293,17 @@ public class FullTextIndexer2 {
         this.isIndexerDisabled = StringUtils.isBlank(cronExpression);
     }
 
+    /**
+     * Set how many threads index model objects concurrently.
+     * Each reviews {@link #BATCH_SIZE} event log entries per indexer run
+     * and each beyond the first takes a database connection from the pool
+     * while indexing a chunk.
+     * @param indexThreads the number of indexing workers
+     */
+    public void setIndexThreads(int indexThreads) {
+        this.indexThreads = Math.max(1, indexThreads);
+    }
+
     // HELPERS FOR SCHEDULING JOBS //
 
     /**
@@ -317,7 +356,11 @@ public class FullTextIndexer2 {
             LOGGER.warn("not starting indexer: it is already running");
             return;
         }
-        LOGGER.info("starting indexer");
+        LOGGER.info("starting indexer with {} indexing threads", indexThreads);
+        if (indexThreads > 1) {
+            workers = Executors.newFixedThreadPool(indexThreads,
+                    new ThreadFactoryBuilder().setNameFormat("FullTextIndexer2-%d").setDaemon(true).build());
+        }
         final Converter<String, String> nameConverter = CaseFormat.UPPER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL);
         try {
             for (final Step step : Step.values()) {
@@ -361,6 +404,10 @@ public class FullTextIndexer2 {
         } catch (Throwable t) {
             LOGGER.error("failed to stop indexer promptly", t);
         }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
         LOGGER.info("stopped indexer");
     }
 
@@ -465,7 +512,7 @@ public class FullTextIndexer2 {
             });
             final String hql = "FROM EventLog WHERE id > :id AND action IN (:actions) ORDER BY id";
             final Query query = session.createQuery(hql);
-            query.setMaxResults(BATCH_SIZE);
+            query.setMaxResults(BATCH_SIZE * indexThreads);
             query.setParameter("id", eventLogId);
             query.setParameterList("actions", actions);
             @SuppressWarnings("unchecked")
@@ -526,7 +573,49 @@ public class FullTextIndexer2 {
     }
 
     /**
-     * Index a batch of model objects all at once.
+     * Index a chunk of model objects of the same type in a session and transaction of its own.
+     * Called concurrently by the indexing workers.
+     * @param entityType the type of the model objects
+     * @param entityIds the IDs of the model objects
+     * @return if the chunk was indexed, {@code false} if a field bridge failed
+     */
+    private boolean indexChunk(String entityType, Collection<Long> entityIds) {
+        final ParserSession parserSession = new ParserSession();
+        final Session session = sessionFactory.openSession();
+        try {
+            final FullTextSession fullTextSession = Search.getFullTextSession(session);
+            fullTextSession.setCacheMode(CacheMode.IGNORE);
+            fullTextSession.setFlushMode(FlushMode.COMMIT);
+            final Transaction transaction = fullTextSession.beginTransaction();
+            final String hql = "FROM " + entityType + " WHERE id IN (:ids)";
+            final Query query = fullTextSession.createQuery(hql);
+            query.setParameterList("ids", entityIds);
+            query.setReadOnly(true);
+            for (final Object entity : query.list()) {
+                @SuppressWarnings("unchecked")
+                final Class<? extends IObject> entityClass = Hibernate.getClass(entity);
+                if (isIncluded(entityClass)) {
+                    LOGGER.debug("indexing {}:{}", entityType, ((IObject) entity).getId());
+                    fullTextSession.index(entity);
+                } else {
+                    LOGGER.debug("skipping {}:{}", entityType, ((IObject) entity).getId());
+                }
+            }
+            /* documents are built here then passed to the index writer */
+            transaction.commit();
+            return true;
+        } catch (BridgeException be) {
+            LOGGER.info("bridge failed, will retry indexing {} objects of type {}", entityIds.size(), entityType,
+                    be.getCause());
+            return false;
+        } finally {
+            session.close();
+            parserSession.closeParsedFiles();
+        }
+    }
+
+    /**
+     * Index a batch of model objects in chunks, concurrently if there are indexing workers.
      */
     public void index() {
         LOGGER.info("indexing objects: count = {}", toIndex.size());
@@ -541,44 +630,69 @@ public class FullTextIndexer2 {
             }
             return;
         }
-        final ParserSession parserSession = new ParserSession();
-        final Session session = sessionFactory.openSession();
+        final SetMultimap<String, Long> indexed = HashMultimap.create();
         HibernateException hibernateQueryError = null;
-        Throwable bridgeException = null;
+        boolean isBridgeFailed = false;
+        RuntimeException workerException = null;
         try {
-            final FullTextSession fullTextSession = Search.getFullTextSession(session);
-            fullTextSession.setCacheMode(CacheMode.IGNORE);
-            fullTextSession.setFlushMode(FlushMode.COMMIT);
-            final Transaction transaction = fullTextSession.beginTransaction();
+            final List<String> chunkTypes = new ArrayList<>();
+            final List<List<Long>> chunkIds = new ArrayList<>();
+            final List<Future<Boolean>> chunkResults = new ArrayList<>();
             for (final Map.Entry<String, Collection<Long>> typeAndIds : toIndex.asMap().entrySet()) {
                 final String entityType = typeAndIds.getKey();
-                final Collection<Long> entityIds = typeAndIds.getValue();
-                final String hql = "FROM " + entityType + " WHERE id IN (:ids)";
-                final Query query = fullTextSession.createQuery(hql);
-                query.setParameterList("ids", entityIds);
-                query.setReadOnly(true);
-                for (final Object entity : query.list()) {
-                    @SuppressWarnings("unchecked")
-                    final Class<? extends IObject> entityClass = Hibernate.getClass(entity);
-                    if (isIncluded(entityClass)) {
-                        LOGGER.debug("indexing {}:{}", entityType, ((IObject) entity).getId());
-                        fullTextSession.index(entity);
+                for (final List<Long> entityIds : Iterables.partition(typeAndIds.getValue(), CHUNK_SIZE)) {
+                    final Callable<Boolean> chunk = new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return indexChunk(entityType, entityIds);
+                        }
+                    };
+                    final Future<Boolean> result;
+                    if (workers == null) {
+                        final FutureTask<Boolean> task = new FutureTask<>(chunk);
+                        task.run();
+                        result = task;
                     } else {
-                        LOGGER.debug("skipping {}:{}", entityType, ((IObject) entity).getId());
+                        result = workers.submit(chunk);
                     }
+                    chunkTypes.add(entityType);
+                    chunkIds.add(entityIds);
+                    chunkResults.add(result);
                 }
             }
-            transaction.commit();
-            toIndex.clear();
-        } catch (UnresolvableObjectException uoe) {
-            hibernateQueryError = uoe;
-        } catch (BridgeException be) {
-            bridgeException = be.getCause();
-            LOGGER.info("bridge failed, will retry indexing", bridgeException);
+            /* the field bridge remains locked until every worker is finished with it */
+            for (int index = 0; index < chunkResults.size(); index++) {
+                try {
+                    if (chunkResults.get(index).get()) {
+                        indexed.putAll(chunkTypes.get(index), chunkIds.get(index));
+                    } else {
+                        isBridgeFailed = true;
+                    }
+                } catch (ExecutionException ee) {
+                    final Throwable cause = ee.getCause();
+                    if (cause instanceof UnresolvableObjectException) {
+                        hibernateQueryError = (UnresolvableObjectException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        workerException = (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        workerException = new RuntimeException(cause);
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            LOGGER.info("interrupted while indexing, indexer is stopping");
+            Thread.currentThread().interrupt();
+            return;
         } finally {
             DetailsFieldBridge.unlock();
-            session.close();
-            parserSession.closeParsedFiles();
+        }
+        if (workerException != null) {
+            throw workerException;
+        }
+        for (final Map.Entry<String, Long> entity : indexed.entries()) {
+            toIndex.remove(entity.getKey(), entity.getValue());
         }
         try {
             if (hibernateQueryError != null) {
@@ -586,7 +700,7 @@ public class FullTextIndexer2 {
                 toPurge.clear();
                 LOGGER.info("Hibernate query failed, aborting this indexer run", hibernateQueryError);
                 register(Step.PREPARE, Event.HIBERNATE_QUERY_ERROR);
-            } else if (bridgeException != null) {
+            } else if (isBridgeFailed) {
                 register(Step.INDEX_RETRY);
             } else if (!toPurge.isEmpty()) {
                 register(Step.PURGE);
@@ -769,6 +883,15 @@ public class FullTextIndexer2 {
                     } finally {
                         stmt.close();
                     }
+                    /* Once committed, tell index watchers in any process without their polling the database. */
+                    stmt = connection.prepareStatement("SELECT pg_notify(?, ?)");
+                    stmt.setString(1, IndexWatcher.PROGRESS_CHANNEL);
+                    stmt.setString(2, Long.toString(eventLogId));
+                    try {
+                        stmt.execute();
+                    } finally {
+                        stmt.close();
+                    }
                 }
             });
             transaction.commit();
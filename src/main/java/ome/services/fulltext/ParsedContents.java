@@ -0,0 +1,270 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.fulltext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Cache of the parsed contents of files, so that a file annotation linked to
+ * many objects is parsed once per modification of the file rather than once
+ * per parent document. Contents of up to
+ * {@link AnnotationFragments#MAX_FRAGMENT_CHARS} characters are held in
+ * memory, bounded by their total length. If a spill directory is configured,
+ * larger contents are written to a new subdirectory of it, unique to this
+ * cache, bounded by their total size on disk, and streamed from there into
+ * each document. Contents too large for either are not cached and the file
+ * is parsed for each document as before. Entries are keyed by
+ * {@link AnnotationFragments#key(ome.model.core.OriginalFile)} so a modified
+ * file is simply missed and parsed again.
+ *
+ * @since 5.7.6
+ */
+public class ParsedContents {
+
+    private static final Logger log = LoggerFactory.getLogger(ParsedContents.class);
+
+    /** Each spilled file may take up to this fraction of the spill size. */
+    private static final int SPILL_FRACTION = 8;
+
+    /**
+     * The parsed contents of a file, held in memory or on disk.
+     */
+    public static final class Contents {
+
+        private final String text;
+
+        private final File file;
+
+        private Contents(String text, File file) {
+            this.text = text;
+            this.file = file;
+        }
+
+        /**
+         * @return a new reader of the contents, to be closed by the caller
+         * @throws IOException if the spilled contents can no longer be read,
+         * for instance having since been evicted
+         */
+        public Reader open() throws IOException {
+            if (text != null) {
+                return new StringReader(text);
+            }
+            return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Marks files whose contents are too large to cache. */
+    private static final Contents UNCACHED = new Contents(null, null);
+
+    /** Contents held in memory, or {@link #UNCACHED}. */
+    private final Cache<String, Contents> memory;
+
+    /** Contents spilled to disk, or <code>null</code> if not spilling. */
+    private final Cache<String, Contents> spilled;
+
+    /** The maximum length in characters of contents held in memory. */
+    private final long maximumChars;
+
+    /** The subdirectory to which contents are spilled, or <code>null</code>. */
+    private final File spillDirectory;
+
+    /** The maximum size in bytes of one spilled file. */
+    private final long maximumSpillFileBytes;
+
+    /**
+     * Creates a new cache.
+     * @param maximumChars the total length in characters of the contents to
+     * hold in memory, zero or less disables the cache
+     * @param spillDirectory a local directory in which to create a
+     * subdirectory to spill larger contents to, blank to disable spilling
+     * @param maximumSpillBytes the total size in bytes of the spilled
+     * contents, zero or less disables spilling
+     */
+    public ParsedContents(long maximumChars, String spillDirectory, long maximumSpillBytes) {
+        if (maximumChars > 0) {
+            memory = CacheBuilder.newBuilder()
+                    .maximumWeight(maximumChars)
+                    .weigher(new Weigher<String, Contents>() {
+                        @Override
+                        public int weigh(String key, Contents contents) {
+                            return contents.text == null ? 1 : contents.text.length();
+                        }
+                    }).build();
+            this.maximumChars = Math.min(maximumChars, AnnotationFragments.MAX_FRAGMENT_CHARS);
+        } else {
+            memory = null;
+            this.maximumChars = 0;
+        }
+        if (memory != null && maximumSpillBytes > 0 && StringUtils.isNotBlank(spillDirectory)) {
+            this.spillDirectory = new File(spillDirectory, "omero-search-contents-" + UUID.randomUUID());
+            this.maximumSpillFileBytes = Math.max(1, maximumSpillBytes / SPILL_FRACTION);
+            spilled = CacheBuilder.newBuilder()
+                    .maximumWeight(maximumSpillBytes)
+                    .weigher(new Weigher<String, Contents>() {
+                        @Override
+                        public int weigh(String key, Contents contents) {
+                            return (int) Math.min(Integer.MAX_VALUE, contents.file.length());
+                        }
+                    })
+                    .removalListener(new RemovalListener<String, Contents>() {
+                        @Override
+                        public void onRemoval(RemovalNotification<String, Contents> n) {
+                            delete(n.getValue().file);
+                        }
+                    }).build();
+        } else {
+            this.spillDirectory = null;
+            this.maximumSpillFileBytes = 0;
+            spilled = null;
+        }
+        log.info("Parsed file contents cache: maximum {} characters, spilling {} bytes to {}",
+                maximumChars, maximumSpillBytes, this.spillDirectory);
+    }
+
+    /**
+     * Retrieves the parsed contents of a file, parsing and caching them on a
+     * miss.
+     * @param key a key from {@link AnnotationFragments#key(ome.model.core.OriginalFile)},
+     * may be <code>null</code>
+     * @param parser parses the file on a miss, see {@link FileParser#parse(File)}
+     * @return the contents or <code>null</code> if they are not cached, in
+     * which case the file is to be parsed for the document
+     */
+    public Contents get(String key, Supplier<Iterable<Reader>> parser) {
+        if (memory == null || key == null) {
+            return null;
+        }
+        Contents contents = memory.getIfPresent(key);
+        if (contents == null && spilled != null) {
+            contents = spilled.getIfPresent(key);
+        }
+        if (contents == null) {
+            try {
+                contents = load(parser.get());
+            } catch (IOException e) {
+                log.debug("Failed to cache parsed contents for {}", key, e);
+                return null;
+            }
+            if (contents.file == null) {
+                memory.put(key, contents);
+            } else {
+                spilled.put(key, contents);
+            }
+        }
+        return contents == UNCACHED ? null : contents;
+    }
+
+    /**
+     * Reads the parsed contents of a file into memory or, once too long, into
+     * a new spill file. The chunks of the file are separated by white space
+     * as the parser drops that on which it splits them.
+     */
+    private Contents load(Iterable<Reader> parsed) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        final char[] buffer = new char[8192];
+        File file = null;
+        Writer spill = null;
+        long length = 0;
+        try {
+            for (final Reader reader : parsed) {
+                try {
+                    if (length > 0) {
+                        text.append('\n');
+                        length++;
+                    }
+                    int read;
+                    while ((read = reader.read(buffer)) >= 0) {
+                        text.append(buffer, 0, read);
+                        length += read;
+                        if (spill == null && length > maximumChars) {
+                            if (spillDirectory == null) {
+                                return UNCACHED;
+                            }
+                            spillDirectory.mkdirs();
+                            file = File.createTempFile("contents", ".txt", spillDirectory);
+                            spill = new OutputStreamWriter(new FileOutputStream(file),
+                                    StandardCharsets.UTF_8);
+                        }
+                        if (spill != null) {
+                            spill.append(text);
+                            text.setLength(0);
+                            /* each character takes at least one byte */
+                            if (length > maximumSpillFileBytes) {
+                                spill.close();
+                                spill = null;
+                                delete(file);
+                                return UNCACHED;
+                            }
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            if (spill == null) {
+                return new Contents(text.toString(), null);
+            }
+            spill.close();
+            spill = null;
+            return new Contents(null, file);
+        } catch (IOException e) {
+            if (file != null) {
+                if (spill != null) {
+                    spill.close();
+                }
+                delete(file);
+            }
+            throw e;
+        }
+    }
+
+    private static void delete(File file) {
+        if (file != null && !file.delete() && file.exists()) {
+            log.debug("Failed to delete spilled contents {}", file);
+        }
+    }
+
+    /**
+     * Deletes the spilled contents and the spill directory. For use as a
+     * Spring destroy method.
+     */
+    public void shutdown() {
+        if (spilled != null) {
+            spilled.invalidateAll();
+            spilled.cleanUp();
+            spillDirectory.delete();
+        }
+    }
+
+    /**
+     * @return the number of files whose contents are cached in memory or on
+     * disk
+     */
+    public long size() {
+        return (memory == null ? 0 : memory.size()) + (spilled == null ? 0 : spilled.size());
+    }
+}
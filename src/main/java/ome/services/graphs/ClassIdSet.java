@@ -0,0 +1,325 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.graphs;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ome.services.util.LongHashSet;
+
+/**
+ * A set of model objects noted by class name and ID, as used in planning a
+ * graph traversal. Class names are interned process-wide to small integer
+ * IDs and the object IDs of each class are held in a {@link LongHashSet}, so
+ * a set of millions of objects costs a few bytes per object rather than a
+ * hash table entry, a tuple and a boxed ID. Copying a set clones the arrays
+ * and the bulk operations between sets never box or hash a class name.
+ * Not thread-safe.
+ *
+ * @since 5.7.6
+ */
+public final class ClassIdSet {
+
+    private static final ConcurrentMap<String, Integer> CLASS_IDS = new ConcurrentHashMap<String, Integer>();
+
+    private static final List<String> CLASS_NAMES = new CopyOnWriteArrayList<String>();
+
+    private static final LongHashSet[] NO_CLASSES = new LongHashSet[0];
+
+    /* indexed by class ID, null or empty for classes with no objects in this set */
+    private LongHashSet[] byClass = NO_CLASSES;
+
+    private int size = 0;
+
+    /**
+     * @param className a class name
+     * @return the ID of the class name, the same for all equal class names
+     */
+    public static int classId(String className) {
+        Integer classId = CLASS_IDS.get(className);
+        if (classId == null) {
+            synchronized (CLASS_NAMES) {
+                classId = CLASS_IDS.get(className);
+                if (classId == null) {
+                    classId = CLASS_NAMES.size();
+                    CLASS_NAMES.add(className);
+                    CLASS_IDS.put(className, classId);
+                }
+            }
+        }
+        return classId;
+    }
+
+    /**
+     * @param classId a class ID from {@link #classId(String)}
+     * @return the class name, the same instance for all calls
+     */
+    public static String className(int classId) {
+        return CLASS_NAMES.get(classId);
+    }
+
+    /**
+     * Creates an empty set.
+     */
+    public ClassIdSet() {
+    }
+
+    /**
+     * Creates a set containing the same objects as the given set.
+     * @param objects the set to copy
+     */
+    public ClassIdSet(ClassIdSet objects) {
+        byClass = new LongHashSet[objects.byClass.length];
+        for (int classId = 0; classId < byClass.length; classId++) {
+            final LongHashSet ids = objects.byClass[classId];
+            if (ids != null && !ids.isEmpty()) {
+                byClass[classId] = new LongHashSet(ids);
+            }
+        }
+        size = objects.size;
+    }
+
+    private LongHashSet get(int classId) {
+        return classId < byClass.length ? byClass[classId] : null;
+    }
+
+    private LongHashSet getOrCreate(int classId) {
+        if (classId >= byClass.length) {
+            byClass = Arrays.copyOf(byClass, Math.max(classId + 1, CLASS_NAMES.size()));
+        }
+        LongHashSet ids = byClass[classId];
+        if (ids == null) {
+            ids = new LongHashSet();
+            byClass[classId] = ids;
+        }
+        return ids;
+    }
+
+    /**
+     * @param classId a class ID
+     * @param id an object ID
+     * @return if the object is in this set
+     */
+    public boolean contains(int classId, long id) {
+        final LongHashSet ids = get(classId);
+        return ids != null && ids.contains(id);
+    }
+
+    /**
+     * @param classId a class ID
+     * @param id an object ID
+     * @return if the object was not already in this set
+     */
+    public boolean add(int classId, long id) {
+        if (getOrCreate(classId).add(id)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param classId a class ID
+     * @param id an object ID
+     * @return if the object was in this set
+     */
+    public boolean remove(int classId, long id) {
+        final LongHashSet ids = get(classId);
+        if (ids != null && ids.remove(id)) {
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param objects objects to add to this set
+     * @return if this set changed
+     */
+    public boolean addAll(ClassIdSet objects) {
+        final int oldSize = size;
+        for (int classId = 0; classId < objects.byClass.length; classId++) {
+            final LongHashSet toAdd = objects.byClass[classId];
+            if (toAdd != null && !toAdd.isEmpty()) {
+                final LongHashSet ids = getOrCreate(classId);
+                size -= ids.size();
+                ids.addAll(toAdd);
+                size += ids.size();
+            }
+        }
+        return size != oldSize;
+    }
+
+    /**
+     * @param objects objects to remove from this set
+     * @return if this set changed
+     */
+    public boolean removeAll(ClassIdSet objects) {
+        final int oldSize = size;
+        for (int classId = 0; classId < byClass.length; classId++) {
+            final LongHashSet ids = byClass[classId];
+            final LongHashSet toRemove = objects.get(classId);
+            if (ids == null || ids.isEmpty() || toRemove == null || toRemove.isEmpty()) {
+                continue;
+            }
+            size -= ids.size();
+            if (toRemove.size() < ids.size()) {
+                for (final long id : toRemove.toArray()) {
+                    ids.remove(id);
+                }
+            } else {
+                for (final long id : ids.toArray()) {
+                    if (toRemove.contains(id)) {
+                        ids.remove(id);
+                    }
+                }
+            }
+            size += ids.size();
+        }
+        return size != oldSize;
+    }
+
+    /**
+     * @param objects the objects that this set may retain
+     * @return if this set changed
+     */
+    public boolean retainAll(ClassIdSet objects) {
+        final int oldSize = size;
+        for (int classId = 0; classId < byClass.length; classId++) {
+            final LongHashSet ids = byClass[classId];
+            if (ids == null || ids.isEmpty()) {
+                continue;
+            }
+            final LongHashSet toRetain = objects.get(classId);
+            size -= ids.size();
+            if (toRetain == null || toRetain.isEmpty()) {
+                byClass[classId] = null;
+                continue;
+            }
+            for (final long id : ids.toArray()) {
+                if (!toRetain.contains(id)) {
+                    ids.remove(id);
+                }
+            }
+            size += ids.size();
+        }
+        return size != oldSize;
+    }
+
+    /**
+     * @param objects some objects
+     * @return if all the objects are in this set
+     */
+    public boolean containsAll(ClassIdSet objects) {
+        if (objects.size > size) {
+            return false;
+        }
+        for (int classId = 0; classId < objects.byClass.length; classId++) {
+            final LongHashSet toFind = objects.byClass[classId];
+            if (toFind == null || toFind.isEmpty()) {
+                continue;
+            }
+            final LongHashSet ids = get(classId);
+            if (ids == null || ids.size() < toFind.size()) {
+                return false;
+            }
+            for (final long id : toFind.toArray()) {
+                if (!ids.contains(id)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the objects from this set.
+     */
+    public void clear() {
+        byClass = NO_CLASSES;
+        size = 0;
+    }
+
+    /**
+     * @return how many objects are in this set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return if this set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the IDs of the classes that have objects in this set, in ascending order
+     */
+    public int[] classIds() {
+        int count = 0;
+        final int[] classIds = new int[byClass.length];
+        for (int classId = 0; classId < byClass.length; classId++) {
+            final LongHashSet ids = byClass[classId];
+            if (ids != null && !ids.isEmpty()) {
+                classIds[count++] = classId;
+            }
+        }
+        return Arrays.copyOf(classIds, count);
+    }
+
+    /**
+     * @param classId a class ID
+     * @return the IDs of the objects of that class in this set, in no particular order
+     */
+    public long[] ids(int classId) {
+        final LongHashSet ids = get(classId);
+        return ids == null ? new long[0] : ids.toArray();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        } else if (object instanceof ClassIdSet) {
+            final ClassIdSet other = (ClassIdSet) object;
+            return size == other.size && containsAll(other);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int classId = 0; classId < byClass.length; classId++) {
+            final LongHashSet ids = byClass[classId];
+            if (ids != null) {
+                for (final long id : ids.toArray()) {
+                    hash += 31 * classId + Long.hashCode(id);
+                }
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final int classId : classIds()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(className(classId));
+            sb.append(get(classId));
+        }
+        return sb.toString();
+    }
+}
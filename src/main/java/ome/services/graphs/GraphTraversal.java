@@ -20,6 +20,7 @@
 package ome.services.graphs;
 
 import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -154,11 +156,13 @@ public class GraphTraversal {
     /**
      * An immutable tuple of class name, instance ID.
      * Within this class, equality and hash code is determined wholly by these values.
+     * The class name is interned by {@link ClassIdSet#classId(String)} so that only its ID need be compared.
      * @author m.t.b.carroll@dundee.ac.uk
      * @since 5.1.0
      */
     private static final class CI {
         final String className;
+        final int classId;
         final long id;
 
         /**
@@ -167,7 +171,17 @@ public class GraphTraversal {
          * @param id an instance ID
          */
         CI(String className, long id) {
-            this.className = className;
+            this(ClassIdSet.classId(className), id);
+        }
+
+        /**
+         * Construct an instance with the given field values.
+         * @param classId a class ID from {@link ClassIdSet#classId(String)}
+         * @param id an instance ID
+         */
+        CI(int classId, long id) {
+            this.className = ClassIdSet.className(classId);
+            this.classId = classId;
             this.id = id;
         }
 
@@ -176,12 +190,8 @@ public class GraphTraversal {
          * @param object a persisted object instance
          */
         CI(IObject object) {
-            if (object instanceof HibernateProxy) {
-                this.className = Hibernate.getClass(object).getName();
-            } else {
-                this.className = object.getClass().getName();
-            }
-            this.id = object.getId();
+            this(object instanceof HibernateProxy ? Hibernate.getClass(object).getName() : object.getClass().getName(),
+                    object.getId());
         }
 
         /**
@@ -205,8 +215,7 @@ public class GraphTraversal {
                 return true;
             } else if (object instanceof CI) {
                 final CI other = (CI) object;
-                return this.id == other.id &&
-                        this.className.equals(other.className);
+                return this.id == other.id && this.classId == other.classId;
             } else {
                 return false;
             }
@@ -214,7 +223,7 @@ public class GraphTraversal {
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(getClass(), className, id);
+            return 31 * classId + Long.hashCode(id);
         }
 
         @Override
@@ -267,7 +276,7 @@ public class GraphTraversal {
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(getClass(), className, propertyName);
+            return 31 * className.hashCode() + propertyName.hashCode();
         }
 
         @Override
@@ -329,7 +338,7 @@ public class GraphTraversal {
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(getClass(), className, propertyName, id);
+            return 31 * (31 * className.hashCode() + propertyName.hashCode()) + Long.hashCode(id);
         }
 
         @Override
@@ -338,6 +347,168 @@ public class GraphTraversal {
         }
     }
 
+    /**
+     * A set of {@link CI}s held as a {@link ClassIdSet}, so as to be compact for the large sets of planning.
+     * Iteration constructs the {@link CI}s afresh over a snapshot of each class' IDs.
+     * Bulk operations with another {@link CISet} do not construct any {@link CI}s.
+     * @since 5.7.6
+     */
+    private static final class CISet extends AbstractSet<CI> {
+        private final ClassIdSet objects;
+
+        /**
+         * Construct an empty set.
+         */
+        CISet() {
+            this.objects = new ClassIdSet();
+        }
+
+        /**
+         * Construct a set containing the given objects.
+         * @param objects the objects for the set
+         */
+        CISet(Collection<CI> objects) {
+            if (objects instanceof CISet) {
+                this.objects = new ClassIdSet(((CISet) objects).objects);
+            } else {
+                this.objects = new ClassIdSet();
+                addAll(objects);
+            }
+        }
+
+        @Override
+        public boolean contains(Object object) {
+            if (object instanceof CI) {
+                final CI ci = (CI) object;
+                return objects.contains(ci.classId, ci.id);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean add(CI object) {
+            return objects.add(object.classId, object.id);
+        }
+
+        @Override
+        public boolean remove(Object object) {
+            if (object instanceof CI) {
+                final CI ci = (CI) object;
+                return objects.remove(ci.classId, ci.id);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends CI> objects) {
+            if (objects instanceof CISet) {
+                return this.objects.addAll(((CISet) objects).objects);
+            } else {
+                return super.addAll(objects);
+            }
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> objects) {
+            if (objects instanceof CISet) {
+                return this.objects.removeAll(((CISet) objects).objects);
+            } else {
+                return super.removeAll(objects);
+            }
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> objects) {
+            if (objects instanceof CISet) {
+                return this.objects.retainAll(((CISet) objects).objects);
+            } else {
+                return super.retainAll(objects);
+            }
+        }
+
+        @Override
+        public boolean containsAll(Collection<?> objects) {
+            if (objects instanceof CISet) {
+                return this.objects.containsAll(((CISet) objects).objects);
+            } else {
+                return super.containsAll(objects);
+            }
+        }
+
+        @Override
+        public void clear() {
+            objects.clear();
+        }
+
+        @Override
+        public int size() {
+            return objects.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return objects.isEmpty();
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object instanceof CISet) {
+                return objects.equals(((CISet) object).objects);
+            } else {
+                return super.equals(object);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return objects.hashCode();
+        }
+
+        @Override
+        public Iterator<CI> iterator() {
+            return new Iterator<CI>() {
+                private final int[] classIds = objects.classIds();
+                private int classIndex = -1;
+                private long[] ids = new long[0];
+                private int idIndex = 0;
+                private CI last = null;
+
+                @Override
+                public boolean hasNext() {
+                    while (idIndex == ids.length) {
+                        if (++classIndex >= classIds.length) {
+                            classIndex = classIds.length;
+                            return false;
+                        }
+                        ids = objects.ids(classIds[classIndex]);
+                        idIndex = 0;
+                    }
+                    return true;
+                }
+
+                @Override
+                public CI next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    last = new CI(classIds[classIndex], ids[idIndex++]);
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    objects.remove(last.classId, last.id);
+                    last = null;
+                }
+            };
+        }
+    }
+
     /**
      * Track the progress of method calls to ensure that the sequencing makes sense.
      * @author m.t.b.carroll@dundee.ac.uk
@@ -380,17 +551,17 @@ public class GraphTraversal {
      */
     private static class Planning {
         /* process state */
-        final Set<CI> toProcess = new HashSet<CI>();
-        final Set<CI> included = new HashSet<CI>();
-        final Set<CI> deleted = new HashSet<CI>();
-        final Set<CI> outside = new HashSet<CI>();
-        final Set<CI> unchanged = new HashSet<CI>();
+        final Set<CI> toProcess = new CISet();
+        final Set<CI> included = new CISet();
+        final Set<CI> deleted = new CISet();
+        final Set<CI> outside = new CISet();
+        final Set<CI> unchanged = new CISet();
         /* orphan checks */
-        final Set<CI> findIfLast = new HashSet<CI>();
+        final Set<CI> findIfLast = new CISet();
         final Map<CI, Boolean> foundIfLast = new HashMap<CI, Boolean>();
         /* links */
         final Map<CI, CI> aliases = new HashMap<CI, CI>();
-        final Set<CI> cached = new HashSet<CI>();
+        final Set<CI> cached = new CISet();
         final SetMultimap<CPI, CI> forwardLinksCached = HashMultimap.create();
         final SetMultimap<CPI, CI> backwardLinksCached = HashMultimap.create();
         final SetMultimap<CI, CI> befores = HashMultimap.create();
@@ -399,13 +570,13 @@ public class GraphTraversal {
         /* permissions, unused for system users */
         final Map<CI, ome.model.internal.Details> detailsNoted = new HashMap<CI, ome.model.internal.Details>();
         final Map<Long, ExperimenterGroup> fakeGroups = new HashMap<>();
-        final Set<CI> mayUpdate = new HashSet<CI>();
-        final Set<CI> mayDelete = new HashSet<CI>();
-        final Set<CI> mayChmod = new HashSet<CI>();
-        final Set<CI> mayChgrp = new HashSet<CI>();
-        final Set<CI> mayChown = new HashSet<CI>();
-        final Set<CI> owns = new HashSet<CI>();
-        final Set<CI> overrides = new HashSet<CI>();
+        final Set<CI> mayUpdate = new CISet();
+        final Set<CI> mayDelete = new CISet();
+        final Set<CI> mayChmod = new CISet();
+        final Set<CI> mayChgrp = new CISet();
+        final Set<CI> mayChown = new CISet();
+        final Set<CI> owns = new CISet();
+        final Set<CI> overrides = new CISet();
     }
 
     /**
@@ -605,11 +776,11 @@ public class GraphTraversal {
             /* process any pending objects */
             while (!(planning.toProcess.isEmpty() && planning.findIfLast.isEmpty())) {
                 /* first process any cached objects that do not await orphan status determination */
-                final Set<CI> toProcess = new HashSet<CI>(planning.toProcess);
+                final Set<CI> toProcess = new CISet(planning.toProcess);
                 toProcess.retainAll(planning.cached);
                 toProcess.removeAll(planning.findIfLast);
                 if (!toProcess.isEmpty()) {
-                    if (optimisticReprocess != null && !Sets.difference(planning.toProcess, optimisticReprocess).isEmpty()) {
+                    if (optimisticReprocess != null && !optimisticReprocess.containsAll(planning.toProcess)) {
                         /* processing something beyond optimistic suggestion, so circumstances have changed */
                         optimisticReprocess = null;
                     }
@@ -619,7 +790,7 @@ public class GraphTraversal {
                     continue;
                 }
                 /* if none of the above exist, then fill the cache */
-                final Set<CI> toCache = new HashSet<CI>(planning.toProcess);
+                final Set<CI> toCache = new CISet(planning.toProcess);
                 toCache.removeAll(planning.cached);
                 if (!toCache.isEmpty()) {
                     optimisticReprocess = null;
@@ -628,18 +799,17 @@ public class GraphTraversal {
                 }
                 /* try processing the findIfLast in case of any changes */
                 if (!planning.toProcess.isEmpty()) {
-                    final Set<CI> previousToProcess = new HashSet<CI>(planning.toProcess);
-                    final Set<CI> previousFindIfLast = new HashSet<CI>(planning.findIfLast);
+                    final Set<CI> previousToProcess = new CISet(planning.toProcess);
+                    final Set<CI> previousFindIfLast = new CISet(planning.findIfLast);
                     for (final CI nextObject : previousToProcess) {
                         reviewObject(nextObject, false);
                     }
                     /* This condition is tricky. We do want to reprocess objects that are suggested for such, while
                      * avoiding an infinite loop that comes of such processing not resolving any orphan status. */
-                    if (!Sets.symmetricDifference(previousFindIfLast, planning.findIfLast).isEmpty() ||
-                            (optimisticReprocess == null ||
-                             !Sets.symmetricDifference(planning.toProcess, optimisticReprocess).isEmpty()) &&
-                            !Sets.symmetricDifference(previousToProcess, planning.toProcess).isEmpty()) {
-                        optimisticReprocess = new HashSet<CI>(planning.toProcess);
+                    if (!previousFindIfLast.equals(planning.findIfLast) ||
+                            (optimisticReprocess == null || !planning.toProcess.equals(optimisticReprocess)) &&
+                            !previousToProcess.equals(planning.toProcess)) {
+                        optimisticReprocess = new CISet(planning.toProcess);
                         continue;
                     }   
                 }
@@ -656,13 +826,13 @@ public class GraphTraversal {
                 planning.findIfLast.clear();
             }
             /* determine which objects are now not last */
-            final Set<CI> latestIsNotLast = new HashSet<CI>();
+            final Set<CI> latestIsNotLast = new CISet();
             for (final Entry<CI, Boolean> objectAndIsLast : planning.foundIfLast.entrySet()) {
                 if (!objectAndIsLast.getValue()) {
                     latestIsNotLast.add(objectAndIsLast.getKey());
                 }
             }
-            if (latestIsNotLast.isEmpty() || (isNotLast != null && Sets.difference(isNotLast, latestIsNotLast).isEmpty())) {
+            if (latestIsNotLast.isEmpty() || (isNotLast != null && latestIsNotLast.containsAll(isNotLast))) {
                 /* no fewer not-last objects than before */
                 break;
             }
@@ -1473,7 +1643,7 @@ public class GraphTraversal {
      * @return objects of the given class and IDs
      */
     private static Set<CI> idsToCIs(String className, Collection<Long> ids) {
-        final Set<CI> objects = new HashSet<CI>();
+        final Set<CI> objects = new CISet();
         for (final Long id : ids) {
             objects.add(new CI(className, id));
         }
@@ -1622,7 +1792,7 @@ public class GraphTraversal {
         /* process the targets forward across links */
         while (!planning.blockedBy.isEmpty()) {
             /* determine which objects can be processed in this step */
-            final Collection<CI> nowUnblocked = new HashSet<CI>();
+            final Collection<CI> nowUnblocked = new CISet();
             final Iterator<Entry<CI, Set<CI>>> blocks = planning.blockedBy.entrySet().iterator();
             while (blocks.hasNext()) {
                 final Entry<CI, Set<CI>> block = blocks.next();
@@ -1636,7 +1806,9 @@ public class GraphTraversal {
                 throw new GraphException("cycle detected among " + Joiner.on(", ").join(planning.blockedBy.keySet()));
             }
             for (final Set<CI> blockers : planning.blockedBy.values()) {
-                blockers.removeAll(nowUnblocked);
+                if (!blockers.isEmpty()) {
+                    blockers.removeAll(nowUnblocked);
+                }
             }
             final SetMultimap<String, Long> toJoin = HashMultimap.create();
             final SetMultimap<String, Long> toDelete = HashMultimap.create();
@@ -0,0 +1,162 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.histogram;
+
+import java.util.Arrays;
+
+import ome.services.util.CacheKeyIndex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of plane histograms shared by all
+ * {@link ome.services.RawPixelsBean} instances so that repeated requests for
+ * the same histogram, as made by viewers, need not scan the pixel data.
+ * Callers must have checked that the current user may read the Pixels set
+ * before consulting the cache.
+ *
+ * @since 5.7.6
+ */
+@ManagedResource(objectName = "omero:type=HistogramCache",
+        description = "In-memory cache of plane histograms")
+public class HistogramCache {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(HistogramCache.class);
+
+    /**
+     * Identifies a histogram by the plane, region, resolution level, bin
+     * count and range of values it was computed for.
+     */
+    public static final class Key {
+
+        private final long pixelsId;
+
+        private final long[] values;
+
+        public Key(long pixelsId, int resolutionLevel, int z, int c, int t,
+                int x, int y, int w, int h, int binCount, double min,
+                double max) {
+            this.pixelsId = pixelsId;
+            this.values = new long[] { resolutionLevel, z, c, t, x, y, w, h,
+                    binCount, Double.doubleToLongBits(min),
+                    Double.doubleToLongBits(max) };
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return pixelsId == other.pixelsId
+                    && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(pixelsId) + Arrays.hashCode(values);
+        }
+
+        public long getPixelsId() {
+            return pixelsId;
+        }
+    }
+
+    /** The cache or <code>null</code> if caching is disabled. */
+    private final Cache<Key, int[]> cache;
+
+    /** The cached keys by Pixels set ID. */
+    private final CacheKeyIndex<Key, int[]> index =
+            new CacheKeyIndex<Key, int[]>(Key::getPixelsId);
+
+    /**
+     * Creates a new cache.
+     * @param maximumSize the maximum number of histograms to hold. A value
+     * of zero or less disables the cache.
+     */
+    public HistogramCache(long maximumSize) {
+        if (maximumSize > 0) {
+            cache = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .removalListener(index)
+                    .recordStats()
+                    .build();
+            index.setCache(cache.asMap());
+        } else {
+            cache = null;
+        }
+        log.info("Histogram cache: maximum {} histograms", maximumSize);
+    }
+
+    /**
+     * Retrieves a cached histogram.
+     * @param key the histogram key.
+     * @return a copy of the histogram or <code>null</code> on a cache miss.
+     */
+    public int[] get(Key key) {
+        if (cache == null) {
+            return null;
+        }
+        final int[] data = cache.getIfPresent(key);
+        return data == null ? null : data.clone();
+    }
+
+    /**
+     * Caches a histogram.
+     * @param key the histogram key.
+     * @param data the histogram, which is copied.
+     */
+    public void put(Key key, int[] data) {
+        if (cache != null && data != null) {
+            index.put(key, data.clone());
+        }
+    }
+
+    /**
+     * Removes all cached histograms of a Pixels set, e.g. on its pixel data
+     * being modified.
+     * @param pixelsId the Pixels set ID.
+     */
+    public void invalidate(long pixelsId) {
+        if (cache != null) {
+            cache.invalidateAll(index.remove(pixelsId));
+        }
+    }
+
+    @ManagedOperation(description = "Removes all cached histograms")
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of cached histograms")
+    public long getSize() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    @ManagedAttribute(description = "Number of cache hits")
+    public long getHitCount() {
+        return cache == null ? 0 : cache.stats().hitCount();
+    }
+
+    @ManagedAttribute(description = "Number of cache misses")
+    public long getMissCount() {
+        return cache == null ? 0 : cache.stats().missCount();
+    }
+
+}
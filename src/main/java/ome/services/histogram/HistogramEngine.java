@@ -0,0 +1,208 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.histogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ome.conditions.InternalException;
+import ome.services.util.PixelValues;
+import ome.util.PixelData;
+
+/**
+ * Computes plane histograms and minimum/maximum values. Only the rows of the
+ * requested region are visited and pixel values are read with typed
+ * primitive access via {@link PixelValues}. Several channels may be
+ * processed concurrently on an {@link ExecutorService}.
+ *
+ * @since 5.7.6
+ */
+public class HistogramEngine {
+
+    /**
+     * A single histogram to compute: the plane of one channel along with
+     * the range of values to bin.
+     */
+    public static class Request {
+
+        private final PixelData plane;
+
+        private final double min;
+
+        private final double max;
+
+        public Request(PixelData plane, double min, double max) {
+            this.plane = plane;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /** The pool to compute channels on, or <code>null</code> for serial. */
+    private final ExecutorService executor;
+
+    /**
+     * Creates an engine which computes histograms on the calling thread.
+     */
+    public HistogramEngine() {
+        this(null);
+    }
+
+    /**
+     * Creates an engine which computes the histograms of several channels
+     * concurrently.
+     * @param executor the pool to compute on, or <code>null</code> to
+     * compute on the calling thread.
+     */
+    public HistogramEngine(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Computes the histograms of several planes over the same region.
+     * @param requests the planes to compute histograms for, by channel.
+     * @param planeWidth the width of the planes in pixels.
+     * @param x the X offset of the region.
+     * @param y the Y offset of the region.
+     * @param w the width of the region.
+     * @param h the height of the region.
+     * @param binCount the number of bins.
+     * @return the histograms by channel, in the order of the requests.
+     */
+    public Map<Integer, int[]> histograms(Map<Integer, Request> requests,
+            final int planeWidth, final int x, final int y, final int w,
+            final int h, final int binCount) {
+        final Map<Integer, int[]> result = new LinkedHashMap<Integer, int[]>();
+        if (executor == null || requests.size() < 2) {
+            for (final Map.Entry<Integer, Request> entry : requests.entrySet()) {
+                final Request r = entry.getValue();
+                result.put(entry.getKey(), histogram(r.plane, planeWidth,
+                        x, y, w, h, binCount, r.min, r.max));
+            }
+            return result;
+        }
+        final List<Integer> channels = new ArrayList<Integer>();
+        final List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+        for (final Map.Entry<Integer, Request> entry : requests.entrySet()) {
+            final Request r = entry.getValue();
+            channels.add(entry.getKey());
+            futures.add(executor.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return histogram(r.plane, planeWidth, x, y, w, h,
+                            binCount, r.min, r.max);
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                result.put(channels.get(i), futures.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            for (final Future<int[]> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted computing histograms");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            final InternalException ie =
+                    new InternalException("Failed to compute histogram");
+            ie.initCause(cause);
+            throw ie;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the histogram of a region of a plane. Values outside of
+     * <code>[min, max]</code> are ignored and values equal to
+     * <code>max</code> fall in the last bin.
+     * @param px the plane.
+     * @param planeWidth the width of the plane in pixels.
+     * @param x the X offset of the region.
+     * @param y the Y offset of the region.
+     * @param w the width of the region.
+     * @param h the height of the region.
+     * @param binCount the number of bins.
+     * @param min the lower bound of the first bin.
+     * @param max the upper bound of the last bin.
+     * @return the histogram.
+     */
+    public static int[] histogram(PixelData px, int planeWidth, int x, int y,
+            int w, int h, int binCount, double min, double max) {
+        final int[] data = new int[binCount];
+        final int planeHeight = px.size() / planeWidth;
+        final int x0 = Math.max(x, 0);
+        final int x1 = Math.min(x + w, planeWidth);
+        final int y0 = Math.max(y, 0);
+        final int y1 = Math.min(y + h, planeHeight);
+        if (x1 <= x0 || y1 <= y0) {
+            return data;
+        }
+        final double binRange = (max - min) / binCount;
+        final int rowLength = x1 - x0;
+        final double[] row = new double[rowLength];
+        for (int py = y0; py < y1; py++) {
+            PixelValues.read(px, py * planeWidth + x0, rowLength, row);
+            for (int i = 0; i < rowLength; i++) {
+                final double value = row[i];
+                if (value < min || value > max) {
+                    continue;
+                }
+                int bin = (int) ((value - min) / binRange);
+                // Handle values exactly at the last edge
+                if (bin == binCount) {
+                    bin--;
+                }
+                data[bin]++;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Finds the minimum and maximum values of a plane.
+     * @param px the plane.
+     * @param initMin the value to start the search for the minimum from,
+     * typically the maximum of the pixels type.
+     * @param initMax the value to start the search for the maximum from,
+     * typically the minimum of the pixels type.
+     * @return <code>{min, max}</code>.
+     */
+    public static double[] minMax(PixelData px, double initMin,
+            double initMax) {
+        double min = initMin;
+        double max = initMax;
+        final int size = px.size();
+        final int chunk = Math.min(size, 65536);
+        final double[] values = new double[chunk];
+        for (int offset = 0; offset < size; offset += chunk) {
+            final int count = Math.min(chunk, size - offset);
+            PixelValues.read(px, offset, count, values);
+            for (int i = 0; i < count; i++) {
+                final double value = values[i];
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            }
+        }
+        return new double[] { min, max };
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.histogram;
+
+import ome.services.util.PixelValues;
+import ome.util.PixelData;
+
+/**
+ * Statistics of a single plane: its minimum, maximum and mean values and a
+ * coarse histogram binned over <code>[min, max]</code>.
+ *
+ * @since 5.7.6
+ * @see PlaneStatisticsStore
+ */
+public class PlaneStatistics {
+
+    private final double min;
+
+    private final double max;
+
+    private final double mean;
+
+    private final int[] histogram;
+
+    public PlaneStatistics(double min, double max, double mean,
+            int[] histogram) {
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Computes the statistics of a plane.
+     * @param px the plane.
+     * @param initMin the value to start the search for the minimum from,
+     * typically the maximum of the pixels type.
+     * @param initMax the value to start the search for the maximum from,
+     * typically the minimum of the pixels type.
+     * @param binCount the number of histogram bins.
+     * @return the statistics.
+     */
+    public static PlaneStatistics compute(PixelData px, double initMin,
+            double initMax, int binCount) {
+        double min = initMin;
+        double max = initMax;
+        double sum = 0;
+        final int size = px.size();
+        final int chunk = Math.min(size, 65536);
+        final double[] values = new double[chunk];
+        for (int offset = 0; offset < size; offset += chunk) {
+            final int count = Math.min(chunk, size - offset);
+            PixelValues.read(px, offset, count, values);
+            for (int i = 0; i < count; i++) {
+                final double value = values[i];
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+                sum += value;
+            }
+        }
+        final double mean = size == 0 ? 0 : sum / size;
+        // Treat the plane as a single row to bin every value.
+        final int[] histogram = size == 0 ? new int[binCount]
+                : HistogramEngine.histogram(px, size, 0, 0, size, 1,
+                        binCount, min, max);
+        return new PlaneStatistics(min, max, mean, histogram);
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return a copy of the histogram, binned over
+     * <code>[getMin(), getMax()]</code>.
+     */
+    public int[] getHistogram() {
+        return histogram.clone();
+    }
+
+    int[] histogram() {
+        return histogram;
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import ome.io.nio.PixelsService;
+import ome.model.core.Pixels;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists {@link PlaneStatistics} so that each plane of a Pixels set need
+ * only be scanned once. The statistics of a Pixels set are held in a file
+ * next to its pixels file in the binary repository, laid out as a header
+ * followed by one fixed-size record per plane in ZCT order, so that single
+ * planes may be read and written in place. Planes are filled in as they are
+ * first computed.
+ *
+ * If the statistics file cannot be written, e.g. on a read-only repository,
+ * statistics are still returned to callers but not persisted.
+ *
+ * @since 5.7.6
+ */
+public class PlaneStatisticsStore {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(PlaneStatisticsStore.class);
+
+    /** Number of histogram bins held for each plane. */
+    public static final int BIN_COUNT = 256;
+
+    /** Suffix added to the pixels path to name the statistics file. */
+    public static final String SUFFIX = "_planestats";
+
+    /** Identifies a statistics file and the version of its layout. */
+    private static final int MAGIC = 0x4f505301;
+
+    /** Header: magic, sizeZ, sizeC, sizeT, bin count. */
+    private static final int HEADER_SIZE = 5 * 4;
+
+    /** Record: present flag, min, max, mean, histogram. */
+    private static final int RECORD_SIZE = 1 + 3 * 8 + BIN_COUNT * 4;
+
+    private final PixelsService pixelsService;
+
+    public PlaneStatisticsStore(PixelsService pixelsService) {
+        this.pixelsService = pixelsService;
+    }
+
+    private File file(long pixelsId) {
+        return new File(pixelsService.getPixelsPath(pixelsId) + SUFFIX);
+    }
+
+    private static long offset(Pixels pixels, int z, int c, int t) {
+        final long plane = ((long) t * pixels.getSizeC() + c)
+                * pixels.getSizeZ() + z;
+        return HEADER_SIZE + plane * RECORD_SIZE;
+    }
+
+    /**
+     * Checks the header of an opened statistics file against the Pixels set.
+     * @return if the file matches the dimensions of the Pixels set.
+     */
+    private static boolean checkHeader(RandomAccessFile raf, Pixels pixels)
+            throws IOException {
+        if (raf.length() < HEADER_SIZE) {
+            return false;
+        }
+        raf.seek(0);
+        return raf.readInt() == MAGIC
+                && raf.readInt() == pixels.getSizeZ()
+                && raf.readInt() == pixels.getSizeC()
+                && raf.readInt() == pixels.getSizeT()
+                && raf.readInt() == BIN_COUNT;
+    }
+
+    /**
+     * Retrieves the persisted statistics of a plane.
+     * @param pixels the Pixels set, with its dimensions loaded.
+     * @param z the Z-section.
+     * @param c the channel.
+     * @param t the timepoint.
+     * @return the statistics or <code>null</code> if they have not yet been
+     * computed.
+     */
+    public synchronized PlaneStatistics get(Pixels pixels, int z, int c,
+            int t) {
+        final File file = file(pixels.getId());
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (!checkHeader(raf, pixels)) {
+                return null;
+            }
+            return readRecord(raf, offset(pixels, z, c, t));
+        } catch (IOException e) {
+            log.warn("Failed to read plane statistics from {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Persists the statistics of a plane.
+     * @param pixels the Pixels set, with its dimensions loaded.
+     * @param z the Z-section.
+     * @param c the channel.
+     * @param t the timepoint.
+     * @param stats the statistics, with {@link #BIN_COUNT} bins.
+     */
+    public synchronized void put(Pixels pixels, int z, int c, int t,
+            PlaneStatistics stats) {
+        final File file = file(pixels.getId());
+        try {
+            file.getParentFile().mkdirs();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (!checkHeader(raf, pixels)) {
+                    // Missing, truncated or stale: start afresh.
+                    raf.setLength(0);
+                    raf.writeInt(MAGIC);
+                    raf.writeInt(pixels.getSizeZ());
+                    raf.writeInt(pixels.getSizeC());
+                    raf.writeInt(pixels.getSizeT());
+                    raf.writeInt(BIN_COUNT);
+                }
+                final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                record.put((byte) 1);
+                record.putDouble(stats.getMin());
+                record.putDouble(stats.getMax());
+                record.putDouble(stats.getMean());
+                record.asIntBuffer().put(stats.histogram());
+                raf.seek(offset(pixels, z, c, t));
+                raf.write(record.array());
+            }
+        } catch (IOException e) {
+            log.debug("Failed to persist plane statistics to {}", file, e);
+        }
+    }
+
+    /**
+     * Computes the global minimum and maximum of a channel from the
+     * persisted statistics of its planes.
+     * @param pixels the Pixels set, with its dimensions loaded.
+     * @param c the channel.
+     * @return <code>{min, max}</code> or <code>null</code> if not every plane
+     * of the channel has statistics.
+     */
+    public synchronized double[] getGlobalMinMax(Pixels pixels, int c) {
+        final File file = file(pixels.getId());
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (!checkHeader(raf, pixels)) {
+                return null;
+            }
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int t = 0; t < pixels.getSizeT(); t++) {
+                for (int z = 0; z < pixels.getSizeZ(); z++) {
+                    final long offset = offset(pixels, z, c, t);
+                    if (raf.length() < offset + 1 + 2 * 8) {
+                        return null;
+                    }
+                    raf.seek(offset);
+                    if (raf.readByte() == 0) {
+                        return null;
+                    }
+                    min = Math.min(min, raf.readDouble());
+                    max = Math.max(max, raf.readDouble());
+                }
+            }
+            return new double[] { min, max };
+        } catch (IOException e) {
+            log.warn("Failed to read plane statistics from {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes the persisted statistics of a Pixels set, e.g. on its pixel
+     * data being modified.
+     * @param pixelsId the Pixels set ID.
+     */
+    public synchronized void invalidate(long pixelsId) {
+        final File file = file(pixelsId);
+        if (file.exists() && !file.delete()) {
+            log.warn("Failed to remove stale plane statistics {}", file);
+        }
+    }
+
+    private static PlaneStatistics readRecord(RandomAccessFile raf,
+            long offset) throws IOException {
+        if (raf.length() < offset + RECORD_SIZE) {
+            return null;
+        }
+        raf.seek(offset);
+        if (raf.readByte() == 0) {
+            return null;
+        }
+        final double min = raf.readDouble();
+        final double max = raf.readDouble();
+        final double mean = raf.readDouble();
+        final byte[] bytes = new byte[BIN_COUNT * 4];
+        raf.readFully(bytes);
+        final int[] histogram = new int[BIN_COUNT];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(histogram);
+        return new PlaneStatistics(min, max, mean, histogram);
+    }
+
+}
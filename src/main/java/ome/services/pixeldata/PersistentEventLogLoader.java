@@ -9,7 +9,12 @@ package ome.services.pixeldata;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import ome.model.meta.EventLog;
 import ome.services.eventlogs.EventLogLoader;
@@ -18,6 +23,11 @@ import ome.services.eventlogs.EventLogLoader;
  * {@link EventLogLoader} implementation which keeps tracks of the last
  * {@link EventLog} instance, and always provides the next unindexed instance.
  * Resetting that saved value would restart indexing.
+ * <p>
+ * The saved value is a low-water mark: it is only advanced by
+ * {@link #completed(long)} and then only past event logs which have all
+ * been processed. Event logs handed out above it are remembered so that
+ * they are not handed out again while others are still in processing.
  *
  * @author Josh Moore, josh at glencoesoftware.com
  * @since Beta4.3
@@ -27,9 +37,26 @@ public class PersistentEventLogLoader extends ome.services.eventlogs.PersistentE
     protected final String repo;
 
     /**
-     * The lowest entity id from a single dataPerUser set.
+     * Event logs above the saved id which have been handed out, whether or
+     * not they have yet been processed.
      */
-    protected long lowestEntityId = -1;
+    protected final Set<Long> handedOut = new HashSet<Long>();
+
+    /**
+     * Event logs which have been handed out but not yet processed.
+     */
+    protected final SortedSet<Long> outstanding = new TreeSet<Long>();
+
+    /**
+     * The highest event log which has been handed out.
+     */
+    protected long highestHandedOut = -1;
+
+    /**
+     * The highest id which may be saved given which event logs the last
+     * query skipped or may not have returned.
+     */
+    protected long horizon = Long.MAX_VALUE;
 
     protected final int numThreads;
 
@@ -48,9 +75,9 @@ public class PersistentEventLogLoader extends ome.services.eventlogs.PersistentE
     /**
      * Uses data from the {@link #dataPerUser} "queue" to allow new requests to
      * be processed even if one user adds a large number of PIXELDATA events.
-     * Only the lowest event log id will be saved as the {@link #getCurrentId()}
-     * meaning that some event logs will be processed multiple times. The call
-     * to create the pyramid must properly ignore existing pyramids.
+     * Event logs which have already been handed out are passed over, and
+     * the query looks that much further ahead per user so that each user
+     * still has new event logs to offer.
      */
     @Override
     protected EventLog query() {
@@ -68,17 +95,28 @@ public class PersistentEventLogLoader extends ome.services.eventlogs.PersistentE
             // Taking a multiple of the numThreads that takes a few as possible
             // from the second row.
             dataPerUser = new ArrayList<long[]>();
-            List<long[]> tmp = sql.nextPixelsDataLogForRepo(repo, current_id, numThreads);
+            horizon = Long.MAX_VALUE;
+            final int limit = numThreads + handedOut.size();
+            final Set<Long> users = new HashSet<Long>();
+            List<long[]> tmp = sql.nextPixelsDataLogForRepo(repo, current_id, limit);
 
             while (tmp.size() > 0) {
                 long[] data = tmp.remove(0);
-                if (dataPerUser.size() < numThreads) {
+                if (data[3] >= limit) {
+                    // This user may have later event logs not returned.
+                    horizon = Math.min(horizon, data[1]);
+                }
+                if (handedOut.contains(data[1])) {
+                    log.debug("Handed out: " + Arrays.toString(data));
+                } else if (dataPerUser.size() < numThreads) {
                     dataPerUser.add(data); // If we haven't covered the threads, take it
+                    users.add(data[0]);
                     log.debug("Data: " + Arrays.toString(data));
-                } else if (data[3] == 1) {
+                } else if (users.add(data[0])) {
                     dataPerUser.add(data); // If this is the first per user, take it.
                     log.debug("Data: " + Arrays.toString(data));
                 } else {
+                    horizon = Math.min(horizon, data[1] - 1);
                     log.debug("Skip: " + Arrays.toString(data));
                 }
             }
@@ -112,27 +150,39 @@ public class PersistentEventLogLoader extends ome.services.eventlogs.PersistentE
                     pixels, experimenter));
         }
 
-        // Store the lowest of the entity ids.
-        if (lowestEntityId < 0) {
-            lowestEntityId = eventLog;
-        } else {
-            if (lowestEntityId > eventLog) {
-                lowestEntityId = eventLog;
-            }
-        }
+        handedOut.add(eventLog);
+        outstanding.add(eventLog);
+        highestHandedOut = Math.max(highestHandedOut, eventLog);
 
-        // If we are finished, then save this as current id
         if (!available()) {
             dataPerUser = null;
-            try {
-                setCurrentId(lowestEntityId);
-            } finally {
-                lowestEntityId = -1;
-            }
         }
 
         return queryService.get(EventLog.class, eventLog);
 
     }
 
+    /**
+     * Notes that the given event log, as returned by {@link #next()}, has
+     * been processed, successfully or not. Saves as the current id the
+     * highest id at or below which every event log has been processed, so
+     * that a restart neither repeats finished work nor skips unfinished.
+     */
+    public void completed(long eventLogId) {
+        outstanding.remove(eventLogId);
+        long mark = Math.min(horizon, highestHandedOut);
+        if (!outstanding.isEmpty()) {
+            mark = Math.min(mark, outstanding.first() - 1);
+        }
+        if (mark > getCurrentId()) {
+            setCurrentId(mark);
+            final Iterator<Long> it = handedOut.iterator();
+            while (it.hasNext()) {
+                if (it.next() <= mark) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
 }
@@ -45,6 +45,8 @@ public class PixelDataHandler extends SimpleWork {
 
     protected int reps = 5;
 
+    protected PyramidBuilder pyramidBuilder;
+
     /**
      * Spring injector. Sets the number of indexing runs will be made if there
      * is a substantial backlog.
@@ -54,6 +56,14 @@ public class PixelDataHandler extends SimpleWork {
         ;
     }
 
+    /**
+     * Spring injector. Sets the builder used in place of the pixels service
+     * to build pyramids, which may use several threads per Pixels set.
+     */
+    public void setPyramidBuilder(PyramidBuilder pyramidBuilder) {
+        this.pyramidBuilder = pyramidBuilder;
+    }
+
     public PixelDataHandler(EventLogLoader ll, PixelsService pixelsService) {
         super("PixelDataHandler", "process");
         this.loader = ll;
@@ -141,7 +151,9 @@ public class PixelDataHandler extends SimpleWork {
 
         try
         {
-            StatsInfo[] statsInfo = pixelsService.makePyramid(pixels);
+            StatsInfo[] statsInfo = pyramidBuilder == null
+                    ? pixelsService.makePyramid(pixels)
+                    : pyramidBuilder.makePyramid(pixels);
             if(statsInfo == null) {
                 // Either exists or failed to be created, but that's
                 // the PixelsService's business. It should throw an exception
@@ -6,16 +6,16 @@
 package ome.services.pixeldata;
 
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import ome.conditions.InternalException;
 import ome.io.messages.MissingPyramidMessage;
@@ -223,52 +223,99 @@ public class PixelDataThread extends ExecutionThread implements ApplicationListe
     }
 
     /**
-     * Loads event logs from the {@link PixelDataHandler} processing them
-     * all then in a background thread via a {@link ExecutorCompletionService}.
-     *
-     * {@link #numThreads} variable is also used there, so the value returned
-     * <em>should</em> match. In case it isn't, we additionally use an
-     * {@link ArrayBlockingQueue} to hold the results.
+     * Keeps {@link #numThreads} event logs from the {@link PixelDataHandler}
+     * in processing on background threads via an
+     * {@link ExecutorCompletionService}. As soon as one finishes, it is
+     * noted as complete and the next event log is submitted in its place,
+     * so that a single large pyramid does not leave the other threads idle.
+     * Event logs are loaded in batches and submitted in the order the loader
+     * returns them so as to keep its per-user fairness. Returns once nothing
+     * is being processed and there are no more event logs to load.
      */
     @Override
     public void doRun() {
         if (performProcessing) {
 
             final ExecutorCompletionService<Object> ecs =
-                new ExecutorCompletionService<Object>(executor.getService(),
-                        new ArrayBlockingQueue<Future<Object>>(numThreads));
-
-            @SuppressWarnings("unchecked")
-            List<EventLog> eventLogs = (List<EventLog>)
-                    executor.execute(getPrincipal(), work);
-
-            for (final EventLog log : eventLogs) {
-                ecs.submit(new Callable<Object>(){
-                    @Override
-                    public Object call()
-                        throws Exception
-                    {
-                        return go(log);
+                new ExecutorCompletionService<Object>(executor.getService());
+            final Map<Future<Object>, EventLog> inFlight =
+                new HashMap<Future<Object>, EventLog>();
+            final Deque<EventLog> pending = new ArrayDeque<EventLog>();
+            boolean exhausted = false;
+
+            while (true) {
+                while (inFlight.size() < numThreads) {
+                    if (pending.isEmpty()) {
+                        if (exhausted) {
+                            break;
+                        }
+                        @SuppressWarnings("unchecked")
+                        List<EventLog> eventLogs = (List<EventLog>)
+                                executor.execute(getPrincipal(), work);
+                        if (eventLogs.isEmpty()) {
+                            exhausted = true;
+                            break;
+                        }
+                        pending.addAll(eventLogs);
                     }
-                });
-            }
+                    final EventLog eventLog = pending.removeFirst();
+                    inFlight.put(ecs.submit(new Callable<Object>(){
+                        @Override
+                        public Object call()
+                            throws Exception
+                        {
+                            return go(eventLog);
+                        }
+                    }), eventLog);
+                }
 
-            int count = eventLogs.size();
-            while (count > 0) {
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                final Future<Object> future;
                 try {
-                    Future<Object> future = ecs.poll(500, TimeUnit.MILLISECONDS);
-                    if (future != null && future.get() != null) {
-                        count--;
-                    }
+                    future = ecs.take();
+                } catch (InterruptedException ie) {
+                    log.debug("Interrupted; looping", ie);
+                    continue;
+                }
+                try {
+                    future.get();
                 } catch (ExecutionException ee) {
                     onExecutionException(ee);
                 } catch (InterruptedException ie) {
                     log.debug("Interrupted; looping", ie);
+                } finally {
+                    completed(inFlight.remove(future));
+                    // Look again for new event logs now there is a free slot
+                    exhausted = false;
                 }
             }
         }
     }
 
+    /**
+     * Notes that an event log has been processed, successfully or not, so
+     * that the loader may advance its saved position past it.
+     */
+    private void completed(final EventLog eventLog) {
+        final PixelDataHandler handler = (PixelDataHandler) work;
+        if (eventLog == null || eventLog.getId() == null
+                || !(handler.loader instanceof PersistentEventLogLoader)) {
+            return;
+        }
+        executor.execute(getPrincipal(), new Executor.SimpleWork(this,
+                "completed", eventLog.getId()) {
+            @Transactional(readOnly = false)
+            public Object doWork(Session session, ServiceFactory sf) {
+                ((PersistentEventLogLoader) handler.loader).completed(
+                        eventLog.getId());
+                return null;
+            }
+        });
+    }
+
     /**
      * {@link Executor.Work} implementation for the second phase of PixelData
      * processing. Once the {@link EventLog} instances are available, each
@@ -0,0 +1,266 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.pixeldata;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ome.conditions.InternalException;
+import ome.conditions.LockTimeout;
+import ome.io.bioformats.BfPyramidPixelBuffer;
+import ome.io.nio.PixelBuffer;
+import ome.io.nio.PixelsService;
+import ome.io.nio.RomioPixelBuffer;
+import ome.model.core.Pixels;
+import ome.model.stats.StatsInfo;
+import ome.services.util.PixelValues;
+import ome.util.PixelData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Builds the pyramid of a single Pixels set using several threads. The full
+ * resolution level is split into tiles which are read, and their minimum and
+ * maximum found, concurrently on a bounded pool while the calling thread
+ * passes them in order to a {@link BfPyramidPixelBuffer}, exactly as
+ * {@link PixelsService#makePyramid(Pixels)} does, so the file written is the
+ * same. The per-channel {@link StatsInfo} is reduced from the per-tile
+ * results in the same pass.
+ * <p>
+ * Only Pixels sets whose data is in a ROMIO file, which may be read from
+ * concurrently, are built here. Others are passed to
+ * {@link PixelsService#makePyramid(Pixels)}, as are all Pixels sets if only
+ * one thread is configured.
+ *
+ * @since 5.7.6
+ */
+public class PyramidBuilder {
+
+    private final static Logger log = LoggerFactory.getLogger(PyramidBuilder.class);
+
+    /** How many tiles per thread may be read ahead of the writer. */
+    private final static int TILES_AHEAD = 4;
+
+    private final PixelsService pixelsService;
+
+    private final int threads;
+
+    /** The pool or <code>null</code> to always use the pixels service. */
+    private final ExecutorService pool;
+
+    /**
+     * @param pixelsService the service that would otherwise build pyramids.
+     * @param threads how many threads to read tiles on, at most one
+     * disables parallel building.
+     */
+    public PyramidBuilder(PixelsService pixelsService, int threads) {
+        this.pixelsService = pixelsService;
+        this.threads = threads;
+        if (threads > 1) {
+            pool = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setNameFormat("PyramidBuilder-%d")
+                    .setDaemon(true).build());
+        } else {
+            pool = null;
+        }
+        log.info("Pyramid builder: {} threads", Math.max(threads, 1));
+    }
+
+    /**
+     * Called by Spring on destruction.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Builds the pyramid for the given Pixels set as
+     * {@link PixelsService#makePyramid(Pixels)} does.
+     * @param pixels the Pixels set, with its channels and pixels type loaded.
+     * @return the per-channel statistics or <code>null</code> if no pyramid
+     * was built.
+     */
+    public StatsInfo[] makePyramid(Pixels pixels) {
+        final String pixelsFilePath = pixelsService.getPixelsPath(pixels.getId());
+        final File pixelsFile = new File(pixelsFilePath);
+        final File pyramidFile = new File(pixelsFilePath + PixelsService.PYRAMID_SUFFIX);
+        if (pool == null || pyramidFile.exists() || !pixelsFile.exists()
+                || !pixelsService.requiresPixelsPyramid(pixels)) {
+            return pixelsService.makePyramid(pixels);
+        }
+        final long start = System.currentTimeMillis();
+        PixelBuffer source = null;
+        BfPyramidPixelBuffer pyramid = null;
+        try {
+            source = new RomioPixelBuffer(pixelsFilePath, pixels);
+            pyramid = new BfPyramidPixelBuffer(pixels, pyramidFile.getAbsolutePath(), true);
+            final StatsInfo[] statsInfo = build(source, pyramid);
+            pyramid.close();
+            pyramid = null;
+            log.info("Built pyramid for pixels {} on {} threads in {} ms",
+                    pixels.getId(), threads, System.currentTimeMillis() - start);
+            return statsInfo;
+        } catch (LockTimeout lt) {
+            throw lt;
+        } catch (Exception e) {
+            throw new InternalException(String.format(
+                    "Failed to build pyramid for pixels %s: %s",
+                    pixels.getId(), e.getMessage()));
+        } finally {
+            close(pyramid);
+            close(source);
+        }
+    }
+
+    private static void close(PixelBuffer buffer) {
+        if (buffer != null) {
+            try {
+                buffer.close();
+            } catch (Exception e) {
+                log.warn("Failed to close {}", buffer, e);
+            }
+        }
+    }
+
+    /**
+     * A full resolution tile as read, with its minimum and maximum.
+     */
+    private static class Tile {
+        int c;
+        int z;
+        int t;
+        int x;
+        int y;
+        int w;
+        int h;
+        byte[] data;
+        double min;
+        double max;
+    }
+
+    /**
+     * Reads the tiles of the source in the order that
+     * {@link PixelsService#makePyramid(Pixels)} writes them, keeping a
+     * bounded number in flight, and writes each as soon as it and all
+     * before it have been read.
+     */
+    private StatsInfo[] build(final PixelBuffer source, final PixelBuffer pyramid)
+            throws Exception {
+        final Dimension tileSize = pyramid.getTileSize();
+        final int tileWidth = (int) tileSize.getWidth();
+        final int tileHeight = (int) tileSize.getHeight();
+        final int sizeX = source.getSizeX();
+        final int sizeY = source.getSizeY();
+        final int sizeC = source.getSizeC();
+        final double[] min = new double[sizeC];
+        final double[] max = new double[sizeC];
+        Arrays.fill(min, Double.MAX_VALUE);
+        Arrays.fill(max, -Double.MAX_VALUE);
+        final Deque<Future<Tile>> ahead = new ArrayDeque<Future<Tile>>();
+        try {
+            for (int t = 0; t < source.getSizeT(); t++) {
+                for (int c = 0; c < sizeC; c++) {
+                    for (int z = 0; z < source.getSizeZ(); z++) {
+                        for (int y = 0; y < sizeY; y += tileHeight) {
+                            for (int x = 0; x < sizeX; x += tileWidth) {
+                                final Tile tile = new Tile();
+                                tile.c = c;
+                                tile.z = z;
+                                tile.t = t;
+                                tile.x = x;
+                                tile.y = y;
+                                tile.w = Math.min(tileWidth, sizeX - x);
+                                tile.h = Math.min(tileHeight, sizeY - y);
+                                ahead.add(pool.submit(new Callable<Tile>() {
+                                    public Tile call() throws Exception {
+                                        return read(source, tile);
+                                    }
+                                }));
+                                if (ahead.size() >= threads * TILES_AHEAD) {
+                                    write(pyramid, ahead.removeFirst(), min, max);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            while (!ahead.isEmpty()) {
+                write(pyramid, ahead.removeFirst(), min, max);
+            }
+        } finally {
+            for (final Future<Tile> future : ahead) {
+                future.cancel(true);
+            }
+        }
+        final StatsInfo[] statsInfo = new StatsInfo[sizeC];
+        for (int c = 0; c < sizeC; c++) {
+            statsInfo[c] = new StatsInfo(min[c], max[c]);
+        }
+        return statsInfo;
+    }
+
+    /**
+     * Reads a tile and finds its minimum and maximum. Called on the pool.
+     */
+    private static Tile read(PixelBuffer source, Tile tile) throws Exception {
+        final PixelData data = source.getTile(tile.z, tile.c, tile.t,
+                tile.x, tile.y, tile.w, tile.h);
+        try {
+            final int count = tile.w * tile.h;
+            final double[] values = new double[count];
+            PixelValues.read(data, 0, count, values);
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (final double value : values) {
+                min = value < min ? value : min;
+                max = value > max ? value : max;
+            }
+            tile.min = min;
+            tile.max = max;
+            final ByteBuffer buffer = data.getData().duplicate();
+            final byte[] bytes = new byte[count * data.bytesPerPixel()];
+            buffer.position(0);
+            buffer.get(bytes);
+            tile.data = bytes;
+            return tile;
+        } finally {
+            data.dispose();
+        }
+    }
+
+    /**
+     * Waits for a tile to be read then writes it and merges its minimum and
+     * maximum into those of its channel.
+     */
+    private static void write(PixelBuffer pyramid, Future<Tile> future,
+            double[] min, double[] max) throws Exception {
+        final Tile tile;
+        try {
+            tile = future.get();
+        } catch (ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            throw cause instanceof Exception ? (Exception) cause : ee;
+        }
+        pyramid.setTile(tile.data, tile.z, tile.c, tile.t, tile.x, tile.y,
+                tile.w, tile.h);
+        min[tile.c] = Math.min(min[tile.c], tile.min);
+        max[tile.c] = Math.max(max[tile.c], tile.max);
+    }
+}
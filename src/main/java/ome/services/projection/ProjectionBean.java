@@ -51,6 +51,10 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
     
     /** Reference to the service used to retrieve the pixels data. */
     protected transient PixelsService pixelsService;
+
+    /** Performs the projection of each stack. */
+    protected transient ProjectionEngine projectionEngine =
+        new ProjectionEngine(1);
     
     /**
      * Returns the interface this implementation is for.
@@ -81,6 +85,14 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
         this.pixelsService = pixelsService;
     }
     
+    /**
+     * ProjectionEngine bean injector. For use during configuration.
+     */
+    public void setProjectionEngine(ProjectionEngine projectionEngine)
+    {
+        this.projectionEngine = projectionEngine;
+    }
+
     /* (non-Javadoc)
      * @see ome.api.IProjection#projectStack(long, ome.model.enums.PixelsType, int, int, int, int, int, int)
      */
@@ -120,32 +132,10 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
             int planeSize = 
                 ctx.planeSizeInPixels * (iPixels.getBitDepth(pixelsType) / 8);
             byte[] buf = new byte[planeSize];
-            ctx.from = pixelBuffer.getStack(channelIndex, timepoint);
             ctx.to = new PixelData(pixelsType.getValue(), ByteBuffer.wrap(buf));
 
-            switch (algorithm)
-            {
-                case IProjection.MAXIMUM_INTENSITY:
-                {
-                    projectStackMax(ctx, stepping, start, end, false);
-                    break;
-                }
-                case IProjection.MEAN_INTENSITY:
-                {
-                    projectStackMean(ctx, stepping, start, end, false);
-                    break;
-                }
-                case IProjection.SUM_INTENSITY:
-                {
-                    projectStackSum(ctx, stepping, start, end, false);
-                    break;
-                }
-                default:
-                {
-                    throw new IllegalArgumentException(
-                            "Unknown algorithm: " + algorithm);
-                }
-            }
+            projectStack(ctx, pixelBuffer, channelIndex, timepoint,
+                    algorithm, stepping, start, end);
             return buf;
         }
         catch (IOException e)
@@ -176,9 +166,6 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                 throw new ResourceError(
                         e.getMessage() + " Please check server log.");
             }
-            if (ctx.from != null) {
-                ctx.from.dispose();
-            }
         }
     }
 
@@ -246,30 +233,8 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                     {
                         try
                         {
-                            ctx.from = sourceBuffer.getStack(c, t);
-                            switch (algorithm)
-                            {
-                                case IProjection.MAXIMUM_INTENSITY:
-                                {
-                                    projectStackMax(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                case IProjection.MEAN_INTENSITY:
-                                {
-                                    projectStackMean(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                case IProjection.SUM_INTENSITY:
-                                {
-                                    projectStackSum(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                default:
-                                {
-                                    throw new IllegalArgumentException(
-                                            "Unknown algorithm: " + algorithm);
-                                }
-                            }
+                            projectStack(ctx, sourceBuffer, c, t, algorithm,
+                                    stepping, zStart, zEnd);
                             destinationBuffer.setPlane(buf, 0, newC, t-tStart);
                         }
                         catch (IOException e)
@@ -287,10 +252,6 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                                     c, t, ctx.pixels.getId(), e.getMessage());
                             log.error(error, e);
                             throw new ValidationException(error);
-                        } finally {
-                            if (ctx.from != null) {
-                                ctx.from.dispose();
-                            }
                         }
                     }
                     // Handle the change of minimum and maximum for this channel.
@@ -379,8 +340,14 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
     }
     
     /**
-     * Projects a stack based on the maximum intensity at each XY coordinate.
+     * Projects a stack into the context's destination plane, updating the
+     * minimum and maximum of the projected pixel data. The stack is read a
+     * plane at a time so that memory use is independent of its depth.
      * @param ctx The context of our projection.
+     * @param pixelBuffer The buffer to read the stack from.
+     * @param channel The channel of the stack.
+     * @param timepoint The timepoint of the stack.
+     * @param algorithm The projection algorithm.
      * @param stepping Stepping value to use while calculating the projection.
      * For example, <code>stepping=1</code> will use every optical section from
      * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
@@ -388,137 +355,49 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
      * perform the projection.
      * @param start Optical section to start projecting from.
      * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
+     * @throws IOException If there is an error reading a plane.
+     * @throws DimensionsOutOfBoundsException If a plane is out of range.
      */
-    private void projectStackMax(ProjectionContext ctx, int stepping,
-                                 int start, int end, boolean doMinMax)
+    private void projectStack(final ProjectionContext ctx,
+                              PixelBuffer pixelBuffer, final int channel,
+                              final int timepoint, int algorithm,
+                              int stepping, int start, int end)
+        throws IOException, DimensionsOutOfBoundsException
     {
-        int currentPlaneStart;
-        double projectedValue, stackValue;
-        double minimum = ctx.minimum;
-        double maximum = ctx.maximum;
-        for (int i = 0; i < ctx.planeSizeInPixels; i++)
+        ProjectionEngine.ProgressListener listener = null;
+        if (log.isDebugEnabled())
         {
-            projectedValue = 0;
-            for (int z = start; z <= end; z += stepping)
-            {
-                currentPlaneStart = ctx.planeSizeInPixels * z;
-                stackValue = ctx.from.getPixelValue(currentPlaneStart + i);
-                if (stackValue > projectedValue)
+            listener = new ProjectionEngine.ProgressListener() {
+                public void progress(long done, long total)
                 {
-                    projectedValue = stackValue;
+                    log.debug(String.format(
+                            "Projected %d of %d pixels of C=%d T=%d of Pixels Id %d",
+                            done, total, channel, timepoint,
+                            ctx.pixels.getId()));
                 }
-            }
-            ctx.to.setPixelValue(i, projectedValue);
-            if (doMinMax)
-            {
-                minimum = projectedValue < minimum? projectedValue : minimum;
-                maximum = projectedValue > maximum? projectedValue : maximum;
-            }
+            };
         }
-        ctx.minimum = minimum;
-        ctx.maximum = maximum;
-    }
-    
-    /**
-     * Projects a stack based on the mean intensity at each XY coordinate.
-     * @param from The raw pixel data from the stack to project from.
-     * @param ctx The context of our projection.
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
-     */
-    private void projectStackMean(ProjectionContext ctx, int stepping, 
-                                  int start, int end, boolean doMinMax)
-    {
-        projectStackMeanOrSum(ctx, stepping, start, end, true, doMinMax);
-    }
-    
-    /**
-     * Projects a stack based on the sum intensity at each XY coordinate.
-     * @param ctx The context of our projection.
-     * @param pixelsType The destination Pixels type. If <code>null</code>, the
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
-     */
-    private void projectStackSum(ProjectionContext ctx, int stepping, 
-                                 int start, int end, boolean doMinMax)
-    {
-        projectStackMeanOrSum(ctx, stepping, start, end, false, doMinMax);
-    }
-    
-    /**
-     * Projects a stack based on the sum intensity at each XY coordinate with
-     * the option to also average the sum intensity.
-     * @param ctx The context of our projection.
-     * @param pixelsType The destination Pixels type. If <code>null</code>, the
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param mean Whether or not we're performing an average post sum
-     * intensity projection.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
-     */
-    private void projectStackMeanOrSum(ProjectionContext ctx, int stepping,
-                                       int start, int end, 
-                                       boolean mean, boolean doMinMax)
-    {
-        double planeMaximum = ctx.to.getMaximum();
-
-        int currentPlaneStart;
-        double projectedValue, stackValue;
-        double minimum = ctx.minimum;
-        double maximum = ctx.maximum;
-        for (int i = 0; i < ctx.planeSizeInPixels; i++)
+        ProjectionEngine.Accumulator accumulator =
+            projectionEngine.accumulator(algorithm, ctx.planeSizeInPixels,
+                    ProjectionEngine.planeCount(algorithm, stepping, start,
+                            end), listener);
+        int last = ProjectionEngine.lastSection(algorithm, end);
+        for (int z = start; z <= last; z += stepping)
         {
-            projectedValue = 0;
-            int projectedPlaneCount = 0;
-            for (int z = start; z < end; z += stepping)
-            {
-                currentPlaneStart = ctx.planeSizeInPixels * z;
-                stackValue = ctx.from.getPixelValue(currentPlaneStart + i);
-                projectedValue += stackValue;
-                projectedPlaneCount++;
-            }
-            if (mean)
-            {
-                projectedValue = projectedValue / projectedPlaneCount;
-            }
-            if (projectedValue > planeMaximum)
+            PixelData plane = pixelBuffer.getPlane(z, channel, timepoint);
+            try
             {
-                projectedValue = planeMaximum;
+                accumulator.add(plane);
             }
-            ctx.to.setPixelValue(i, projectedValue);
-            if (doMinMax)
+            finally
             {
-                minimum = projectedValue < minimum? projectedValue : minimum;
-                maximum = projectedValue > maximum? projectedValue : maximum;
+                plane.dispose();
             }
         }
-        ctx.minimum = minimum;
-        ctx.maximum = maximum;
+        double[] minMax =
+            accumulator.finish(ctx.to, ctx.minimum, ctx.maximum);
+        ctx.minimum = minMax[0];
+        ctx.maximum = minMax[1];
     }
     
     /**
@@ -545,9 +424,6 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
         /** Current maximum for the projected pixel data. */
         public double maximum = Double.MIN_VALUE;
         
-        /** The raw pixel data from the stack to project from. */
-        public PixelData from;
-        
         /** The raw pixel data buffer to project into. */
         public PixelData to;
     }
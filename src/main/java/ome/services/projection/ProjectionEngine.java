@@ -0,0 +1,319 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.projection;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ome.api.IProjection;
+import ome.services.util.PixelValues;
+import ome.util.PixelData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Projects stacks of planes onto a single plane. The stack is projected a
+ * plane at a time with an {@link Accumulator}, which needs memory
+ * proportional to the size of a plane rather than of the stack. Each plane
+ * is split into stripes of consecutive pixels which are accumulated
+ * concurrently on a fork/join pool, reading one run of values at a time via
+ * {@link PixelValues} into primitive arrays. Results are identical to
+ * projecting pixel by pixel.
+ *
+ * @since 5.7.6
+ */
+public class ProjectionEngine
+{
+
+    /** The logger for this class. */
+    private static final Logger log =
+            LoggerFactory.getLogger(ProjectionEngine.class);
+
+    /** Stripes of at most this many pixels are not split further. */
+    private static final int STRIPE_SIZE = 65536;
+
+    /**
+     * Notified as stripes of a projection complete.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * @param done the number of pixels of the stack projected so far.
+         * @param total the number of pixels in the planes of the stack to
+         * be projected.
+         */
+        void progress(long done, long total);
+    }
+
+    /** The pool or <code>null</code> to project on the calling thread. */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new engine.
+     * @param threads the number of threads to project on. A value of one or
+     * less projects on the calling thread.
+     */
+    public ProjectionEngine(int threads)
+    {
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        log.info("Projection engine: {} threads", Math.max(threads, 1));
+    }
+
+    /**
+     * Stops the pool, if any. For use as a Spring destroy method.
+     */
+    public void shutdown()
+    {
+        if (pool != null)
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the last optical section that the given algorithm projects.
+     * The maximum intensity projection includes <code>end</code> while, for
+     * compatibility with earlier releases, the mean and sum intensity
+     * projections stop before it.
+     * @param algorithm the projection algorithm.
+     * @param end the last optical section requested.
+     * @return the last optical section to pass to an {@link Accumulator}.
+     */
+    public static int lastSection(int algorithm, int end)
+    {
+        return algorithm == IProjection.MAXIMUM_INTENSITY ? end : end - 1;
+    }
+
+    /**
+     * Returns the number of planes that the given algorithm projects.
+     * @param algorithm the projection algorithm.
+     * @param stepping the Z stepping.
+     * @param start the first optical section requested.
+     * @param end the last optical section requested.
+     * @return the number of planes that will be added to an
+     * {@link Accumulator}.
+     */
+    public static int planeCount(int algorithm, int stepping, int start,
+            int end)
+    {
+        final int last = lastSection(algorithm, end);
+        return last < start ? 0 : (last - start) / stepping + 1;
+    }
+
+    /**
+     * Creates an accumulator to project a stack one plane at a time.
+     * @param algorithm one of {@link IProjection#MAXIMUM_INTENSITY},
+     * {@link IProjection#MEAN_INTENSITY} or
+     * {@link IProjection#SUM_INTENSITY}.
+     * @param planeSize the number of pixels in a plane.
+     * @param planes the number of planes that will be added, for reporting
+     * progress.
+     * @param listener notified of progress, may be <code>null</code>.
+     * @return a new accumulator.
+     */
+    public Accumulator accumulator(int algorithm, int planeSize, int planes,
+            ProgressListener listener)
+    {
+        if (algorithm != IProjection.MAXIMUM_INTENSITY
+                && algorithm != IProjection.MEAN_INTENSITY
+                && algorithm != IProjection.SUM_INTENSITY)
+        {
+            throw new IllegalArgumentException(
+                    "Unknown algorithm: " + algorithm);
+        }
+        return new Accumulator(algorithm, planeSize,
+                (long) planeSize * planes, listener);
+    }
+
+    /**
+     * Projects a stack from its planes, added in turn. The running maximum
+     * or sum is held in a <code>double</code> array, as the values were
+     * accumulated pixel by pixel, so that results are identical to
+     * projecting pixel by pixel. Each plane is accumulated in stripes on the
+     * engine's pool, notifying the listener as each stripe completes. Not
+     * thread-safe.
+     */
+    public final class Accumulator
+    {
+        private final int algorithm;
+
+        private final int planeSize;
+
+        private final double[] projected;
+
+        private final double[] values;
+
+        private final long total;
+
+        private final ProgressListener listener;
+
+        private final AtomicLong done = new AtomicLong();
+
+        private int planes;
+
+        private Accumulator(int algorithm, int planeSize, long total,
+                ProgressListener listener)
+        {
+            this.algorithm = algorithm;
+            this.planeSize = planeSize;
+            this.projected = new double[planeSize];
+            this.values = new double[planeSize];
+            this.total = total;
+            this.listener = listener;
+        }
+
+        /**
+         * Adds a plane to the projection.
+         * @param plane the pixel data of the plane, which may be disposed of
+         * once this method returns.
+         */
+        public void add(final PixelData plane)
+        {
+            final boolean isMaximum =
+                    algorithm == IProjection.MAXIMUM_INTENSITY;
+            forEachStripe(planeSize, new Stripe() {
+                public void run(int offset, int count)
+                {
+                    PixelValues.read(plane, offset, count, values, offset);
+                    final int end = offset + count;
+                    if (isMaximum)
+                    {
+                        for (int i = offset; i < end; i++)
+                        {
+                            if (values[i] > projected[i])
+                            {
+                                projected[i] = values[i];
+                            }
+                        }
+                    }
+                    else
+                    {
+                        for (int i = offset; i < end; i++)
+                        {
+                            projected[i] += values[i];
+                        }
+                    }
+                    if (listener != null)
+                    {
+                        listener.progress(done.addAndGet(count), total);
+                    }
+                }
+            });
+            planes++;
+        }
+
+        /**
+         * Writes the projection of the planes added so far.
+         * @param to the plane to write the projection to.
+         * @param minimum the minimum to start from.
+         * @param maximum the maximum to start from.
+         * @return <code>{minimum, maximum}</code> of the projected values,
+         * including the values passed in.
+         */
+        public double[] finish(final PixelData to, double minimum,
+                double maximum)
+        {
+            final boolean mean = algorithm == IProjection.MEAN_INTENSITY;
+            final boolean clamp = algorithm != IProjection.MAXIMUM_INTENSITY;
+            final double planeMaximum = to.getMaximum();
+            final double[] minMax = new double[] { minimum, maximum };
+            forEachStripe(planeSize, new Stripe() {
+                public void run(int offset, int count)
+                {
+                    double min = Double.MAX_VALUE;
+                    double max = -Double.MAX_VALUE;
+                    for (int i = offset; i < offset + count; i++)
+                    {
+                        double value = projected[i];
+                        if (mean)
+                        {
+                            value = value / planes;
+                        }
+                        if (clamp && value > planeMaximum)
+                        {
+                            value = planeMaximum;
+                        }
+                        to.setPixelValue(i, value);
+                        min = value < min ? value : min;
+                        max = value > max ? value : max;
+                    }
+                    synchronized (minMax)
+                    {
+                        minMax[0] = Math.min(minMax[0], min);
+                        minMax[1] = Math.max(minMax[1], max);
+                    }
+                }
+            });
+            return minMax;
+        }
+    }
+
+    /**
+     * Work on a stripe of consecutive pixels of a plane.
+     */
+    private interface Stripe
+    {
+        void run(int offset, int count);
+    }
+
+    /**
+     * Runs the given work over stripes of a plane, on the pool if there is
+     * one and the plane is large enough to split.
+     */
+    private void forEachStripe(int size, Stripe stripe)
+    {
+        if (pool == null || size <= STRIPE_SIZE)
+        {
+            for (int o = 0; o < size; o += STRIPE_SIZE)
+            {
+                stripe.run(o, Math.min(STRIPE_SIZE, size - o));
+            }
+        }
+        else
+        {
+            pool.invoke(new StripeAction(stripe, 0, size));
+        }
+    }
+
+    /**
+     * Runs work over a stripe of a plane, splitting it while it is larger
+     * than {@link ProjectionEngine#STRIPE_SIZE}.
+     */
+    private static final class StripeAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Stripe stripe;
+
+        private final int offset;
+
+        private final int count;
+
+        StripeAction(Stripe stripe, int offset, int count)
+        {
+            this.stripe = stripe;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (count > STRIPE_SIZE)
+            {
+                final int half = count / 2;
+                invokeAll(new StripeAction(stripe, offset, half),
+                        new StripeAction(stripe, offset + half, count - half));
+            }
+            else
+            {
+                stripe.run(offset, count);
+            }
+        }
+    }
+}
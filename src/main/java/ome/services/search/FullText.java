@@ -16,10 +16,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import ome.api.IAdmin;
 import ome.conditions.ApiUsageException;
 import ome.model.IAnnotated;
 import ome.model.IObject;
 import ome.model.core.Image;
+import ome.model.internal.Permissions;
+import ome.system.EventContext;
 import ome.system.ServiceFactory;
 import ome.util.search.InvalidQueryException;
 import ome.util.search.LuceneQueryBuilder;
@@ -30,6 +33,7 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.util.Version;
 import org.hibernate.Criteria;
 import org.hibernate.Session;
@@ -69,6 +73,14 @@ public class FullText extends SearchAction {
 
     private final Class<? extends Analyzer> analyzer;
 
+    /** Number of hits fetched per {@link #doWork} call, or 0 for all hits. */
+    private int pageSize = 0;
+
+    /** Number of Lucene hits fetched so far when paging. */
+    private int offset = 0;
+
+    private boolean exhausted = false;
+
     /**
      * Constructs a new instance; Builds a Lucence query with the provided
      * arguments and passes it on the Lucene parser
@@ -305,10 +317,64 @@ public class FullText extends SearchAction {
                 ProjectionConstants.ID);
     }
 
+    /**
+     * Switches this action to paging: each call to {@link #doWork} then
+     * fetches and checks only the next page of Lucene hits, so that only a
+     * page of results is held at a time. Not possible if results are
+     * ordered by the database rather than by score, since the order then
+     * depends on all hits.
+     *
+     * @param size the number of hits to fetch per call
+     * @return if paging is in effect
+     */
+    public boolean page(int size) {
+        if (size < 1 || !values.orderBy.isEmpty()) {
+            return false;
+        }
+        pageSize = size;
+        return true;
+    }
+
+    /**
+     * @return if paging and all hits have been fetched, after which
+     * {@link #doWork} returns no further results
+     */
+    public boolean isExhausted() {
+        return pageSize > 0 && exhausted;
+    }
+
+    /**
+     * Restricts the Lucene hits to those the current user may see, so that
+     * only these are loaded and re-checked by the {@link Criteria}.
+     *
+     * @return null if no restriction is needed or possible
+     */
+    private Query visibilityQuery(Session s, ServiceFactory sf) {
+        final IAdmin admin = sf.getAdminService();
+        final EventContext ec = admin.getEventContext();
+        final VisibilityFilter filter = new VisibilityFilter(ec,
+                admin.getSecurityRoles());
+        if (filter.isUnrestricted()) {
+            return null;
+        }
+        final Map<Long, Permissions> groups = new HashMap<Long, Permissions>();
+        final Long groupId = ec.getCurrentGroupId();
+        if (groupId == null || groupId < 0) {
+            final List<?> rows = s.createQuery(
+                    "select g.id, g.details.permissions from ExperimenterGroup g")
+                    .list();
+            for (Object row : rows) {
+                final Object[] parts = (Object[]) row;
+                groups.put((Long) parts[0], (Permissions) parts[1]);
+            }
+        }
+        return filter.build(groups);
+    }
+
     @Transactional(readOnly = true)
     public Object doWork(Session s, ServiceFactory sf) {
 
-        if (q == null) {
+        if (q == null || isExhausted()) {
             return null;
         }
 
@@ -332,8 +398,20 @@ public class FullText extends SearchAction {
             ftQuery.setTimeout(timeout);
         }
         initializeQuery(ftQuery);
+        final Query visible = visibilityQuery(s, sf);
+        if (visible != null) {
+            ftQuery.setFilter(new QueryWrapperFilter(visible));
+        }
+        if (pageSize > 0) {
+            ftQuery.setFirstResult(offset);
+            ftQuery.setMaxResults(pageSize);
+        }
         List<?> result = ftQuery.list();
         int totalSize = ftQuery.getResultSize();
+        if (pageSize > 0) {
+            offset += result.size();
+            exhausted = result.size() < pageSize || offset >= totalSize;
+        }
 
         if (result.size() == 0) {
             // EARLY EXIT 
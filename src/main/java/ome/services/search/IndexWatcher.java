@@ -19,11 +19,24 @@
 
 package ome.services.search;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Function;
 
 import javax.sql.DataSource;
@@ -31,6 +44,10 @@ import javax.sql.DataSource;
 import ome.model.IObject;
 import ome.model.enums.EventType;
 
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 
@@ -38,38 +55,66 @@ import org.springframework.jdbc.core.JdbcTemplate;
  * The index watcher writes REINDEX entries to the event log and waits for the indexing thread to process them.
  * It operates within Blitz but outside its transaction handling so that the communication with the Indexer thread
  * can occur while the update service waits inside the {@link ome.logic.UpdateImpl#indexObject(IObject)} transaction.
+ * Entries are written as soon as they are requested, by a thread of the watcher's own: entries requested meanwhile
+ * are written together, as one event for each requester and a batched insert of their event log entries.
+ * The indexer notifies its progress on {@link #PROGRESS_CHANNEL}, to which the watcher listens on a connection of
+ * its own, in whichever process the indexer runs; the database is also polled in case a notification is missed.
+ * The watcher listens only while objects await indexing: the connection and its thread are opened as the first
+ * objects are requested and closed once the indexer has caught up with every request.
  * @author m.t.b.carroll@dundee.ac.uk
  * @since 5.5.0
  */
 public class IndexWatcher {
 
     /**
-     * A simple struct for noting the event log entry that must be created.
+     * The database notification channel on which the indexer notes, as the payload, the ID of the last event log
+     * entry that it has processed.
+     * @since 5.7.6
+     */
+    public static final String PROGRESS_CHANNEL = "omero_indexing_progress";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexWatcher.class);
+
+    /* how long to block awaiting notifications before checking if the watcher is stopped */
+    private static final int LISTEN_TIMEOUT_MS = 1000;
+
+    /* how long to wait before listening again after losing the connection */
+    private static final long RECONNECT_DELAY_MS = 10000;
+
+    /**
+     * A simple struct for noting the event log entries that must be created.
      * @author m.t.b.carroll@dundee.ac.uk
      * @since 5.5.0
      */
     private class ToIndex {
-        final Class<? extends IObject> objectType;
-        final long objectId;
+        final List<Object[]> objects = new ArrayList<>();
         final long userId;
         final long groupId;
         final long sessionId;
         final Semaphore semaphore = new Semaphore(0);
 
         /**
-         * Construct a note of an event log entry.
-         * @param object the object to index, may be unloaded
+         * Construct a note of event log entries.
+         * @param objects the objects to index, may be unloaded
          * @param userId the user to record for the reindexing request
          * @param groupId the group to record for the reindexing request
          * @param sessionId the session to record for the reindexing request
          */
-        ToIndex(IObject object, long userId, long groupId, long sessionId) {
-            this.objectType = object.getClass();
-            this.objectId = object.getId();
+        ToIndex(Collection<? extends IObject> objects, long userId, long groupId, long sessionId) {
+            for (final IObject object : objects) {
+                this.objects.add(new Object[] {object.getClass().getName(), object.getId()});
+            }
             this.userId = userId;
             this.groupId = groupId;
             this.sessionId = sessionId;
         }
+
+        /**
+         * @return the requester, for whom a single event suffices
+         */
+        List<Long> requester() {
+            return Arrays.asList(userId, groupId, sessionId);
+        }
     }
 
     private final List<ToIndex> objectsToIndex = new ArrayList<>();
@@ -79,35 +124,165 @@ public class IndexWatcher {
     private final String[] countKey;
     private final long fullTextType;
 
+    private final String listenUrl;
+    private final Properties listenProperties;
+
+    /* the thread listening for notifications, if any: others that find they are not it stop listening */
+    private volatile Thread listener = null;
+    private boolean isStopped = false;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "IndexWatcher-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     /**
-     * Construct a new index watcher.
+     * Construct a new index watcher that learns of the indexer's progress only by polling.
      * @param dataSource the data source to be used for JDBC access to the database
      * @param countKey the name of the configuration key for tracking progress through the event log
      */
     public IndexWatcher(DataSource dataSource, String countKey) {
+        this(dataSource, countKey, null);
+    }
+
+    /**
+     * Construct a new index watcher.
+     * @param dataSource the data source to be used for JDBC access to the database
+     * @param countKey the name of the configuration key for tracking progress through the event log
+     * @param dataSourceProperties the <code>url</code>, <code>user</code> and <code>password</code> for opening the
+     * connection on which to listen for the indexer's progress, may be {@code null}
+     * @since 5.7.6
+     */
+    public IndexWatcher(DataSource dataSource, String countKey, Properties dataSourceProperties) {
         this.dataSource = new JdbcTemplate(dataSource);
         this.countKey = new String[] {countKey};
 
         /* Events will be of the FullText type. */
         this.fullTextType = this.dataSource.queryForObject("SELECT id FROM eventtype WHERE value = ?",
                 new String[] {EventType.VALUE_FULL_TEXT}, Long.class);
+
+        if (dataSourceProperties == null) {
+            this.listenUrl = null;
+            this.listenProperties = null;
+        } else {
+            this.listenUrl = dataSourceProperties.getProperty("url");
+            this.listenProperties = new Properties();
+            this.listenProperties.setProperty("user", dataSourceProperties.getProperty("user"));
+            this.listenProperties.setProperty("password", dataSourceProperties.getProperty("password"));
+        }
+    }
+
+    /**
+     * Start listening for notifications of the indexer's progress, unless already listening.
+     */
+    private void startListening() {
+        if (listenUrl == null || listener != null || isStopped) {
+            return;
+        }
+        final Thread listener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                listen();
+            }
+        }, "IndexWatcher-listener");
+        listener.setDaemon(true);
+        this.listener = listener;
+        listener.start();
+    }
+
+    /**
+     * Stop listening for notifications of the indexer's progress if no objects await indexing.
+     * The listener closes its connection within {@link #LISTEN_TIMEOUT_MS}.
+     */
+    private void stopListeningIfIdle() {
+        if (objectsToIndex.isEmpty() && eventLogFilters.isEmpty()) {
+            listener = null;
+        }
+    }
+
+    /**
+     * Stop listening for notifications and writing event log entries.
+     * @since 5.7.6
+     */
+    public synchronized void stop() {
+        isStopped = true;
+        listener = null;
+        writer.shutdownNow();
+    }
+
+    /**
+     * Listen for notifications of the indexer's progress until no longer the listener, connecting again if the
+     * connection is lost.
+     */
+    private void listen() {
+        final Thread self = Thread.currentThread();
+        while (listener == self) {
+            try (final Connection connection = DriverManager.getConnection(listenUrl, listenProperties)) {
+                try (final Statement stmt = connection.createStatement()) {
+                    stmt.execute("LISTEN " + PROGRESS_CHANNEL);
+                }
+                final PGConnection notifications = connection.unwrap(PGConnection.class);
+                while (listener == self) {
+                    long currentId = -1;
+                    final PGNotification[] notified = notifications.getNotifications(LISTEN_TIMEOUT_MS);
+                    if (notified != null) {
+                        for (final PGNotification notification : notified) {
+                            try {
+                                currentId = Math.max(currentId, Long.parseLong(notification.getParameter()));
+                            } catch (NumberFormatException nfe) {
+                                LOGGER.debug("ignoring indexing progress {}", notification.getParameter());
+                            }
+                        }
+                    }
+                    if (currentId >= 0) {
+                        progressed(currentId);
+                    }
+                }
+            } catch (SQLException sqle) {
+                if (listener == self) {
+                    LOGGER.warn("cannot listen for indexing progress, will retry", sqle);
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MS);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }
     }
 
     /**
      * Write the {@link ome.model.meta.Event} and {@link ome.model.meta.EventLog} instances that trigger indexing.
      */
     private void createLogEntries() {
+        final Map<List<Long>, List<Object[]>> byRequester = new LinkedHashMap<>();
         for (final ToIndex object : objectsToIndex) {
+            List<Object[]> entries = byRequester.get(object.requester());
+            if (entries == null) {
+                entries = new ArrayList<>();
+                byRequester.put(object.requester(), entries);
+            }
+            entries.addAll(object.objects);
+        }
+        for (final Map.Entry<List<Long>, List<Object[]>> requester : byRequester.entrySet()) {
+            final List<Long> ids = requester.getKey();
             final String status = UUID.randomUUID().toString();
             dataSource.update("INSERT INTO event (id, type, experimenter, experimentergroup, session, time, permissions, status) " +
                     "VALUES (ome_nextval('seq_event'), ?, ?, ?, ?, NOW(), -35, ?)",
-                    fullTextType, object.userId, object.groupId, object.sessionId, status);
+                    fullTextType, ids.get(0), ids.get(1), ids.get(2), status);
             final long eventId = this.dataSource.queryForObject("SELECT id FROM event WHERE status = ?",
                     new String[] {status}, Long.class);
             dataSource.update("UPDATE event SET status = NULL WHERE id = ?", eventId);
-            dataSource.update("INSERT INTO eventlog (id, action, entitytype, entityid, event, permissions) " +
-                    "VALUES (ome_nextval('seq_eventlog'), 'REINDEX', ?, ?, ?, -35)",
-                    object.objectType.getName(), object.objectId, eventId);
+            final List<Object[]> rows = new ArrayList<>(requester.getValue().size());
+            for (final Object[] entry : requester.getValue()) {
+                rows.add(new Object[] {entry[0], entry[1], eventId});
+            }
+            dataSource.batchUpdate("INSERT INTO eventlog (id, action, entitytype, entityid, event, permissions) " +
+                    "VALUES (ome_nextval('seq_eventlog'), 'REINDEX', ?, ?, ?, -35)", rows);
         }
     }
 
@@ -138,7 +313,7 @@ public class IndexWatcher {
     }
 
     /**
-     * Respond to the progress of the Indexer thread.
+     * Respond to the progress of the Indexer thread as noted in the database.
      */
     private void applyFilters() {
         final long currentId;
@@ -149,6 +324,14 @@ public class IndexWatcher {
         } catch (EmptyResultDataAccessException | NullPointerException | NumberFormatException e) {
             return;
         }
+        applyFilters(currentId);
+    }
+
+    /**
+     * Respond to the progress of the Indexer thread.
+     * @param currentId the ID of the last event log entry processed by the indexer
+     */
+    private void applyFilters(long currentId) {
         final Iterator<Function<Long, Boolean>> entryIter = eventLogFilters.iterator();
         while (entryIter.hasNext()) {
             final Function<Long, Boolean> entry = entryIter.next();
@@ -162,6 +345,17 @@ public class IndexWatcher {
         }
     }
 
+    /**
+     * Respond to a notification of the progress of the Indexer thread without waiting for the next poll.
+     * @param currentId the ID of the last event log entry processed by the indexer
+     */
+    private synchronized void progressed(long currentId) {
+        if (!eventLogFilters.isEmpty()) {
+            applyFilters(currentId);
+            stopListeningIfIdle();
+        }
+    }
+
     /**
      * Check for new objects to index and for progress with indexing past objects.
      */
@@ -175,6 +369,7 @@ public class IndexWatcher {
             /* Objects still await indexing. */
             applyFilters();
         }
+        stopListeningIfIdle();
     }
 
     /**
@@ -185,9 +380,37 @@ public class IndexWatcher {
      * @param sessionId the session to record for the reindexing request
      * @return a semaphore that is released only after the indexer has processed the request
      */
-    public synchronized Semaphore indexObject(IObject object, long userId, long groupId, long sessionId) {
-        final ToIndex objectToIndex = new ToIndex(object, userId, groupId, sessionId);
-        objectsToIndex.add(objectToIndex);
-        return objectToIndex.semaphore;
+    public Semaphore indexObject(IObject object, long userId, long groupId, long sessionId) {
+        return indexObjects(Collections.singletonList(object), userId, groupId, sessionId);
+    }
+
+    /**
+     * Index the given objects. Their event log entries are written at once, in a single batch, from outside the
+     * caller's transaction.
+     * @param objects the objects to index, may be unloaded
+     * @param userId the user to record for the reindexing request
+     * @param groupId the group to record for the reindexing request
+     * @param sessionId the session to record for the reindexing request
+     * @return a semaphore that is released only after the indexer has processed the request for all the objects
+     */
+    public synchronized Semaphore indexObjects(Collection<? extends IObject> objects, long userId, long groupId,
+            long sessionId) {
+        final ToIndex objectsToIndex = new ToIndex(objects, userId, groupId, sessionId);
+        if (objectsToIndex.objects.isEmpty()) {
+            objectsToIndex.semaphore.release();
+        } else {
+            if (this.objectsToIndex.isEmpty()) {
+                /* Not yet due to be written so write now rather than at the next poll. */
+                writer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        poll();
+                    }
+                });
+            }
+            this.objectsToIndex.add(objectsToIndex);
+            startListening();
+        }
+        return objectsToIndex.semaphore;
     }
 }
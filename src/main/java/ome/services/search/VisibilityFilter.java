@@ -0,0 +1,144 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.search;
+
+import java.util.List;
+import java.util.Map;
+
+import ome.model.internal.Permissions;
+import ome.model.internal.Permissions.Right;
+import ome.model.internal.Permissions.Role;
+import ome.system.EventContext;
+import ome.system.Roles;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+
+/**
+ * Builds a Lucene {@link Query} which matches only the documents that the
+ * security filters would let the current user load, using the owner and
+ * group ids indexed by
+ * {@link ome.services.fulltext.FullTextBridge#set_details}. Passing this to
+ * the full text query as a filter keeps invisible hits from ever being
+ * loaded and re-checked in the database. The conditions mirror those of
+ * {@link ome.security.basic.OneGroupSecurityFilter} and
+ * {@link ome.security.basic.AllGroupsSecurityFilter}. Group permissions are
+ * taken from the groups at query time rather than from the index so that
+ * changing the permissions of a group does not require reindexing.
+ *
+ * Documents indexed before the ids were added, and those of types which have
+ * no group, always match, leaving them to the database check.
+ *
+ * @since 5.7.6
+ */
+public class VisibilityFilter {
+
+    public static final String OWNER_ID = "details.owner.id";
+
+    public static final String GROUP_ID = "details.group.id";
+
+    private final EventContext ec;
+
+    private final Roles roles;
+
+    /**
+     * @param ec the context of the current user
+     * @param roles the security roles, for the system and user groups
+     */
+    public VisibilityFilter(EventContext ec, Roles roles) {
+        this.ec = ec;
+        this.roles = roles;
+    }
+
+    /**
+     * @return if no filter is needed since everything is visible, in which
+     * case {@link #build(Map)} need not be called
+     */
+    public boolean isUnrestricted() {
+        return ec.isCurrentUserAdmin() || ec.getCurrentShareId() != null;
+    }
+
+    /**
+     * @param groupPermissions the permissions of every group the user may
+     * see any object of; for a single group context only the current group is
+     * needed. Groups without permissions are treated as private.
+     * @return the query matching the visible documents or null if the
+     * filter would need more clauses than Lucene allows
+     */
+    public Query build(Map<Long, Permissions> groupPermissions) {
+        final BooleanQuery visible = new BooleanQuery();
+        visible.add(unindexed(), Occur.SHOULD);
+        visible.add(group(roles.getSystemGroupId()), Occur.SHOULD);
+        visible.add(group(roles.getUserGroupId()), Occur.SHOULD);
+
+        final Long groupId = ec.getCurrentGroupId();
+        final long userId = ec.getCurrentUserId();
+        final List<Long> leaderOf = ec.getLeaderOfGroupsList();
+
+        if (groupId != null && groupId >= 0) {
+            final Permissions p = ec.getCurrentGroupPermissions();
+            final boolean nonPrivate = p != null
+                    && (p.isGranted(Role.GROUP, Right.READ)
+                            || p.isGranted(Role.WORLD, Right.READ));
+            if (nonPrivate || leaderOf.contains(groupId)) {
+                visible.add(group(groupId), Occur.SHOULD);
+            } else {
+                visible.add(ownerInGroup(userId, groupId), Occur.SHOULD);
+            }
+            return visible;
+        }
+
+        final List<Long> memberOf = ec.getMemberOfGroupsList();
+        final BooleanQuery owned = new BooleanQuery();
+        owned.add(owner(userId), Occur.MUST);
+        for (final Map.Entry<Long, Permissions> entry : groupPermissions.entrySet()) {
+            final Long id = entry.getKey();
+            final Permissions p = entry.getValue();
+            if (p != null && p.isGranted(Role.WORLD, Right.READ)
+                    || leaderOf.contains(id)
+                    || memberOf.contains(id) && p != null
+                            && p.isGranted(Role.GROUP, Right.READ)) {
+                visible.add(group(id), Occur.SHOULD);
+            } else if (p == null || !p.isGranted(Role.USER, Right.READ)) {
+                owned.add(group(id), Occur.MUST_NOT);
+            }
+            if (visible.clauses().size() + owned.clauses().size()
+                    >= BooleanQuery.getMaxClauseCount()) {
+                return null;
+            }
+        }
+        visible.add(owned, Occur.SHOULD);
+        return visible;
+    }
+
+    private static Query unindexed() {
+        final BooleanQuery unindexed = new BooleanQuery();
+        unindexed.add(new MatchAllDocsQuery(), Occur.MUST);
+        unindexed.add(new TermRangeQuery(GROUP_ID, null, null, true, true),
+                Occur.MUST_NOT);
+        return unindexed;
+    }
+
+    private static Query group(long groupId) {
+        return new TermQuery(new Term(GROUP_ID, Long.toString(groupId)));
+    }
+
+    private static Query owner(long userId) {
+        return new TermQuery(new Term(OWNER_ID, Long.toString(userId)));
+    }
+
+    private static Query ownerInGroup(long userId, long groupId) {
+        final BooleanQuery query = new BooleanQuery();
+        query.add(owner(userId), Occur.MUST);
+        query.add(group(groupId), Occur.MUST);
+        return query;
+    }
+}
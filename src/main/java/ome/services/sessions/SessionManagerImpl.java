@@ -23,6 +23,7 @@ import net.sf.ehcache.Element;
 
 import ome.model.IObject;
 import ome.system.EventContext;
+import ome.api.IQuery;
 import ome.api.local.LocalAdmin;
 import ome.conditions.ApiUsageException;
 import ome.conditions.AuthenticationException;
@@ -75,6 +76,7 @@ import org.springframework.jdbc.UncategorizedSQLException;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.MapMaker;
 
 /**
@@ -927,6 +929,8 @@ public class SessionManagerImpl implements SessionManager, SessionCache.StaleCac
     public void onApplicationEvent(ApplicationEvent event) {
         if (event instanceof UserGroupUpdateEvent) {
             cache.updateEvent((UserGroupUpdateEvent) event);
+        } else if (event instanceof ChangeSecurityContextEvent) {
+            cache.removeLoginState(((ChangeSecurityContextEvent) event).getUuid());
         } else if (event instanceof DestroySessionMessage) {
             sessionProvider.executeCloseSession(((DestroySessionMessage) event).getSessionId());
         }
@@ -1125,6 +1129,131 @@ public class SessionManagerImpl implements SessionManager, SessionCache.StaleCac
         return createSessionContext(list, ctx);
     }
 
+    /**
+     * Compares the given contexts against the database with a few queries
+     * for all of them rather than several per session as
+     * {@link #reload(SessionContext)} would. Contexts of sessions with a
+     * sudoer, of administrators and without a single current group are never
+     * reported as unchanged since their state depends on more than is
+     * compared here.
+     */
+    @Override
+    public Set<String> findUnchanged(final Map<String, SessionContext> contexts) {
+        final Map<String, SessionContext> candidates = new HashMap<String, SessionContext>();
+        for (final Map.Entry<String, SessionContext> entry : contexts.entrySet()) {
+            final SessionContext ctx = entry.getValue();
+            if (ctx.getCurrentSudoerId() == null && !ctx.isCurrentUserAdmin()
+                    && ctx.getCurrentGroupId() >= 0 && ctx.getCurrentShareId() == null
+                    && !(ctx.getSession() instanceof Share)) {
+                candidates.put(entry.getKey(), ctx);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return executor.execute(asroot, new Executor.SimpleWork<Set<String>>(
+                this, "findUnchanged", candidates.size()) {
+            @Transactional(readOnly = true)
+            public Set<String> doWork(org.hibernate.Session session, ServiceFactory sf) {
+                final IQuery iQuery = sf.getQueryService();
+                final Set<Long> sessionIds = new HashSet<Long>();
+                final Set<Long> userIds = new HashSet<Long>();
+                final Set<Long> groupIds = new HashSet<Long>();
+                for (final SessionContext ctx : candidates.values()) {
+                    sessionIds.add(ctx.getCurrentSessionId());
+                    userIds.add(ctx.getCurrentUserId());
+                    groupIds.add(ctx.getCurrentGroupId());
+                }
+
+                /* session id to [timeToIdle, timeToLive, closed, owner id, annotation link count] */
+                final Map<Long, Object[]> sessions = new HashMap<Long, Object[]>();
+                for (final Object[] row : projection(iQuery,
+                        "SELECT s.id, s.timeToIdle, s.timeToLive, s.closed, s.details.owner.id, size(s.annotationLinks) "
+                        + "FROM Session s WHERE s.id IN (:ids)", sessionIds)) {
+                    sessions.put((Long) row[0], row);
+                }
+
+                final Map<Long, String> userNames = new HashMap<Long, String>();
+                for (final Object[] row : projection(iQuery,
+                        "SELECT e.id, e.omeName FROM Experimenter e WHERE e.id IN (:ids)", userIds)) {
+                    userNames.put((Long) row[0], (String) row[1]);
+                }
+
+                /* in the order of AdminImpl.getMemberOfGroupIds and getUserRoles */
+                final Map<Long, List<Long>> memberOf = new HashMap<Long, List<Long>>();
+                final Map<Long, Set<Long>> leaderOf = new HashMap<Long, Set<Long>>();
+                final Map<Long, List<String>> userRoles = new HashMap<Long, List<String>>();
+                for (final Object[] row : projection(iQuery,
+                        "SELECT e.id, m.parent.id, m.parent.name, m.owner "
+                        + "FROM Experimenter e JOIN e.groupExperimenterMap m "
+                        + "WHERE e.id IN (:ids) ORDER BY e.id, index(m)", userIds)) {
+                    final Long userId = (Long) row[0];
+                    final Long groupId = (Long) row[1];
+                    if (!memberOf.containsKey(userId)) {
+                        memberOf.put(userId, new ArrayList<Long>());
+                        leaderOf.put(userId, new HashSet<Long>());
+                        userRoles.put(userId, new ArrayList<String>());
+                    }
+                    memberOf.get(userId).add(groupId);
+                    userRoles.get(userId).add((String) row[2]);
+                    if (Boolean.TRUE.equals(row[3])) {
+                        leaderOf.get(userId).add(groupId);
+                    }
+                }
+
+                final Map<Long, Object[]> groups = new HashMap<Long, Object[]>();
+                for (final Object[] row : projection(iQuery,
+                        "SELECT g.id, g.name, g.details.permissions FROM ExperimenterGroup g WHERE g.id IN (:ids)",
+                        groupIds)) {
+                    groups.put((Long) row[0], row);
+                }
+
+                final Set<String> unchanged = new HashSet<String>();
+                for (final Map.Entry<String, SessionContext> entry : candidates.entrySet()) {
+                    final SessionContext ctx = entry.getValue();
+                    final Session s = ctx.getSession();
+                    final Long userId = ctx.getCurrentUserId();
+                    final Object[] sessionRow = sessions.get(ctx.getCurrentSessionId());
+                    final Object[] groupRow = groups.get(ctx.getCurrentGroupId());
+                    if (sessionRow == null || groupRow == null
+                            || !userId.equals(sessionRow[4])
+                            || !equal(s.getTimeToIdle(), sessionRow[1])
+                            || !equal(s.getTimeToLive(), sessionRow[2])
+                            || (s.getClosed() == null) != (sessionRow[3] == null)
+                            || s.sizeOfAnnotationLinks() != ((Number) sessionRow[5]).intValue()
+                            || !equal(ctx.getCurrentUserName(), userNames.get(userId))
+                            || !equal(ctx.getMemberOfGroupsList(), memberOf.get(userId))
+                            || !equal(ctx.getUserRoles(), userRoles.get(userId))
+                            || !equal(new HashSet<Long>(ctx.getLeaderOfGroupsList()), leaderOf.get(userId))
+                            || !equal(ctx.getCurrentGroupName(), groupRow[1])
+                            || !ctx.getCurrentGroupPermissions().sameRights((Permissions) groupRow[2])) {
+                        continue;
+                    }
+                    unchanged.add(entry.getKey());
+                }
+                return unchanged;
+            }
+        });
+    }
+
+    /**
+     * Runs a projection with an <code>:ids</code> parameter in batches.
+     */
+    private static List<Object[]> projection(IQuery iQuery, String hql, Collection<Long> ids) {
+        final List<Object[]> results = new ArrayList<Object[]>();
+        for (final List<Long> batch : Iterables.partition(ids, 1000)) {
+            results.addAll(iQuery.projection(hql, new Parameters().addIds(batch)));
+        }
+        return results;
+    }
+
+    /**
+     * Null-safe equality.
+     */
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     // Executor methods
     // =========================================================================
 
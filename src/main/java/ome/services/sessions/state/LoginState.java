@@ -0,0 +1,92 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.sessions.state;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ome.model.internal.Permissions;
+import ome.model.meta.ExperimenterGroup;
+
+/**
+ * What {@link ome.security.basic.BasicSecuritySystem#loadEventContext(boolean)}
+ * reads from the database to log a session in which does not change while
+ * the session's security context and the users and groups stay the same.
+ * Held per session by the {@link SessionCache}, which drops it on
+ * {@link ome.services.sessions.events.UserGroupUpdateEvent}, as published
+ * when group permissions change,
+ * {@link ome.services.sessions.events.ChangeSecurityContextEvent}, reload
+ * and removal of the session, and otherwise after a short time.
+ * <p>
+ * Values are only ever added so any thread may read and fill an instance,
+ * even one that has since been dropped from the cache.
+ *
+ * @since 5.7.6
+ */
+public class LoginState {
+
+    /**
+     * The name and permissions of a group, from which read-only calls may
+     * make a group without loading it.
+     */
+    private static class GroupState {
+
+        final String name;
+
+        final Permissions permissions;
+
+        GroupState(ExperimenterGroup group) {
+            this.name = group.getName();
+            this.permissions = new Permissions(group.getDetails().getPermissions());
+        }
+    }
+
+    private final ConcurrentMap<Long, Boolean> groupContextPermitted =
+            new ConcurrentHashMap<Long, Boolean>();
+
+    private final ConcurrentMap<Long, GroupState> groups =
+            new ConcurrentHashMap<Long, GroupState>();
+
+    /**
+     * @param groupId a group ID
+     * @return if the session may use the group as its context, or
+     * <code>null</code> if not yet known
+     */
+    public Boolean isGroupContextPermitted(long groupId) {
+        return groupContextPermitted.get(groupId);
+    }
+
+    /**
+     * @param groupId a group ID
+     * @param permitted if the session may use the group as its context
+     */
+    public void setGroupContextPermitted(long groupId, boolean permitted) {
+        groupContextPermitted.put(groupId, permitted);
+    }
+
+    /**
+     * @param groupId a group ID
+     * @return a new loaded but unmanaged group with the name and a copy of
+     * the permissions of the group, or <code>null</code> if not yet known
+     */
+    public ExperimenterGroup getGroup(long groupId) {
+        final GroupState state = groups.get(groupId);
+        if (state == null) {
+            return null;
+        }
+        final ExperimenterGroup group = new ExperimenterGroup(groupId, true);
+        group.setName(state.name);
+        group.getDetails().setPermissions(new Permissions(state.permissions));
+        return group;
+    }
+
+    /**
+     * @param group a loaded group whose name and permissions are to be kept
+     */
+    public void setGroup(ExperimenterGroup group) {
+        groups.put(group.getId(), new GroupState(group));
+    }
+}
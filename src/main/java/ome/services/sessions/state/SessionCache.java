@@ -5,11 +5,18 @@
 package ome.services.sessions.state;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.sf.ehcache.CacheManager;
@@ -33,6 +40,8 @@ import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.MapMaker;
 
@@ -67,14 +76,26 @@ public class SessionCache implements ApplicationContextAware {
          * possible.
          */
         SessionContext reload(SessionContext context);
+
+        /**
+         * Method called once by {@link SessionCache#doUpdate()} with every
+         * active session before any is reloaded. Returns the uuids of those
+         * sessions whose {@link SessionContext} is known to be current so
+         * that {@link #reload(SessionContext)} need not be called for them.
+         *
+         * By default, no session is known to be current.
+         */
+        default Set<String> findUnchanged(Map<String, SessionContext> contexts) {
+            return Collections.emptySet();
+        }
     }
 
     /**
      * Container which can be put in a single {@link AtomicReference} instance.
-     * Contains all the data for a single session immutably. Therefore any
-     * thread that manages to get access to this instance can work with this
-     * data even if another thread is currently in the process of removing this
-     * from the map.
+     * Contains all the data for a single session. Only the access information
+     * changes, atomically and in place, so any thread that manages to get
+     * access to this instance can work with this data even if another thread
+     * is currently in the process of removing this from the map.
      */
     private static class Data {
 
@@ -92,8 +113,8 @@ public class SessionCache implements ApplicationContextAware {
         final AtomicInteger error = new AtomicInteger(0);
 
         final SessionContext sessionContext;
-        final long lastAccessTime;
-        final long hitCount;
+        final AtomicLong lastAccessTime;
+        final AtomicLong hitCount;
 
         /**
          * Initial creation of a Data instance when a new session is
@@ -103,15 +124,6 @@ public class SessionCache implements ApplicationContextAware {
             this(sc, System.currentTimeMillis(), 1);
         }
 
-        /**
-         * Copy constructor which uses the current time for {@link #lastAccessTime} and
-         * increments {@link #hitCount} by one. Used when updating the access
-         * time for a session.
-         */
-        Data(Data old) {
-            this(old, true);
-        }
-
         /**
          * Copy constructor which uses either the current time for {@link #lastAccessTime}
          * (if reset is true) or the previous lastAccessTime (if reset is false); and
@@ -130,17 +142,60 @@ public class SessionCache implements ApplicationContextAware {
          * @param reset
          */
         Data(Data old, SessionContext ctx, boolean reset) {
-            this(ctx, reset ? System.currentTimeMillis() : old.lastAccessTime, old.hitCount+1);
+            this(ctx, reset ? System.currentTimeMillis() : old.lastAccessTime.get(), old.hitCount.get()+1);
         }
 
         Data(SessionContext sc, long last, long count) {
             this.sessionContext = sc;
-            this.lastAccessTime = last;
-            this.hitCount = count;
+            this.lastAccessTime = new AtomicLong(last);
+            this.hitCount = new AtomicLong(count);
             // clear context
             sc.getSession().getDetails().setContexts(null);
         }
 
+        /**
+         * Sets {@link #lastAccessTime} to the current time and increments
+         * {@link #hitCount} by one. Used when updating the access time for a
+         * session.
+         */
+        void access() {
+            lastAccessTime.accumulateAndGet(System.currentTimeMillis(), Math::max);
+            hitCount.incrementAndGet();
+        }
+
+        /**
+         * The first time at which {@link SessionCache#getDataNullOrThrowOnTimeout(String, boolean)}
+         * would find this session timed out were it not accessed again, or
+         * {@link Long#MAX_VALUE} if it never times out.
+         */
+        long deadline() {
+            final Session session = sessionContext.getSession();
+            final long start = session.getStarted().getTime();
+            final long timeToIdle = session.getTimeToIdle();
+            final long timeToLive = session.getTimeToLive();
+            long lastAccess = lastAccessTime.get();
+            if (lastAccess == 0) {
+                lastAccess = start;
+            }
+            long deadline = Long.MAX_VALUE;
+            if (0 < timeToLive) {
+                deadline = Math.min(deadline, after(start, timeToLive));
+            }
+            if (0 < timeToIdle) {
+                deadline = Math.min(deadline, after(lastAccess, timeToIdle));
+            }
+            return deadline;
+        }
+
+        /**
+         * The first time that is more than the timeout after the given time,
+         * or {@link Long#MAX_VALUE} on overflow.
+         */
+        private static long after(long time, long timeout) {
+            final long after = time + timeout + 1;
+            return after < time ? Long.MAX_VALUE : after;
+        }
+
     }
 
     /**
@@ -212,11 +267,53 @@ public class SessionCache implements ApplicationContextAware {
 
     }
 
+    /**
+     * Entry in {@link SessionCache#expiries} noting when a session may next
+     * time out. Accesses do not move entries: when an entry falls due the
+     * session is either removed or scheduled again from its current access
+     * time, so each session is looked at about once per timeout period.
+     */
+    private static class Expiry implements Comparable<Expiry> {
+
+        final String uuid;
+
+        /**
+         * The {@link Data} which was scheduled. If the session has since been
+         * refreshed, its new {@link Data} has its own entry and this one is
+         * dropped.
+         */
+        final Data data;
+
+        final long deadline;
+
+        Expiry(String uuid, Data data, long deadline) {
+            this.uuid = uuid;
+            this.data = data;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+
     /**
      *
      */
     private final Map<String, Data> sessions;
 
+    /**
+     * Index of sessions with a timeout by when they may next time out, so
+     * that {@link #sweep()} need only look at those which are due.
+     */
+    private final PriorityBlockingQueue<Expiry> expiries = new PriorityBlockingQueue<Expiry>();
+
+    /**
+     * Held while {@link #sweep()} runs.
+     */
+    private final Object sweepLock = new Object();
+
     /**
      *
      */
@@ -229,6 +326,12 @@ public class SessionCache implements ApplicationContextAware {
      */
     private long forceUpdateInterval = 1800000;
 
+    /**
+     * Whether {@link #doUpdate()} first asks the {@link StaleCacheListener}
+     * which sessions are unchanged so as to reload only the others.
+     */
+    private boolean bulkUpdate = true;
+
     /**
      * Injected {@link CacheManager} used to create various caches.
      */
@@ -239,6 +342,14 @@ public class SessionCache implements ApplicationContextAware {
      */
     private final Map<String, Set<SessionCallback>> sessionCallbackMap;
 
+    /**
+     * {@link LoginState} by session uuid. Entries expire after a minute to
+     * bound how long changes to groups that are not announced by a
+     * {@link UserGroupUpdateEvent} may go unnoticed.
+     */
+    private final Cache<String, LoginState> loginStates =
+            CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).build();
+
     private final AtomicReference<StaleCacheListener> staleCacheListener = new AtomicReference<StaleCacheListener>();
 
     /**
@@ -280,6 +391,14 @@ public class SessionCache implements ApplicationContextAware {
         this.forceUpdateInterval = milliseconds;
     }
 
+    /**
+     * Inject whether synchronization reloads only those sessions found to
+     * have changed, see {@link StaleCacheListener#findUnchanged(Map)}.
+     */
+    public void setBulkUpdate(boolean bulkUpdate) {
+        this.bulkUpdate = bulkUpdate;
+    }
+
     // Accessors
     // ========================================================================
 
@@ -315,6 +434,7 @@ public class SessionCache implements ApplicationContextAware {
     public void putSession(String uuid, SessionContext sessionContext) {
         Data data = new Data(sessionContext);
         this.sessions.put(uuid, data);
+        schedule(uuid, data);
         final StopWatch sw = new Slf4JStopWatch("omero.session");
         addSessionCallback(uuid, new SessionCallback.SimpleCloseCallback(){
             public void close() {
@@ -343,6 +463,8 @@ public class SessionCache implements ApplicationContextAware {
         // Adding and upping hit information.
         Data fresh = new Data(data, replacement, false);
         this.sessions.put(uuid, fresh);
+        schedule(uuid, fresh);
+        loginStates.invalidate(uuid);
     }
 
     /**
@@ -369,7 +491,7 @@ public class SessionCache implements ApplicationContextAware {
 
         if (!quietly) {
             // Up'ing access time
-            this.sessions.put(uuid, new Data(data));
+            data.access();
         }
         return data.sessionContext;
     }
@@ -391,14 +513,14 @@ public class SessionCache implements ApplicationContextAware {
 
         if (!quietly) {
             // Up'ing access time
-            this.sessions.put(uuid, new Data(data));
+            data.access();
         }
 
         return new ImmutableMap.Builder<String, Object>()
             .put("class", getClass().getName())
             .put("sessionContext", data.sessionContext)
-            .put("hitCount", data.hitCount)
-            .put("lastAccessTime", data.lastAccessTime)
+            .put("hitCount", data.hitCount.get())
+            .put("lastAccessTime", data.lastAccessTime.get())
             // .put("error", data.error.get())
             .build();
     }
@@ -435,8 +557,8 @@ public class SessionCache implements ApplicationContextAware {
             }
         }
 
-        long lastAccess = data.lastAccessTime;
-        long hits = data.hitCount;
+        long lastAccess = data.lastAccessTime.get();
+        long hits = data.hitCount.get();
 
         // Get session info
         SessionContext ctx = data.sessionContext;
@@ -519,7 +641,30 @@ public class SessionCache implements ApplicationContextAware {
         ehmanager.removeCache("memory:" + uuid);
         ehmanager.removeCache("ondisk:" + uuid);
         sessions.remove(uuid);
+        loginStates.invalidate(uuid);
+
+    }
 
+    /**
+     * Retrieves the {@link LoginState} of a session, creating an empty one if
+     * none is cached. Does not check that the session exists.
+     */
+    public LoginState getLoginState(String uuid) {
+        final LoginState cached = loginStates.getIfPresent(uuid);
+        if (cached != null) {
+            return cached;
+        }
+        final LoginState created = new LoginState();
+        final LoginState existing = loginStates.asMap().putIfAbsent(uuid, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * Drops the {@link LoginState} of a session, e.g. because its security
+     * context is changing.
+     */
+    public void removeLoginState(String uuid) {
+        loginStates.invalidate(uuid);
     }
 
     /**
@@ -596,6 +741,7 @@ public class SessionCache implements ApplicationContextAware {
 
         State old = state.get();
         state.set(new State(old, time));
+        loginStates.invalidateAll();
     }
 
     /**
@@ -606,6 +752,9 @@ public class SessionCache implements ApplicationContextAware {
      */
     public void doUpdate() {
 
+        // Timeouts do not wait for a full update
+        sweep();
+
         // Check whether entry is required.
         if (!state.get().checkNeedsUpdate(forceUpdateInterval)) {
             return;
@@ -623,13 +772,18 @@ public class SessionCache implements ApplicationContextAware {
             final Set<String> ids = sessions.keySet();
             log.info("Synchronizing session cache. Count = " + ids.size());
             final StopWatch sw = new Slf4JStopWatch();
+            final Set<String> unchanged = findUnchanged(ids);
             for (String id : ids) {
-                reload(id);
+                if (unchanged.contains(id)) {
+                    expire(id);
+                } else {
+                    reload(id);
+                }
             }
 
             sw.stop("omero.sessions.synchronization");
-            log.info(String.format("Synchronization took %s ms.",
-                    sw.getElapsedTime()));
+            log.info(String.format("Synchronization took %s ms. Unchanged = %s",
+                    sw.getElapsedTime(), unchanged.size()));
 
         } catch (Exception e) {
             log.error("Error synchronizing cache", e);
@@ -639,6 +793,96 @@ public class SessionCache implements ApplicationContextAware {
 
     }
 
+    /**
+     * Adds the session to {@link #expiries} if it can time out.
+     */
+    private void schedule(String uuid, Data data) {
+        final long deadline = data.deadline();
+        if (deadline != Long.MAX_VALUE) {
+            expiries.offer(new Expiry(uuid, data, deadline));
+        }
+    }
+
+    /**
+     * Removes those sessions which have timed out, looking only at the
+     * {@link #expiries} which have fallen due rather than at every session.
+     * Called by {@link #doUpdate()} on every run.
+     */
+    public void sweep() {
+        synchronized (sweepLock) {
+            final long now = System.currentTimeMillis();
+            final List<Expiry> expired = new ArrayList<Expiry>();
+            final List<Expiry> later = new ArrayList<Expiry>();
+            Expiry expiry;
+            while ((expiry = expiries.poll()) != null) {
+                if (expiry.deadline > now) {
+                    later.add(expiry);
+                    break;
+                }
+                final Data data = sessions.get(expiry.uuid);
+                if (data != expiry.data) {
+                    continue; // removed or refreshed
+                }
+                final long deadline = data.deadline();
+                if (deadline <= now) {
+                    expired.add(expiry);
+                } else {
+                    later.add(new Expiry(expiry.uuid, data, deadline));
+                }
+            }
+            expiries.addAll(later);
+            for (Expiry due : expired) {
+                final Data data = getDataNullOrThrowOnTimeout(due.uuid, false);
+                if (data == null) {
+                    internalRemove(due.uuid, "Timeout");
+                } else if (data == due.data) {
+                    schedule(due.uuid, data); // accessed meanwhile
+                }
+            }
+        }
+    }
+
+    /**
+     * Asks the {@link StaleCacheListener} which of the given sessions need
+     * not be reloaded. Any error means that all are reloaded.
+     */
+    private Set<String> findUnchanged(Set<String> ids) {
+        final StaleCacheListener listener = staleCacheListener.get();
+        if (!bulkUpdate || listener == null) {
+            return Collections.emptySet();
+        }
+        final Map<String, SessionContext> contexts =
+                new HashMap<String, SessionContext>(ids.size());
+        for (String id : ids) {
+            final Data data = sessions.get(id);
+            if (data != null) {
+                contexts.put(id, data.sessionContext);
+            }
+        }
+        try {
+            final Set<String> unchanged = listener.findUnchanged(contexts);
+            return unchanged == null ? Collections.<String>emptySet() : unchanged;
+        } catch (Exception e) {
+            log.warn("Failed to find unchanged sessions; reloading all", e);
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Removes the session if it has timed out, as {@link #reload(String)}
+     * does before reloading.
+     */
+    private void expire(String id) {
+        try {
+            if (getDataNullOrThrowOnTimeout(id, false) == null) {
+                internalRemove(id, "Timeout");
+            }
+        } catch (Exception e) {
+            log.warn("Removing session on get error of " + id, e);
+            internalRemove(id, "Get error");
+        }
+    }
+
     /**
      * Provides the reloading logic of the {@link SessionCache} for the
      * {@link ome.services.sessions.SessionManagerImpl} to use.
@@ -0,0 +1,133 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Indexes the keys of a cache by the ID of an object, typically a Pixels
+ * set, so that all the entries for that object can be invalidated without
+ * scanning every key of the cache. Entries are to be put into the cache
+ * through {@link #put(Object, Object)} and, with this index as the removal
+ * listener of the cache, their keys are forgotten as the cache removes them.
+ * A key is noted and forgotten under the cache's own lock for that key, so
+ * a cached entry is never left unindexed by a concurrent eviction.
+ * Thread-safe.
+ *
+ * @since 5.7.6
+ */
+public final class CacheKeyIndex<K, V> implements RemovalListener<K, V> {
+
+    private final ToLongFunction<K> idOf;
+
+    private final ConcurrentMap<Long, Set<K>> keys =
+            new ConcurrentHashMap<Long, Set<K>>();
+
+    /* the map view of the cache, set once the cache is built */
+    private volatile Map<K, V> cached;
+
+    /**
+     * @param idOf the ID of the object for which a key was cached
+     */
+    public CacheKeyIndex(ToLongFunction<K> idOf) {
+        this.idOf = idOf;
+    }
+
+    /**
+     * @param cached the map view of the indexed cache, through which
+     * {@link #put(Object, Object)} puts entries
+     */
+    public void setCache(Map<K, V> cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Puts an entry into the cache, noting its key before the entry becomes
+     * visible.
+     * @param key the key of the entry
+     * @param value the value of the entry
+     */
+    public void put(final K key, final V value) {
+        cached.compute(key, (k, previous) -> {
+            add(k);
+            return value;
+        });
+    }
+
+    private void add(final K key) {
+        keys.compute(idOf.applyAsLong(key), (id, ofId) -> {
+            if (ofId == null) {
+                ofId = ConcurrentHashMap.newKeySet();
+            }
+            ofId.add(key);
+            return ofId;
+        });
+    }
+
+    private void forget(final K key) {
+        keys.computeIfPresent(idOf.applyAsLong(key), (id, ofId) -> {
+            ofId.remove(key);
+            return ofId.isEmpty() ? null : ofId;
+        });
+    }
+
+    /**
+     * Forgets a key on its entry being removed from the cache, unless the
+     * key has since been cached again. The cache notifies removals outside
+     * its lock so the check is made under the lock again.
+     */
+    @Override
+    public void onRemoval(final RemovalNotification<K, V> notification) {
+        final K key = notification.getKey();
+        if (key == null) {
+            return;
+        }
+        final Map<K, V> map = cached;
+        if (map == null) {
+            forget(key);
+        } else {
+            map.computeIfAbsent(key, k -> {
+                forget(k);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @param id the ID of an object
+     * @return the keys cached for that object, a live view which reflects
+     * later removals
+     */
+    public Set<K> keys(long id) {
+        final Set<K> ofId = keys.get(id);
+        return ofId == null ? Collections.<K>emptySet() : ofId;
+    }
+
+    /**
+     * Stops indexing the keys of an object, as on invalidating its entries.
+     * @param id the ID of an object
+     * @return the keys that were cached for that object
+     */
+    public Set<K> remove(long id) {
+        final Set<K> ofId = keys.remove(id);
+        return ofId == null ? Collections.<K>emptySet() : ofId;
+    }
+
+    /**
+     * @return the number of objects for which keys are indexed
+     */
+    public int size() {
+        return keys.size();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of non-negative values, typically latencies in
+ * microseconds. As in HdrHistogram, each power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so values are held to within an eighth
+ * of their magnitude over the whole range of <code>long</code> in a fixed
+ * array. Recording a value allocates nothing and takes no lock.
+ *
+ * @since 5.7.6
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS =
+            SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value a value, negative values are counted as zero
+     * @return the index of the bucket that holds the value
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the least value held by the bucket
+     */
+    static long lowest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        final int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the greatest value held by the bucket
+     */
+    static long highest(int index) {
+        return index + 1 == BUCKETS ? Long.MAX_VALUE : lowest(index + 1) - 1;
+    }
+
+    /**
+     * Counts a value.
+     * @param value the value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return how many values have been recorded
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or zero if there are none
+     */
+    public double getMean() {
+        final long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * @return the greatest value recorded, or zero if there are none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Finds the value below which the given fraction of recorded values
+     * fall, to the precision of the buckets. Values recorded concurrently may
+     * or may not be included.
+     * @param fraction the fraction, e.g. <code>0.99</code>
+     * @return the greatest value of the bucket holding the percentile, but
+     * no more than {@link #getMax()}, or zero if there are no values
+     */
+    public long getValueAtPercentile(double fraction) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets all recorded values. Values recorded concurrently may be
+     * partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of <code>long</code> values, typically model object IDs, held in a
+ * single open-addressed array rather than as boxed {@link Long} entries.
+ * Not thread-safe; instances which are no longer modified may be shared once
+ * safely published.
+ *
+ * @since 5.7.6
+ */
+public final class LongHashSet {
+
+    /** Marks an empty slot; zero itself is tracked by {@link #hasZero}. */
+    private static final long EMPTY = 0L;
+
+    private long[] slots;
+
+    private int size;
+
+    private boolean hasZero;
+
+    /**
+     * Creates an empty set.
+     */
+    public LongHashSet() {
+        this(8);
+    }
+
+    /**
+     * Creates an empty set with room for the given number of values before
+     * it needs to grow.
+     * @param expected the number of values expected
+     */
+    public LongHashSet(int expected) {
+        int capacity = 8;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+    }
+
+    /**
+     * Creates a set containing the same values as the given set.
+     * @param values the set to copy
+     */
+    public LongHashSet(LongHashSet values) {
+        slots = values.slots.clone();
+        size = values.size;
+        hasZero = values.hasZero;
+    }
+
+    /**
+     * Creates a set containing the given values.
+     * @param values the values to add, <code>null</code> elements are
+     * skipped
+     * @return the new set
+     */
+    public static LongHashSet of(Iterable<Long> values) {
+        final LongHashSet set = new LongHashSet();
+        if (values != null) {
+            for (final Long value : values) {
+                if (value != null) {
+                    set.add(value);
+                }
+            }
+        }
+        return set;
+    }
+
+    private static int hash(long value, int mask) {
+        final long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @param value a value
+     * @return if the value is in this set
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return hasZero;
+        }
+        final int mask = slots.length - 1;
+        int index = hash(value, mask);
+        long slot;
+        while ((slot = slots[index]) != EMPTY) {
+            if (slot == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @param value a value
+     * @return if the value was not already in this set
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        if ((size + 1) * 2 > slots.length) {
+            resize(slots.length << 1);
+        }
+        if (!insert(slots, value)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * @param values values to add
+     */
+    public void addAll(LongHashSet values) {
+        if (values.hasZero) {
+            add(EMPTY);
+        }
+        for (final long value : values.slots) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    /**
+     * @param value a value
+     * @return if the value was in this set
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        final int mask = slots.length - 1;
+        int index = hash(value, mask);
+        long slot;
+        while ((slot = slots[index]) != value) {
+            if (slot == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        /* shift back any later values of the run that may now be lost */
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while ((slot = slots[next]) != EMPTY) {
+            final int home = hash(slot, mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slot;
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return how many values are in this set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return if this set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the values in this set, in no particular order
+     */
+    public long[] toArray() {
+        final long[] values = new long[size];
+        int i = 0;
+        if (hasZero) {
+            values[i++] = EMPTY;
+        }
+        for (final long value : slots) {
+            if (value != EMPTY) {
+                values[i++] = value;
+            }
+        }
+        return values;
+    }
+
+    private static boolean insert(long[] slots, long value) {
+        final int mask = slots.length - 1;
+        int index = hash(value, mask);
+        long slot;
+        while ((slot = slots[index]) != EMPTY) {
+            if (slot == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        return true;
+    }
+
+    private void resize(int capacity) {
+        final long[] resized = new long[capacity];
+        for (final long value : slots) {
+            if (value != EMPTY) {
+                insert(resized, value);
+            }
+        }
+        slots = resized;
+    }
+
+    @Override
+    public String toString() {
+        final long[] values = toArray();
+        Arrays.sort(values);
+        return Arrays.toString(values);
+    }
+}
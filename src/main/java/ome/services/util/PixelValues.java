@@ -0,0 +1,101 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.nio.ByteBuffer;
+
+import ome.util.PixelData;
+
+/**
+ * Bulk, typed access to the values held by a {@link PixelData}. Unlike
+ * {@link PixelData#getPixelValue(int)}, which switches on the pixels type for
+ * every value, the pixels type is resolved once per run of values and the
+ * backing {@link ByteBuffer} is read with the matching primitive accessor.
+ *
+ * @since 5.7.6
+ */
+public class PixelValues {
+
+    private PixelValues() {
+        // Static helpers only
+    }
+
+    /**
+     * Reads a run of consecutive pixel values, e.g. part of a row.
+     * @param px the pixel data to read from.
+     * @param offset the offset of the first value, in pixels.
+     * @param count the number of values to read.
+     * @param dest the array to write the values to, from index zero.
+     */
+    public static void read(PixelData px, int offset, int count,
+            double[] dest) {
+        read(px, offset, count, dest, 0);
+    }
+
+    /**
+     * Reads a run of consecutive pixel values into part of an array.
+     * @param px the pixel data to read from.
+     * @param offset the offset of the first value, in pixels.
+     * @param count the number of values to read.
+     * @param dest the array to write the values to.
+     * @param destOffset the index of <code>dest</code> to write the first
+     * value to.
+     */
+    public static void read(PixelData px, int offset, int count,
+            double[] dest, int destOffset) {
+        final ByteBuffer data = px.getData();
+        final int end = offset + count;
+        int j = destOffset;
+        switch (px.pixelsType()) {
+            case PixelData.INT8:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.get(i);
+                }
+                break;
+            case PixelData.UINT8:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.get(i) & 0xFF;
+                }
+                break;
+            case PixelData.INT16:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.getShort(i << 1);
+                }
+                break;
+            case PixelData.UINT16:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.getShort(i << 1) & 0xFFFF;
+                }
+                break;
+            case PixelData.INT32:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.getInt(i << 2);
+                }
+                break;
+            case PixelData.UINT32:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.getInt(i << 2) & 0xFFFFFFFFL;
+                }
+                break;
+            case PixelData.FLOAT:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.getFloat(i << 2);
+                }
+                break;
+            case PixelData.DOUBLE:
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = data.getDouble(i << 3);
+                }
+                break;
+            default:
+                // e.g. bit; no primitive accessor so use the general path
+                for (int i = offset; i < end; i++) {
+                    dest[j++] = px.getPixelValue(i);
+                }
+        }
+    }
+
+}
@@ -67,6 +67,11 @@ public class ServiceHandler implements MethodInterceptor, ApplicationListener {
 
     private final long methodTimeWarn;
 
+    /**
+     * Optional per-method statistics, see {@link #setMetrics(ServiceMetrics)}.
+     */
+    private ServiceMetrics metrics;
+
     public void onApplicationEvent(ApplicationEvent arg0) {
         if (arg0 instanceof RegisterServiceCleanupMessage) {
             RegisterServiceCleanupMessage cleanup = (RegisterServiceCleanupMessage) arg0;
@@ -84,6 +89,14 @@ public class ServiceHandler implements MethodInterceptor, ApplicationListener {
         this.methodTimeError = methodTimeError;
     }
 
+    /**
+     * Records the time taken and outcome of every call in the given metrics.
+     * @param metrics the metrics or <code>null</code> to not record calls
+     */
+    public void setMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * @see org.aopalliance.intercept.MethodInterceptor#invoke(org.aopalliance.intercept.MethodInvocation)
      */
@@ -99,7 +112,8 @@ public class ServiceHandler implements MethodInterceptor, ApplicationListener {
 
         ApiConstraintChecker.errorOnViolation(implClass, mthd, args);
 
-        if (log.isInfoEnabled()) {
+        final boolean isInfo = log.isInfoEnabled();
+        if (isInfo) {
             // Method and arguments
             if (Executor.LoggedWork.class.isAssignableFrom(arg0.getThis().getClass())) {
                 Executor.LoggedWork work = (Executor.LoggedWork) arg0.getThis();
@@ -111,44 +125,61 @@ public class ServiceHandler implements MethodInterceptor, ApplicationListener {
             log.info(" Args:\t" + getArgumentsString(arg0));
         }
 
-        // Results and/or Exceptions
+        // Results and/or Exceptions, only described if they will be logged
         Object o;
-        StringBuilder finalOutput = new StringBuilder();
+        StringBuilder finalOutput = isInfo ? new StringBuilder() : null;
+        final ServiceMetrics.MethodStats methodStats =
+                metrics == null ? null : metrics.get(implClass, mthd);
+        boolean failed = false;
 
+        final long start = System.nanoTime();
         StopWatch stopWatch = new Slf4JStopWatch();
         try {
 
             o = arg0.proceed();
-            finalOutput.append(" Rslt:\t");
-            finalOutput.append(getResultsString(o, null));
-            stopWatch.stop("omero.call.success." + implClass.getName() + "." + mthd.getName());
+            if (isInfo) {
+                finalOutput.append(" Rslt:\t");
+                finalOutput.append(getResultsString(o, null));
+            }
+            stopWatch.stop(methodStats == null
+                    ? "omero.call.success." + implClass.getName() + "." + mthd.getName()
+                    : methodStats.getSuccessTag());
             return o;
         } catch (Throwable t) {
-            finalOutput.append(" Excp:\t");
-            finalOutput.append(t.toString());
+            failed = true;
+            if (isInfo) {
+                finalOutput.append(" Excp:\t");
+                finalOutput.append(t.toString());
+            }
             stopWatch.stop("omero.call.exception");
             throw getAndLogException(t);
         } finally {
-            if (log.isInfoEnabled()) {
+            if (methodStats != null) {
+                methodStats.record(System.nanoTime() - start, failed);
+            }
+            if (isInfo) {
                 log.info(finalOutput.toString()); // slf4j migration: toString()
             }
 
             // Logging long invocations. Very long invocations are indicative
             // of a server undergoing stress.
             long time = stopWatch.getElapsedTime();
-            String msg = String.format("Method %s.%s invocation took %s",
-                                       arg0.getMethod().getDeclaringClass(),
-                                       arg0.getMethod().getName(), time);
             if (time > methodTimeError) {
-                log.error(msg);
+                log.error(invocationTime(arg0, time));
             } else if (time > methodTimeWarn) {
-                log.warn(msg);
+                log.warn(invocationTime(arg0, time));
             }
             cleanup();
         }
 
     }
 
+    private static String invocationTime(MethodInvocation mi, long time) {
+        return String.format("Method %s.%s invocation took %s",
+                mi.getMethod().getDeclaringClass(),
+                mi.getMethod().getName(), time);
+    }
+
     protected void cleanup() {
         Set<RegisterServiceCleanupMessage> cleanups = cd.emptyCleanups();
         for (RegisterServiceCleanupMessage registerServiceCleanupMessage : cleanups) {
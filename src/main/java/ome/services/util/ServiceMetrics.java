@@ -0,0 +1,222 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Per service method call counts, exception counts and latency histograms
+ * as recorded by {@link ServiceHandler}. Once a method has been called, its
+ * calls are recorded without allocating or locking, so this may be left on
+ * under production load rather than turning on log-based profiling. The
+ * statistics are available via JMX as omero:type=ServiceMetrics and are
+ * periodically written to the log by {@link #dump()}.
+ *
+ * @since 5.7.6
+ */
+@ManagedResource(objectName = "omero:type=ServiceMetrics",
+        description = "Latency histograms of service method calls")
+public class ServiceMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(ServiceMetrics.class);
+
+    /**
+     * Statistics of a single method of a single service implementation.
+     */
+    public static final class MethodStats {
+
+        final String name;
+
+        /**
+         * The perf4j tag for successful calls, built once rather than on
+         * every call.
+         */
+        final String successTag;
+
+        final LatencyHistogram micros = new LatencyHistogram();
+
+        final AtomicLong exceptions = new AtomicLong();
+
+        MethodStats(Class<?> implClass, Method method) {
+            this.name = method.getDeclaringClass().getName() + "." + method.getName();
+            this.successTag = "omero.call.success." + implClass.getName() + "." + method.getName();
+        }
+
+        /**
+         * @return the perf4j tag for successful calls
+         */
+        public String getSuccessTag() {
+            return successTag;
+        }
+
+        /**
+         * Records a call.
+         * @param nanos how long the call took
+         * @param failed if the call threw an exception
+         */
+        public void record(long nanos, boolean failed) {
+            micros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+            if (failed) {
+                exceptions.incrementAndGet();
+            }
+        }
+    }
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, MethodStats>> stats =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, MethodStats>>();
+
+    /** How many methods {@link #dump()} writes to the log. */
+    private final int dumpSize;
+
+    /**
+     * @param dumpSize how many methods, those with the most total time, are
+     * written to the log by each {@link #dump()}; zero or less disables the
+     * periodic dump.
+     */
+    public ServiceMetrics(int dumpSize) {
+        this.dumpSize = dumpSize;
+    }
+
+    /**
+     * Finds the statistics of a method, creating them on first use.
+     * @param implClass the class of the service implementation
+     * @param method the method called
+     * @return the statistics to record the call in
+     */
+    public MethodStats get(Class<?> implClass, Method method) {
+        ConcurrentMap<Method, MethodStats> byMethod = stats.get(implClass);
+        if (byMethod == null) {
+            byMethod = new ConcurrentHashMap<Method, MethodStats>();
+            final ConcurrentMap<Method, MethodStats> existing =
+                    stats.putIfAbsent(implClass, byMethod);
+            if (existing != null) {
+                byMethod = existing;
+            }
+        }
+        MethodStats methodStats = byMethod.get(method);
+        if (methodStats == null) {
+            methodStats = new MethodStats(implClass, method);
+            final MethodStats existing = byMethod.putIfAbsent(method, methodStats);
+            if (existing != null) {
+                methodStats = existing;
+            }
+        }
+        return methodStats;
+    }
+
+    /**
+     * @return the statistics of all methods called so far, those with the
+     * most total time first
+     */
+    private List<MethodStats> sorted() {
+        final List<MethodStats> all = new ArrayList<MethodStats>();
+        for (final ConcurrentMap<Method, MethodStats> byMethod : stats.values()) {
+            all.addAll(byMethod.values());
+        }
+        Collections.sort(all, new Comparator<MethodStats>() {
+            @Override
+            public int compare(MethodStats a, MethodStats b) {
+                return Double.compare(total(b), total(a));
+            }
+        });
+        return all;
+    }
+
+    private static double total(MethodStats methodStats) {
+        return methodStats.micros.getMean() * methodStats.micros.getCount();
+    }
+
+    private static String format(MethodStats methodStats) {
+        final LatencyHistogram h = methodStats.micros;
+        return String.format(
+                "%s calls=%d exceptions=%d mean=%.0fus p50=%dus p90=%dus p99=%dus max=%dus",
+                methodStats.name, h.getCount(), methodStats.exceptions.get(),
+                h.getMean(), h.getValueAtPercentile(0.5),
+                h.getValueAtPercentile(0.9), h.getValueAtPercentile(0.99),
+                h.getMax());
+    }
+
+    @ManagedAttribute(description = "Number of service method calls")
+    public long getCallCount() {
+        long count = 0;
+        for (final ConcurrentMap<Method, MethodStats> byMethod : stats.values()) {
+            for (final MethodStats methodStats : byMethod.values()) {
+                count += methodStats.micros.getCount();
+            }
+        }
+        return count;
+    }
+
+    @ManagedAttribute(description = "Number of service method calls which threw an exception")
+    public long getExceptionCount() {
+        long count = 0;
+        for (final ConcurrentMap<Method, MethodStats> byMethod : stats.values()) {
+            for (final MethodStats methodStats : byMethod.values()) {
+                count += methodStats.exceptions.get();
+            }
+        }
+        return count;
+    }
+
+    @ManagedOperation(description = "Lists the methods with the most total time, "
+            + "with their call counts, exception counts and latency percentiles")
+    @ManagedOperationParameters({
+        @ManagedOperationParameter(name = "limit", description = "How many methods to list")})
+    public String[] report(int limit) {
+        final List<MethodStats> all = sorted();
+        final int size = Math.min(Math.max(limit, 0), all.size());
+        final String[] lines = new String[size];
+        for (int i = 0; i < size; i++) {
+            lines[i] = format(all.get(i));
+        }
+        return lines;
+    }
+
+    @ManagedOperation(description = "Forgets all recorded calls")
+    public void reset() {
+        for (final ConcurrentMap<Method, MethodStats> byMethod : stats.values()) {
+            for (final MethodStats methodStats : byMethod.values()) {
+                methodStats.micros.reset();
+                methodStats.exceptions.set(0);
+            }
+        }
+    }
+
+    /**
+     * Writes the methods with the most total time to the log. Called
+     * periodically by Quartz.
+     */
+    public void dump() {
+        if (dumpSize <= 0 || !log.isInfoEnabled()) {
+            return;
+        }
+        final String[] lines = report(dumpSize);
+        if (lines.length > 0) {
+            final StringBuilder sb = new StringBuilder("Service method latencies:");
+            for (final String line : lines) {
+                sb.append("\n  ");
+                sb.append(line);
+            }
+            log.info(sb.toString());
+        }
+    }
+}
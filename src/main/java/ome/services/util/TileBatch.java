@@ -0,0 +1,109 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Collects the results of a batch of tiles, some of which are known at once
+ * and some computed, such as compressed, on a pool. Without a pool the work
+ * is done on the calling thread. Not thread-safe.
+ *
+ * @since 5.7.6
+ */
+public class TileBatch {
+
+    private final ExecutorService executor;
+
+    private final byte[][] results;
+
+    private final List<Future<byte[]>> futures;
+
+    /**
+     * @param executor the pool on which to compute tiles, may be
+     * <code>null</code>.
+     * @param size the number of tiles in the batch.
+     */
+    public TileBatch(ExecutorService executor, int size) {
+        this.executor = executor;
+        this.results = new byte[size][];
+        this.futures = new ArrayList<Future<byte[]>>(
+                Collections.<Future<byte[]>>nCopies(size, null));
+    }
+
+    /**
+     * @param index the index of a tile in the batch.
+     * @param result the tile.
+     */
+    public void set(int index, byte[] result) {
+        results[index] = result;
+    }
+
+    /**
+     * @param index the index of a tile in the batch.
+     * @return the tile if already set or computed on the calling thread,
+     * otherwise <code>null</code>.
+     */
+    public byte[] get(int index) {
+        return results[index];
+    }
+
+    /**
+     * Computes a tile on the pool, or at once if there is none.
+     * @param index the index of a tile in the batch.
+     * @param task computes the tile.
+     * @throws ExecutionException if there is no pool and the task fails.
+     */
+    public void submit(int index, Callable<byte[]> task)
+            throws ExecutionException {
+        if (executor == null) {
+            try {
+                results[index] = task.call();
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        } else {
+            futures.set(index, executor.submit(task));
+        }
+    }
+
+    /**
+     * Waits for the tiles computed on the pool.
+     * @return the tiles, in the order of the batch.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws ExecutionException if the computation of a tile failed.
+     */
+    public List<byte[]> results()
+            throws InterruptedException, ExecutionException {
+        for (int i = 0; i < results.length; i++) {
+            final Future<byte[]> future = futures.get(i);
+            if (future != null) {
+                results[i] = future.get();
+                futures.set(i, null);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Cancels the tiles not yet computed, for instance once the batch has
+     * failed.
+     */
+    public void cancel() {
+        for (final Future<byte[]> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import omeis.providers.re.data.PlaneDef;
+import omeis.providers.re.data.RegionDef;
+
+/**
+ * Coordinates of a single tile in a batched tile request, as passed to
+ * {@link ome.api.local.LocalRawPixelsStore#getTiles(java.util.List)} and
+ * {@link ome.api.local.LocalRenderingEngine#renderCompressedTiles(java.util.List)}.
+ *
+ * @since 5.7.6
+ */
+public class TileRequest implements Serializable {
+
+    private static final long serialVersionUID = 2730569133625498711L;
+
+    /** Resolution level standing for the current level of the service. */
+    public static final int CURRENT_LEVEL = -1;
+
+    private final int z;
+
+    private final int c;
+
+    private final int t;
+
+    private final int x;
+
+    private final int y;
+
+    private final int w;
+
+    private final int h;
+
+    private final int resolutionLevel;
+
+    /**
+     * Creates a request for a tile at the current resolution level.
+     */
+    public TileRequest(int z, int c, int t, int x, int y, int w, int h) {
+        this(z, c, t, x, y, w, h, CURRENT_LEVEL);
+    }
+
+    /**
+     * Creates a request for a tile.
+     * @param z the Z-section.
+     * @param c the channel, ignored when rendering.
+     * @param t the timepoint.
+     * @param x the X offset of the tile.
+     * @param y the Y offset of the tile.
+     * @param w the width of the tile.
+     * @param h the height of the tile.
+     * @param resolutionLevel the resolution level or {@link #CURRENT_LEVEL}.
+     */
+    public TileRequest(int z, int c, int t, int x, int y, int w, int h,
+            int resolutionLevel) {
+        this.z = z;
+        this.c = c;
+        this.t = t;
+        this.x = x;
+        this.y = y;
+        this.w = w;
+        this.h = h;
+        this.resolutionLevel = resolutionLevel;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getC() {
+        return c;
+    }
+
+    public int getT() {
+        return t;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return w;
+    }
+
+    public int getHeight() {
+        return h;
+    }
+
+    public int getResolutionLevel() {
+        return resolutionLevel;
+    }
+
+    /**
+     * @return a new XY plane definition for the region of this tile.
+     */
+    public PlaneDef toPlaneDef() {
+        final PlaneDef pd = new PlaneDef(PlaneDef.XY, t);
+        pd.setZ(z);
+        pd.setRegion(new RegionDef(x, y, w, h));
+        return pd;
+    }
+
+    /**
+     * Groups tiles into runs which may be read as one region: tiles of the
+     * same plane, resolution level, row offset and height which abut along
+     * X, in order of increasing X.
+     * @param tiles the tiles.
+     * @param maxPixels the maximum number of pixels in a run.
+     * @return the runs, as indexes into <code>tiles</code>. Every tile is
+     * in exactly one run.
+     */
+    public static List<List<Integer>> coalesce(final List<TileRequest> tiles,
+            long maxPixels) {
+        final List<Integer> order = new ArrayList<Integer>(tiles.size());
+        for (int i = 0; i < tiles.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                final TileRequest a = tiles.get(i1);
+                final TileRequest b = tiles.get(i2);
+                int cmp = Integer.compare(a.resolutionLevel, b.resolutionLevel);
+                if (cmp == 0) cmp = Integer.compare(a.z, b.z);
+                if (cmp == 0) cmp = Integer.compare(a.c, b.c);
+                if (cmp == 0) cmp = Integer.compare(a.t, b.t);
+                if (cmp == 0) cmp = Integer.compare(a.y, b.y);
+                if (cmp == 0) cmp = Integer.compare(a.h, b.h);
+                if (cmp == 0) cmp = Integer.compare(a.x, b.x);
+                return cmp;
+            }
+        });
+        final List<List<Integer>> runs = new ArrayList<List<Integer>>();
+        List<Integer> run = null;
+        TileRequest last = null;
+        long pixels = 0;
+        for (final int i : order) {
+            final TileRequest tile = tiles.get(i);
+            final long tilePixels = (long) tile.w * tile.h;
+            if (run != null && last.abuts(tile)
+                    && pixels + tilePixels <= maxPixels) {
+                run.add(i);
+                pixels += tilePixels;
+            } else {
+                run = new ArrayList<Integer>();
+                run.add(i);
+                runs.add(run);
+                pixels = tilePixels;
+            }
+            last = tile;
+        }
+        return runs;
+    }
+
+    /**
+     * @param tiles the tiles.
+     * @param run a run of tiles from {@link #coalesce(List, long)}.
+     * @return the total width of the tiles of the run.
+     */
+    public static int width(List<TileRequest> tiles, List<Integer> run) {
+        int width = 0;
+        for (final int i : run) {
+            width += tiles.get(i).w;
+        }
+        return width;
+    }
+
+    /**
+     * Splits the pixel data of a region read for a run of tiles into the
+     * data of each tile.
+     * @param region the pixel data of the region covered by the run, row
+     * by row, {@link #width(List, List)} pixels wide.
+     * @param bytesPerPixel the size of a pixel in bytes.
+     * @param tiles the tiles.
+     * @param run a run of tiles from {@link #coalesce(List, long)}.
+     * @param result the tile data, set at the indexes of the run.
+     */
+    public static void split(byte[] region, int bytesPerPixel,
+            List<TileRequest> tiles, List<Integer> run, byte[][] result) {
+        final TileRequest first = tiles.get(run.get(0));
+        final int h = first.h;
+        final int rowStride = width(tiles, run) * bytesPerPixel;
+        for (final int i : run) {
+            final TileRequest tile = tiles.get(i);
+            final int tileRow = tile.w * bytesPerPixel;
+            final int dx = (tile.x - first.x) * bytesPerPixel;
+            final byte[] data = new byte[tileRow * h];
+            for (int row = 0; row < h; row++) {
+                System.arraycopy(region, row * rowStride + dx, data,
+                        row * tileRow, tileRow);
+            }
+            result[i] = data;
+        }
+    }
+
+    /**
+     * @return if <code>next</code> directly follows this tile along X.
+     */
+    private boolean abuts(TileRequest next) {
+        return resolutionLevel == next.resolutionLevel && z == next.z
+                && c == next.c && t == next.t && y == next.y && h == next.h
+                && x + w == next.x;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Tile(z=%d, c=%d, t=%d, x=%d, y=%d, w=%d, h=%d, "
+                + "level=%d)", z, c, t, x, y, w, h, resolutionLevel);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *   Copyright (C) 2026 University of Dundee & Open Microscopy Environment.
+ *   All rights reserved.
+ *
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.server.itests.scalability;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import ome.formats.OMEROMetadataStore;
+import ome.model.acquisition.Detector;
+import ome.model.acquisition.DetectorSettings;
+import ome.model.acquisition.Instrument;
+import ome.model.acquisition.Laser;
+import ome.model.acquisition.LightPath;
+import ome.model.acquisition.LightSettings;
+import ome.model.acquisition.Objective;
+import ome.model.acquisition.ObjectiveSettings;
+import ome.model.core.Channel;
+import ome.model.core.Image;
+import ome.model.core.LogicalChannel;
+import ome.model.core.Pixels;
+import ome.model.screen.Plate;
+import ome.model.screen.Well;
+import ome.model.screen.WellSample;
+import ome.util.LSID;
+
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Collapses the metadata of a 1536 well plate with 4 fields per well and
+ * 5 channels per field, as {@link OMEROMetadataStore#saveToDB} does before
+ * saving an import. Needs no server, so it may be run alongside
+ * {@link ImportMetadataTest} to compare with the time spent saving.
+ */
+@Test(groups = { "integration" })
+public class CollapseGraphTest {
+
+    static int WELLS = 1536;
+    static int FIELDS = 4;
+    static int CHANNELS = 5;
+
+    private static Map<String, Integer> indexes(Object... keysAndValues) {
+        Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            indexes.put((String) keysAndValues[i],
+                    (Integer) keysAndValues[i + 1]);
+        }
+        return indexes;
+    }
+
+    private OMEROMetadataStore plate() {
+        OMEROMetadataStore store = new OMEROMetadataStore();
+        store.createRoot();
+        store.updateObject("Instrument:0", new Instrument(),
+                indexes("instrumentIndex", 0));
+        store.updateObject("Objective:0:0", new Objective(),
+                indexes("instrumentIndex", 0, "objectiveIndex", 0));
+        store.updateObject("LightSource:0:0", new Laser(),
+                indexes("instrumentIndex", 0, "lightSourceIndex", 0));
+        store.updateObject("Detector:0:0", new Detector(),
+                indexes("instrumentIndex", 0, "detectorIndex", 0));
+        store.updateObject("Plate:0", new Plate(), indexes("plateIndex", 0));
+
+        Map<String, String[]> referenceCache = new HashMap<String, String[]>();
+        int i = 0;
+        for (int w = 0; w < WELLS; w++) {
+            store.updateObject(String.format("Well:0:%d", w), new Well(),
+                    indexes("plateIndex", 0, "wellIndex", w));
+            for (int f = 0; f < FIELDS; f++, i++) {
+                store.updateObject("Image:" + i, new Image(),
+                        indexes("imageIndex", i));
+                store.updateObject("Pixels:" + i, new Pixels(),
+                        indexes("imageIndex", i));
+                store.updateObject("ObjectiveSettings:" + i,
+                        new ObjectiveSettings(), indexes("imageIndex", i));
+                referenceCache.put("ObjectiveSettings:" + i,
+                        new String[] { "Objective:0:0" });
+                for (int c = 0; c < CHANNELS; c++) {
+                    Map<String, Integer> channel =
+                            indexes("imageIndex", i, "channelIndex", c);
+                    String suffix = String.format("%d:%d", i, c);
+                    LogicalChannel logicalChannel = new LogicalChannel();
+                    logicalChannel.setName("Channel " + c);
+                    store.updateObject("Channel:" + suffix, new Channel(),
+                            channel);
+                    store.updateObject("LogicalChannel:" + suffix,
+                            logicalChannel, channel);
+                    store.updateObject("LightSettings:" + suffix,
+                            new LightSettings(), channel);
+                    store.updateObject("DetectorSettings:" + suffix,
+                            new DetectorSettings(), channel);
+                    store.updateObject("LightPath:" + suffix,
+                            new LightPath(), channel);
+                    referenceCache.put("LightSettings:" + suffix,
+                            new String[] { "LightSource:0:0" });
+                    referenceCache.put("DetectorSettings:" + suffix,
+                            new String[] { "Detector:0:0" });
+                }
+                String wellSample = String.format("WellSample:0:%d:%d", w, f);
+                store.updateObject(wellSample, new WellSample(),
+                        indexes("plateIndex", 0, "wellIndex", w,
+                                "wellSampleIndex", f));
+                referenceCache.put(wellSample, new String[] { "Image:" + i });
+            }
+        }
+        store.updateReferences(referenceCache);
+        return store;
+    }
+
+    @Test
+    public void testCollapse() {
+        OMEROMetadataStore store = plate();
+        StopWatch sw = new Slf4JStopWatch("test.import.collapse");
+        store.checkAndCollapseGraph();
+        sw.stop();
+
+        Set<ObjectiveSettings> objectiveSettings =
+                new HashSet<ObjectiveSettings>();
+        Set<LogicalChannel> logicalChannels = new HashSet<LogicalChannel>();
+        Set<LightSettings> lightSettings = new HashSet<LightSettings>();
+        Set<DetectorSettings> detectorSettings =
+                new HashSet<DetectorSettings>();
+        Set<LightPath> lightPaths = new HashSet<LightPath>();
+        for (int i = 0; i < WELLS * FIELDS; i++) {
+            Image image = (Image) store.getObjectByLSID(new LSID("Image:" + i));
+            objectiveSettings.add(image.getObjectiveSettings());
+            for (Channel channel :
+                    image.getPrimaryPixels().<Channel>collectChannels(null)) {
+                LogicalChannel logicalChannel = channel.getLogicalChannel();
+                logicalChannels.add(logicalChannel);
+                lightSettings.add(logicalChannel.getLightSourceSettings());
+                detectorSettings.add(logicalChannel.getDetectorSettings());
+                lightPaths.add(logicalChannel.getLightPath());
+            }
+        }
+        Assert.assertEquals(objectiveSettings.size(), 1);
+        Assert.assertEquals(lightSettings.size(), 1);
+        Assert.assertEquals(detectorSettings.size(), 1);
+        Assert.assertEquals(lightPaths.size(), 1);
+        Assert.assertEquals(logicalChannels.size(), CHANNELS);
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.server.utests;
+
+import java.util.Arrays;
+
+import ome.model.annotations.CommentAnnotation;
+import ome.model.core.Image;
+import ome.services.fulltext.AnnotationFragments;
+import ome.services.fulltext.FullTextBridge;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.hibernate.search.bridge.LuceneOptions;
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link FullTextBridge} reuses the values of unmodified
+ * annotations across documents.
+ */
+public class AnnotationFragmentsTest extends MockObjectTestCase {
+
+    static class Bridge extends FullTextBridge {
+        long cached() {
+            return fragments.size();
+        }
+    }
+
+    Bridge bridge;
+
+    LuceneOptions opts;
+
+    @BeforeMethod
+    public void setup() {
+        bridge = new Bridge();
+        bridge.setAnnotationCacheSize(1000);
+        final Mock mock = mock(LuceneOptions.class);
+        mock.stubs().method("getBoost").will(returnValue(null));
+        mock.stubs().method("getStore").will(returnValue(Field.Store.NO));
+        mock.stubs().method("getIndex").will(returnValue(Field.Index.ANALYZED));
+        opts = (LuceneOptions) mock.proxy();
+    }
+
+    CommentAnnotation comment(long id, String text) {
+        final CommentAnnotation comment = new CommentAnnotation(id, true);
+        comment.setVersion(0);
+        comment.setTextValue(text);
+        return comment;
+    }
+
+    String[] annotations(Image image) {
+        final Document document = new Document();
+        bridge.set_annotations("name", image, document, opts);
+        return document.getValues("annotation");
+    }
+
+    @Test
+    public void testSharedAnnotationIsReused() {
+        final CommentAnnotation comment = comment(5L, "shared");
+        for (long id = 1; id <= 3; id++) {
+            final Image image = new Image(id, true);
+            image.linkAnnotation(comment);
+            assertTrue(Arrays.asList(annotations(image)).contains("shared"));
+        }
+        assertEquals(1, bridge.cached());
+    }
+
+    @Test
+    public void testModifiedAnnotationIsRecomputed() {
+        final CommentAnnotation comment = comment(5L, "before");
+        final Image image = new Image(1L, true);
+        image.linkAnnotation(comment);
+        assertTrue(Arrays.asList(annotations(image)).contains("before"));
+
+        comment.setTextValue("after");
+        comment.setVersion(1);
+        assertTrue(Arrays.asList(annotations(image)).contains("after"));
+        assertFalse(Arrays.asList(annotations(image)).contains("before"));
+    }
+
+    @Test
+    public void testNewLinkAddsOnlyNewFragment() {
+        final Image image = new Image(1L, true);
+        image.linkAnnotation(comment(5L, "first"));
+        annotations(image);
+        image.linkAnnotation(comment(6L, "second"));
+        assertEquals(2, annotations(image).length / 2);
+        assertEquals(2, bridge.cached());
+    }
+
+    @Test
+    public void testLargeFragmentIsNotCached() {
+        bridge.setAnnotationCacheSize(AnnotationFragments.MAX_FRAGMENT_CHARS * 4);
+        final char[] text = new char[AnnotationFragments.MAX_FRAGMENT_CHARS + 1];
+        Arrays.fill(text, 'x');
+        final Image image = new Image(1L, true);
+        image.linkAnnotation(comment(5L, new String(text)));
+        assertTrue(Arrays.asList(annotations(image)).contains(new String(text)));
+        assertEquals(0, bridge.cached());
+    }
+
+    @Test
+    public void testDisabledCacheHoldsNothing() {
+        bridge.setAnnotationCacheSize(0);
+        final Image image = new Image(1L, true);
+        image.linkAnnotation(comment(5L, "uncached"));
+        assertTrue(Arrays.asList(annotations(image)).contains("uncached"));
+        assertEquals(0, bridge.cached());
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.server.utests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ome.api.local.LocalQuery;
+import ome.api.local.LocalUpdate;
+import ome.formats.OMEROMetadataStore;
+import ome.model.IObject;
+import ome.model.core.Channel;
+import ome.model.core.Image;
+import ome.model.core.LogicalChannel;
+import ome.model.core.Pixels;
+import ome.model.core.PlaneInfo;
+import ome.model.fs.Fileset;
+import ome.model.fs.FilesetJobLink;
+import ome.testing.MockServiceFactory;
+import ome.util.SqlAction;
+
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.jmock.core.Invocation;
+import org.jmock.core.Stub;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link OMEROMetadataStore#saveToDB(FilesetJobLink)} saves the
+ * Image graph, with its Channels, in one merge and the PlaneInfo of an
+ * import in chunks against the merged Pixels, clearing the session after
+ * each chunk, so that the objects held by the session, and so the heap it
+ * uses, stay bounded by the chunk size rather than growing with the import.
+ * The update service is stubbed as a merge: the saved graph is returned as
+ * copies and the originals are left without IDs.
+ */
+@Test(groups = "unit")
+public class ImportChunkTest extends MockObjectTestCase {
+
+    static final int IMAGES = 120;
+
+    static final int CHANNELS = 5;
+
+    static final int PLANES = 10;
+
+    static final int CHUNK = 50;
+
+    /* the objects that the Hibernate session would hold */
+    final Set<IObject> session =
+            Collections.newSetFromMap(new IdentityHashMap<IObject, Boolean>());
+
+    final List<Integer> sizesWhenCleared = new ArrayList<Integer>();
+
+    long nextId;
+
+    MockServiceFactory sf;
+
+    OMEROMetadataStore store;
+
+    List<PlaneInfo> planes;
+
+    private abstract class SessionStub implements Stub {
+
+        abstract Object invoke(Object[] graph);
+
+        public Object invoke(Invocation invocation) throws Throwable {
+            return invoke((Object[]) invocation.parameterValues.get(0));
+        }
+
+        public StringBuffer describeTo(StringBuffer buffer) {
+            return buffer.append(" saves into the session");
+        }
+    }
+
+    private void hold(IObject object) {
+        if (object != null && session.add(object)) {
+            object.setId(++nextId);
+        }
+    }
+
+    private static Map<String, Integer> indexes(Object... keysAndValues) {
+        Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            indexes.put((String) keysAndValues[i],
+                    (Integer) keysAndValues[i + 1]);
+        }
+        return indexes;
+    }
+
+    @Override
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        super.setUp();
+        session.clear();
+        sizesWhenCleared.clear();
+        nextId = 0;
+
+        sf = new MockServiceFactory();
+        sf.mockQuery = mock(LocalQuery.class);
+        sf.mockUpdate = mock(LocalUpdate.class);
+        Mock sql = mock(SqlAction.class);
+        store = new OMEROMetadataStore(sf, (SqlAction) sql.proxy());
+
+        store.createRoot();
+        planes = new ArrayList<PlaneInfo>();
+        for (int i = 0; i < IMAGES; i++) {
+            store.updateObject("Image:" + i, new Image(),
+                    indexes("imageIndex", i));
+            store.updateObject("Pixels:" + i, new Pixels(),
+                    indexes("imageIndex", i));
+            for (int c = 0; c < CHANNELS; c++) {
+                Map<String, Integer> channel =
+                        indexes("imageIndex", i, "channelIndex", c);
+                store.updateObject("Channel:" + i + ":" + c, new Channel(),
+                        channel);
+                store.updateObject("LogicalChannel:" + i + ":" + c,
+                        new LogicalChannel(), channel);
+            }
+            for (int p = 0; p < PLANES; p++) {
+                PlaneInfo plane = new PlaneInfo();
+                planes.add(plane);
+                store.updateObject("PlaneInfo:" + i + ":" + p, plane,
+                        indexes("imageIndex", i, "pixelsIndex", 0,
+                                "planeIndex", p));
+            }
+        }
+    }
+
+    private FilesetJobLink link() {
+        FilesetJobLink link = new FilesetJobLink();
+        link.link(new Fileset(1L, false), null);
+        return link;
+    }
+
+    public void testSessionHoldsAtMostOneChunk() {
+        store.setChunkSize(CHUNK);
+        final List<Long> pixelsIds = new ArrayList<Long>();
+        sf.mockUpdate.expects(once()).method("saveAndReturnArray")
+                .will(new SessionStub() {
+            @Override
+            Object invoke(Object[] graph) {
+                IObject[] merged = new IObject[graph.length];
+                for (int i = 0; i < graph.length; i++) {
+                    Pixels pixels = ((Image) graph[i]).getPrimaryPixels();
+                    assertEquals(CHANNELS, pixels.sizeOfChannels());
+                    assertEquals(0, pixels.sizeOfPlaneInfo());
+                    Image image = new Image();
+                    Pixels copy = new Pixels();
+                    image.addPixels(copy);
+                    hold(image);
+                    hold(copy);
+                    for (int c = 0; c < CHANNELS; c++) {
+                        Channel channel = new Channel();
+                        channel.setLogicalChannel(new LogicalChannel());
+                        copy.addChannel(channel);
+                        hold(channel);
+                        hold(channel.getLogicalChannel());
+                    }
+                    pixelsIds.add(copy.getId());
+                    merged[i] = image;
+                }
+                return merged;
+            }
+        });
+        sf.mockUpdate.expects(atLeastOnce()).method("saveArray")
+                .will(new SessionStub() {
+            @Override
+            Object invoke(Object[] graph) {
+                for (Object object : graph) {
+                    PlaneInfo plane = (PlaneInfo) object;
+                    assertFalse(plane.getPixels().isLoaded());
+                    assertTrue(pixelsIds.contains(plane.getPixels().getId()));
+                    session.add(plane);
+                }
+                return null;
+            }
+        });
+        sf.mockUpdate.expects(atLeastOnce()).method("flush");
+        sf.mockQuery.expects(atLeastOnce()).method("clear").will(new Stub() {
+            public Object invoke(Invocation invocation) throws Throwable {
+                sizesWhenCleared.add(session.size());
+                session.clear();
+                return null;
+            }
+
+            public StringBuffer describeTo(StringBuffer buffer) {
+                return buffer.append(" clears the session");
+            }
+        });
+
+        List<Pixels> saved = store.saveToDB(link());
+
+        assertEquals(IMAGES, saved.size());
+        for (int i = 0; i < IMAGES; i++) {
+            assertEquals(pixelsIds.get(i), saved.get(i).getId());
+            assertEquals(CHANNELS, saved.get(i).sizeOfChannels());
+        }
+        for (int p = 0; p < planes.size(); p++) {
+            assertEquals(pixelsIds.get(p / PLANES),
+                    planes.get(p).getPixels().getId());
+        }
+        assertTrue(session.isEmpty());
+
+        /* the Image graph, then PlaneInfo in chunks */
+        int graph = IMAGES * (2 + 2 * CHANNELS);
+        assertEquals(graph + CHUNK, (int) sizesWhenCleared.get(0));
+        for (int size : sizesWhenCleared.subList(1, sizesWhenCleared.size())) {
+            assertEquals(CHUNK, size);
+        }
+        assertEquals(IMAGES * PLANES / CHUNK, sizesWhenCleared.size());
+    }
+
+    public void testWithoutChunksGraphIsSavedAtOnce() {
+        store.setChunkSize(0);
+        sf.mockUpdate.expects(once()).method("saveAndReturnArray")
+                .will(new SessionStub() {
+            @Override
+            Object invoke(Object[] graph) {
+                for (Object object : graph) {
+                    Pixels pixels = ((Image) object).getPrimaryPixels();
+                    assertEquals(CHANNELS, pixels.sizeOfChannels());
+                    assertEquals(PLANES, pixels.sizeOfPlaneInfo());
+                }
+                return graph;
+            }
+        });
+        sf.mockQuery.expects(never()).method("clear");
+
+        assertEquals(IMAGES, store.saveToDB(link()).size());
+    }
+}
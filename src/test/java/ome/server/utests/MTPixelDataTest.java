@@ -99,6 +99,9 @@ public class MTPixelDataTest extends MockObjectTestCase {
             protected  EventLog query()
             {
                 long id = (long) pixelsId.incrementAndGet();
+                if (id > 3 * numThreads) {
+                    return null; // let doRun finish
+                }
                 EventLog log = new EventLog();
                 log.setEntityId(id);
                 return log;
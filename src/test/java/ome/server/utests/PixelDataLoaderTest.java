@@ -0,0 +1,110 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.server.utests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ome.api.IQuery;
+import ome.model.meta.EventLog;
+import ome.services.pixeldata.PersistentEventLogLoader;
+import ome.util.SqlAction;
+
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the pixel data {@link PersistentEventLogLoader} only saves
+ * event log ids below which all have been processed, however many are in
+ * processing at once.
+ */
+@Test(groups = "pixeldata")
+public class PixelDataLoaderTest extends MockObjectTestCase {
+
+    Mock sqlMock;
+    Mock queryMock;
+    Loader loader;
+
+    static class Loader extends PersistentEventLogLoader {
+
+        long current = -1;
+
+        Loader() {
+            super("REPO", 2);
+        }
+
+        @Override
+        public long getCurrentId() {
+            return current;
+        }
+
+        @Override
+        public void setCurrentId(long id) {
+            current = id;
+        }
+
+        Long nextId() {
+            return hasNext() ? next().getId() : null;
+        }
+    }
+
+    /** Rows of experimenter, event log, pixels and per-user rank. */
+    static List<long[]> rows(long[]... rows) {
+        return new ArrayList<long[]>(Arrays.asList(rows));
+    }
+
+    @BeforeMethod
+    public void setup() {
+        sqlMock = mock(SqlAction.class);
+        queryMock = mock(IQuery.class);
+        loader = new Loader();
+        loader.setSqlAction((SqlAction) sqlMock.proxy());
+        loader.setQueryService((IQuery) queryMock.proxy());
+    }
+
+    private void returnEventLogs(long... ids) {
+        List<org.jmock.core.Stub> stubs = new ArrayList<org.jmock.core.Stub>();
+        for (long id : ids) {
+            stubs.add(returnValue(new EventLog(id, false)));
+        }
+        queryMock.expects(atLeastOnce()).method("get").will(
+                onConsecutiveCalls(stubs.toArray(new org.jmock.core.Stub[0])));
+    }
+
+    public void testLowWaterMark() {
+        sqlMock.expects(atLeastOnce()).method("nextPixelsDataLogForRepo")
+            .will(onConsecutiveCalls(
+                returnValue(rows(
+                        new long[] { 1, 10, 100, 1 },
+                        new long[] { 1, 11, 101, 2 },
+                        new long[] { 2, 12, 102, 1 })),
+                returnValue(rows(
+                        new long[] { 2, 12, 102, 1 },
+                        new long[] { 1, 13, 103, 1 })),
+                returnValue(rows())));
+        returnEventLogs(10, 11, 12, 13);
+
+        assertEquals(Long.valueOf(10), loader.nextId());
+        assertEquals(Long.valueOf(11), loader.nextId());
+        assertEquals(Long.valueOf(12), loader.nextId());
+
+        // 10 is still in processing
+        loader.completed(11);
+        loader.completed(12);
+        assertEquals(9, loader.current);
+
+        // user 1 may have event logs after 11 which were not returned
+        loader.completed(10);
+        assertEquals(11, loader.current);
+
+        // 12 has been handed out so is passed over
+        assertEquals(Long.valueOf(13), loader.nextId());
+        loader.completed(13);
+        assertEquals(13, loader.current);
+    }
+}
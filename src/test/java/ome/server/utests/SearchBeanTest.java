@@ -15,6 +15,7 @@ import ome.model.core.Image;
 import ome.security.SecuritySystem;
 import ome.services.SearchBean;
 import ome.services.fulltext.FullTextAnalyzer;
+import ome.services.search.FullText;
 import ome.services.search.SearchAction;
 import ome.services.search.SearchValues;
 import ome.services.util.Executor;
@@ -184,6 +185,49 @@ public class SearchBeanTest extends MockObjectTestCase {
         bean.onlyAnnotatedWith((java.lang.Class[]) null);
     }
 
+    @Test
+    public void testPagedFullTextFetchesOnDemand() {
+        bean = new SearchBean(executor, analyzer);
+        bean.setTimeoutSetter(timeoutSetter);
+        bean.setPaged(true);
+        bean.setBatchSize(2);
+        final SearchValues values = new SearchValues();
+        values.onlyTypes = Arrays.<Class> asList(Image.class);
+        final int[] pages = new int[1];
+        bean.addAction(new FullText(values, "a", analyzer) {
+            int size;
+
+            @Override
+            public boolean page(int size) {
+                this.size = size;
+                return true;
+            }
+
+            @Override
+            public boolean isExhausted() {
+                return pages[0] == 3;
+            }
+
+            @Override
+            public Object doWork(Session session, ServiceFactory sf) {
+                pages[0]++;
+                List<IObject> rv = new ArrayList<IObject>();
+                // Second page entirely filtered out
+                for (int i = 0; pages[0] != 2 && i < size; i++) {
+                    rv.add(new Image());
+                }
+                return rv;
+            }
+        });
+        assertEquals(2, bean.results().size());
+        assertEquals(1, pages[0]);
+        assertEquals(1, bean.activeQueries());
+        assertEquals(2, bean.results().size());
+        assertEquals(3, pages[0]);
+        assertEquals(0, bean.activeQueries());
+        assertFalse(bean.hasNext());
+    }
+
     // ==============================================
 
     private void addActionWithResultOfSize_n(final int n) {
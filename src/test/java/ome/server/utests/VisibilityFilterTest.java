@@ -0,0 +1,160 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.server.utests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ome.model.internal.Permissions;
+import ome.services.search.VisibilityFilter;
+import ome.system.EventContext;
+import ome.system.Roles;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Index;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link VisibilityFilter} matches the documents which the
+ * security filters would allow to be loaded.
+ */
+public class VisibilityFilterTest extends MockObjectTestCase {
+
+    static final long USER = 10L, OTHER = 11L;
+
+    static final long PRIVATE = 5L, READ_ONLY = 6L, LED = 7L, FOREIGN = 8L;
+
+    static final Roles roles = new Roles();
+
+    RAMDirectory directory;
+
+    /** Documents by name, as owner and group id or nulls if unindexed. */
+    final Map<String, Long[]> docs = new HashMap<String, Long[]>();
+
+    @BeforeClass
+    public void index() throws Exception {
+        docs.put("own-private", new Long[] { USER, PRIVATE });
+        docs.put("other-private", new Long[] { OTHER, PRIVATE });
+        docs.put("other-read-only", new Long[] { OTHER, READ_ONLY });
+        docs.put("other-led", new Long[] { OTHER, LED });
+        docs.put("other-foreign", new Long[] { OTHER, FOREIGN });
+        docs.put("own-foreign", new Long[] { USER, FOREIGN });
+        docs.put("other-user-group", new Long[] { OTHER, roles.getUserGroupId() });
+        docs.put("unindexed", new Long[] { null, null });
+
+        directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(Version.LUCENE_31, new KeywordAnalyzer()));
+        for (Map.Entry<String, Long[]> entry : docs.entrySet()) {
+            final Document d = new Document();
+            d.add(new Field("name", entry.getKey(), Store.YES, Index.NOT_ANALYZED));
+            if (entry.getValue()[0] != null) {
+                d.add(new Field(VisibilityFilter.OWNER_ID, entry.getValue()[0]
+                        .toString(), Store.NO, Index.NOT_ANALYZED_NO_NORMS));
+                d.add(new Field(VisibilityFilter.GROUP_ID, entry.getValue()[1]
+                        .toString(), Store.NO, Index.NOT_ANALYZED_NO_NORMS));
+            }
+            writer.addDocument(d);
+        }
+        writer.close();
+    }
+
+    EventContext context(boolean admin, long groupId, String groupPerms) {
+        final Mock ec = mock(EventContext.class);
+        ec.stubs().method("isCurrentUserAdmin").will(returnValue(admin));
+        ec.stubs().method("getCurrentShareId").will(returnValue(null));
+        ec.stubs().method("getCurrentUserId").will(returnValue(USER));
+        ec.stubs().method("getCurrentGroupId").will(returnValue(groupId));
+        ec.stubs().method("getCurrentGroupPermissions").will(
+                returnValue(groupPerms == null ? null
+                        : Permissions.parseString(groupPerms)));
+        ec.stubs().method("getMemberOfGroupsList").will(
+                returnValue(Arrays.asList(roles.getUserGroupId(), PRIVATE,
+                        READ_ONLY, LED)));
+        ec.stubs().method("getLeaderOfGroupsList").will(
+                returnValue(Arrays.asList(LED)));
+        return (EventContext) ec.proxy();
+    }
+
+    Set<String> matches(Query query) throws Exception {
+        final Set<String> names = new HashSet<String>();
+        final IndexSearcher searcher = new IndexSearcher(directory, true);
+        try {
+            for (ScoreDoc hit : searcher.search(query, 100).scoreDocs) {
+                names.add(searcher.doc(hit.doc).get("name"));
+            }
+        } finally {
+            searcher.close();
+        }
+        return names;
+    }
+
+    Set<String> names(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testAdminIsUnrestricted() {
+        assertTrue(new VisibilityFilter(context(true, -1, null), roles)
+                .isUnrestricted());
+        assertFalse(new VisibilityFilter(context(false, -1, null), roles)
+                .isUnrestricted());
+    }
+
+    @Test
+    public void testPrivateGroupContext() throws Exception {
+        final Query q = new VisibilityFilter(context(false, PRIVATE, "rw----"),
+                roles).build(new HashMap<Long, Permissions>());
+        assertEquals(names("own-private", "other-user-group", "unindexed"),
+                matches(q));
+    }
+
+    @Test
+    public void testReadOnlyGroupContext() throws Exception {
+        final Query q = new VisibilityFilter(context(false, READ_ONLY, "rwr---"),
+                roles).build(new HashMap<Long, Permissions>());
+        assertEquals(names("other-read-only", "other-user-group", "unindexed"),
+                matches(q));
+    }
+
+    @Test
+    public void testLedPrivateGroupContext() throws Exception {
+        final Query q = new VisibilityFilter(context(false, LED, "rw----"),
+                roles).build(new HashMap<Long, Permissions>());
+        assertEquals(names("other-led", "other-user-group", "unindexed"),
+                matches(q));
+    }
+
+    @Test
+    public void testAllGroupsContext() throws Exception {
+        final Map<Long, Permissions> groups = new HashMap<Long, Permissions>();
+        groups.put(roles.getUserGroupId(), Permissions.parseString("rwr---"));
+        groups.put(PRIVATE, Permissions.parseString("rw----"));
+        groups.put(READ_ONLY, Permissions.parseString("rwr---"));
+        groups.put(LED, Permissions.parseString("rw----"));
+        groups.put(FOREIGN, Permissions.parseString("rwr---"));
+        final Query q = new VisibilityFilter(context(false, -1, null), roles)
+                .build(groups);
+        assertEquals(names("own-private", "other-read-only", "other-led",
+                "own-foreign", "other-user-group", "unindexed"), matches(q));
+    }
+}
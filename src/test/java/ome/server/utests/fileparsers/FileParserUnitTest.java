@@ -9,9 +9,13 @@ package ome.server.utests.fileparsers;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import ome.services.fulltext.FileParser;
 import ome.services.fulltext.PdfParser;
 import ome.services.messages.RegisterServiceCleanupMessage;
 import ome.system.OmeroContext;
@@ -46,6 +50,47 @@ public class FileParserUnitTest {
         list.clear();
     }
 
+    @Test
+    public void testChunkedParse() throws Exception {
+        List<String> words = new ArrayList<String>();
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            words.add("word" + i);
+            contents.append("word").append(i).append(i % 10 == 9 ? '\n' : ' ');
+        }
+        File file = File.createTempFile("chunked", ".txt");
+        try {
+            Files.write(file.toPath(),
+                    contents.toString().getBytes(Charset.defaultCharset()));
+            FileParser parser = new FileParser();
+            parser.setApplicationContext(new OmeroContext(
+                    "classpath:ome/server/fileparsers/config.xml"));
+            parser.setMaxFileSize((long) contents.length());
+            parser.setChunkSize(64);
+            List<String> parsed = new ArrayList<String>();
+            int chunks = 0;
+            for (Reader reader : parser.parse(file)) {
+                StringBuilder chunk = new StringBuilder();
+                char[] buf = new char[16];
+                int rv;
+                while ((rv = reader.read(buf)) != -1) {
+                    chunk.append(buf, 0, rv);
+                }
+                Assert.assertTrue(chunk.length() <= 64);
+                parsed.addAll(Arrays.asList(chunk.toString().trim().split("\\s+")));
+                chunks++;
+            }
+            Assert.assertTrue(chunks > 1);
+            Assert.assertEquals(parsed, words);
+        } finally {
+            file.delete();
+            for (RegisterServiceCleanupMessage cleanup : list) {
+                cleanup.close();
+            }
+            list.clear();
+        }
+    }
+
     public static class Closer implements ApplicationListener {
 
         public void onApplicationEvent(ApplicationEvent arg0) {
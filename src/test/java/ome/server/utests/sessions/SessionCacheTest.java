@@ -8,7 +8,10 @@ package ome.server.utests.sessions;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CyclicBarrier;
 
@@ -353,6 +356,74 @@ public class SessionCacheTest {
         }
     }
 
+    /**
+     * Sessions which the listener reports as unchanged are not reloaded
+     * though they still time out.
+     */
+    @Test
+    public void testUnchangedSessionsAreNotReloaded() throws Exception {
+        initCache();
+        final Session kept = sess();
+        final Session reloaded = sess();
+        final Session expired = sess();
+        expired.setTimeToIdle(1L);
+        cache.putSession(kept.getUuid(), sc(kept));
+        cache.putSession(reloaded.getUuid(), sc(reloaded));
+        cache.putSession(expired.getUuid(), sc(expired));
+        final Set<String> reloads = new HashSet<String>();
+        cache.setStaleCacheListener(new StaleCacheListener() {
+            public SessionContext reload(SessionContext context) {
+                reloads.add(context.getCurrentSessionUuid());
+                return context;
+            }
+
+            public Set<String> findUnchanged(Map<String, SessionContext> contexts) {
+                Assert.assertEquals(contexts.size(), 3);
+                return new HashSet<String>(Arrays.asList(kept.getUuid(), expired.getUuid()));
+            }
+        });
+        Thread.sleep(10L);
+        cache.updateEvent(new UserGroupUpdateEvent(this));
+        cache.doUpdate();
+        Assert.assertEquals(reloads, Collections.singleton(reloaded.getUuid()));
+        cache.getSessionContext(kept.getUuid());
+        throwsRemovedSession(expired.getUuid());
+
+        reloads.clear();
+        cache.setBulkUpdate(false);
+        cache.updateEvent(new UserGroupUpdateEvent(this));
+        cache.doUpdate();
+        Assert.assertEquals(reloads, new HashSet<String>(
+                Arrays.asList(kept.getUuid(), reloaded.getUuid())));
+    }
+
+    /**
+     * {@link SessionCache#sweep()} removes timed out sessions without an
+     * update being requested while sessions which are still being accessed
+     * are kept.
+     */
+    @Test
+    public void testSweepRemovesTimedOutSessions() throws Exception {
+        initCache();
+        final Session idle = sess();
+        final Session busy = sess();
+        final Session forever = sess();
+        idle.setTimeToIdle(200L);
+        busy.setTimeToIdle(200L);
+        cache.putSession(idle.getUuid(), sc(idle));
+        cache.putSession(busy.getUuid(), sc(busy));
+        cache.putSession(forever.getUuid(), sc(forever));
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(100L);
+            cache.getSessionContext(busy.getUuid());
+            cache.sweep();
+        }
+        throwsRemovedSession(idle.getUuid());
+        cache.getSessionContext(busy.getUuid());
+        cache.getSessionContext(forever.getUuid());
+        Assert.assertEquals(cache.getSessionData(busy.getUuid(), true).get("hitCount"), 8L);
+    }
+
     /**
      * Note: the listener logic was removed from the cache. The new semantics
      * of when things should be cleaned up needs to be removed along with the
@@ -0,0 +1,145 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.graphs;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+
+/**
+ * Compares the heap and time taken by the planning sets of {@link GraphTraversal} when held as
+ * {@link ClassIdSet}s with that of the former {@link HashSet}s of class name, ID tuples, for a graph like that of a
+ * plate with many ROIs and shapes. Not run as part of the tests, being too slow; run with, for example,
+ * {@code java -Xmx4g -cp ... ome.services.graphs.ClassIdSetBenchmark 2000000}.
+ *
+ * @since 5.7.6
+ */
+public class ClassIdSetBenchmark {
+
+    private static final String[] CLASSES = {
+        "ome.model.roi.Roi", "ome.model.roi.Rectangle", "ome.model.roi.Ellipse", "ome.model.roi.Polygon",
+        "ome.model.annotations.RoiAnnotationLink", "ome.model.annotations.ShapeAnnotationLink"
+    };
+
+    /** The tuple as {@link GraphTraversal} held it before class names were interned. */
+    private static final class Tuple {
+        final String className;
+        final long id;
+
+        Tuple(String className, long id) {
+            this.className = className;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            } else if (object instanceof Tuple) {
+                final Tuple other = (Tuple) object;
+                return this.id == other.id && this.className.equals(other.className);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getClass(), className, id);
+        }
+    }
+
+    /* keeps the sets of the last run reachable */
+    private static Object results;
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String label, int nodes, long heapBefore, long heapAfter, long startNanos,
+            long endNanos) {
+        System.out.printf("%-12s %,d nodes: %,d bytes retained (%.1f per node), %,d ms%n", label, nodes,
+                heapAfter - heapBefore, (heapAfter - heapBefore) / (double) nodes,
+                (endNanos - startNanos) / 1000000);
+    }
+
+    private static Object benchmarkTuples(int nodes) {
+        final long heapBefore = usedHeap();
+        final long start = System.nanoTime();
+        final Set<Tuple> toProcess = new HashSet<Tuple>();
+        final Set<Tuple> cached = new HashSet<Tuple>();
+        final Set<Tuple> included = new HashSet<Tuple>();
+        for (int node = 0; node < nodes; node++) {
+            final Tuple object = new Tuple(CLASSES[node % CLASSES.length], node);
+            toProcess.add(object);
+            included.add(object);
+            if (node % 2 == 0) {
+                cached.add(object);
+            }
+        }
+        /* as in each pass of planning */
+        final Set<Tuple> next = new HashSet<Tuple>(toProcess);
+        next.retainAll(cached);
+        next.removeAll(included);
+        final Set<Tuple> toCache = new HashSet<Tuple>(toProcess);
+        toCache.removeAll(cached);
+        final boolean same = new HashSet<Tuple>(toProcess).equals(toProcess);
+        final long end = System.nanoTime();
+        final long heapAfter = usedHeap();
+        report("HashSet", nodes, heapBefore, heapAfter, start, end);
+        return new Object[] {toProcess, cached, included, next, toCache, same};
+    }
+
+    private static Object benchmarkClassIdSets(int nodes) {
+        final int[] classIds = new int[CLASSES.length];
+        for (int index = 0; index < CLASSES.length; index++) {
+            classIds[index] = ClassIdSet.classId(CLASSES[index]);
+        }
+        final long heapBefore = usedHeap();
+        final long start = System.nanoTime();
+        final ClassIdSet toProcess = new ClassIdSet();
+        final ClassIdSet cached = new ClassIdSet();
+        final ClassIdSet included = new ClassIdSet();
+        for (int node = 0; node < nodes; node++) {
+            final int classId = classIds[node % classIds.length];
+            toProcess.add(classId, node);
+            included.add(classId, node);
+            if (node % 2 == 0) {
+                cached.add(classId, node);
+            }
+        }
+        /* as in each pass of planning */
+        final ClassIdSet next = new ClassIdSet(toProcess);
+        next.retainAll(cached);
+        next.removeAll(included);
+        final ClassIdSet toCache = new ClassIdSet(toProcess);
+        toCache.removeAll(cached);
+        final boolean same = new ClassIdSet(toProcess).equals(toProcess);
+        final long end = System.nanoTime();
+        final long heapAfter = usedHeap();
+        report("ClassIdSet", nodes, heapBefore, heapAfter, start, end);
+        return new Object[] {toProcess, cached, included, next, toCache, same};
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args optionally, the number of nodes in the graph, default 1,500,000
+     */
+    public static void main(String[] args) {
+        final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1500000;
+        for (int round = 0; round < 3; round++) {
+            results = null;
+            results = benchmarkTuples(nodes);
+            results = null;
+            results = benchmarkClassIdSets(nodes);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import ome.services.util.CacheKeyIndex;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Checks that {@link CacheKeyIndex} follows the keys held by a cache.
+ */
+@Test(groups = "unit")
+public class CacheKeyIndexTest {
+
+    /* keys are "pixelsId:plane" */
+    private static long pixelsId(String key) {
+        return Long.parseLong(key.substring(0, key.indexOf(':')));
+    }
+
+    private CacheKeyIndex<String, Integer> index;
+
+    private Cache<String, Integer> cache(long maximumSize) {
+        index = new CacheKeyIndex<String, Integer>(
+                CacheKeyIndexTest::pixelsId);
+        final Cache<String, Integer> cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .removalListener(index)
+                .build();
+        index.setCache(cache.asMap());
+        return cache;
+    }
+
+    public void testKeysByPixels() {
+        final Cache<String, Integer> cache = cache(100);
+        index.put("1:0", 0);
+        index.put("1:1", 0);
+        index.put("2:0", 0);
+        Assert.assertEquals(index.keys(1L),
+                new HashSet<String>(Arrays.asList("1:0", "1:1")));
+        cache.invalidateAll(index.remove(1L));
+        Assert.assertNull(cache.getIfPresent("1:0"));
+        Assert.assertNull(cache.getIfPresent("1:1"));
+        Assert.assertNotNull(cache.getIfPresent("2:0"));
+        Assert.assertTrue(index.keys(1L).isEmpty());
+        Assert.assertEquals(index.size(), 1);
+    }
+
+    public void testEvictedKeysAreForgotten() {
+        final Cache<String, Integer> cache = cache(10);
+        for (int i = 0; i < 1000; i++) {
+            index.put(i + ":0", 0);
+        }
+        Assert.assertTrue(index.size() <= 10);
+        cache.invalidateAll();
+        Assert.assertEquals(index.size(), 0);
+    }
+
+    public void testReplacedKeysAreKept() {
+        final Cache<String, Integer> cache = cache(100);
+        index.put("1:0", 0);
+        index.put("1:0", 0);
+        Assert.assertEquals(index.keys(1L).size(), 1);
+        cache.invalidate("1:0");
+        Assert.assertTrue(index.keys(1L).isEmpty());
+    }
+
+    public void testConcurrentPutsStayIndexed() throws InterruptedException {
+        final Cache<String, Integer> cache = cache(50);
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    index.put((i % 20) + ":" + ((i * 7 + thread) % 30), i);
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(cache.size() > 0);
+        for (final String key : cache.asMap().keySet()) {
+            Assert.assertTrue(index.keys(pixelsId(key)).contains(key), key);
+        }
+        for (long id = 0; id < 20; id++) {
+            cache.invalidateAll(index.remove(id));
+        }
+        Assert.assertEquals(cache.size(), 0);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import ome.services.graphs.ClassIdSet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks {@link ClassIdSet} against a {@link HashSet} of class name, ID pairs.
+ */
+@Test(groups = "unit")
+public class ClassIdSetTest {
+
+    private static final String[] CLASSES = {
+        "ome.model.roi.Roi", "ome.model.roi.Rectangle", "ome.model.roi.Point"
+    };
+
+    private static Entry<String, Long> entry(int classId, long id) {
+        return new AbstractMap.SimpleImmutableEntry<String, Long>(ClassIdSet.className(classId), id);
+    }
+
+    private static Set<Entry<String, Long>> asSet(ClassIdSet objects) {
+        final Set<Entry<String, Long>> entries = new HashSet<Entry<String, Long>>();
+        for (final int classId : objects.classIds()) {
+            for (final long id : objects.ids(classId)) {
+                Assert.assertTrue(entries.add(entry(classId, id)));
+            }
+        }
+        Assert.assertEquals(entries.size(), objects.size());
+        return entries;
+    }
+
+    private static ClassIdSet random(Random random, Set<Entry<String, Long>> expected) {
+        final ClassIdSet actual = new ClassIdSet();
+        for (int i = 0; i < 5000; i++) {
+            final int classId = ClassIdSet.classId(CLASSES[random.nextInt(CLASSES.length)]);
+            final long id = random.nextInt(2000);
+            Assert.assertEquals(actual.add(classId, id), expected.add(entry(classId, id)));
+        }
+        return actual;
+    }
+
+    public void testInterning() {
+        final int classId = ClassIdSet.classId(new String(CLASSES[0]));
+        Assert.assertEquals(ClassIdSet.classId(CLASSES[0]), classId);
+        Assert.assertSame(ClassIdSet.className(classId), ClassIdSet.className(ClassIdSet.classId(CLASSES[0])));
+        Assert.assertNotEquals(ClassIdSet.classId(CLASSES[1]), classId);
+    }
+
+    public void testMatchesHashSet() {
+        final Random random = new Random(1);
+        final ClassIdSet actual = new ClassIdSet();
+        final Set<Entry<String, Long>> expected = new HashSet<Entry<String, Long>>();
+        for (int i = 0; i < 100000; i++) {
+            final int classId = ClassIdSet.classId(CLASSES[random.nextInt(CLASSES.length)]);
+            final long id = random.nextInt(3000) - 20;
+            switch (random.nextInt(3)) {
+            case 0:
+                Assert.assertEquals(actual.add(classId, id), expected.add(entry(classId, id)));
+                break;
+            case 1:
+                Assert.assertEquals(actual.remove(classId, id), expected.remove(entry(classId, id)));
+                break;
+            default:
+                Assert.assertEquals(actual.contains(classId, id), expected.contains(entry(classId, id)));
+            }
+            Assert.assertEquals(actual.size(), expected.size());
+        }
+        Assert.assertEquals(asSet(actual), expected);
+    }
+
+    public void testBulkOperations() {
+        final Random random = new Random(2);
+        final Set<Entry<String, Long>> expectedA = new HashSet<Entry<String, Long>>();
+        final Set<Entry<String, Long>> expectedB = new HashSet<Entry<String, Long>>();
+        final ClassIdSet a = random(random, expectedA);
+        final ClassIdSet b = random(random, expectedB);
+
+        final ClassIdSet copy = new ClassIdSet(a);
+        Assert.assertEquals(copy, a);
+        Assert.assertEquals(copy.hashCode(), a.hashCode());
+        Assert.assertTrue(copy.containsAll(a));
+
+        final Set<Entry<String, Long>> retained = new HashSet<Entry<String, Long>>(expectedA);
+        Assert.assertEquals(copy.retainAll(b), retained.retainAll(expectedB));
+        Assert.assertEquals(asSet(copy), retained);
+        Assert.assertTrue(a.containsAll(copy));
+        Assert.assertTrue(b.containsAll(copy));
+
+        final ClassIdSet removed = new ClassIdSet(a);
+        final Set<Entry<String, Long>> expectedRemoved = new HashSet<Entry<String, Long>>(expectedA);
+        Assert.assertEquals(removed.removeAll(b), expectedRemoved.removeAll(expectedB));
+        Assert.assertEquals(asSet(removed), expectedRemoved);
+
+        Assert.assertTrue(removed.addAll(copy));
+        Assert.assertFalse(removed.addAll(copy));
+        Assert.assertEquals(removed, a);
+        Assert.assertEquals(asSet(a), expectedA);
+
+        removed.clear();
+        Assert.assertTrue(removed.isEmpty());
+        Assert.assertEquals(removed.classIds().length, 0);
+        Assert.assertTrue(removed.add(ClassIdSet.classId(CLASSES[2]), 0L));
+        Assert.assertTrue(a.containsAll(new ClassIdSet()));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ome.services.histogram.HistogramCache;
+import ome.services.histogram.HistogramEngine;
+import ome.services.histogram.PlaneStatistics;
+import ome.util.PixelData;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link HistogramEngine} gives the same results as scanning
+ * every pixel with {@link PixelData#getPixelValue(int)}.
+ */
+@Test(groups = "unit")
+public class HistogramEngineTest {
+
+    private static final int WIDTH = 37;
+
+    private static final int HEIGHT = 23;
+
+    private static PixelData plane(String type, int bytesPerPixel, int seed) {
+        ByteBuffer buf = ByteBuffer.allocate(WIDTH * HEIGHT * bytesPerPixel);
+        PixelData px = new PixelData(type, buf);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            px.setPixelValue(i, (i * 7919 + seed) % 200);
+        }
+        return px;
+    }
+
+    private static int[] naive(PixelData px, int x, int y, int w, int h,
+            int binCount, double min, double max) {
+        int[] data = new int[binCount];
+        double binRange = (max - min) / binCount;
+        for (int i = 0; i < px.size(); i++) {
+            int pxx = i % WIDTH;
+            int pxy = i / WIDTH;
+            if (pxx >= x && pxx < (x + w) && pxy >= y && pxy < (y + h)) {
+                double v = px.getPixelValue(i);
+                if (v < min || v > max) {
+                    continue;
+                }
+                int bin = (int) ((v - min) / binRange);
+                if (bin == binCount) {
+                    bin--;
+                }
+                data[bin]++;
+            }
+        }
+        return data;
+    }
+
+    public void testMatchesNaiveScan() {
+        String[] types = { PixelData.UINT8, PixelData.INT16,
+                PixelData.UINT16, PixelData.INT32, PixelData.FLOAT,
+                PixelData.DOUBLE };
+        int[] widths = { 1, 2, 2, 4, 4, 8 };
+        for (int i = 0; i < types.length; i++) {
+            PixelData px = plane(types[i], widths[i], i);
+            Assert.assertEquals(
+                    HistogramEngine.histogram(px, WIDTH, 3, 5, 20, 10, 16, 10, 150),
+                    naive(px, 3, 5, 20, 10, 16, 10, 150), types[i]);
+            Assert.assertEquals(
+                    HistogramEngine.histogram(px, WIDTH, 0, 0, WIDTH, HEIGHT, 256, 0, 199),
+                    naive(px, 0, 0, WIDTH, HEIGHT, 256, 0, 199), types[i]);
+        }
+    }
+
+    public void testMinMax() {
+        PixelData px = plane(PixelData.UINT16, 2, 3);
+        Assert.assertEquals(HistogramEngine.minMax(px, 65535, 0),
+                new double[] { 0, 199 });
+    }
+
+    public void testPlaneStatistics() {
+        PixelData px = plane(PixelData.UINT16, 2, 5);
+        PlaneStatistics stats = PlaneStatistics.compute(px, 65535, 0, 256);
+        double sum = 0;
+        for (int i = 0; i < px.size(); i++) {
+            sum += px.getPixelValue(i);
+        }
+        Assert.assertEquals(stats.getMin(), 0.0);
+        Assert.assertEquals(stats.getMax(), 199.0);
+        Assert.assertEquals(stats.getMean(), sum / px.size(), 1e-9);
+        Assert.assertEquals(stats.getHistogram(),
+                naive(px, 0, 0, WIDTH, HEIGHT, 256, 0, 199));
+    }
+
+    public void testParallelChannels() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            HistogramEngine engine = new HistogramEngine(executor);
+            Map<Integer, HistogramEngine.Request> requests =
+                    new LinkedHashMap<Integer, HistogramEngine.Request>();
+            for (int c = 0; c < 3; c++) {
+                requests.put(c, new HistogramEngine.Request(
+                        plane(PixelData.UINT16, 2, c), 0, 199));
+            }
+            Map<Integer, int[]> result =
+                    engine.histograms(requests, WIDTH, 0, 0, WIDTH, HEIGHT, 64);
+            for (int c = 0; c < 3; c++) {
+                Assert.assertEquals(result.get(c), naive(
+                        plane(PixelData.UINT16, 2, c), 0, 0, WIDTH, HEIGHT,
+                        64, 0, 199));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testCacheInvalidation() {
+        HistogramCache cache = new HistogramCache(10);
+        HistogramCache.Key key = new HistogramCache.Key(
+                1L, 0, 0, 0, 0, 0, 0, 10, 10, 256, Double.NaN, Double.NaN);
+        HistogramCache.Key other = new HistogramCache.Key(
+                2L, 0, 0, 0, 0, 0, 0, 10, 10, 256, Double.NaN, Double.NaN);
+        cache.put(key, new int[] { 1, 2 });
+        cache.put(other, new int[] { 3 });
+        Assert.assertEquals(cache.get(new HistogramCache.Key(
+                1L, 0, 0, 0, 0, 0, 0, 10, 10, 256, Double.NaN, Double.NaN)),
+                new int[] { 1, 2 });
+        cache.invalidate(1L);
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(cache.get(other), new int[] { 3 });
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import ome.services.util.LatencyHistogram;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the precision of the percentiles reported by
+ * {@link LatencyHistogram}.
+ */
+@Test(groups = "unit")
+public class LatencyHistogramTest {
+
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getMax(), 0);
+        Assert.assertEquals(histogram.getValueAtPercentile(0.99), 0);
+    }
+
+    public void testSmallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(histogram.getValueAtPercentile(0.5), 3);
+        Assert.assertEquals(histogram.getValueAtPercentile(1), 7);
+    }
+
+    public void testPercentilesWithinAnEighth() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(histogram.getCount(), 100000);
+        Assert.assertEquals(histogram.getMax(), 100000);
+        Assert.assertEquals(histogram.getMean(), 50000.5, 0.001);
+        for (final double fraction : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+            final double exact = fraction * 100000;
+            final long reported = histogram.getValueAtPercentile(fraction);
+            Assert.assertTrue(reported >= exact, fraction + ": " + reported);
+            Assert.assertTrue(reported <= exact * 1.125, fraction + ": " + reported);
+        }
+        Assert.assertEquals(histogram.getValueAtPercentile(1), 100000);
+    }
+
+    public void testExtremes() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(histogram.getValueAtPercentile(0.5), 0);
+        Assert.assertEquals(histogram.getValueAtPercentile(1), Long.MAX_VALUE);
+    }
+
+    public void testReset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getValueAtPercentile(0.5), 0);
+    }
+}
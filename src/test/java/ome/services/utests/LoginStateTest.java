@@ -0,0 +1,61 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import ome.model.internal.Permissions;
+import ome.model.meta.ExperimenterGroup;
+import ome.services.sessions.state.LoginState;
+import ome.services.sessions.state.SessionCache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the {@link LoginState} kept by the {@link SessionCache}.
+ */
+@Test(groups = "unit")
+public class LoginStateTest {
+
+    public void testGroupIsCopied() {
+        final ExperimenterGroup loaded = new ExperimenterGroup(5L, true);
+        loaded.setName("lab");
+        loaded.getDetails().setPermissions(Permissions.parseString("rwr---"));
+        final LoginState state = new LoginState();
+        Assert.assertNull(state.getGroup(5L));
+        state.setGroup(loaded);
+        loaded.getDetails().getPermissions().grant(Permissions.Role.WORLD,
+                Permissions.Right.READ);
+
+        final ExperimenterGroup group = state.getGroup(5L);
+        Assert.assertEquals(group.getId(), Long.valueOf(5L));
+        Assert.assertTrue(group.isLoaded());
+        Assert.assertEquals(group.getName(), "lab");
+        Assert.assertEquals(group.getDetails().getPermissions().toString(),
+                "rwr---");
+        Assert.assertNotSame(state.getGroup(5L), group);
+    }
+
+    public void testGroupContextPermitted() {
+        final LoginState state = new LoginState();
+        Assert.assertNull(state.isGroupContextPermitted(3L));
+        state.setGroupContextPermitted(3L, false);
+        Assert.assertEquals(state.isGroupContextPermitted(3L), Boolean.FALSE);
+    }
+
+    public void testInvalidation() {
+        final SessionCache cache = new SessionCache();
+        final LoginState state = cache.getLoginState("a");
+        Assert.assertSame(cache.getLoginState("a"), state);
+        Assert.assertNotSame(cache.getLoginState("b"), state);
+
+        cache.removeLoginState("a");
+        final LoginState removed = cache.getLoginState("a");
+        Assert.assertNotSame(removed, state);
+
+        cache.updateEvent(null);
+        Assert.assertNotSame(cache.getLoginState("a"), removed);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import ome.services.util.LongHashSet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks {@link LongHashSet} against a {@link HashSet} of boxed values.
+ */
+@Test(groups = "unit")
+public class LongHashSetTest {
+
+    public void testMatchesHashSet() {
+        final Random random = new Random(1);
+        final LongHashSet actual = new LongHashSet();
+        final Set<Long> expected = new HashSet<Long>();
+        for (int i = 0; i < 100000; i++) {
+            final long value = random.nextInt(3000) - 20;
+            switch (random.nextInt(3)) {
+            case 0:
+                Assert.assertEquals(actual.add(value), expected.add(value));
+                break;
+            case 1:
+                Assert.assertEquals(actual.remove(value),
+                        expected.remove(value));
+                break;
+            default:
+                Assert.assertEquals(actual.contains(value),
+                        expected.contains(value));
+            }
+            Assert.assertEquals(actual.size(), expected.size());
+        }
+        final long[] values = actual.toArray();
+        Assert.assertEquals(values.length, expected.size());
+        for (final long value : values) {
+            Assert.assertTrue(expected.contains(value));
+        }
+    }
+
+    public void testOf() {
+        final LongHashSet set = LongHashSet.of(Arrays.asList(3L, null, 0L, 3L));
+        Assert.assertEquals(set.size(), 2);
+        Assert.assertTrue(set.contains(0L));
+        Assert.assertTrue(set.contains(3L));
+        Assert.assertFalse(set.contains(1L));
+        Assert.assertEquals(set.toString(), "[0, 3]");
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import ome.services.fulltext.ParsedContents;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link ParsedContents} parses each file once, holding short
+ * contents in memory and spilling longer contents to disk.
+ */
+@Test(groups = "unit")
+public class ParsedContentsTest {
+
+    /* parses to the given chunks, as FileParser splits a file */
+    private static Supplier<Iterable<Reader>> parser(final AtomicInteger parses,
+            final String... chunks) {
+        return new Supplier<Iterable<Reader>>() {
+            @Override
+            public Iterable<Reader> get() {
+                parses.incrementAndGet();
+                final Reader[] readers = new Reader[chunks.length];
+                for (int i = 0; i < chunks.length; i++) {
+                    readers[i] = new StringReader(chunks[i]);
+                }
+                return Arrays.asList(readers);
+            }
+        };
+    }
+
+    private static String read(ParsedContents.Contents contents) throws IOException {
+        try (Reader reader = contents.open()) {
+            return IOUtils.toString(reader);
+        }
+    }
+
+    private static String repeat(char c, int length) {
+        final char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    public void testParsedOnceInMemory() throws IOException {
+        final AtomicInteger parses = new AtomicInteger();
+        final ParsedContents cache = new ParsedContents(1000, null, 0);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(read(cache.get("1:0", parser(parses, "quick brown", "fox"))),
+                    "quick brown\nfox");
+        }
+        Assert.assertEquals(parses.get(), 1);
+        Assert.assertEquals(read(cache.get("1:1", parser(parses, "lazy dog"))), "lazy dog");
+        Assert.assertEquals(parses.get(), 2);
+    }
+
+    public void testTooLongWithoutSpillIsNotCached() {
+        final AtomicInteger parses = new AtomicInteger();
+        final ParsedContents cache = new ParsedContents(100, null, 0);
+        Assert.assertNull(cache.get("1:0", parser(parses, repeat('a', 101))));
+        Assert.assertNull(cache.get("1:0", parser(parses, repeat('a', 101))));
+        Assert.assertEquals(parses.get(), 1);
+        Assert.assertNull(cache.get(null, parser(parses, "unidentified")));
+    }
+
+    public void testDisabled() {
+        final AtomicInteger parses = new AtomicInteger();
+        final ParsedContents cache = new ParsedContents(0, null, 0);
+        Assert.assertNull(cache.get("1:0", parser(parses, "text")));
+        Assert.assertEquals(parses.get(), 0);
+    }
+
+    public void testLongContentsAreSpilled() throws IOException {
+        final AtomicInteger parses = new AtomicInteger();
+        final File dir = Files.createTempDirectory("contents").toFile();
+        try {
+            final ParsedContents cache = new ParsedContents(100, dir.getPath(), 8000);
+            final String chunk = repeat('b', 300);
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(read(cache.get("1:0", parser(parses, chunk, chunk))),
+                        chunk + "\n" + chunk);
+            }
+            Assert.assertEquals(parses.get(), 1);
+            Assert.assertEquals(dir.list().length, 1);
+            /* more than an eighth of the spill size */
+            Assert.assertNull(cache.get("2:0", parser(parses, repeat('c', 1100))));
+            cache.shutdown();
+            Assert.assertEquals(dir.list().length, 0);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.nio.ByteBuffer;
+
+import ome.api.IProjection;
+import ome.services.projection.ProjectionEngine;
+import ome.util.PixelData;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link ProjectionEngine} gives the same results as projecting
+ * pixel by pixel, whether or not the plane is split into stripes.
+ */
+@Test(groups = "unit")
+public class ProjectionEngineTest {
+
+    private static final int PLANE_SIZE = 300 * 300;
+
+    private static final int SIZE_Z = 5;
+
+    private final ProjectionEngine parallel = new ProjectionEngine(4);
+
+    private final ProjectionEngine serial = new ProjectionEngine(1);
+
+    @AfterClass(alwaysRun = true)
+    public void shutdown() {
+        parallel.shutdown();
+    }
+
+    private static PixelData stack() {
+        PixelData px = new PixelData(PixelData.UINT16,
+                ByteBuffer.allocate(PLANE_SIZE * SIZE_Z * 2));
+        for (int i = 0; i < PLANE_SIZE * SIZE_Z; i++) {
+            px.setPixelValue(i, (i * 7919L) % 40000);
+        }
+        return px;
+    }
+
+    private static PixelData plane() {
+        return new PixelData(PixelData.UINT16,
+                ByteBuffer.allocate(PLANE_SIZE * 2));
+    }
+
+    /** Projects pixel by pixel as ProjectionBean formerly did. */
+    private static PixelData reference(int algorithm, PixelData from,
+            int stepping, int start, int end) {
+        PixelData to = plane();
+        for (int i = 0; i < PLANE_SIZE; i++) {
+            double projected = 0;
+            int count = 0;
+            if (algorithm == IProjection.MAXIMUM_INTENSITY) {
+                for (int z = start; z <= end; z += stepping) {
+                    double v = from.getPixelValue(PLANE_SIZE * z + i);
+                    if (v > projected) {
+                        projected = v;
+                    }
+                }
+            } else {
+                for (int z = start; z < end; z += stepping) {
+                    projected += from.getPixelValue(PLANE_SIZE * z + i);
+                    count++;
+                }
+                if (algorithm == IProjection.MEAN_INTENSITY) {
+                    projected = projected / count;
+                }
+                if (projected > to.getMaximum()) {
+                    projected = to.getMaximum();
+                }
+            }
+            to.setPixelValue(i, projected);
+        }
+        return to;
+    }
+
+    /** Projects plane by plane as ProjectionBean does from a PixelBuffer. */
+    private void checkAccumulator(ProjectionEngine engine, int algorithm,
+            int stepping) {
+        PixelData from = stack();
+        PixelData expected = reference(algorithm, from, stepping, 0,
+                SIZE_Z - 1);
+        ProjectionEngine.Accumulator accumulator = engine.accumulator(
+                algorithm, PLANE_SIZE, ProjectionEngine.planeCount(algorithm,
+                        stepping, 0, SIZE_Z - 1), null);
+        int last = ProjectionEngine.lastSection(algorithm, SIZE_Z - 1);
+        for (int z = 0; z <= last; z += stepping) {
+            accumulator.add(plane(from, z));
+        }
+        PixelData actual = plane();
+        double[] minMax = accumulator.finish(actual, Double.MAX_VALUE,
+                Double.MIN_VALUE);
+        double min = Double.MAX_VALUE;
+        double max = Double.MIN_VALUE;
+        for (int i = 0; i < PLANE_SIZE; i++) {
+            double v = expected.getPixelValue(i);
+            Assert.assertEquals(actual.getPixelValue(i), v, "pixel " + i);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        Assert.assertEquals(minMax, new double[] { min, max });
+    }
+
+    private static PixelData plane(PixelData from, int z) {
+        ByteBuffer plane = ByteBuffer.allocate(PLANE_SIZE * 2);
+        plane.put(from.getData().array(), PLANE_SIZE * 2 * z, PLANE_SIZE * 2);
+        return new PixelData(PixelData.UINT16, plane);
+    }
+
+    private void check(int algorithm) {
+        for (int stepping : new int[] { 1, 2 }) {
+            checkAccumulator(serial, algorithm, stepping);
+            checkAccumulator(parallel, algorithm, stepping);
+        }
+    }
+
+    public void testMaximum() {
+        check(IProjection.MAXIMUM_INTENSITY);
+    }
+
+    public void testMean() {
+        check(IProjection.MEAN_INTENSITY);
+    }
+
+    public void testSum() {
+        check(IProjection.SUM_INTENSITY);
+    }
+
+    public void testPlaneCount() {
+        Assert.assertEquals(ProjectionEngine.planeCount(
+                IProjection.MAXIMUM_INTENSITY, 2, 0, 4), 3);
+        Assert.assertEquals(ProjectionEngine.planeCount(
+                IProjection.MEAN_INTENSITY, 2, 0, 4), 2);
+        Assert.assertEquals(ProjectionEngine.planeCount(
+                IProjection.SUM_INTENSITY, 1, 3, 3), 0);
+    }
+
+    public void testProgress() {
+        final long[] last = new long[1];
+        final int planes = ProjectionEngine.planeCount(
+                IProjection.MAXIMUM_INTENSITY, 2, 0, SIZE_Z - 1);
+        final long total = (long) PLANE_SIZE * planes;
+        ProjectionEngine.Accumulator accumulator = parallel.accumulator(
+                IProjection.MAXIMUM_INTENSITY, PLANE_SIZE, planes,
+                new ProjectionEngine.ProgressListener() {
+                    public synchronized void progress(long done, long all) {
+                        last[0] = Math.max(last[0], done);
+                        Assert.assertEquals(all, total);
+                    }
+                });
+        PixelData from = stack();
+        for (int z = 0; z < SIZE_Z; z += 2) {
+            accumulator.add(plane(from, z));
+        }
+        Assert.assertEquals(last[0], total);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownAlgorithm() {
+        serial.accumulator(42, PLANE_SIZE, SIZE_Z, null);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import ome.services.RenderedTileCache;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit")
+public class RenderedTileCacheTest {
+
+    private static RenderedTileCache.Key key(long pixelsId, long settingsId,
+            String plane) {
+        return new RenderedTileCache.Key(pixelsId, settingsId, 0, "state",
+                plane, 0, 0.85f, 0);
+    }
+
+    public void testHitAndInvalidate() {
+        RenderedTileCache cache = new RenderedTileCache(1024);
+        byte[] tile = new byte[] { 1, 2, 3 };
+        cache.put(key(1L, 10L, "0,0,0"), tile);
+        cache.put(key(2L, 20L, "0,0,0"), tile);
+        Assert.assertEquals(cache.get(key(1L, 10L, "0,0,0")), tile);
+        Assert.assertNull(cache.get(key(1L, 10L, "0,1,0")));
+        cache.invalidateSettings(1L, 10L);
+        Assert.assertNull(cache.get(key(1L, 10L, "0,0,0")));
+        Assert.assertNotNull(cache.get(key(2L, 20L, "0,0,0")));
+        cache.invalidate(2L);
+        Assert.assertNull(cache.get(key(2L, 20L, "0,0,0")));
+    }
+
+    public void testSettingsStateIsPartOfKey() {
+        RenderedTileCache cache = new RenderedTileCache(1024);
+        cache.put(key(1L, 10L, "0,0,0"), new byte[] { 1 });
+        Assert.assertNull(cache.get(new RenderedTileCache.Key(1L, 10L, 0,
+                "other", "0,0,0", 0, 0.85f, 0)));
+    }
+
+    public void testEvictedTilesAreSpilled() throws Exception {
+        File dir = Files.createTempDirectory("tilecache").toFile();
+        try {
+            RenderedTileCache cache =
+                    new RenderedTileCache(100, dir.getPath(), 1024);
+            for (int i = 0; i < 5; i++) {
+                cache.put(key(1L, 10L, Integer.toString(i)), new byte[60]);
+            }
+            Assert.assertTrue(cache.getEvictionCount() > 0);
+            for (int i = 0; i < 5; i++) {
+                Assert.assertNotNull(
+                        cache.get(key(1L, 10L, Integer.toString(i))),
+                        "tile " + i);
+            }
+            cache.invalidate(1L);
+            Assert.assertEquals(cache.getSpilledBytes(), 0);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    public void testInvalidateSettingsKeepsOtherSettings() throws Exception {
+        File dir = Files.createTempDirectory("tilecache").toFile();
+        try {
+            RenderedTileCache cache =
+                    new RenderedTileCache(100, dir.getPath(), 1024);
+            for (int i = 0; i < 4; i++) {
+                cache.put(key(1L, 10L + i % 2, Integer.toString(i)),
+                        new byte[30]);
+            }
+            Assert.assertTrue(cache.getSpilledBytes() > 0);
+            cache.invalidateSettings(1L, 10L);
+            for (int i = 0; i < 4; i++) {
+                final byte[] tile =
+                        cache.get(key(1L, 10L + i % 2, Integer.toString(i)));
+                Assert.assertEquals(tile != null, i % 2 == 1, "tile " + i);
+            }
+            cache.invalidate(1L);
+            Assert.assertEquals(cache.getSize(), 0);
+            Assert.assertEquals(cache.getSpilledBytes(), 0);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    public void testOnlyOwnSpilledTilesAreDeleted() throws Exception {
+        File dir = Files.createTempDirectory("tilecache").toFile();
+        try {
+            File other = new File(dir, "other");
+            FileUtils.writeStringToFile(other, "keep", "UTF-8");
+            RenderedTileCache cache =
+                    new RenderedTileCache(100, dir.getPath(), 1024);
+            Assert.assertTrue(other.exists());
+            for (int i = 0; i < 5; i++) {
+                cache.put(key(1L, 10L, Integer.toString(i)), new byte[60]);
+            }
+            Assert.assertTrue(cache.getSpilledBytes() > 0);
+            Assert.assertEquals(dir.list().length, 2);
+            cache.invalidateAll();
+            cache.shutdown();
+            Assert.assertEquals(dir.list(), new String[] { "other" });
+            Assert.assertEquals(
+                    FileUtils.readFileToString(other, "UTF-8"), "keep");
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+}
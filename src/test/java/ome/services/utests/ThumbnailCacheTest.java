@@ -0,0 +1,86 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import ome.services.ThumbnailCache;
+import ome.services.ThumbnailCache.Key;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the keying, eviction and counters of {@link ThumbnailCache}.
+ */
+@Test(groups = "unit")
+public class ThumbnailCacheTest {
+
+    private static Key key(long pixelsId, long settingsModified, int size) {
+        return new Key(pixelsId, 10L, 0, settingsModified, size, size);
+    }
+
+    public void testHitAndMiss() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        Assert.assertNull(cache.get(key(1L, 0L, 96)));
+        cache.put(key(1L, 0L, 96), new byte[] { 1, 2, 3 });
+        Assert.assertEquals(cache.get(key(1L, 0L, 96)), new byte[] { 1, 2, 3 });
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getMissCount(), 1);
+    }
+
+    public void testSettingsChangeMisses() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        cache.put(key(1L, 0L, 96), new byte[] { 1 });
+        Assert.assertNull(cache.get(key(1L, 1L, 96)));
+        Assert.assertNull(cache.get(key(1L, 0L, 48)));
+    }
+
+    public void testInvalidatePixels() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        cache.put(key(1L, 0L, 96), new byte[] { 1 });
+        cache.put(key(1L, 0L, 48), new byte[] { 1 });
+        cache.put(key(2L, 0L, 96), new byte[] { 2 });
+        cache.invalidate(1L);
+        Assert.assertNull(cache.get(key(1L, 0L, 96)));
+        Assert.assertNull(cache.get(key(1L, 0L, 48)));
+        Assert.assertNotNull(cache.get(key(2L, 0L, 96)));
+    }
+
+    public void testInvalidateAfterEviction() {
+        ThumbnailCache cache = new ThumbnailCache(1000);
+        for (long i = 0; i < 100; i++) {
+            cache.put(key(i % 3, i, 96), new byte[100]);
+        }
+        cache.put(key(0L, 100L, 96), new byte[100]);
+        cache.invalidate(1L);
+        for (long i = 1; i < 100; i += 3) {
+            Assert.assertNull(cache.get(key(1L, i, 96)), "thumbnail " + i);
+        }
+        Assert.assertNotNull(cache.get(key(0L, 100L, 96)));
+    }
+
+    public void testBoundedBySize() {
+        ThumbnailCache cache = new ThumbnailCache(1000);
+        for (long i = 0; i < 100; i++) {
+            cache.put(key(i, 0L, 96), new byte[100]);
+        }
+        Assert.assertTrue(cache.getSize() <= 10);
+        Assert.assertTrue(cache.getEvictionCount() >= 90);
+    }
+
+    public void testEmptyThumbnailsNotCached() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        cache.put(key(1L, 0L, 96), new byte[0]);
+        Assert.assertNull(cache.get(key(1L, 0L, 96)));
+    }
+
+    public void testDisabled() {
+        ThumbnailCache cache = new ThumbnailCache(0);
+        Assert.assertFalse(cache.isEnabled());
+        cache.put(key(1L, 0L, 96), new byte[] { 1 });
+        Assert.assertNull(cache.get(key(1L, 0L, 96)));
+        Assert.assertEquals(cache.getHitCount(), 0);
+    }
+}
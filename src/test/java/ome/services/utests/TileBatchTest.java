@@ -0,0 +1,112 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ome.services.util.TileBatch;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the tiles of a batch are computed in parallel and returned in
+ * the order requested.
+ */
+@Test(groups = "unit")
+public class TileBatchTest {
+
+    private static final int TILES = 4;
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(TILES);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static Callable<byte[]> tile(final int index,
+            final CountDownLatch started) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                if (started != null) {
+                    /* completes only if all the tiles run at once */
+                    started.countDown();
+                    if (!started.await(2, TimeUnit.SECONDS)) {
+                        throw new IOException("tiles not run in parallel");
+                    }
+                }
+                return new byte[] {(byte) index};
+            }
+        };
+    }
+
+    public void testTilesAreComputedInParallel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(TILES - 1);
+        final TileBatch batch = new TileBatch(executor, TILES);
+        batch.set(0, new byte[] {0});
+        for (int i = 1; i < TILES; i++) {
+            batch.submit(i, tile(i, started));
+        }
+        final List<byte[]> result = batch.results();
+        Assert.assertEquals(result.size(), TILES);
+        for (int i = 0; i < TILES; i++) {
+            Assert.assertEquals(result.get(i), new byte[] {(byte) i});
+        }
+    }
+
+    public void testTilesAreComputedInlineWithoutPool() throws Exception {
+        final TileBatch batch = new TileBatch(null, TILES);
+        for (int i = TILES - 1; i >= 0; i--) {
+            batch.submit(i, tile(i, null));
+            Assert.assertEquals(batch.get(i), new byte[] {(byte) i});
+        }
+        final List<byte[]> result = batch.results();
+        for (int i = 0; i < TILES; i++) {
+            Assert.assertEquals(result.get(i), new byte[] {(byte) i});
+        }
+    }
+
+    public void testFailureIsPropagated() throws Exception {
+        final Callable<byte[]> failing = new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                throw new IOException("cannot compress");
+            }
+        };
+        final TileBatch pooled = new TileBatch(executor, 2);
+        pooled.submit(0, tile(0, null));
+        pooled.submit(1, failing);
+        try {
+            pooled.results();
+            Assert.fail("expected the compression failure");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        final TileBatch inline = new TileBatch(null, 1);
+        try {
+            inline.submit(0, failing);
+            Assert.fail("expected the compression failure");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *   Copyright 2026 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.utests;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ome.services.util.TileRequest;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the grouping of batched tile requests into runs read as one
+ * region and the splitting of that region into tiles.
+ */
+@Test(groups = "unit")
+public class TileRequestTest {
+
+    public void testAdjacentTilesAreCoalesced() {
+        List<TileRequest> tiles = Arrays.asList(
+                new TileRequest(0, 0, 0, 256, 0, 256, 256),
+                new TileRequest(0, 0, 0, 0, 0, 256, 256),
+                new TileRequest(0, 0, 0, 512, 0, 128, 256),
+                new TileRequest(0, 0, 0, 0, 256, 256, 256));
+        List<List<Integer>> runs = TileRequest.coalesce(tiles, 1 << 20);
+        Assert.assertEquals(runs.size(), 2);
+        Assert.assertEquals(runs.get(0), Arrays.asList(1, 0, 2));
+        Assert.assertEquals(runs.get(1), Arrays.asList(3));
+    }
+
+    public void testDifferentPlanesAreNotCoalesced() {
+        List<TileRequest> tiles = Arrays.asList(
+                new TileRequest(0, 0, 0, 0, 0, 256, 256),
+                new TileRequest(0, 1, 0, 256, 0, 256, 256),
+                new TileRequest(1, 0, 0, 256, 0, 256, 256),
+                new TileRequest(0, 0, 0, 256, 0, 256, 256, 1));
+        Assert.assertEquals(TileRequest.coalesce(tiles, 1 << 20).size(), 4);
+    }
+
+    public void testRunsAreBounded() {
+        List<TileRequest> tiles = Arrays.asList(
+                new TileRequest(0, 0, 0, 0, 0, 256, 256),
+                new TileRequest(0, 0, 0, 256, 0, 256, 256),
+                new TileRequest(0, 0, 0, 512, 0, 256, 256));
+        List<List<Integer>> runs =
+                TileRequest.coalesce(tiles, 2 * 256 * 256);
+        Assert.assertEquals(runs.size(), 2);
+        Assert.assertEquals(runs.get(0), Arrays.asList(0, 1));
+        Assert.assertEquals(runs.get(1), Arrays.asList(2));
+    }
+
+    public void testRegionIsSplitIntoTiles() {
+        final int bytesPerPixel = 2;
+        List<TileRequest> tiles = Arrays.asList(
+                new TileRequest(0, 0, 0, 2, 0, 3, 2),
+                new TileRequest(0, 0, 0, 0, 0, 2, 2),
+                new TileRequest(0, 0, 0, 5, 0, 1, 2));
+        List<Integer> run = TileRequest.coalesce(tiles, 1 << 20).get(0);
+        Assert.assertEquals(run, Arrays.asList(1, 0, 2));
+        Assert.assertEquals(TileRequest.width(tiles, run), 6);
+        /* two rows of six pixels */
+        byte[] region = new byte[6 * 2 * bytesPerPixel];
+        for (int i = 0; i < region.length; i++) {
+            region[i] = (byte) i;
+        }
+        byte[][] result = new byte[tiles.size()][];
+        TileRequest.split(region, bytesPerPixel, tiles, run, result);
+        Assert.assertEquals(result[1],
+                new byte[] {0, 1, 2, 3, 12, 13, 14, 15});
+        Assert.assertEquals(result[0],
+                new byte[] {4, 5, 6, 7, 8, 9, 16, 17, 18, 19, 20, 21});
+        Assert.assertEquals(result[2], new byte[] {10, 11, 22, 23});
+    }
+}